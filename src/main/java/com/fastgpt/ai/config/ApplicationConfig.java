@@ -1,5 +1,7 @@
 package com.fastgpt.ai.config;
 
+import com.fastgpt.ai.entity.KbData;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
@@ -7,7 +9,6 @@ import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 /**
@@ -19,18 +20,19 @@ import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 public class ApplicationConfig {
     
     /**
-     * Configure RestTemplate for external API calls
+     * Configure GridFsTemplate for file storage
      */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public GridFsTemplate gridFsTemplate(MongoDatabaseFactory mongoDbFactory, MappingMongoConverter mappingMongoConverter) {
+        return new GridFsTemplate(mongoDbFactory, mappingMongoConverter);
     }
     
     /**
-     * Configure GridFsTemplate for file storage
+     * Store KB data vectors as packed binary; vector.encoding.format is float32, float16 or array
      */
     @Bean
-    public GridFsTemplate gridFsTemplate(MongoDatabaseFactory mongoDbFactory, MappingMongoConverter mappingMongoConverter) {
-        return new GridFsTemplate(mongoDbFactory, mappingMongoConverter);
+    public MongoCustomConversions mongoCustomConversions(@Value("${vector.encoding.format:float32}") String format) {
+        return MongoCustomConversions.create(adapter -> adapter.configurePropertyConversions(registrar ->
+                registrar.registerConverter(KbData.class, "vector", new VectorValueConverter(format))));
     }
 } 
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.fastgpt.ai.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -46,4 +47,23 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+    
+    /**
+     * Configure the executor for the upstream side of streaming chat completions
+     * Each thread holds one provider stream for its whole duration, so tasks are not queued;
+     * when all threads are busy new streams are rejected instead of waiting.
+     * @return Executor for streaming completions
+     */
+    @Bean(name = "llmStreamExecutor", destroyMethod = "shutdown")
+    public ThreadPoolTaskExecutor llmStreamExecutor(
+            @Value("${llm.stream.max-threads:200}") int maxThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.min(10, maxThreads));
+        executor.setMaxPoolSize(maxThreads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("llm-stream-");
+        executor.setKeepAliveSeconds(60);
+        executor.initialize();
+        return executor;
+    }
 } 
\ No newline at end of file
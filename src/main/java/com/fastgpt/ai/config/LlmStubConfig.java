@@ -0,0 +1,57 @@
+package com.fastgpt.ai.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fastgpt.ai.stub.LlmStubServer;
+import com.fastgpt.ai.stub.StubProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Runs the OpenAI-compatible stub server inside the application for offline load tests
+ * Enable with llm.stub.enabled=true and route to it with
+ * llm.router.endpoints=http://127.0.0.1:${llm.stub.port}
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "llm.stub", name = "enabled", havingValue = "true")
+public class LlmStubConfig {
+
+    @Value("${llm.stub.port:18080}")
+    private int port;
+
+    @Value("${llm.stub.latency-ms:300}")
+    private long latencyMs;
+
+    @Value("${llm.stub.jitter-ms:100}")
+    private long jitterMs;
+
+    @Value("${llm.stub.tokens-per-second:50}")
+    private double tokensPerSecond;
+
+    @Value("${llm.stub.completion-tokens:200}")
+    private int completionTokens;
+
+    @Value("${llm.stub.error-rate:0}")
+    private double errorRate;
+
+    @Value("${llm.stub.throttle-rate:0}")
+    private double throttleRate;
+
+    @Bean(destroyMethod = "stop")
+    public LlmStubServer llmStubServer(ObjectMapper objectMapper) throws IOException {
+        StubProfile profile = StubProfile.builder()
+                .latencyMs(latencyMs)
+                .jitterMs(jitterMs)
+                .tokensPerSecond(tokensPerSecond)
+                .completionTokens(completionTokens)
+                .errorRate(errorRate)
+                .throttleRate(throttleRate)
+                .build();
+        LlmStubServer server = new LlmStubServer(profile, objectMapper);
+        server.start(port);
+        return server;
+    }
+}
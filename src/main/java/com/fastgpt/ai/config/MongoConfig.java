@@ -1,11 +1,42 @@
 package com.fastgpt.ai.config;
 
+import com.fastgpt.ai.entity.KbData;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 
+@Slf4j
 @Configuration
 @EnableMongoAuditing
 @EnableMongoRepositories(basePackages = "com.fastgpt.ai.repository")
+@RequiredArgsConstructor
 public class MongoConfig {
-} 
\ No newline at end of file
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Create the indexes declared on KbData
+     * Spring Boot no longer creates them automatically. Only kb_data is covered because the pushed-down
+     * search queries depend on its compound indexes; annotations on other entities are not turned into
+     * index builds on their existing collections at startup. Existing indexes are left as they are.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        var mappingContext = mongoTemplate.getConverter().getMappingContext();
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        try {
+            IndexOperations indexOps = mongoTemplate.indexOps(KbData.class);
+            resolver.resolveIndexFor(KbData.class).forEach(indexOps::ensureIndex);
+        } catch (RuntimeException e) {
+            log.warn("Failed to create indexes of {}: {}", mongoTemplate.getCollectionName(KbData.class), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.fastgpt.ai.config;
+
+import com.fastgpt.ai.util.CancellationToken;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Request factory backed by a dedicated connection pool for one destination class
+ * (LLM provider, embedding, user HTTP nodes). Connections are kept alive and reused,
+ * so short calls skip the TCP and TLS handshakes; responses are transparently gunzipped.
+ * Each request is tied to the cancellation token bound to the calling thread until its
+ * response is closed, and its response timeout can be overridden per call with
+ * {@link #withResponseTimeout(Duration)}.
+ */
+public class PooledClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private static final ThreadLocal<Duration> RESPONSE_TIMEOUT = new ThreadLocal<>();
+    // Handle that unregisters the cancel callback of the request being created on this thread
+    private static final ThreadLocal<Runnable> CANCEL_REGISTRATION = new ThreadLocal<>();
+
+    private final String name;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final RequestConfig defaultRequestConfig;
+
+    public PooledClientHttpRequestFactory(String name, PoolingHttpClientConnectionManager connectionManager,
+                                          RequestConfig defaultRequestConfig) {
+        super(HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultRequestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build());
+        this.name = name;
+        this.connectionManager = connectionManager;
+        this.defaultRequestConfig = defaultRequestConfig;
+    }
+
+    /**
+     * Override the response timeout of the requests made on this thread until the scope is closed
+     */
+    public static TimeoutScope withResponseTimeout(Duration timeout) {
+        Duration previous = RESPONSE_TIMEOUT.get();
+        RESPONSE_TIMEOUT.set(timeout);
+        return () -> {
+            if (previous != null) {
+                RESPONSE_TIMEOUT.set(previous);
+            } else {
+                RESPONSE_TIMEOUT.remove();
+            }
+        };
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        ClientHttpRequest request;
+        try {
+            request = super.createRequest(uri, httpMethod);
+        } catch (IOException | RuntimeException e) {
+            Runnable unregister = CANCEL_REGISTRATION.get();
+            CANCEL_REGISTRATION.remove();
+            if (unregister != null) {
+                unregister.run();
+            }
+            throw e;
+        }
+
+        Runnable unregister = CANCEL_REGISTRATION.get();
+        CANCEL_REGISTRATION.remove();
+        return unregister != null ? new CancellableRequest(request, unregister) : request;
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        if (!(request instanceof HttpUriRequestBase httpRequest)) {
+            return;
+        }
+
+        Duration responseTimeout = RESPONSE_TIMEOUT.get();
+        if (responseTimeout != null) {
+            httpRequest.setConfig(RequestConfig.copy(defaultRequestConfig)
+                    .setResponseTimeout(Timeout.of(responseTimeout))
+                    .build());
+        }
+
+        // Cancelling the token aborts the exchange and releases the pooled connection
+        CancellationToken token = CancellationToken.current();
+        if (token != CancellationToken.NONE) {
+            token.throwIfCancelled();
+            // Unregistered when the response is closed, so long-lived tokens do not pile up callbacks
+            CANCEL_REGISTRATION.set(token.onCancel(httpRequest::cancel));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the pool usage, in total and per route
+     * A pool is saturated when all connections are leased and requests are pending
+     */
+    public Map<String, Object> getPoolStats() {
+        PoolStats total = connectionManager.getTotalStats();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("leased", total.getLeased());
+        stats.put("available", total.getAvailable());
+        stats.put("pending", total.getPending());
+        stats.put("max", total.getMax());
+        stats.put("saturated", total.getLeased() >= total.getMax() && total.getPending() > 0);
+
+        Map<String, Object> routes = new HashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            PoolStats routeStats = connectionManager.getStats(route);
+            routes.put(route.getTargetHost().toURI(), Map.of(
+                    "leased", routeStats.getLeased(),
+                    "available", routeStats.getAvailable(),
+                    "pending", routeStats.getPending(),
+                    "max", routeStats.getMax()));
+        }
+        stats.put("routes", routes);
+
+        return stats;
+    }
+
+    /**
+     * Scope of a per-call timeout override
+     */
+    @FunctionalInterface
+    public interface TimeoutScope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Request that unregisters its cancel callback once the exchange is over
+     */
+    private static class CancellableRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+        private final ClientHttpRequest delegate;
+        private final Runnable unregister;
+
+        CancellableRequest(ClientHttpRequest delegate, Runnable unregister) {
+            this.delegate = delegate;
+            this.unregister = unregister;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            ClientHttpResponse response;
+            try {
+                response = delegate.execute();
+            } catch (IOException | RuntimeException e) {
+                unregister.run();
+                throw e;
+            }
+            return new CancellableResponse(response, unregister);
+        }
+
+        @Override
+        public void setBody(Body body) {
+            if (delegate instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(body);
+                return;
+            }
+            try {
+                body.writeTo(delegate.getBody());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+    }
+
+    /**
+     * Response that unregisters the cancel callback of its request when closed
+     */
+    private static class CancellableResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final Runnable unregister;
+
+        CancellableResponse(ClientHttpResponse delegate, Runnable unregister) {
+            this.delegate = delegate;
+            this.unregister = unregister;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                unregister.run();
+            }
+        }
+    }
+}
@@ -45,4 +45,4 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
-} 
\ No newline at end of file
+}
@@ -1,14 +1,160 @@
 package com.fastgpt.ai.config;
 
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.web.client.RestTemplate;
 
+/**
+ * Outbound HTTP clients
+ * Each destination class gets its own connection pool, so slow user HTTP nodes
+ * cannot starve LLM or embedding calls
+ */
 @Configuration
 public class RestTemplateConfig {
 
+    // LLM provider: few hosts, long generations
+    @Value("${http.client.llm.max-connections:200}")
+    private int llmMaxConnections;
+
+    @Value("${http.client.llm.max-connections-per-route:100}")
+    private int llmMaxConnectionsPerRoute;
+
+    @Value("${http.client.llm.connect-timeout:5000}")
+    private long llmConnectTimeout;
+
+    @Value("${http.client.llm.read-timeout:120000}")
+    private long llmReadTimeout;
+
+    // Embedding: short, frequent calls
+    @Value("${http.client.embedding.max-connections:100}")
+    private int embeddingMaxConnections;
+
+    @Value("${http.client.embedding.max-connections-per-route:50}")
+    private int embeddingMaxConnectionsPerRoute;
+
+    @Value("${http.client.embedding.connect-timeout:3000}")
+    private long embeddingConnectTimeout;
+
+    @Value("${http.client.embedding.read-timeout:30000}")
+    private long embeddingReadTimeout;
+
+    // Tools and user HTTP nodes: many arbitrary hosts
+    @Value("${http.client.tool.max-connections:200}")
+    private int toolMaxConnections;
+
+    @Value("${http.client.tool.max-connections-per-route:20}")
+    private int toolMaxConnectionsPerRoute;
+
+    @Value("${http.client.tool.connect-timeout:5000}")
+    private long toolConnectTimeout;
+
+    @Value("${http.client.tool.read-timeout:30000}")
+    private long toolReadTimeout;
+
+    // Sibling instances: vector shard searches, bounded by the scatter-gather deadline
+    @Value("${http.client.shard.max-connections:100}")
+    private int shardMaxConnections;
+
+    @Value("${http.client.shard.max-connections-per-route:20}")
+    private int shardMaxConnectionsPerRoute;
+
+    @Value("${http.client.shard.connect-timeout:1000}")
+    private long shardConnectTimeout;
+
+    @Value("${http.client.shard.read-timeout:5000}")
+    private long shardReadTimeout;
+
+    // Maximum time to wait for a free pooled connection
+    @Value("${http.client.connection-request-timeout:10000}")
+    private long connectionRequestTimeout;
+
+    @Bean
+    public PooledClientHttpRequestFactory llmHttpRequestFactory() {
+        return createRequestFactory("llm", llmMaxConnections, llmMaxConnectionsPerRoute,
+                llmConnectTimeout, llmReadTimeout);
+    }
+
+    @Bean
+    public PooledClientHttpRequestFactory embeddingHttpRequestFactory() {
+        return createRequestFactory("embedding", embeddingMaxConnections, embeddingMaxConnectionsPerRoute,
+                embeddingConnectTimeout, embeddingReadTimeout);
+    }
+
+    @Bean
+    public PooledClientHttpRequestFactory toolHttpRequestFactory() {
+        return createRequestFactory("tool", toolMaxConnections, toolMaxConnectionsPerRoute,
+                toolConnectTimeout, toolReadTimeout);
+    }
+
+    @Bean
+    public PooledClientHttpRequestFactory shardHttpRequestFactory() {
+        return createRequestFactory("shard", shardMaxConnections, shardMaxConnectionsPerRoute,
+                shardConnectTimeout, shardReadTimeout);
+    }
+
+    /**
+     * Client for LLM provider calls, the default for injection
+     */
+    @Bean
+    @Primary
+    public RestTemplate restTemplate(@Qualifier("llmHttpRequestFactory") PooledClientHttpRequestFactory requestFactory) {
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Client for embedding calls
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate embeddingRestTemplate(
+            @Qualifier("embeddingHttpRequestFactory") PooledClientHttpRequestFactory requestFactory) {
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Client for tools and user HTTP request nodes
+     */
+    @Bean
+    public RestTemplate toolRestTemplate(@Qualifier("toolHttpRequestFactory") PooledClientHttpRequestFactory requestFactory) {
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Client for vector shard searches on other instances
+     */
+    @Bean
+    public RestTemplate shardRestTemplate(@Qualifier("shardHttpRequestFactory") PooledClientHttpRequestFactory requestFactory) {
+        return new RestTemplate(requestFactory);
+    }
+
+    private PooledClientHttpRequestFactory createRequestFactory(String name, int maxConnections, int maxConnectionsPerRoute,
+                                                                long connectTimeout, long readTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        // Recycle long-lived connections so DNS changes are picked up
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                .build();
+
+        return new PooledClientHttpRequestFactory(name, connectionManager, requestConfig);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package com.fastgpt.ai.constant;
+
+import java.util.Map;
+
+/**
+ * 向量模型常量
+ */
+public final class EmbeddingModels {
+
+    // 默认维度，与text-embedding-ada-002一致
+    public static final int DEFAULT_DIMENSIONS = 1536;
+
+    // 模型与向量维度的映射
+    public static final Map<String, Integer> MODEL_DIMENSIONS = Map.of(
+        "text-embedding-ada-002", 1536,
+        "text-embedding-3-small", 1536,
+        "text-embedding-3-large", 3072
+    );
+
+    private EmbeddingModels() {
+    }
+
+    /**
+     * 获取模型的向量维度，未知模型返回默认维度
+     */
+    public static int dimensionsOf(String model) {
+        return MODEL_DIMENSIONS.getOrDefault(model, DEFAULT_DIMENSIONS);
+    }
+}
@@ -2,7 +2,9 @@ package com.fastgpt.ai.controller;
 
 import com.fastgpt.ai.dto.request.ChatCompletionRequest;
 import com.fastgpt.ai.dto.request.ChatMessageRequest;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
 import com.fastgpt.ai.service.ChatService;
+import com.fastgpt.ai.util.CancellationToken;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
@@ -17,6 +19,7 @@ import java.io.IOException;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Controller handling chat completions with support for streaming responses
@@ -47,27 +50,37 @@ public class ChatCompletionsController {
         // Create a message request
         ChatMessageRequest messageRequest = convertToMessageRequest(completionRequest);
         
+        // Cancelled when the client goes away, aborting the upstream generation
+        CancellationToken cancellationToken = CancellationToken.create();
+        
         // Handle connection close
         emitter.onCompletion(() -> {
             log.debug("Completion finished: {}", completionId);
+            cancellationToken.cancel("Client connection closed");
         });
         
         emitter.onTimeout(() -> {
             log.warn("Connection timeout: {}", completionId);
+            cancellationToken.cancel("Client connection timed out");
             emitter.complete();
         });
         
         emitter.onError(error -> {
             log.error("Error during streaming completion {}: {}", completionId, error.getMessage(), error);
+            cancellationToken.cancel("Client connection error");
             emitter.complete();
         });
         
         // Use an executor to process the request asynchronously
-        executorService.execute(() -> {
-            try {
+        Future<?> task = executorService.submit(() -> {
+            CancellationToken.Scope scope = cancellationToken.bind();
+            try (scope) {
                 if (completionRequest.isStream()) {
                     // Stream mode - send events as they arrive
                     chatService.streamChatMessage(messageRequest, (chunk, isLast) -> {
+                        // Stop generating as soon as nobody is listening
+                        cancellationToken.throwIfCancelled();
+                        
                         try {
                             // Send SSE event with the chunk
                             emitter.send(SseEmitter.event()
@@ -85,7 +98,9 @@ public class ChatCompletionsController {
                             }
                         } catch (IOException e) {
                             log.error("Error sending chunk for {}: {}", completionId, e.getMessage());
+                            cancellationToken.cancel("Failed to send chunk");
                             emitter.completeWithError(e);
+                            throw new ExecutionCancelledException("Failed to send chunk", e);
                         }
                     });
                 } else {
@@ -105,7 +120,13 @@ public class ChatCompletionsController {
                             .data(""));
                     emitter.complete();
                 }
+            } catch (ExecutionCancelledException e) {
+                log.info("Chat completion {} cancelled: {}", completionId, e.getMessage());
             } catch (Exception e) {
+                if (cancellationToken.isCancelled()) {
+                    log.info("Chat completion {} cancelled: {}", completionId, cancellationToken.getReason());
+                    return;
+                }
                 log.error("Error processing chat completion {}: {}", completionId, e.getMessage(), e);
                 try {
                     // Send error event
@@ -120,6 +141,9 @@ public class ChatCompletionsController {
             }
         });
         
+        // Release the worker thread as well once cancelled
+        cancellationToken.onCancel(() -> task.cancel(true));
+        
         return emitter;
     }
     
@@ -0,0 +1,60 @@
+package com.fastgpt.ai.controller;
+
+import com.fastgpt.ai.config.PooledClientHttpRequestFactory;
+import com.fastgpt.ai.dto.response.ApiResponse;
+import com.fastgpt.ai.service.LlmBatchService;
+import com.fastgpt.ai.service.LlmRouterService;
+import com.fastgpt.ai.service.ProviderRateLimiter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Controller exposing the outbound HTTP connection pools, LLM endpoints and provider rate limits
+ */
+@RestController
+@RequestMapping("/api/v1/system/http-clients")
+@Tag(name = "HTTP Clients", description = "API for outbound HTTP connection pool metrics")
+@RequiredArgsConstructor
+public class HttpClientController {
+
+    private final List<PooledClientHttpRequestFactory> requestFactories;
+    private final LlmRouterService llmRouterService;
+    private final ProviderRateLimiter providerRateLimiter;
+    private final LlmBatchService llmBatchService;
+
+    @Operation(summary = "Get connection pool stats", description = "Leased, available and pending connections per pool and route")
+    @GetMapping("/pools")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getPoolStats() {
+        List<Map<String, Object>> stats = requestFactories.stream()
+                .map(PooledClientHttpRequestFactory::getPoolStats)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(ApiResponse.success(stats));
+    }
+    
+    @Operation(summary = "Get LLM endpoint stats", description = "Latency, error rate and in-flight calls per routed LLM endpoint")
+    @GetMapping("/llm-endpoints")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getLlmEndpointStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmRouterService.getEndpointStats()));
+    }
+    
+    @Operation(summary = "Get provider rate limit stats", description = "Concurrency limit, queue length and remaining budgets per API key and model")
+    @GetMapping("/rate-limits")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getRateLimitStats() {
+        return ResponseEntity.ok(ApiResponse.success(providerRateLimiter.getStats()));
+    }
+    
+    @Operation(summary = "Get batch API stats", description = "Queued requests, batches in flight and finished batches")
+    @GetMapping("/batches")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getBatchStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmBatchService.getStats()));
+    }
+}
@@ -2,11 +2,19 @@ package com.fastgpt.ai.controller;
 
 import com.fastgpt.ai.dto.KbDataDTO;
 import com.fastgpt.ai.dto.KnowledgeBaseDTO;
+import com.fastgpt.ai.dto.VectorShardMatchDTO;
 import com.fastgpt.ai.dto.request.KbDataCreateRequest;
 import com.fastgpt.ai.dto.request.KnowledgeBaseCreateRequest;
 import com.fastgpt.ai.dto.request.VectorSearchRequest;
+import com.fastgpt.ai.dto.request.VectorShardSearchRequest;
 import com.fastgpt.ai.dto.response.ApiResponse;
+import com.fastgpt.ai.service.EmbeddingCacheService;
 import com.fastgpt.ai.service.KnowledgeBaseService;
+import com.fastgpt.ai.service.LexicalIndexService;
+import com.fastgpt.ai.service.VectorEncodingService;
+import com.fastgpt.ai.service.VectorIndexService;
+import com.fastgpt.ai.service.VectorShardService;
+import com.fastgpt.ai.service.VectorStoreService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -14,6 +22,7 @@ import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @RestController
@@ -22,6 +31,12 @@ import java.util.List;
 public class KnowledgeBaseController {
 
     private final KnowledgeBaseService knowledgeBaseService;
+    private final VectorIndexService vectorIndexService;
+    private final VectorStoreService vectorStoreService;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final VectorEncodingService vectorEncodingService;
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorShardService vectorShardService;
 
     // Knowledge Base endpoints
     
@@ -70,6 +85,13 @@ public class KnowledgeBaseController {
         return ResponseEntity.ok(ApiResponse.success("Knowledge base deleted successfully", null));
     }
     
+    @PostMapping("/{kbId}/reembed")
+    public ResponseEntity<ApiResponse<Integer>> reembedKnowledgeBase(@PathVariable String kbId) {
+        log.info("Re-embedding knowledge base with ID: {}", kbId);
+        int queued = knowledgeBaseService.reembedKnowledgeBase(kbId);
+        return ResponseEntity.accepted().body(ApiResponse.success("Re-embedding queued", queued));
+    }
+    
     // KB Data endpoints
     
     @PostMapping("/data")
@@ -79,6 +101,13 @@ public class KnowledgeBaseController {
         return ResponseEntity.ok(ApiResponse.success(data));
     }
     
+    @PostMapping("/data/batch")
+    public ResponseEntity<ApiResponse<List<KbDataDTO>>> addDataBatch(@Valid @RequestBody List<KbDataCreateRequest> requests) {
+        log.info("Adding {} data items", requests.size());
+        List<KbDataDTO> data = knowledgeBaseService.addDataBatch(requests);
+        return ResponseEntity.ok(ApiResponse.success(data));
+    }
+    
     @GetMapping("/data/{dataId}")
     public ResponseEntity<ApiResponse<KbDataDTO>> getData(@PathVariable String dataId) {
         log.info("Getting KB data with ID: {}", dataId);
@@ -108,4 +137,67 @@ public class KnowledgeBaseController {
         List<KbDataDTO> results = knowledgeBaseService.search(request);
         return ResponseEntity.ok(ApiResponse.success(results));
     }
-} 
\ No newline at end of file
+    
+    @GetMapping("/index/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getIndexStats() {
+        return ResponseEntity.ok(ApiResponse.success(vectorIndexService.getStats()));
+    }
+    
+    @GetMapping("/store/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getStoreStats() {
+        return ResponseEntity.ok(ApiResponse.success(vectorStoreService.getStats()));
+    }
+    
+    @GetMapping("/embedding-cache/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getEmbeddingCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(embeddingCacheService.getStats()));
+    }
+    
+    @PostMapping("/{kbId}/vector-encoding/migrate")
+    public ResponseEntity<ApiResponse<Boolean>> migrateVectorEncoding(@PathVariable String kbId) {
+        log.info("Migrating vector encoding of knowledge base: {}", kbId);
+        boolean queued = vectorEncodingService.migrate(kbId);
+        String message = queued ? "Migration queued" : "Vectors are stored as arrays";
+        return ResponseEntity.accepted().body(ApiResponse.success(message, queued));
+    }
+    
+    @GetMapping("/vector-encoding/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getVectorEncodingStats() {
+        return ResponseEntity.ok(ApiResponse.success(vectorEncodingService.getStats()));
+    }
+    
+    @GetMapping("/lexical-index/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getLexicalIndexStats() {
+        return ResponseEntity.ok(ApiResponse.success(lexicalIndexService.getStats()));
+    }
+    
+    // Vector shard endpoints
+    
+    @PostMapping("/{kbId}/shards/assign")
+    public ResponseEntity<ApiResponse<Map<Integer, List<String>>>> assignShards(@PathVariable String kbId) {
+        log.info("Assigning vector shards of knowledge base: {}", kbId);
+        return ResponseEntity.ok(ApiResponse.success(vectorShardService.assign(kbId)));
+    }
+    
+    @GetMapping("/{kbId}/shards")
+    public ResponseEntity<ApiResponse<Map<Integer, List<String>>>> getShardAssignment(@PathVariable String kbId) {
+        return ResponseEntity.ok(ApiResponse.success(vectorShardService.getAssignment(kbId)));
+    }
+    
+    /**
+     * Search one shard on this instance; called by the instance coordinating a sharded search
+     */
+    @PostMapping("/internal/shards/{kbId}/{shard}/search")
+    public ResponseEntity<ApiResponse<List<VectorShardMatchDTO>>> searchShard(
+            @PathVariable String kbId, @PathVariable int shard,
+            @RequestHeader(value = VectorShardService.SECRET_HEADER, required = false) String secret,
+            @Valid @RequestBody VectorShardSearchRequest request) {
+        List<VectorShardMatchDTO> matches = vectorShardService.searchLocal(kbId, shard, secret, request);
+        return ResponseEntity.ok(ApiResponse.success(matches));
+    }
+    
+    @GetMapping("/shards/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getShardStats() {
+        return ResponseEntity.ok(ApiResponse.success(vectorShardService.getStats()));
+    }
+}
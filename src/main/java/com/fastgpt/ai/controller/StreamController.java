@@ -8,6 +8,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -30,16 +31,18 @@ public class StreamController {
     @PostMapping(value = "/workflow/{workflowId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamWorkflow(
             @PathVariable String workflowId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
             @RequestBody Map<String, Object> inputs) {
         
         log.info("Starting streaming workflow execution: {} with inputs: {}", workflowId, inputs);
-        return streamService.streamWorkflowExecution(workflowId, inputs);
+        return streamService.streamWorkflowExecution(workflowId, userId, inputs);
     }
     
     @Operation(summary = "Stream workflow execution with config", description = "Execute a workflow with SSE streaming and additional configuration")
     @PostMapping(value = "/workflow/{workflowId}/config", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamWorkflowWithConfig(
             @PathVariable String workflowId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
             @RequestBody StreamRequest request) {
         
         log.info("Starting streaming workflow execution with config: {} with inputs: {}", workflowId, request);
@@ -53,13 +56,14 @@ public class StreamController {
             inputs.put("__config", request.getConfig());
         }
         
-        return streamService.streamWorkflowExecution(workflowId, inputs);
+        return streamService.streamWorkflowExecution(workflowId, userId, inputs);
     }
     
     @Operation(summary = "Debug-stream workflow execution", description = "Execute a workflow with SSE streaming and detailed debug information")
     @PostMapping(value = "/workflow/{workflowId}/debug", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter debugStreamWorkflow(
             @PathVariable String workflowId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
             @RequestBody Map<String, Object> inputs) {
         
         log.info("Starting debug streaming workflow execution: {} with inputs: {}", workflowId, inputs);
@@ -68,6 +72,19 @@ public class StreamController {
         inputs.put("__debug", true);
         inputs.put("__streaming", true);
         
-        return streamService.streamWorkflowExecution(workflowId, inputs);
+        return streamService.streamWorkflowExecution(workflowId, userId, inputs);
+    }
+    
+    @Operation(summary = "Watch workflow execution", description = "Reconnect to an execution of the user on any instance, resuming after Last-Event-ID if given")
+    @GetMapping(value = "/execution/{executionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> watchExecution(
+            @PathVariable String executionId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = streamService.watchExecution(executionId, userId, lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 } 
\ No newline at end of file
@@ -13,6 +13,7 @@ import com.fastgpt.ai.dto.response.ApiResponse;
 import com.fastgpt.ai.service.WorkflowService;
 import com.fastgpt.ai.service.WorkflowInteractionService;
 import com.fastgpt.ai.service.WorkflowTemplateService;
+import com.fastgpt.ai.util.RequestPriority;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -103,6 +104,24 @@ public class WorkflowController {
         return ResponseEntity.ok(outputs);
     }
     
+    @Operation(summary = "Execute workflow offline", description = "Queue a workflow whose provider calls go through the batch API; results may take up to the batch completion window")
+    @PostMapping("/{workflowId}/execute-offline")
+    public ResponseEntity<ApiResponse<Void>> executeWorkflowOffline(
+            @PathVariable String workflowId,
+            @RequestBody(required = false) Map<String, Object> inputs) {
+        
+        Map<String, Object> workflowInputs = inputs != null ? inputs : new HashMap<>();
+        executorService.submit(() -> {
+            try (RequestPriority.Scope priorityScope = RequestPriority.OFFLINE.bind()) {
+                workflowService.executeWorkflow(workflowId, workflowInputs);
+                log.info("Offline execution of workflow {} completed", workflowId);
+            } catch (Exception e) {
+                log.error("Offline execution of workflow {} failed", workflowId, e);
+            }
+        });
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.success("Workflow execution queued", null));
+    }
+    
     @Operation(summary = "Stream workflow execution", description = "Execute a workflow and stream results using Server-Sent Events")
     @PostMapping(value = "/{workflowId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamWorkflow(
@@ -111,8 +130,9 @@ public class WorkflowController {
         
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
         
+        // A client is waiting on the stream, so its provider calls queue as interactive rather than batch
         executorService.submit(() -> {
-            try {
+            try (RequestPriority.Scope priorityScope = RequestPriority.INTERACTIVE.bind()) {
                 // Set headers for SSE
                 emitter.send(SseEmitter.event()
                     .name("start")
@@ -33,6 +33,7 @@ public class WorkflowStreamController {
     @PostMapping(value = "/{workflowId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamWorkflow(
             @PathVariable String workflowId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
             @RequestBody(required = false) Map<String, Object> inputs) {
         
         // Create SseEmitter with extended timeout
@@ -41,12 +42,29 @@ public class WorkflowStreamController {
         // Normalize inputs
         Map<String, Object> normalizedInputs = inputs != null ? inputs : new HashMap<>();
         
+        // The execution ID is always generated here, a client-supplied one is replaced;
+        // it is sent to the client in the start event
+        normalizedInputs.put("executionId", workflowStreamService.createExecution(userId));
+        
         // Start streaming workflow execution
         workflowStreamService.streamWorkflowToEmitter(workflowId, normalizedInputs, emitter);
         
         return emitter;
     }
     
+    @Operation(summary = "Watch streaming execution", description = "Attach to a running execution of the user on any instance, resuming after Last-Event-ID if given")
+    @GetMapping(value = "/{executionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> watchExecution(
+            @PathVariable String executionId,
+            @RequestParam(value = "userId", defaultValue = "anonymous") String userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = workflowStreamService.watchExecution(executionId, userId, lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+    
     @Operation(summary = "Cancel streaming execution", description = "Cancel an ongoing streaming workflow execution")
     @PostMapping("/{executionId}/cancel")
     public ResponseEntity<ApiResponse<Boolean>> cancelStreaming(@PathVariable String executionId) {
@@ -29,4 +29,11 @@ public class KnowledgeBaseDTO {
     private Boolean shared;
     private Map<String, Object> customInfo;
     private Map<String, Object> modelInfo;
+    private Integer hnswM;
+    private Integer hnswEfConstruction;
+    private Integer hnswEfSearch;
+    private String vectorQuantization;
+    private Integer pqSubspaces;
+    private Integer vectorShards;
+    private Integer vectorShardsTarget;
 } 
\ No newline at end of file
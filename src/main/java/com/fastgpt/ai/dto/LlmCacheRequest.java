@@ -0,0 +1,67 @@
+package com.fastgpt.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO describing an LLM call for the response cache
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmCacheRequest {
+    
+    /**
+     * App the call is made for; per-app cache settings are read from its metadata
+     */
+    private String appId;
+    
+    /**
+     * Team and user the call is made for, used for usage reporting
+     */
+    private String teamId;
+    private String userId;
+    
+    /**
+     * Model name
+     */
+    private String model;
+    
+    /**
+     * Generation parameters that affect the answer (temperature, max_tokens, ...)
+     */
+    private Map<String, Object> params;
+    
+    /**
+     * System prompt
+     */
+    private String systemPrompt;
+    
+    /**
+     * Conversation messages (role/content)
+     */
+    private List<Map<String, String>> messages;
+    
+    /**
+     * The user question, embedded for the semantic tier
+     * The semantic tier is skipped when not set
+     */
+    private String query;
+    
+    /**
+     * Hash of everything besides the question that shapes the answer (retrieved context, prompt template)
+     * Semantic matches are only returned within the same app and context hash
+     */
+    private String contextHash;
+    
+    /**
+     * Skip the cache for this call
+     */
+    private boolean bypass;
+}
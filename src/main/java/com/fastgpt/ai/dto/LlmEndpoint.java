@@ -0,0 +1,31 @@
+package com.fastgpt.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for an OpenAI-compatible endpoint served by the LLM router
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmEndpoint {
+    
+    /**
+     * Endpoint name used in logs and stats
+     */
+    private String name;
+    
+    /**
+     * Base URL, without the /v1 path
+     */
+    private String baseUrl;
+    
+    /**
+     * API key sent as bearer token
+     */
+    private String apiKey;
+}
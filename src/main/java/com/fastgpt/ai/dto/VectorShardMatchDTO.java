@@ -0,0 +1,15 @@
+package com.fastgpt.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorShardMatchDTO {
+    private String dataId;
+    private Double score;
+}
@@ -5,7 +5,10 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import java.util.Map;
 
 @Data
@@ -35,4 +38,20 @@ public class KnowledgeBaseCreateRequest {
     private Map<String, Object> customInfo;
     
     private Map<String, Object> modelInfo;
+    
+    private Integer hnswM;
+    
+    private Integer hnswEfConstruction;
+    
+    private Integer hnswEfSearch;
+    
+    @Pattern(regexp = "none|int8|pq", message = "Vector quantization must be none, int8 or pq")
+    private String vectorQuantization;
+    
+    @Min(value = 1, message = "PQ subspaces must be at least 1")
+    private Integer pqSubspaces;
+    
+    @Min(value = 1, message = "Vector shards must be at least 1")
+    @Max(value = 1024, message = "Vector shards must be at most 1024")
+    private Integer vectorShards;
 } 
\ No newline at end of file
@@ -5,13 +5,15 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
 import java.util.List;
 import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class VectorSearchRequest {
@@ -31,4 +33,22 @@ public class VectorSearchRequest {
     private Map<String, List<String>> metadataFilters;
     
     private Boolean useRawQuery = false;
-} 
\ No newline at end of file
+    
+    // Embedding of the query, when the caller has already generated it
+    private List<Float> queryVector;
+    
+    // Score every vector exactly instead of using the index or quantized codes, e.g. for recall checks
+    private Boolean exact;
+    
+    // vector (default), lexical for BM25 keyword ranking, or hybrid to fuse both by reciprocal rank;
+    // lexical scores are raw BM25, hybrid scores are fused ranks scaled to at most 1
+    @Pattern(regexp = "vector|lexical|hybrid", message = "Search mode must be vector, lexical or hybrid")
+    private String searchMode;
+    
+    // Weights of the two rankings in a hybrid search; null means 1
+    @DecimalMin(value = "0.0", message = "Vector weight cannot be negative")
+    private Double vectorWeight;
+    
+    @DecimalMin(value = "0.0", message = "Lexical weight cannot be negative")
+    private Double lexicalWeight;
+}
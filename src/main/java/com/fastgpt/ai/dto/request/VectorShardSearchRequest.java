@@ -0,0 +1,36 @@
+package com.fastgpt.ai.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search of one vector shard, sent by the coordinating instance to an owner of the shard
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorShardSearchRequest {
+    @NotEmpty(message = "Query vector cannot be empty")
+    private List<Float> queryVector;
+
+    @Min(value = 1, message = "Limit must be at least 1")
+    private Integer limit;
+
+    private Double minScore;
+
+    // Shard count the coordinator placed the data by; a mismatch means the shards were changed
+    @Min(value = 2, message = "Shards must be at least 2")
+    private Integer shards;
+
+    private List<String> excludedIds;
+
+    private Map<String, List<String>> metadataFilters;
+}
@@ -2,6 +2,9 @@ package com.fastgpt.ai.entity;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -11,10 +14,19 @@ import java.util.Map;
 
 @Data
 @Document(collection = "kb_data")
+@CompoundIndexes({
+    // Searches filter a knowledge base and exclude data IDs
+    @CompoundIndex(name = "kb_id_data_id", def = "{'kb_id': 1, 'data_id': 1}"),
+    @CompoundIndex(name = "kb_id_file_id", def = "{'kb_id': 1, 'file_id': 1}"),
+    @CompoundIndex(name = "kb_id_collection_id", def = "{'kb_id': 1, 'collection_id': 1}"),
+    @CompoundIndex(name = "kb_id_shard_bucket", def = "{'kb_id': 1, 'shard_bucket': 1}")
+})
 public class KbData {
     @Id
     private String id;
     
+    // Point lookups and the $in hydration of search results
+    @Indexed(name = "data_id")
     @Field("data_id")
     private String dataId;
     
@@ -70,4 +82,8 @@ public class KbData {
     
     @Field("collection_meta")
     private Map<String, String> collectionMeta;
+    
+    // Hash bucket of the data ID; shard = bucket % shards, so shards can be queried with $mod
+    @Field("shard_bucket")
+    private Integer shardBucket;
 } 
\ No newline at end of file
@@ -55,4 +55,50 @@ public class KnowledgeBase {
     
     @Field("model_info")
     private Map<String, Object> modelInfo;
-} 
\ No newline at end of file
+    
+    /**
+     * HNSW neighbours per node; null uses vector.index.m
+     */
+    @Field("hnsw_m")
+    private Integer hnswM;
+    
+    /**
+     * HNSW candidate list size while building; null uses vector.index.ef-construction
+     */
+    @Field("hnsw_ef_construction")
+    private Integer hnswEfConstruction;
+    
+    /**
+     * HNSW candidate list size while searching; null uses vector.index.ef-search
+     */
+    @Field("hnsw_ef_search")
+    private Integer hnswEfSearch;
+    
+    /**
+     * Compression of the vectors scanned by search: none, int8 (4x smaller) or pq (product
+     * quantization); null means none. Quantized knowledge bases walk their HNSW index, or scan,
+     * on the codes and re-rank the best candidates with the full-precision vectors.
+     */
+    @Field("vector_quantization")
+    private String vectorQuantization;
+    
+    /**
+     * Product quantization subspaces, one byte each; null uses vector.quantization.pq-subspaces
+     */
+    @Field("pq_subspaces")
+    private Integer pqSubspaces;
+    
+    /**
+     * Number of shards the vectors are split into across instances; null or 1 keeps them whole
+     * on every instance. Shards are assigned to instances in Redis and searched by scatter-gather.
+     */
+    @Field("vector_shards")
+    private Integer vectorShards;
+    
+    /**
+     * Shard count a resharding migration is moving the vectors to; null when none is running.
+     * Searches keep using vectorShards until the migration has given every item a shard bucket.
+     */
+    @Field("vector_shards_target")
+    private Integer vectorShardsTarget;
+}
@@ -0,0 +1,17 @@
+package com.fastgpt.ai.exception;
+
+/**
+ * Exception thrown when an execution is aborted through its cancellation token
+ */
+public class ExecutionCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExecutionCancelledException(String message) {
+        super(message);
+    }
+
+    public ExecutionCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,17 @@
+package com.fastgpt.ai.exception;
+
+/**
+ * Exception thrown when a caller may not use an endpoint
+ */
+public class ForbiddenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new forbidden exception with the specified detail message.
+     * @param message the detail message
+     */
+    public ForbiddenException(String message) {
+        super(message);
+    }
+}
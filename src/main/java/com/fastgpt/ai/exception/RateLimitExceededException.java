@@ -0,0 +1,17 @@
+package com.fastgpt.ai.exception;
+
+/**
+ * Exception thrown when a provider call could not get a rate limit permit in time
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new rate limit exception with the specified detail message.
+     * @param message the detail message
+     */
+    public RateLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -4,14 +4,17 @@ import com.fastgpt.ai.entity.KbData;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface KbDataRepository extends MongoRepository<KbData, String> {
+public interface KbDataRepository extends MongoRepository<KbData, String>, KbDataRepositoryCustom {
     
     Optional<KbData> findByDataId(String dataId);
     
+    List<KbData> findByDataIdIn(Collection<String> dataIds);
+    
     List<KbData> findByKbId(String kbId);
     
     List<KbData> findByKbIdAndUserId(String kbId, String userId);
@@ -0,0 +1,98 @@
+package com.fastgpt.ai.repository;
+
+import com.fastgpt.ai.entity.KbData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filtered and projected KB data queries, built with MongoTemplate
+ */
+public interface KbDataRepositoryCustom {
+    
+    /**
+     * Find the vectors of a knowledge base for scoring
+     * Only _id, dataId and vector are loaded; the other fields of the returned items are null.
+     * @param kbId Knowledge base ID
+     * @param excludedIds Data IDs to leave out, or null
+     * @param metadataFilters Required collection metadata: each key must have one of its values, or null
+     * @return Matching items with their vectors
+     */
+    List<KbData> findVectors(String kbId, Collection<String> excludedIds, Map<String, List<String>> metadataFilters);
+    
+    /**
+     * Find full data items of a knowledge base
+     * @param kbId Knowledge base ID
+     * @param excludedIds Data IDs to leave out, or null
+     * @param metadataFilters Required collection metadata: each key must have one of its values, or null
+     * @param limit Maximum number of items
+     * @return Matching items
+     */
+    List<KbData> findFiltered(String kbId, Collection<String> excludedIds, Map<String, List<String>> metadataFilters,
+                              int limit);
+    
+    /**
+     * Find a page of the texts of a knowledge base for keyword indexing, ordered by _id
+     * Only _id, dataId, q, a and collectionMeta are loaded.
+     * @param afterId Return the items after this _id, or null for the first page
+     */
+    List<KbData> findIndexTextPage(String kbId, String afterId, int limit);
+    
+    /**
+     * Find the texts of data items of a knowledge base for keyword indexing
+     * Only _id, dataId, q, a and collectionMeta are loaded.
+     */
+    List<KbData> findIndexTexts(String kbId, Collection<String> dataIds);
+    
+    /**
+     * Find a page of the data IDs and update times of a knowledge base, ordered by _id
+     * Only _id, dataId and updateTime are loaded.
+     * @param afterId Return the items after this _id, or null for the first page
+     */
+    List<KbData> findUpdateTimePage(String kbId, String afterId, int limit);
+    
+    /**
+     * Find the metadata of a knowledge base, or of one of its shards, for the bitmap filters of a
+     * vector store
+     * Only _id, dataId and collectionMeta are loaded.
+     * @param shards Number of shards, or 1 for the whole knowledge base
+     */
+    List<KbData> findMetadata(String kbId, int shards, int shard);
+    
+    /**
+     * Find a page of the vectors of a knowledge base, or of one of its shards, ordered by _id
+     * Only _id, dataId and vector are loaded; items without a vector are left out.
+     * @param shards Number of shards, or 1 for the whole knowledge base; a shard holds the items
+     *               whose shardBucket % shards is shard
+     * @param afterId Return the items after this _id, or null for the first page
+     */
+    List<KbData> findVectorPage(String kbId, int shards, int shard, String afterId, int limit);
+    
+    /**
+     * Find a page of the data IDs of the items with a vector, ordered by _id
+     * Only _id and dataId are loaded.
+     * @see #findVectorPage(String, int, int, String, int)
+     */
+    List<KbData> findVectorIdPage(String kbId, int shards, int shard, String afterId, int limit);
+    
+    /**
+     * Find a page of the texts of a knowledge base for re-embedding, ordered by _id
+     * Only _id, dataId, q and collectionMeta are loaded.
+     * @param afterId Return the items after this _id, or null for the first page
+     */
+    List<KbData> findTextPage(String kbId, String afterId, int limit);
+    
+    /**
+     * Set the vectors of items, matched by _id, in one bulk write
+     * @return Number of items updated
+     */
+    long updateVectors(List<KbData> items, String vectorModel);
+    
+    /**
+     * Set the shard bucket of the items of a knowledge base stored without one
+     * Run by the resharding migration before the knowledge base switches to its new shard count.
+     * @return Number of items updated
+     */
+    long assignShardBuckets(String kbId);
+}
@@ -0,0 +1,163 @@
+package com.fastgpt.ai.repository;
+
+import com.fastgpt.ai.entity.KbData;
+import com.fastgpt.ai.util.VectorShards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes KB data filters into the Mongo query, served by the kb_id indexes of kb_data
+ */
+@RequiredArgsConstructor
+public class KbDataRepositoryImpl implements KbDataRepositoryCustom {
+    
+    private final MongoTemplate mongoTemplate;
+    
+    private static final int SHARD_BUCKET_BATCH = 1000;
+    
+    @Override
+    public List<KbData> findVectors(String kbId, Collection<String> excludedIds,
+                                    Map<String, List<String>> metadataFilters) {
+        Query query = new Query(criteria(kbId, excludedIds, metadataFilters));
+        query.fields().include("dataId", "vector");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findFiltered(String kbId, Collection<String> excludedIds,
+                                     Map<String, List<String>> metadataFilters, int limit) {
+        return mongoTemplate.find(new Query(criteria(kbId, excludedIds, metadataFilters)).limit(limit), KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findIndexTextPage(String kbId, String afterId, int limit) {
+        Query query = pageQuery(kbId, afterId, limit);
+        query.fields().include("dataId", "q", "a", "collectionMeta");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findIndexTexts(String kbId, Collection<String> dataIds) {
+        Query query = new Query(Criteria.where("kbId").is(kbId).and("dataId").in(dataIds));
+        query.fields().include("dataId", "q", "a", "collectionMeta");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findUpdateTimePage(String kbId, String afterId, int limit) {
+        Query query = pageQuery(kbId, afterId, limit);
+        query.fields().include("dataId", "updateTime");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findMetadata(String kbId, int shards, int shard) {
+        Query query = new Query(shardCriteria(kbId, shards, shard));
+        query.fields().include("dataId", "collectionMeta");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findVectorPage(String kbId, int shards, int shard, String afterId, int limit) {
+        Query query = vectorPageQuery(kbId, shards, shard, afterId, limit);
+        query.fields().include("dataId", "vector");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findVectorIdPage(String kbId, int shards, int shard, String afterId, int limit) {
+        Query query = vectorPageQuery(kbId, shards, shard, afterId, limit);
+        query.fields().include("dataId");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public List<KbData> findTextPage(String kbId, String afterId, int limit) {
+        Query query = pageQuery(kbId, afterId, limit);
+        query.fields().include("dataId", "q", "collectionMeta");
+        return mongoTemplate.find(query, KbData.class);
+    }
+    
+    @Override
+    public long updateVectors(List<KbData> items, String vectorModel) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, KbData.class);
+        for (KbData item : items) {
+            bulk.updateOne(new Query(Criteria.where("id").is(item.getId())), new Update()
+                    .set("vector", item.getVector())
+                    .set("vectorModel", vectorModel)
+                    .set("updateTime", now));
+        }
+        return bulk.execute().getModifiedCount();
+    }
+    
+    @Override
+    public long assignShardBuckets(String kbId) {
+        long updated = 0;
+        while (true) {
+            Query query = new Query(Criteria.where("kbId").is(kbId).and("shardBucket").exists(false))
+                    .limit(SHARD_BUCKET_BATCH);
+            query.fields().include("dataId");
+            List<KbData> items = mongoTemplate.find(query, KbData.class);
+            if (items.isEmpty()) {
+                return updated;
+            }
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, KbData.class);
+            for (KbData item : items) {
+                bulk.updateOne(new Query(Criteria.where("id").is(item.getId())),
+                        Update.update("shardBucket", VectorShards.bucket(item.getDataId())));
+            }
+            updated += bulk.execute().getModifiedCount();
+        }
+    }
+    
+    private static Query pageQuery(String kbId, String afterId, int limit) {
+        Criteria criteria = Criteria.where("kbId").is(kbId);
+        if (afterId != null) {
+            criteria.and("id").gt(afterId);
+        }
+        return new Query(criteria).with(Sort.by("id")).limit(limit);
+    }
+    
+    // The $mod condition runs on the kb_id_shard_bucket index
+    private static Query vectorPageQuery(String kbId, int shards, int shard, String afterId, int limit) {
+        // $ne null also skips items without the field
+        Criteria criteria = shardCriteria(kbId, shards, shard).and("vector").ne(null);
+        if (afterId != null) {
+            criteria.and("id").gt(afterId);
+        }
+        return new Query(criteria).with(Sort.by("id")).limit(limit);
+    }
+    
+    private static Criteria shardCriteria(String kbId, int shards, int shard) {
+        Criteria criteria = Criteria.where("kbId").is(kbId);
+        return shards > 1 ? criteria.and("shardBucket").mod(shards, shard) : criteria;
+    }
+    
+    private static Criteria criteria(String kbId, Collection<String> excludedIds,
+                                     Map<String, List<String>> metadataFilters) {
+        Criteria criteria = Criteria.where("kbId").is(kbId);
+        if (excludedIds != null && !excludedIds.isEmpty()) {
+            criteria.and("dataId").nin(excludedIds);
+        }
+        if (metadataFilters != null) {
+            // A missing key never matches, as the values are compared with $in
+            metadataFilters.forEach((key, values) ->
+                    criteria.and("collectionMeta." + key).in(values != null ? values : List.of()));
+        }
+        return criteria;
+    }
+}
@@ -4,6 +4,7 @@ import com.fastgpt.ai.entity.KnowledgeBase;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,11 +13,15 @@ public interface KnowledgeBaseRepository extends MongoRepository<KnowledgeBase,
     
     Optional<KnowledgeBase> findByKbId(String kbId);
     
+    List<KnowledgeBase> findByKbIdIn(Collection<String> kbIds);
+    
     List<KnowledgeBase> findByUserId(String userId);
     
     List<KnowledgeBase> findByUserIdOrSharedIsTrue(String userId);
     
     List<KnowledgeBase> findByTeamId(String teamId);
     
+    List<KnowledgeBase> findByVectorShardsTargetIsNotNull();
+    
     void deleteByKbId(String kbId);
 } 
\ No newline at end of file
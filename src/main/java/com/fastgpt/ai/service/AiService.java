@@ -2,6 +2,7 @@ package com.fastgpt.ai.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * AI服务接口
@@ -76,4 +77,28 @@ public interface AiService {
      * @return 生成的文本响应
      */
     String generateSimpleResponse(String prompt, String model);
-} 
\ No newline at end of file
+    
+    /**
+     * 根据消息列表生成回复
+     *
+     * @param messages 对话消息（role/content）
+     * @param systemPrompt 系统提示
+     * @param modelConfig 模型配置（model、temperature、max_tokens）
+     * @return 生成的回复内容
+     */
+    String generateResponse(List<Map<String, String>> messages, String systemPrompt, Map<String, Object> modelConfig);
+    
+    /**
+     * 流式生成回复
+     * 每收到一段增量内容即回调一次，结束时以 isLast=true 回调一次空内容
+     *
+     * @param messages 对话消息（role/content）
+     * @param systemPrompt 系统提示
+     * @param modelConfig 模型配置（model、temperature、max_tokens）
+     * @param chunkConsumer 增量内容回调 (chunk, isLast)
+     * @return 用量统计（prompt_tokens、completion_tokens、total_tokens），模型未返回时为空
+     */
+    Map<String, Object> generateStreamingResponse(List<Map<String, String>> messages, String systemPrompt,
+                                                  Map<String, Object> modelConfig,
+                                                  BiConsumer<String, Boolean> chunkConsumer);
+}
@@ -0,0 +1,56 @@
+package com.fastgpt.ai.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed cache of embeddings
+ * Entries are keyed by model, output dimensions and a SHA-256 hash of the normalized text, so
+ * repeated queries, re-ingested chunks and workflow embedding nodes share one provider call.
+ * A bounded in-process tier sits in front of a shared Redis tier.
+ */
+public interface EmbeddingCacheService {
+
+    /**
+     * Look up an embedding
+     * @param model Embedding model
+     * @param dimensions Requested output dimensions, or 0 for the model's own size
+     * @param text Input text
+     * @return The cached embedding, or null on a miss
+     */
+    List<Float> get(String model, int dimensions, String text);
+
+    /**
+     * Store an embedding in both tiers
+     * @return The embedding as cache hits will return it, at the cache's precision; callers
+     *         should use it instead of the computed one
+     */
+    List<Float> put(String model, int dimensions, String text, List<Float> embedding);
+
+    /**
+     * Look up the embeddings of several texts, reading the Redis tier with one MGET
+     * @return One embedding per text, in order, with null for each miss
+     */
+    List<List<Float>> getAll(String model, int dimensions, List<String> texts);
+
+    /**
+     * Store the embeddings of several texts, writing the Redis tier in one pipeline
+     * @param embeddings One embedding per text, in order
+     * @return The embeddings as cache hits will return them
+     * @see #put(String, int, String, List)
+     */
+    List<List<Float>> putAll(String model, int dimensions, List<String> texts, List<List<Float>> embeddings);
+
+    /**
+     * Return a cached embedding, or compute and cache a new one
+     * @param generator Calls the provider on a miss
+     */
+    List<Float> getOrCompute(String model, int dimensions, String text, Supplier<List<Float>> generator);
+
+    /**
+     * Get cache statistics of this instance
+     * @return Hits per tier, misses, hit ratio, saved calls and tokens, and local tier size
+     */
+    Map<String, Object> getStats();
+}
@@ -99,6 +99,13 @@ public interface KnowledgeBaseService {
      */
     KbDataDTO addData(KbDataCreateRequest request);
     
+    /**
+     * Add many data items, embedding their questions in batches
+     * @param requests KB data creation requests, possibly for several knowledge bases
+     * @return The created KB data DTOs, in request order
+     */
+    List<KbDataDTO> addDataBatch(List<KbDataCreateRequest> requests);
+    
     /**
      * Get knowledge base data by ID
      * @param dataId Data ID
@@ -125,4 +132,12 @@ public interface KnowledgeBaseService {
      * @return List of similar KB data DTOs
      */
     List<KbDataDTO> search(VectorSearchRequest request);
+    
+    /**
+     * Re-embed all data of a knowledge base with its current vector model in the background
+     * Data is embedded and saved page by page, through the provider batch API when it is enabled
+     * @param kbId Knowledge base ID
+     * @return Number of data items queued
+     */
+    int reembedKnowledgeBase(String kbId);
 } 
\ No newline at end of file
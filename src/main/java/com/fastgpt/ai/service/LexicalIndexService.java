@@ -0,0 +1,56 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.util.VectorMatch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * BM25 keyword indexes of knowledge base texts
+ * One in-memory inverted index per knowledge base over the question and answer of each data
+ * item, analyzed into words and CJK bigrams, with bitmaps of its collection metadata. Indexes are
+ * loaded from their snapshots, or built from KbData, in the background on first use, and kept
+ * in sync with data writes.
+ */
+public interface LexicalIndexService {
+
+    /**
+     * Whether lexical and hybrid search are available
+     */
+    boolean isEnabled();
+
+    /**
+     * Rank the data of a knowledge base by BM25 against a query
+     * @param kbId Knowledge base ID
+     * @param query Query text
+     * @param limit Number of matches
+     * @param filter Accepts the data IDs that may be returned, or null for all
+     * @param metadataFilters Accepted collection metadata values per key, or null for all
+     * @return Matches ordered by descending BM25 score, or null when disabled or until the index is ready
+     */
+    List<VectorMatch> search(String kbId, String query, int limit, Predicate<String> filter,
+                             Map<String, List<String>> metadataFilters);
+
+    /**
+     * Index or re-index the text of a data item
+     * @param metadata Collection metadata of the item, or null
+     */
+    void add(String kbId, String dataId, String q, String a, Map<String, String> metadata);
+
+    /**
+     * Remove a data item
+     */
+    void remove(String kbId, String dataId);
+
+    /**
+     * Drop the index of a knowledge base and its snapshot; the next search rebuilds it
+     */
+    void drop(String kbId);
+
+    /**
+     * Get index statistics
+     * @return Documents and terms per loaded knowledge base
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,41 @@
+package com.fastgpt.ai.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs provider calls through the OpenAI batch API
+ * Requests are collected per URL and model into JSONL batch files, submitted, polled and
+ * mapped back to their callers. Results may take up to the completion window, in exchange
+ * for lower cost and no pressure on the synchronous rate limits.
+ */
+public interface LlmBatchService {
+
+    /**
+     * Whether the batch API mode is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Queue a request for the next batch file
+     * @param url Provider path, such as /v1/chat/completions or /v1/embeddings
+     * @param model Model of the request; a batch file holds one model only
+     * @param body JSON request body
+     * @return Completes with the response body, or exceptionally if the request or batch failed
+     */
+    CompletableFuture<JsonNode> submit(String url, String model, String body);
+
+    /**
+     * Wait for a queued request, giving up when the caller's cancellation token is cancelled
+     * The request itself stays in its batch
+     */
+    <T> T await(CompletableFuture<T> result);
+
+    /**
+     * Get batch statistics
+     * @return Queued requests, batches in flight and finished batches
+     */
+    Map<String, Object> getStats();
+}
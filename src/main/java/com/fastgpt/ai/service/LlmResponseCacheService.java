@@ -0,0 +1,42 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.dto.LlmCacheRequest;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier response cache for LLM calls
+ * The exact tier keys on a hash of app, model, parameters and messages; the semantic tier
+ * returns the answer of a previous question whose embedding is close enough, within the
+ * same app and context hash
+ */
+public interface LlmResponseCacheService {
+    
+    /**
+     * Return a cached answer, or generate and cache a new one
+     * @param request The call description
+     * @param generator Generates the answer on a cache miss
+     * @return The cached or generated answer
+     */
+    String getOrGenerate(LlmCacheRequest request, Supplier<String> generator);
+    
+    /**
+     * Hash a piece of context for use as {@link LlmCacheRequest#getContextHash()}
+     * @param parts The context parts
+     * @return A stable hex hash
+     */
+    String hash(Object... parts);
+    
+    /**
+     * Remove all cached answers of an app
+     * @param appId Application ID
+     */
+    void evictApp(String appId);
+    
+    /**
+     * Get cache statistics of this instance
+     * @return Hits per tier, misses, hit ratio and saved tokens
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,45 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.dto.LlmEndpoint;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Routes calls across OpenAI-compatible endpoints
+ * Endpoints are picked by live latency, error rate and in-flight count; calls fail over
+ * on 5xx, 429 and connection errors, and can be hedged when the first attempt is slow
+ */
+public interface LlmRouterService {
+    
+    /**
+     * Operation names, tracked separately for latency
+     */
+    String OPERATION_CHAT = "chat";
+    String OPERATION_CHAT_STREAM = "chat-stream";
+    String OPERATION_EMBEDDING = "embedding";
+    String OPERATION_AUDIO = "audio";
+    String OPERATION_BATCH = "batch";
+    
+    /**
+     * Execute a call on the best endpoint, failing over to the next one on retryable errors
+     * @param operation Operation name
+     * @param hedgeable Whether a second, hedged attempt may be sent; only for idempotent calls
+     *                  whose duplicate cost is acceptable
+     * @param call The call, made against the given endpoint
+     * @return The result of the first successful attempt
+     */
+    <T> T execute(String operation, boolean hedgeable, Function<LlmEndpoint, T> call);
+    
+    /**
+     * Get the configured endpoints
+     */
+    List<LlmEndpoint> getEndpoints();
+    
+    /**
+     * Get live routing statistics per endpoint
+     * @return Latency, error rate, in-flight count and availability per endpoint
+     */
+    List<Map<String, Object>> getEndpointStats();
+}
@@ -0,0 +1,32 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.util.RequestPriority;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Client-side limiter for provider calls, per API key and model
+ * Caps in-flight requests with an AIMD limit and spends requests-per-minute and
+ * tokens-per-minute budgets; calls over the limit wait in a priority queue
+ */
+public interface ProviderRateLimiter {
+    
+    /**
+     * Run a provider call once a permit is available
+     * @param apiKey API key the call is made with
+     * @param model Model name
+     * @param estimatedTokens Estimated tokens the call spends (prompt plus completion budget)
+     * @param priority Queue priority of the call
+     * @param call The provider call
+     * @return The call result
+     * @throws com.fastgpt.ai.exception.RateLimitExceededException if no permit was granted within the queue timeout
+     */
+    <T> T execute(String apiKey, String model, int estimatedTokens, RequestPriority priority, Supplier<T> call);
+    
+    /**
+     * Get the live limit, in-flight count, queue length and remaining budgets per key and model
+     */
+    List<Map<String, Object>> getStats();
+}
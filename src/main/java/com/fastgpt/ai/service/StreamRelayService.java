@@ -0,0 +1,81 @@
+package com.fastgpt.ai.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Service for relaying stream events between application instances
+ * Events are published to a per-session Redis stream, and every instance that holds
+ * an emitter for the session relays them to its local clients
+ */
+public interface StreamRelayService {
+
+    /**
+     * Record the owner of a new session stream, before any event is published
+     * @param sessionId Session or execution ID, generated by the server
+     * @param ownerId ID of the user allowed to watch the session
+     */
+    void open(String sessionId, String ownerId);
+
+    /**
+     * Get the owner of a session stream
+     * @param sessionId Session or execution ID
+     * @return The owner ID, or null if the session is unknown, was not opened with an owner,
+     *         or has expired
+     */
+    String getOwner(String sessionId);
+
+    /**
+     * Publish an event to a session stream
+     * @param sessionId Session or execution ID
+     * @param eventName Event name
+     * @param data Event data, serialized as JSON
+     * @return The ID of the published event, usable as SSE Last-Event-ID
+     */
+    String publish(String sessionId, String eventName, Object data);
+
+    /**
+     * Mark a session stream as finished
+     * All attached emitters on all instances are completed once they have received the remaining events
+     * @param sessionId Session or execution ID
+     */
+    void complete(String sessionId);
+
+    /**
+     * Attach a local emitter to a session stream
+     * @param sessionId Session or execution ID
+     * @param emitter The local SSE emitter
+     * @param lastEventId The last event the client has seen, null to start from new events,
+     *                    "0" to replay the stream from its beginning
+     * @return A runnable that detaches the emitter
+     */
+    Runnable attach(String sessionId, SseEmitter emitter, String lastEventId);
+
+    /**
+     * Get the number of emitters attached to a session stream on all instances
+     * @param sessionId Session or execution ID
+     * @return The number of attached emitters
+     */
+    int getWatcherCount(String sessionId);
+
+    /**
+     * Ask the instance running a session to cancel it
+     * The request reaches every instance; the one with a cancel handler for the session runs it
+     * @param sessionId Session or execution ID
+     */
+    void requestCancel(String sessionId);
+
+    /**
+     * Register the handler run on this instance when a cancel is requested for a session
+     * @param sessionId Session or execution ID
+     * @param handler Cancels the session; runs on a listener thread
+     * @return A runnable that unregisters the handler
+     */
+    Runnable onCancelRequested(String sessionId, Runnable handler);
+
+    /**
+     * Check if a session stream exists and has not finished
+     * @param sessionId Session or execution ID
+     * @return true if the stream is active on any instance
+     */
+    boolean isActive(String sessionId);
+}
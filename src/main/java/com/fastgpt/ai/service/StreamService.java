@@ -82,8 +82,20 @@ public interface StreamService {
     /**
      * Stream a workflow execution
      * @param workflowId Workflow ID
+     * @param userId ID of the user starting the execution, who may watch it later
      * @param inputs Input variables
      * @return An SseEmitter for the stream
      */
-    SseEmitter streamWorkflowExecution(String workflowId, Map<String, Object> inputs);
+    SseEmitter streamWorkflowExecution(String workflowId, String userId, Map<String, Object> inputs);
+    
+    /**
+     * Watch a workflow execution, e.g. to reconnect after the connection dropped
+     * The execution may be running on any application instance
+     * @param executionId Execution ID, sent to the client in the start event
+     * @param userId ID of the user watching, who must own the execution
+     * @param lastEventId Last event ID seen by the client, null to replay from the beginning
+     * @return An SseEmitter relaying the execution events, or null if the execution is unknown
+     *         or owned by another user
+     */
+    SseEmitter watchExecution(String executionId, String userId, String lastEventId);
 } 
\ No newline at end of file
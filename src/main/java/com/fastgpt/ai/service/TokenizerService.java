@@ -0,0 +1,50 @@
+package com.fastgpt.ai.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared tokenizer for prompt budgeting, chunking and usage accounting
+ * Counts match the BPE vocabulary of OpenAI chat models (cl100k_base or o200k_base)
+ */
+public interface TokenizerService {
+
+    /**
+     * Count the tokens of a text
+     * @param text The text, may be null
+     * @return Token count
+     */
+    int countTokens(String text);
+
+    /**
+     * Count the prompt tokens of chat messages, including the per-message overhead
+     * @param messages Messages with role and content
+     * @return Token count
+     */
+    int countMessageTokens(List<Map<String, String>> messages);
+
+    /**
+     * Encode a text into token ids
+     */
+    int[] encode(String text);
+
+    /**
+     * Decode token ids into text
+     */
+    String decode(int[] tokens);
+
+    /**
+     * Split a text into chunks of at most the given number of tokens
+     * Chunks are cut on character boundaries, so they decode cleanly
+     * @param text The text
+     * @param chunkTokens Maximum tokens per chunk
+     * @param overlapTokens Tokens repeated at the start of the next chunk
+     * @return The chunks in order
+     */
+    List<String> splitByTokens(String text, int chunkTokens, int overlapTokens);
+
+    /**
+     * Whether counts come from the BPE vocabulary rather than an estimate
+     */
+    boolean isExact();
+}
@@ -58,4 +58,29 @@ public interface UsageTrackingService {
         String nodeType,
         long executionTimeMs
     );
-} 
\ No newline at end of file
+    
+    /**
+     * 跟踪LLM响应缓存命中情况
+     * @param appId 应用ID
+     * @param teamId 团队ID
+     * @param userId 用户ID
+     * @param model 模型名称
+     * @param tier 命中的缓存层（exact/semantic），未命中为null
+     * @param savedTokens 命中节省的token数
+     */
+    void trackCacheLookup(
+        String appId,
+        String teamId,
+        String userId,
+        String model,
+        String tier,
+        int savedTokens
+    );
+    
+    /**
+     * 获取应用的缓存使用统计
+     * @param appId 应用ID
+     * @return 命中次数、未命中次数、命中率和节省的token数
+     */
+    Map<String, Object> getCacheUsage(String appId);
+}
@@ -0,0 +1,30 @@
+package com.fastgpt.ai.service;
+
+import java.util.Map;
+
+/**
+ * Migration of stored KB data vectors to the packed binary encoding
+ * Documents written before the switch hold BSON arrays of doubles; they stay readable and are
+ * rewritten in the background, one knowledge base at a time.
+ */
+public interface VectorEncodingService {
+
+    /**
+     * Queue the migration of a knowledge base
+     * @return false if vector.encoding.format keeps the legacy array encoding
+     */
+    boolean migrate(String kbId);
+
+    /**
+     * Queue the migration of every knowledge base
+     * @return Number of knowledge bases queued
+     */
+    int migrateAll();
+
+    /**
+     * Get migration statistics
+     * @return Format, and per migrated knowledge base the rewritten documents with their vector
+     *         bytes before and after
+     */
+    Map<String, Object> getStats();
+}
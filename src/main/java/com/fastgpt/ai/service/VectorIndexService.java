@@ -0,0 +1,54 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.util.VectorMatch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Approximate nearest-neighbour indexes of knowledge base vectors
+ * One HNSW index per knowledge base over the ordinals of its vector store, built in the
+ * background on first use, kept in sync with data writes and snapshotted to disk so restarts
+ * only index the vectors appended since. Requires the vector stores to be enabled.
+ */
+public interface VectorIndexService {
+
+    /**
+     * Whether vector search goes through the indexes
+     */
+    boolean isEnabled();
+
+    /**
+     * Find the data closest to a query vector
+     * @param kb Knowledge base, whose HNSW parameters apply
+     * @param queryVector Query embedding
+     * @param limit Number of matches
+     * @param filter Accepts the data IDs that may be returned, or null for all
+     * @return Matches ordered by descending cosine similarity, or null if the knowledge base
+     *         has no usable index yet, so the caller falls back to a scan of its store
+     */
+    List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, Predicate<String> filter);
+
+    /**
+     * Index the vector of a data item after it was written to the vector store
+     */
+    void add(String kbId, String dataId, List<Float> vector);
+
+    /**
+     * Remove a data item after it was removed from the vector store
+     */
+    void remove(String kbId, String dataId);
+
+    /**
+     * Drop the index of a knowledge base and its snapshot; the next search rebuilds it
+     */
+    void drop(String kbId);
+
+    /**
+     * Get index statistics
+     * @return Size, watermark and parameters per loaded knowledge base
+     */
+    Map<String, Object> getStats();
+}
@@ -1,11 +1,12 @@
 package com.fastgpt.ai.service;
 
 import com.fastgpt.ai.dto.SearchDataResponseItemDTO;
-import com.fastgpt.ai.dto.VectorSearchRequestDTO;
 import com.fastgpt.ai.dto.KbDataDTO;
+import com.fastgpt.ai.dto.request.VectorSearchRequest;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service for vector operations and embedding
@@ -20,12 +21,39 @@ public interface VectorService {
      */
     List<Float> generateEmbedding(String text, String model);
     
+    /**
+     * Generate embeddings for several texts
+     * Cached texts are served from the embedding cache and the rest are sent in provider-sized
+     * batches, concurrently within the provider rate limits
+     * @param texts The texts to embed
+     * @param model Optional embedding model name
+     * @return One embedding per text, in input order
+     */
+    List<List<Float>> generateEmbeddings(List<String> texts, String model);
+    
+    /**
+     * Queue a text for embedding without blocking the caller
+     * Uses the provider batch API when it is enabled, otherwise embeds on the common pool
+     * @param text The text to embed
+     * @param model Optional embedding model name
+     * @return Completes with the embedding vector
+     */
+    CompletableFuture<List<Float>> submitEmbedding(String text, String model);
+    
     /**
      * Search for similar vectors in the database
      * @param request Vector search request
      * @return List of search results
      */
-    List<KbDataDTO> search(VectorSearchRequestDTO request);
+    List<KbDataDTO> search(VectorSearchRequest request);
+    
+    /**
+     * Search a knowledge base with several queries, embedding them in one batched call
+     * @param request Search settings; its query and query vector are replaced by each query
+     * @param queries The query texts
+     * @return The results of each query, in query order
+     */
+    List<List<KbDataDTO>> searchQueries(VectorSearchRequest request, List<String> queries);
     
     /**
      * Count tokens in a text
@@ -0,0 +1,90 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.dto.VectorShardMatchDTO;
+import com.fastgpt.ai.dto.request.VectorShardSearchRequest;
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.util.VectorMatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vector search of knowledge bases split into shards across application instances
+ * Instances register in Redis with a heartbeat; each shard of a sharded knowledge base is
+ * assigned to a few live instances by rendezvous hashing and the assignment is kept in Redis.
+ * A search fans out to one owner per shard, in parallel, and merges the per-shard top matches;
+ * an owner that fails is replaced by the next one, and shards without an answering owner or
+ * missing the deadline are left out of a partial result. Data writes are broadcast on a Redis
+ * stream so that every instance updates the shards it has loaded.
+ */
+public interface VectorShardService {
+
+    /**
+     * Header carrying the secret of the instances on internal shard searches
+     */
+    String SECRET_HEADER = "X-Shard-Secret";
+
+    /**
+     * Whether a knowledge base is searched by scatter-gather over its shards
+     */
+    boolean isSharded(KnowledgeBase kb);
+
+    /**
+     * Search every shard of a knowledge base and merge the results
+     * @param queryVector Query embedding
+     * @param limit Number of matches
+     * @param minScore Minimum cosine similarity
+     * @param excludedIds Data IDs that may not be returned, or null
+     * @param metadataFilters Accepted values per metadata key, or null for all
+     * @return Matches ordered by descending cosine similarity, possibly missing shards that
+     *         failed or timed out, or null if the knowledge base is not sharded
+     */
+    List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, double minScore,
+                             Collection<String> excludedIds, Map<String, List<String>> metadataFilters);
+
+    /**
+     * Search one shard on this instance, for a coordinating instance
+     * @param callerSecret Secret sent by the coordinating instance, or null
+     * @throws com.fastgpt.ai.exception.ForbiddenException if the secret does not match
+     */
+    List<VectorShardMatchDTO> searchLocal(String kbId, int shard, String callerSecret, VectorShardSearchRequest request);
+
+    /**
+     * Broadcast data writes of a sharded knowledge base to the instances holding its shards
+     * @param upsertedIds Data IDs added or re-embedded, already saved
+     * @param deletedIds Data IDs deleted
+     */
+    void publish(String kbId, Collection<String> upsertedIds, Collection<String> deletedIds);
+
+    /**
+     * Move a knowledge base to another shard count in the background
+     * Items stored before the knowledge base was sharded are given a shard bucket first, and
+     * only then does the knowledge base switch to the new count, so no shard store misses them;
+     * searches use the previous count meanwhile. A count of 1 stops sharding.
+     */
+    void reshard(String kbId, int shards);
+
+    /**
+     * Assign the shards of a knowledge base to the live instances, replacing any assignment
+     * @return Owners per shard, preferred first
+     */
+    Map<Integer, List<String>> assign(String kbId);
+
+    /**
+     * Get the current assignment of a knowledge base
+     * @return Owners per shard, or an empty map if it has none
+     */
+    Map<Integer, List<String>> getAssignment(String kbId);
+
+    /**
+     * Delete the assignment of a knowledge base and its shard stores on every instance
+     */
+    void drop(String kbId);
+
+    /**
+     * Get shard statistics
+     * @return This instance, the live instances, and search and fan-out counters
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,130 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.util.MappedVectorStore;
+import com.fastgpt.ai.util.QuantizedVectors;
+import com.fastgpt.ai.util.VectorMatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Off-heap storage of knowledge base vectors
+ * Each knowledge base keeps its embeddings as contiguous float32 in memory-mapped segment
+ * files, built from KbData on first use and kept in sync with data writes. Exact searches
+ * scan the segments instead of loading KbData documents. Knowledge bases with vector
+ * quantization also keep compressed codes on the heap, which are scanned first, or walked by
+ * the HNSW index; only the best candidates are re-scored against the full-precision vectors.
+ * Metadata filters are resolved on roaring bitmaps of vector ordinals per metadata value, so a
+ * selective filter scores only the vectors it matches. A sharded knowledge base also has one
+ * store per shard, loaded only on the instances that search that shard.
+ */
+public interface VectorStoreService {
+
+    /**
+     * Whether exact vector search and index builds read from the stores
+     */
+    boolean isEnabled();
+
+    /**
+     * Get the quantized codes of a knowledge base's store, training them in the background when
+     * they are missing or of other settings
+     * @param store The store, as acquired by {@link #acquireStore}
+     * @return The codes, or null if the knowledge base is not quantized or its codes are not ready
+     */
+    QuantizedVectors getQuantized(KnowledgeBase kb, MappedVectorStore store);
+
+    /**
+     * Score every vector of a knowledge base against a query
+     * A quantized knowledge base is scanned on its codes and the best limit times
+     * vector.quantization.rerank-factor candidates are re-ranked exactly; until its codes are
+     * trained, every vector is scored exactly as by {@link #searchExact}.
+     * @param kb Knowledge base, whose quantization settings apply
+     * @param queryVector Query embedding
+     * @param limit Number of matches
+     * @param minScore Minimum cosine similarity
+     * @param filter Accepts the data IDs that may be returned, or null for all
+     * @param metadataFilters Accepted values per metadata key, or null for all
+     * @return Matches ordered by descending cosine similarity, or null if the knowledge base
+     *         has no store of the query's dimensions
+     */
+    List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, double minScore,
+                             Predicate<String> filter, Map<String, List<String>> metadataFilters);
+
+    /**
+     * Search one shard of a sharded knowledge base, as {@link #search} searches a whole one
+     * The shard's store holds only the vectors whose data IDs hash to it and is built from
+     * KbData on the first search, on whichever instance owns the shard.
+     * @param shard Shard number, below the knowledge base's vectorShards
+     * @return Matches ordered by descending cosine similarity, empty if the shard has no vectors,
+     *         or null if its store has other dimensions than the query
+     */
+    List<VectorMatch> searchShard(KnowledgeBase kb, int shard, List<Float> queryVector, int limit,
+                                  double minScore, Predicate<String> filter,
+                                  Map<String, List<String>> metadataFilters);
+
+    /**
+     * Score every full-precision vector of a knowledge base against a query
+     * Partitions of the store are scored in parallel into bounded heaps, which makes this the
+     * ground truth for the index and the quantized codes.
+     * @param kbId Knowledge base ID
+     * @param queryVector Query embedding
+     * @param limit Number of matches
+     * @param minScore Minimum cosine similarity
+     * @param filter Accepts the data IDs that may be returned, or null for all
+     * @param metadataFilters Accepted values per metadata key, or null for all
+     * @return Matches ordered by descending cosine similarity, or null if the knowledge base
+     *         has no store of the query's dimensions
+     */
+    List<VectorMatch> searchExact(String kbId, List<Float> queryVector, int limit, double minScore,
+                                  Predicate<String> filter, Map<String, List<String>> metadataFilters);
+
+    /**
+     * Get the store of a knowledge base, opening or building it on first use
+     * The store is replaced when it is compacted, which renumbers its ordinals. The caller holds
+     * a reference and must {@link MappedVectorStore#release()} it; a replaced store is deleted
+     * only once every reference is released.
+     * @return The store, or null if the knowledge base has no vectors or stores are disabled
+     */
+    MappedVectorStore acquireStore(String kbId);
+
+    /**
+     * Append or replace the vector of a data item
+     * @param metadata Collection metadata of the item, indexed for metadata filters
+     */
+    void add(String kbId, String dataId, List<Float> vector, Map<String, String> metadata);
+
+    /**
+     * Tombstone a data item
+     */
+    void remove(String kbId, String dataId);
+
+    /**
+     * Apply writes to the shard stores of a knowledge base loaded on this instance
+     * Each item goes to the shard its data ID hashes to; the vectors are read from KbData only
+     * if a shard of the knowledge base is loaded here.
+     * @param upsertedIds Data IDs added or re-embedded
+     * @param deletedIds Data IDs deleted
+     */
+    void updateShards(String kbId, Collection<String> upsertedIds, Collection<String> deletedIds);
+
+    /**
+     * Close the shard stores loaded on this instance, keeping their files; the next search
+     * reopens them and reconciles them with KbData
+     */
+    void unloadShards();
+
+    /**
+     * Delete the store and shard stores of a knowledge base; the next search rebuilds them
+     */
+    void drop(String kbId);
+
+    /**
+     * Get store statistics
+     * @return Live and deleted vectors, off-heap bytes, quantized code bytes and metadata bitmap
+     *         bytes per loaded knowledge base
+     */
+    Map<String, Object> getStats();
+}
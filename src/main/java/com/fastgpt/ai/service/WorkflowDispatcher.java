@@ -2,6 +2,7 @@ package com.fastgpt.ai.service;
 
 import com.fastgpt.ai.dto.WorkflowDebugResponse;
 import com.fastgpt.ai.dto.workflow.WorkflowDTO;
+import com.fastgpt.ai.util.CancellationToken;
 
 import java.util.Map;
 import java.util.function.BiConsumer;
@@ -32,6 +33,29 @@ public interface WorkflowDispatcher {
         BiConsumer<String, Boolean> streamConsumer
     );
     
+    /**
+     * 调度执行工作流，支持取消
+     * 令牌取消后不再执行剩余节点，进行中的外部调用会被中断
+     * 
+     * @param workflow 要执行的工作流
+     * @param inputs 输入参数
+     * @param userId 用户ID
+     * @param teamId 团队ID
+     * @param appId 应用ID
+     * @param streamConsumer 流式输出消费者(chunk, isLast)
+     * @param cancellationToken 取消令牌
+     * @return 工作流执行结果
+     */
+    Map<String, Object> dispatchWorkflow(
+        WorkflowDTO workflow,
+        Map<String, Object> inputs,
+        String userId,
+        String teamId,
+        String appId,
+        BiConsumer<String, Boolean> streamConsumer,
+        CancellationToken cancellationToken
+    );
+    
     /**
      * 调试工作流执行
      * 
@@ -13,10 +13,17 @@ import java.util.function.Consumer;
  */
 public interface WorkflowStreamService {
     
+    /**
+     * Create a new execution ID owned by a user, before the execution is started
+     * @param userId ID of the user starting the execution
+     * @return The execution ID, to be passed in the inputs as "executionId"
+     */
+    String createExecution(String userId);
+    
     /**
      * Execute a workflow with SSE streaming
      * @param workflowId Workflow ID
-     * @param inputs Input map
+     * @param inputs Input map, with the "executionId" from {@link #createExecution(String)}
      * @param emitter SSE emitter for streaming responses
      * @return CompletableFuture that completes when workflow is done
      */
@@ -49,6 +56,17 @@ public interface WorkflowStreamService {
      */
     CompletableFuture<Void> startHeartbeat(SseEmitter emitter);
     
+    /**
+     * Watch a running workflow execution, e.g. to reconnect from another tab or device
+     * The execution may be running on any application instance
+     * @param executionId Execution ID
+     * @param userId ID of the user watching, who must own the execution
+     * @param lastEventId Last event ID seen by the client, null to replay from the beginning
+     * @return SSE emitter relaying the execution events, or null if the execution is unknown
+     *         or owned by another user
+     */
+    SseEmitter watchExecution(String executionId, String userId, String lastEventId);
+    
     /**
      * Cancel streaming for a workflow execution
      * @param executionId Execution ID
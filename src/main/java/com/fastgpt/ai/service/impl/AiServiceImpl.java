@@ -1,6 +1,7 @@
 package com.fastgpt.ai.service.impl;
 
 import com.fastgpt.ai.service.AiService;
+import com.fastgpt.ai.util.CancellationToken;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -10,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.BiConsumer;
 
 /**
  * AI服务接口实现
@@ -167,6 +169,56 @@ public class AiServiceImpl implements AiService {
         return simulateAiResponse(prompt);
     }
     
+    @Override
+    public String generateResponse(List<Map<String, String>> messages, String systemPrompt, Map<String, Object> modelConfig) {
+        log.info("Generating AI response for {} messages", messages.size());
+        
+        return simulateAiResponse(lastUserContent(messages));
+    }
+    
+    /**
+     * 模拟流式响应，仅供测试
+     * 按词切分模拟回复并逐段回调，行为与真实流式接口一致
+     */
+    @Override
+    public Map<String, Object> generateStreamingResponse(List<Map<String, String>> messages, String systemPrompt,
+                                                         Map<String, Object> modelConfig,
+                                                         BiConsumer<String, Boolean> chunkConsumer) {
+        log.info("Streaming AI response for {} messages", messages.size());
+        
+        String prompt = lastUserContent(messages);
+        String response = simulateAiResponse(prompt);
+        
+        // 保留分隔空白，拼接后与完整回复一致
+        int completionTokens = 0;
+        for (String chunk : response.split("(?<=\\s)")) {
+            CancellationToken.current().throwIfCancelled();
+            chunkConsumer.accept(chunk, false);
+            completionTokens++;
+        }
+        chunkConsumer.accept("", true);
+        
+        int promptTokens = (prompt.length() + (systemPrompt != null ? systemPrompt.length() : 0)) / 4;
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+    
+    /**
+     * 取最后一条用户消息作为提示词
+     */
+    private String lastUserContent(List<Map<String, String>> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Map<String, String> message = messages.get(i);
+            if ("user".equals(message.get("role")) && message.get("content") != null) {
+                return message.get("content");
+            }
+        }
+        return "";
+    }
+    
     /**
      * 模拟AI响应，仅供测试
      */
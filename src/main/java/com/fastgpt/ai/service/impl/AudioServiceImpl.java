@@ -2,9 +2,9 @@ package com.fastgpt.ai.service.impl;
 
 import com.fastgpt.ai.dto.AudioTranscriptionResponse;
 import com.fastgpt.ai.service.AudioService;
+import com.fastgpt.ai.service.LlmRouterService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -29,13 +29,8 @@ import java.util.Map;
 public class AudioServiceImpl implements AudioService {
 
     private final RestTemplate restTemplate;
+    private final LlmRouterService llmRouterService;
 
-    @Value("${spring.ai.openai.api-key}")
-    private String openaiApiKey;
-    
-    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
-    private String openaiBaseUrl;
-    
     private static final String DEFAULT_STT_MODEL = "whisper-1";
     private static final String[] AVAILABLE_STT_MODELS = {
         "whisper-1"
@@ -57,11 +52,6 @@ public class AudioServiceImpl implements AudioService {
         }
         
         try {
-            // Create headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            headers.setBearerAuth(openaiApiKey);
-            
             // Create request body
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
             
@@ -81,16 +71,19 @@ public class AudioServiceImpl implements AudioService {
             body.add("language", "en"); // Can be made configurable
             body.add("response_format", "json");
             
-            // Create request entity
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-            
-            // Send request to OpenAI API
-            String endpoint = openaiBaseUrl + "/v1/audio/transcriptions";
-            ResponseEntity<Map> responseEntity = restTemplate.postForEntity(
-                endpoint,
-                requestEntity,
-                Map.class
-            );
+            // Send request to the best available OpenAI-compatible endpoint
+            ResponseEntity<Map> responseEntity = llmRouterService.execute(LlmRouterService.OPERATION_AUDIO, false, endpoint -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+                headers.setBearerAuth(endpoint.getApiKey());
+                
+                HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
+                return restTemplate.postForEntity(
+                    endpoint.getBaseUrl() + "/v1/audio/transcriptions",
+                    requestEntity,
+                    Map.class
+                );
+            });
             
             // Process response
             Map<String, Object> responseMap = responseEntity.getBody();
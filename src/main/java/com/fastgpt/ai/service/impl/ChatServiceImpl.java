@@ -19,6 +19,7 @@ import com.fastgpt.ai.service.ChatConfigService;
 import com.fastgpt.ai.service.ChatService;
 import com.fastgpt.ai.service.RagService;
 import com.fastgpt.ai.service.WorkflowService;
+import com.fastgpt.ai.util.RequestPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -282,7 +283,8 @@ public class ChatServiceImpl implements ChatService {
         
         // 执行工作流
         Map<String, Object> workflowResult;
-        try {
+        // 对话触发的工作流按交互式优先级调用模型
+        try (RequestPriority.Scope priorityScope = RequestPriority.INTERACTIVE.bind()) {
             workflowResult = workflowService.executeWorkflow(app.getWorkflowId(), workflowInputs);
             log.debug("Workflow {} execution completed in {}ms", 
                     app.getWorkflowId(), (System.currentTimeMillis() - startTime));
@@ -0,0 +1,333 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.service.EmbeddingCacheService;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.util.VectorEncoding;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Two-tier embedding cache
+ * Vectors are kept as little-endian float16 or float32 bytes behind a one-byte format tag, in
+ * an LRU map bounded by bytes and in Redis as Base64 strings. Instances with different
+ * precision settings can share the Redis tier. Misses return the embedding decoded from its
+ * cache entry, so a text gets the same vector whether it was just computed or found cached.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingCacheServiceImpl implements EmbeddingCacheService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TokenizerService tokenizerService;
+
+    private static final String KEY_PREFIX = "embedding:cache:";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    // float16 halves the memory of the local tier at about 5e-4 relative error per component
+    @Value("${embedding.cache.precision:float32}")
+    private String precision;
+
+    @Value("${embedding.cache.local.max-bytes:268435456}")
+    private long localMaxBytes;
+
+    @Value("${embedding.cache.redis.enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${embedding.cache.redis.ttl-seconds:604800}")
+    private long redisTtlSeconds;
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, byte[]> localEntries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long localBytes;
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+
+    @Override
+    public List<Float> get(String model, int dimensions, String text) {
+        if (!cacheEnabled || text == null) {
+            return null;
+        }
+        String key = key(model, dimensions, text);
+
+        byte[] encoded;
+        synchronized (localEntries) {
+            encoded = localEntries.get(key);
+        }
+        if (encoded != null) {
+            recordHit(localHits, text);
+            return decode(encoded);
+        }
+
+        encoded = readRedis(key);
+        if (encoded != null) {
+            putLocal(key, encoded);
+            recordHit(redisHits, text);
+            return decode(encoded);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public List<Float> put(String model, int dimensions, String text, List<Float> embedding) {
+        if (!cacheEnabled || text == null || embedding == null || embedding.isEmpty()) {
+            return embedding;
+        }
+        String key = key(model, dimensions, text);
+        byte[] encoded = encode(embedding);
+        putLocal(key, encoded);
+        writeRedis(key, encoded);
+        return decode(encoded);
+    }
+
+    @Override
+    public List<List<Float>> getAll(String model, int dimensions, List<String> texts) {
+        List<List<Float>> embeddings = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        if (!cacheEnabled) {
+            return embeddings;
+        }
+
+        String[] keys = new String[texts.size()];
+        List<Integer> remote = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (text == null) {
+                continue;
+            }
+            keys[i] = key(model, dimensions, text);
+            byte[] encoded;
+            synchronized (localEntries) {
+                encoded = localEntries.get(keys[i]);
+            }
+            if (encoded != null) {
+                recordHit(localHits, text);
+                embeddings.set(i, decode(encoded));
+            } else {
+                remote.add(i);
+            }
+        }
+
+        List<byte[]> values = readRedis(remote.stream().map(i -> keys[i]).toList());
+        for (int j = 0; j < remote.size(); j++) {
+            int i = remote.get(j);
+            byte[] encoded = values.get(j);
+            if (encoded != null) {
+                putLocal(keys[i], encoded);
+                recordHit(redisHits, texts.get(i));
+                embeddings.set(i, decode(encoded));
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+        return embeddings;
+    }
+
+    @Override
+    public List<List<Float>> putAll(String model, int dimensions, List<String> texts, List<List<Float>> embeddings) {
+        List<List<Float>> stored = new ArrayList<>(embeddings);
+        if (!cacheEnabled) {
+            return stored;
+        }
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            List<Float> embedding = embeddings.get(i);
+            if (text == null || embedding == null || embedding.isEmpty()) {
+                continue;
+            }
+            String key = key(model, dimensions, text);
+            byte[] encoded = encode(embedding);
+            putLocal(key, encoded);
+            entries.put(key, encoded);
+            stored.set(i, decode(encoded));
+        }
+        writeRedis(entries);
+        return stored;
+    }
+
+    @Override
+    public List<Float> getOrCompute(String model, int dimensions, String text, Supplier<List<Float>> generator) {
+        List<Float> cached = get(model, dimensions, text);
+        if (cached != null) {
+            return cached;
+        }
+        return put(model, dimensions, text, generator.get());
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        long local = localHits.get();
+        long redis = redisHits.get();
+        long missed = misses.get();
+        long lookups = local + redis + missed;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cacheEnabled);
+        stats.put("precision", precision);
+        stats.put("localHits", local);
+        stats.put("redisHits", redis);
+        stats.put("misses", missed);
+        stats.put("hitRatio", lookups > 0 ? (double) (local + redis) / lookups : 0.0);
+        stats.put("savedCalls", local + redis);
+        stats.put("savedTokens", savedTokens.get());
+        synchronized (localEntries) {
+            stats.put("localEntries", localEntries.size());
+            stats.put("localBytes", localBytes);
+        }
+        stats.put("localMaxBytes", localMaxBytes);
+        return stats;
+    }
+
+    /**
+     * Build the cache key of a text
+     * Unicode normalization and whitespace collapsing let chunks that differ only in layout share an entry.
+     */
+    private static String key(String model, int dimensions, String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return model + ":" + dimensions + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash embedding cache key", e);
+        }
+    }
+
+    private void putLocal(String key, byte[] encoded) {
+        long size = entrySize(key, encoded);
+        if (size > localMaxBytes) {
+            return;
+        }
+        synchronized (localEntries) {
+            byte[] previous = localEntries.put(key, encoded);
+            if (previous != null) {
+                localBytes -= entrySize(key, previous);
+            }
+            localBytes += size;
+            var eldest = localEntries.entrySet().iterator();
+            while (localBytes > localMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, byte[]> entry = eldest.next();
+                localBytes -= entrySize(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    // Key characters and vector bytes, ignoring the fixed per-entry overhead
+    private static long entrySize(String key, byte[] encoded) {
+        return 2L * key.length() + encoded.length;
+    }
+
+    private byte[] readRedis(String key) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            String value = stringRedisTemplate.opsForValue().get(KEY_PREFIX + key);
+            return value != null ? Base64.getDecoder().decode(value) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read embedding cache entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read several entries with one MGET
+     * @return One value per key, null where missing; all null if Redis fails
+     */
+    private List<byte[]> readRedis(List<String> keys) {
+        List<byte[]> values = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        if (!redisEnabled || keys.isEmpty()) {
+            return values;
+        }
+        try {
+            List<String> encoded = stringRedisTemplate.opsForValue()
+                    .multiGet(keys.stream().map(key -> KEY_PREFIX + key).toList());
+            for (int i = 0; encoded != null && i < encoded.size(); i++) {
+                if (encoded.get(i) != null) {
+                    values.set(i, Base64.getDecoder().decode(encoded.get(i)));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read embedding cache entries: {}", e.getMessage());
+        }
+        return values;
+    }
+
+    /**
+     * Write several entries with their TTL in one pipeline
+     */
+    private void writeRedis(Map<String, byte[]> entries) {
+        if (!redisEnabled || entries.isEmpty()) {
+            return;
+        }
+        try {
+            Expiration ttl = Expiration.seconds(redisTtlSeconds);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                entries.forEach((key, encoded) -> redis.set(KEY_PREFIX + key,
+                        Base64.getEncoder().encodeToString(encoded), ttl, SetOption.upsert()));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to store embedding cache entries: {}", e.getMessage());
+        }
+    }
+
+    private void writeRedis(String key, byte[] encoded) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(KEY_PREFIX + key, Base64.getEncoder().encodeToString(encoded),
+                    Duration.ofSeconds(redisTtlSeconds));
+        } catch (Exception e) {
+            log.warn("Failed to store embedding cache entry: {}", e.getMessage());
+        }
+    }
+
+    private void recordHit(AtomicLong tier, String text) {
+        tier.incrementAndGet();
+        savedTokens.addAndGet(tokenizerService.countTokens(text));
+    }
+
+    private byte[] encode(List<Float> embedding) {
+        return VectorEncoding.encode(embedding, "float16".equalsIgnoreCase(precision));
+    }
+
+    // Shared between callers, so it must not be mutated; decoded vectors are read-only
+    private static List<Float> decode(byte[] encoded) {
+        return VectorEncoding.decode(encoded);
+    }
+}
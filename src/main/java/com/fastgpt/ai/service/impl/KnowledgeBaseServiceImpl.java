@@ -13,9 +13,18 @@ import com.fastgpt.ai.mapper.KnowledgeBaseMapper;
 import com.fastgpt.ai.repository.KbDataRepository;
 import com.fastgpt.ai.repository.KnowledgeBaseRepository;
 import com.fastgpt.ai.service.KnowledgeBaseService;
+import com.fastgpt.ai.service.LexicalIndexService;
+import com.fastgpt.ai.service.VectorIndexService;
 import com.fastgpt.ai.service.VectorService;
+import com.fastgpt.ai.service.VectorShardService;
+import com.fastgpt.ai.service.VectorStoreService;
+import com.fastgpt.ai.util.RequestPriority;
+import com.fastgpt.ai.util.VectorShards;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ai.document.Document;
@@ -24,11 +33,16 @@ import org.springframework.ai.vectorstore.VectorStore;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of the knowledge base service
@@ -43,8 +57,37 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     private final KnowledgeBaseMapper knowledgeBaseMapper;
     private final KbDataMapper kbDataMapper;
     private final VectorService vectorService;
+    private final VectorIndexService vectorIndexService;
+    private final VectorStoreService vectorStoreService;
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorShardService vectorShardService;
     private final Optional<VectorStore> vectorStore;
     private final Optional<EmbeddingClient> embeddingClient;
+    
+    // Items read, embedded and written per page of a re-embedding job
+    @Value("${kb.reembed.page-size:500}")
+    private int reembedPageSize;
+    
+    // Re-embedding jobs run at once; further jobs wait in the queue
+    @Value("${kb.reembed.concurrency:2}")
+    private int reembedConcurrency;
+    
+    private ExecutorService reembedExecutor;
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        reembedExecutor = Executors.newFixedThreadPool(reembedConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "kb-reembed-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        reembedExecutor.shutdownNow();
+    }
 
     @Override
     @Transactional
@@ -129,10 +172,48 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
             knowledgeBase.setModelInfo(update.getModelInfo());
         }
         
+        // Graph parameters only apply to a rebuilt index; ef-search applies to the next query
+        boolean rebuildIndex = false;
+        if (update.getHnswM() != null && !update.getHnswM().equals(knowledgeBase.getHnswM())) {
+            knowledgeBase.setHnswM(update.getHnswM());
+            rebuildIndex = true;
+        }
+        
+        if (update.getHnswEfConstruction() != null
+                && !update.getHnswEfConstruction().equals(knowledgeBase.getHnswEfConstruction())) {
+            knowledgeBase.setHnswEfConstruction(update.getHnswEfConstruction());
+            rebuildIndex = true;
+        }
+        
+        if (update.getHnswEfSearch() != null) {
+            knowledgeBase.setHnswEfSearch(update.getHnswEfSearch());
+        }
+        
+        // The store retrains codes for new quantization settings on its next search
+        if (update.getVectorQuantization() != null) {
+            knowledgeBase.setVectorQuantization(update.getVectorQuantization());
+        }
+        
+        if (update.getPqSubspaces() != null) {
+            knowledgeBase.setPqSubspaces(update.getPqSubspaces());
+        }
+        
         // Update timestamp
         knowledgeBase.setUpdateTime(LocalDateTime.now());
         
         KnowledgeBase updatedKnowledgeBase = knowledgeBaseRepository.save(knowledgeBase);
+        if (rebuildIndex) {
+            vectorIndexService.drop(kbId);
+        }
+        
+        // The shard count changes once the vectors have been moved in the background
+        if (update.getVectorShards() != null) {
+            int current = knowledgeBase.getVectorShards() != null ? knowledgeBase.getVectorShards() : 1;
+            if (update.getVectorShards() != current || knowledgeBase.getVectorShardsTarget() != null) {
+                vectorShardService.reshard(kbId, update.getVectorShards());
+                updatedKnowledgeBase = knowledgeBaseRepository.findByKbId(kbId).orElse(updatedKnowledgeBase);
+            }
+        }
         
         return knowledgeBaseMapper.toDTO(updatedKnowledgeBase);
     }
@@ -146,6 +227,10 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         
         // Delete all KB data first
         kbDataRepository.deleteByKbId(kbId);
+        vectorStoreService.drop(kbId);
+        vectorIndexService.drop(kbId);
+        lexicalIndexService.drop(kbId);
+        vectorShardService.drop(kbId);
         
         // Then delete the KB itself
         knowledgeBaseRepository.deleteByKbId(kbId);
@@ -154,55 +239,111 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     @Override
     @Transactional
     public KbDataDTO addData(KbDataCreateRequest request) {
-        // Verify knowledge base exists
-        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(request.getKbId())
-                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", request.getKbId()));
-        
-        KbData kbData = kbDataMapper.toEntity(request);
+        return addDataBatch(List.of(request)).get(0);
+    }
+
+    @Override
+    @Transactional
+    public List<KbDataDTO> addDataBatch(List<KbDataCreateRequest> requests) {
+        // Group by knowledge base, keeping the position of each request
+        Map<String, List<Integer>> positionsByKb = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positionsByKb.computeIfAbsent(requests.get(i).getKbId(), kbId -> new ArrayList<>()).add(i);
+        }
         
-        // Generate a unique dataId
-        kbData.setDataId(UUID.randomUUID().toString());
+        KbDataDTO[] results = new KbDataDTO[requests.size()];
+        positionsByKb.forEach((kbId, positions) -> {
+            List<KbDataCreateRequest> kbRequests = positions.stream().map(requests::get).toList();
+            List<KbData> saved = addKbData(kbId, kbRequests);
+            for (int i = 0; i < positions.size(); i++) {
+                results[positions.get(i)] = kbDataMapper.toDTO(saved.get(i));
+            }
+        });
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Create the data items of one knowledge base
+     * Missing vectors are generated with one batched embedding call per vector model.
+     */
+    private List<KbData> addKbData(String kbId, List<KbDataCreateRequest> requests) {
+        // Verify knowledge base exists
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
         
-        // Set timestamps
         LocalDateTime now = LocalDateTime.now();
-        kbData.setCreateTime(now);
-        kbData.setUpdateTime(now);
-        
-        // Count tokens if not provided
-        if (kbData.getQTokens() == null) {
-            kbData.setQTokens(vectorService.countTokens(kbData.getQ()));
-        }
-        
-        if (kbData.getATokens() == null && kbData.getA() != null) {
-            kbData.setATokens(vectorService.countTokens(kbData.getA()));
+        List<KbData> items = new ArrayList<>(requests.size());
+        Map<String, List<KbData>> unembedded = new LinkedHashMap<>();
+        for (KbDataCreateRequest request : requests) {
+            KbData kbData = kbDataMapper.toEntity(request);
+            
+            // Generate a unique dataId
+            kbData.setDataId(UUID.randomUUID().toString());
+            kbData.setShardBucket(VectorShards.bucket(kbData.getDataId()));
+            
+            // Set timestamps
+            kbData.setCreateTime(now);
+            kbData.setUpdateTime(now);
+            
+            // Count tokens if not provided
+            if (kbData.getQTokens() == null) {
+                kbData.setQTokens(vectorService.countTokens(kbData.getQ()));
+            }
+            
+            if (kbData.getATokens() == null && kbData.getA() != null) {
+                kbData.setATokens(vectorService.countTokens(kbData.getA()));
+            }
+            
+            // Collect items that need a vector, by model
+            if (kbData.getVector() == null || kbData.getVector().isEmpty()) {
+                String vectorModel = request.getVectorModel();
+                if (vectorModel == null || vectorModel.isEmpty()) {
+                    vectorModel = kb.getVectorModel();
+                }
+                kbData.setVectorModel(vectorModel);
+                unembedded.computeIfAbsent(vectorModel, model -> new ArrayList<>()).add(kbData);
+            }
+            
+            // If no collection ID provided, use the KB's collection ID
+            if (kbData.getCollectionId() == null || kbData.getCollectionId().isEmpty()) {
+                kbData.setCollectionId(kb.getCollectionId());
+            }
+            items.add(kbData);
         }
         
-        // Generate vector if not provided
-        if (kbData.getVector() == null || kbData.getVector().isEmpty()) {
-            String vectorModel = request.getVectorModel();
-            if (vectorModel == null || vectorModel.isEmpty()) {
-                vectorModel = kb.getVectorModel();
+        unembedded.forEach((vectorModel, pending) -> {
+            List<List<Float>> vectors = vectorService.generateEmbeddings(
+                    pending.stream().map(KbData::getQ).toList(), vectorModel);
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).setVector(vectors.get(i));
+            }
+        });
+        
+        List<KbData> savedItems = kbDataRepository.saveAll(items);
+        // Sharded vectors are not kept whole here; the instances holding the shards read them from KbData
+        boolean sharded = vectorShardService.isSharded(kb);
+        for (KbData saved : savedItems) {
+            if (!sharded) {
+                vectorStoreService.add(saved.getKbId(), saved.getDataId(), saved.getVector(), saved.getCollectionMeta());
+                vectorIndexService.add(saved.getKbId(), saved.getDataId(), saved.getVector());
             }
-            kbData.setVector(vectorService.generateEmbedding(kbData.getQ(), vectorModel));
-            kbData.setVectorModel(vectorModel);
+            lexicalIndexService.add(saved.getKbId(), saved.getDataId(), saved.getQ(), saved.getA(),
+                    saved.getCollectionMeta());
         }
-        
-        // If no collection ID provided, use the KB's collection ID
-        if (kbData.getCollectionId() == null || kbData.getCollectionId().isEmpty()) {
-            kbData.setCollectionId(kb.getCollectionId());
+        if (sharded) {
+            vectorShardService.publish(kbId, savedItems.stream().map(KbData::getDataId).toList(), List.of());
         }
         
-        KbData savedKbData = kbDataRepository.save(kbData);
-        
         // Update KB data count
-        kb.setKbDataCount(kb.getKbDataCount() + 1);
-        if (kbData.getFileId() != null && !kbData.getFileId().isEmpty()) {
-            kb.setFileCount(kb.getFileCount() + 1);
-        }
+        kb.setKbDataCount(kb.getKbDataCount() + savedItems.size());
+        long files = savedItems.stream()
+                .filter(saved -> saved.getFileId() != null && !saved.getFileId().isEmpty())
+                .count();
+        kb.setFileCount(kb.getFileCount() + (int) files);
         kb.setUpdateTime(now);
         knowledgeBaseRepository.save(kb);
         
-        return kbDataMapper.toDTO(savedKbData);
+        return savedItems;
     }
 
     @Override
@@ -231,13 +372,20 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         String kbId = kbData.getKbId();
         String fileId = kbData.getFileId();
         
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
+        
         // Delete the data
         kbDataRepository.deleteByDataId(dataId);
+        if (vectorShardService.isSharded(kb)) {
+            vectorShardService.publish(kbId, List.of(), List.of(dataId));
+        } else {
+            vectorStoreService.remove(kbId, dataId);
+            vectorIndexService.remove(kbId, dataId);
+        }
+        lexicalIndexService.remove(kbId, dataId);
         
         // Update KB counts
-        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
-                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
-        
         kb.setKbDataCount(kb.getKbDataCount() - 1);
         if (fileId != null && !fileId.isEmpty()) {
             kb.setFileCount(kb.getFileCount() - 1);
@@ -251,6 +399,74 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         return vectorService.search(request);
     }
 
+    @Override
+    public int reembedKnowledgeBase(String kbId) {
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
+        long count = kbDataRepository.countByKbId(kbId);
+        reembedExecutor.execute(() -> reembed(kb));
+        log.info("Queued {} items of knowledge base {} for re-embedding with {}", count, kbId, kb.getVectorModel());
+        return (int) count;
+    }
+    
+    /**
+     * Re-embed a knowledge base page by page
+     * Each page is embedded in batched calls, written back in one bulk update and published to the
+     * vector indexes together, so only one page of texts and vectors is held at a time.
+     */
+    private void reembed(KnowledgeBase kb) {
+        String kbId = kb.getKbId();
+        String vectorModel = kb.getVectorModel();
+        boolean sharded = vectorShardService.isSharded(kb);
+        long start = System.currentTimeMillis();
+        long embedded = 0;
+        long failed = 0;
+        
+        // Offline priority sends the embeddings through the provider batch API when it is enabled
+        RequestPriority.Scope priorityScope = RequestPriority.OFFLINE.bind();
+        try (priorityScope) {
+            String lastId = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<KbData> page = kbDataRepository.findTextPage(kbId, lastId, reembedPageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+                
+                List<KbData> items = page.stream()
+                        .filter(item -> item.getQ() != null && !item.getQ().isEmpty())
+                        .toList();
+                List<List<Float>> vectors;
+                try {
+                    vectors = vectorService.generateEmbeddings(
+                            items.stream().map(KbData::getQ).toList(), vectorModel);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to re-embed {} items of knowledge base {}: {}", items.size(), kbId, e.getMessage());
+                    failed += items.size();
+                    continue;
+                }
+                for (int i = 0; i < items.size(); i++) {
+                    items.get(i).setVector(vectors.get(i));
+                }
+                kbDataRepository.updateVectors(items, vectorModel);
+                
+                if (sharded) {
+                    vectorShardService.publish(kbId, items.stream().map(KbData::getDataId).toList(), List.of());
+                } else {
+                    for (KbData item : items) {
+                        vectorStoreService.add(kbId, item.getDataId(), item.getVector(), item.getCollectionMeta());
+                        vectorIndexService.add(kbId, item.getDataId(), item.getVector());
+                    }
+                }
+                embedded += items.size();
+            }
+            log.info("Re-embedded {} items of knowledge base {} with {} in {}ms ({} failed)",
+                    embedded, kbId, vectorModel, System.currentTimeMillis() - start, failed);
+        } catch (RuntimeException e) {
+            log.error("Re-embedding of knowledge base {} stopped after {} items", kbId, embedded, e);
+        }
+    }
+    
     @Override
     public List<Document> searchDocuments(Map<String, Object> params) {
         log.info("Searching documents with params: {}", params);
@@ -0,0 +1,386 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.entity.KbData;
+import com.fastgpt.ai.repository.KbDataRepository;
+import com.fastgpt.ai.service.LexicalIndexService;
+import com.fastgpt.ai.util.Bm25Index;
+import com.fastgpt.ai.util.TextAnalyzer;
+import com.fastgpt.ai.util.VectorMatch;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LexicalIndexServiceImpl implements LexicalIndexService {
+
+    // Items updated this long before a snapshot was taken are re-indexed when it is loaded, as their
+    // write may have reached the index only after the snapshot, or happened on another instance
+    private static final long SNAPSHOT_SKEW_MS = 60_000;
+
+    private final KbDataRepository kbDataRepository;
+
+    @Value("${lexical.index.enabled:true}")
+    private boolean indexEnabled;
+
+    // Directory of the index snapshots, one file per knowledge base
+    @Value("${lexical.index.dir:data/lexical-index}")
+    private String indexDir;
+
+    @Value("${lexical.index.snapshot-interval-ms:300000}")
+    private long snapshotIntervalMs;
+
+    // Indexes built at once; searches of the others fall back to Mongo meanwhile
+    @Value("${lexical.index.build-threads:2}")
+    private int buildThreads;
+
+    // Data items read from Mongo per query when building or reconciling an index
+    @Value("${lexical.index.load-page-size:1000}")
+    private int loadPageSize;
+
+    private final Map<String, IndexHolder> indexes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+    private ExecutorService buildExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!indexEnabled) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lexical-index-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotAll, snapshotIntervalMs, snapshotIntervalMs,
+                TimeUnit.MILLISECONDS);
+        AtomicInteger threadCount = new AtomicInteger();
+        buildExecutor = Executors.newFixedThreadPool(buildThreads, runnable -> {
+            Thread thread = new Thread(runnable, "lexical-index-build-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            buildExecutor.shutdownNow();
+            snapshotAll();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return indexEnabled;
+    }
+
+    @Override
+    public List<VectorMatch> search(String kbId, String query, int limit, Predicate<String> filter,
+                                    Map<String, List<String>> metadataFilters) {
+        if (!indexEnabled) {
+            return null;
+        }
+        Bm25Index index = holder(kbId).ready();
+        if (index == null) {
+            return null;
+        }
+        List<String> tokens = TextAnalyzer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        return index.search(tokens, limit, filter, metadataFilters);
+    }
+
+    @Override
+    public void add(String kbId, String dataId, String q, String a, Map<String, String> metadata) {
+        // Indexes not loaded yet read the item from KbData
+        IndexHolder holder = indexEnabled ? indexes.get(kbId) : null;
+        if (holder != null) {
+            holder.add(dataId, tokens(q, a), metadata);
+        }
+    }
+
+    @Override
+    public void remove(String kbId, String dataId) {
+        IndexHolder holder = indexEnabled ? indexes.get(kbId) : null;
+        if (holder != null) {
+            holder.remove(dataId);
+        }
+    }
+
+    @Override
+    public void drop(String kbId) {
+        indexes.remove(kbId);
+        try {
+            Files.deleteIfExists(snapshotPath(kbId));
+        } catch (IOException e) {
+            log.warn("Failed to delete lexical index snapshot of knowledge base {}: {}", kbId, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        indexes.forEach((kbId, holder) -> {
+            Bm25Index index = holder.index;
+            if (index != null) {
+                stats.put(kbId, Map.of(
+                        "size", index.size(),
+                        "terms", index.termCount()));
+            } else if (holder.building) {
+                stats.put(kbId, Map.of("building", true));
+            }
+        });
+        return stats;
+    }
+
+    private IndexHolder holder(String kbId) {
+        return indexes.computeIfAbsent(kbId, IndexHolder::new);
+    }
+
+    /**
+     * Write the changed indexes to disk
+     */
+    private void snapshotAll() {
+        indexes.forEach((kbId, holder) -> {
+            Bm25Index index = holder.index;
+            if (index == null || !holder.dirty) {
+                return;
+            }
+            try {
+                holder.dirty = false;
+                Files.createDirectories(Paths.get(indexDir));
+                index.save(snapshotPath(kbId));
+                log.debug("Saved lexical index of knowledge base {} with {} documents", kbId, index.size());
+            } catch (IOException e) {
+                holder.dirty = true;
+                log.warn("Failed to save lexical index of knowledge base {}: {}", kbId, e.getMessage());
+            }
+        });
+    }
+
+    private Path snapshotPath(String kbId) {
+        return Paths.get(indexDir, kbId + ".bm25");
+    }
+
+    private static List<String> tokens(String q, String a) {
+        List<String> tokens = TextAnalyzer.tokenize(q);
+        tokens.addAll(TextAnalyzer.tokenize(a));
+        return tokens;
+    }
+
+    /**
+     * Index of one knowledge base
+     * The index is loaded from its snapshot and reconciled with KbData, or built from KbData page by
+     * page, in the background; searches get null until it is installed. Writes before the first
+     * search are skipped, as the build reads them from KbData. Writes during the build also go to
+     * the index being built and are remembered, so that pages read before them do not undo them.
+     */
+    private class IndexHolder {
+        private final String kbId;
+        private volatile Bm25Index index;
+        private volatile boolean building;
+        private volatile boolean dirty;
+        // The index being built and the data IDs written since its build started, guarded by this
+        private Bm25Index pending;
+        private final Set<String> written = new HashSet<>();
+
+        IndexHolder(String kbId) {
+            this.kbId = kbId;
+        }
+
+        /**
+         * Get the index, starting a build when there is none
+         * @return The index, or null until it is built
+         */
+        Bm25Index ready() {
+            Bm25Index current = index;
+            if (current != null) {
+                return current;
+            }
+            synchronized (this) {
+                if (index == null && !building) {
+                    building = true;
+                    try {
+                        buildExecutor.execute(this::build);
+                    } catch (RejectedExecutionException e) {
+                        building = false;
+                    }
+                }
+                return index;
+            }
+        }
+
+        synchronized void add(String dataId, List<String> tokens, Map<String, String> metadata) {
+            if (index != null) {
+                index.add(dataId, tokens, metadata);
+                dirty = true;
+            }
+            if (pending != null) {
+                pending.add(dataId, tokens, metadata);
+                written.add(dataId);
+            }
+        }
+
+        synchronized void remove(String dataId) {
+            if (index != null && index.remove(dataId)) {
+                dirty = true;
+            }
+            if (pending != null) {
+                pending.remove(dataId);
+                written.add(dataId);
+            }
+        }
+
+        private void build() {
+            try {
+                long start = System.currentTimeMillis();
+                Bm25Index loaded = load();
+                Bm25Index built = loaded != null ? loaded : new Bm25Index();
+                synchronized (this) {
+                    pending = built;
+                }
+                int indexed = loaded != null ? reconcile(built) : fill(built);
+                synchronized (this) {
+                    if (indexes.get(kbId) != this) {
+                        return;
+                    }
+                    index = built;
+                    dirty = dirty || loaded == null || indexed > 0;
+                }
+                log.info("{} lexical index of knowledge base {} with {} documents and {} terms in {}ms ({} updated)",
+                        loaded != null ? "Loaded" : "Built", kbId, built.size(), built.termCount(),
+                        System.currentTimeMillis() - start, indexed);
+            } catch (RuntimeException e) {
+                log.warn("Failed to build lexical index of knowledge base {}: {}", kbId, e.getMessage());
+            } finally {
+                synchronized (this) {
+                    pending = null;
+                    written.clear();
+                }
+                building = false;
+            }
+        }
+
+        /**
+         * Index every item of the knowledge base, page by page
+         * @return Number of items read
+         */
+        private int fill(Bm25Index built) {
+            int read = 0;
+            String lastId = null;
+            while (indexes.get(kbId) == this) {
+                List<KbData> page = kbDataRepository.findIndexTextPage(kbId, lastId, loadPageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                indexPage(built, page);
+                read += page.size();
+                lastId = page.get(page.size() - 1).getId();
+            }
+            return read;
+        }
+
+        /**
+         * Bring a snapshot up to date with KbData by ID
+         * Items missing from the snapshot or updated around or after it are re-read and indexed;
+         * indexed items no longer in KbData are removed.
+         * @return Number of items indexed or removed
+         */
+        private int reconcile(Bm25Index loaded) {
+            long since = loaded.getSavedAt() - SNAPSHOT_SKEW_MS;
+            Set<String> unseen = loaded.ids();
+            List<String> stale = new ArrayList<>();
+            int updated = 0;
+            String lastId = null;
+            while (indexes.get(kbId) == this) {
+                List<KbData> page = kbDataRepository.findUpdateTimePage(kbId, lastId, loadPageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (KbData data : page) {
+                    boolean indexed = unseen.remove(data.getDataId());
+                    if (!indexed || (data.getUpdateTime() != null
+                            && data.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() >= since)) {
+                        stale.add(data.getDataId());
+                    }
+                }
+                if (stale.size() >= loadPageSize) {
+                    updated += indexPage(loaded, kbDataRepository.findIndexTexts(kbId, stale));
+                    stale.clear();
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            if (!stale.isEmpty()) {
+                updated += indexPage(loaded, kbDataRepository.findIndexTexts(kbId, stale));
+            }
+            synchronized (this) {
+                for (String dataId : unseen) {
+                    if (!written.contains(dataId) && loaded.remove(dataId)) {
+                        updated++;
+                    }
+                }
+            }
+            return updated;
+        }
+
+        // Tokenizes outside the lock; items written since the build started are newer than the page
+        private int indexPage(Bm25Index built, List<KbData> page) {
+            List<List<String>> analyzed = new ArrayList<>(page.size());
+            for (KbData data : page) {
+                analyzed.add(tokens(data.getQ(), data.getA()));
+            }
+            synchronized (this) {
+                for (int i = 0; i < page.size(); i++) {
+                    KbData data = page.get(i);
+                    if (!written.contains(data.getDataId())) {
+                        built.add(data.getDataId(), analyzed.get(i), data.getCollectionMeta());
+                    }
+                }
+            }
+            return page.size();
+        }
+
+        /**
+         * @return The snapshot index, or null if there is none
+         */
+        private Bm25Index load() {
+            Path snapshot = snapshotPath(kbId);
+            if (!Files.exists(snapshot)) {
+                return null;
+            }
+            try {
+                return Bm25Index.load(snapshot);
+            } catch (IOException | RuntimeException e) {
+                log.info("Discarding lexical index snapshot of knowledge base {}: {}", kbId, e.getMessage());
+                return null;
+            }
+        }
+    }
+}
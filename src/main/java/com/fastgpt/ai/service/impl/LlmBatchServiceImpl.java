@@ -0,0 +1,430 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fastgpt.ai.dto.LlmEndpoint;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import com.fastgpt.ai.service.LlmBatchService;
+import com.fastgpt.ai.service.LlmRouterService;
+import com.fastgpt.ai.util.CancellationToken;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batch API implementation
+ * Queued requests are flushed into a batch file when a queue reaches llm.batch.max-requests
+ * or llm.batch.max-bytes, or has waited llm.batch.flush-interval-ms. Files are uploaded on
+ * their own threads, so a slow upload never delays polling; submitted batches are polled every
+ * llm.batch.poll-interval-ms. Batches are tracked in memory, so callers waiting on a
+ * restarted instance are not resumed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LlmBatchServiceImpl implements LlmBatchService {
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final LlmRouterService llmRouterService;
+
+    @Value("${llm.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    // Provider limit is 50000 requests per batch file
+    @Value("${llm.batch.max-requests:50000}")
+    private int maxRequests;
+
+    // Provider limit is 200 MB per batch file; kept lower since files are buffered in memory
+    @Value("${llm.batch.max-bytes:52428800}")
+    private long maxBytes;
+
+    @Value("${llm.batch.upload-threads:2}")
+    private int uploadThreads;
+
+    @Value("${llm.batch.flush-interval-ms:60000}")
+    private long flushIntervalMs;
+
+    @Value("${llm.batch.poll-interval-ms:30000}")
+    private long pollIntervalMs;
+
+    @Value("${llm.batch.completion-window:24h}")
+    private String completionWindow;
+
+    private static final String STATUS_COMPLETED = "completed";
+    private static final List<String> FAILED_STATUSES = List.of("failed", "expired", "cancelled");
+
+    // Requests waiting for a batch file, keyed by URL and model
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+    // Submitted batches keyed by batch ID
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService uploadExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!batchEnabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "llm-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        uploadExecutor = Executors.newFixedThreadPool(uploadThreads, runnable -> {
+            Thread thread = new Thread(runnable, "llm-batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushCheckMs = Math.max(1000, flushIntervalMs / 4);
+        scheduler.scheduleWithFixedDelay(this::flushDue, flushCheckMs, flushCheckMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::pollJobs, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("LLM batch mode enabled, flushing every {}ms and polling every {}ms", flushIntervalMs, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return batchEnabled;
+    }
+
+    @Override
+    public CompletableFuture<JsonNode> submit(String url, String model, String body) {
+        if (!batchEnabled) {
+            throw new IllegalStateException("LLM batch mode is disabled");
+        }
+
+        String customId = UUID.randomUUID().toString();
+        CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        byte[] line = ("{\"custom_id\":\"" + customId + "\",\"method\":\"POST\",\"url\":\"" + url
+                + "\",\"body\":" + body + "}\n").getBytes(StandardCharsets.UTF_8);
+
+        List<PendingBatch> full = new ArrayList<>(2);
+        synchronized (pending) {
+            String key = url + "\n" + model;
+            PendingBatch batch = pending.get(key);
+            // Start a new file rather than push this one over the size limit
+            if (batch != null && batch.bytes() + line.length > maxBytes) {
+                full.add(pending.remove(key));
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new PendingBatch(url, model);
+                pending.put(key, batch);
+            }
+            batch.add(customId, line, result);
+            if (batch.size() >= maxRequests || batch.bytes() >= maxBytes) {
+                full.add(pending.remove(key));
+            }
+        }
+        full.forEach(this::submitAsync);
+        return result;
+    }
+
+    @Override
+    public <T> T await(CompletableFuture<T> result) {
+        CancellationToken token = CancellationToken.current();
+        CompletableFuture<T> waiter = result.thenApply(value -> value);
+        Runnable unregister = token.onCancel(() -> waiter.cancel(false));
+
+        try {
+            return waiter.join();
+        } catch (CancellationException e) {
+            throw new ExecutionCancelledException(token.getReason(), e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            unregister.run();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        int queued = 0;
+        synchronized (pending) {
+            for (PendingBatch batch : pending.values()) {
+                queued += batch.size();
+            }
+        }
+        int inFlight = 0;
+        for (BatchJob job : jobs.values()) {
+            inFlight += job.results.size();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", batchEnabled);
+        stats.put("queuedRequests", queued);
+        stats.put("batchesInFlight", jobs.size());
+        stats.put("requestsInFlight", inFlight);
+        stats.put("completedBatches", completedBatches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("failedRequests", failedRequests.get());
+        return stats;
+    }
+
+    /**
+     * Submit the queues that have waited for a full flush interval
+     */
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        List<PendingBatch> due = new ArrayList<>();
+        synchronized (pending) {
+            pending.values().removeIf(batch -> {
+                if (now - batch.createdAt >= flushIntervalMs) {
+                    due.add(batch);
+                    return true;
+                }
+                return false;
+            });
+        }
+        due.forEach(this::submitAsync);
+    }
+
+    private void submitAsync(PendingBatch batch) {
+        try {
+            uploadExecutor.execute(() -> submitBatch(batch));
+        } catch (RejectedExecutionException e) {
+            failedBatches.incrementAndGet();
+            failAll(batch.results, e);
+        }
+    }
+
+    /**
+     * Upload the batch file and create the batch on one endpoint
+     */
+    private void submitBatch(PendingBatch batch) {
+        try {
+            BatchJob job = llmRouterService.execute(LlmRouterService.OPERATION_BATCH, false, endpoint -> {
+                String fileId = uploadFile(endpoint, batch);
+
+                ObjectNode request = objectMapper.createObjectNode();
+                request.put("input_file_id", fileId);
+                request.put("endpoint", batch.url);
+                request.put("completion_window", completionWindow);
+                JsonNode created = restTemplate.postForObject(endpoint.getBaseUrl() + "/v1/batches",
+                        new HttpEntity<>(request.toString(), jsonHeaders(endpoint)), JsonNode.class);
+                if (created == null || !created.hasNonNull("id")) {
+                    throw new IllegalStateException("Batch creation returned no id");
+                }
+                return new BatchJob(created.get("id").asText(), endpoint, batch.results);
+            });
+            jobs.put(job.batchId, job);
+            log.info("Submitted batch {} with {} {} requests for model {}",
+                    job.batchId, batch.size(), batch.url, batch.model);
+        } catch (Exception e) {
+            log.error("Failed to submit batch of {} requests for model {}", batch.size(), batch.model, e);
+            failedBatches.incrementAndGet();
+            failAll(batch.results, e);
+        }
+    }
+
+    private String uploadFile(LlmEndpoint endpoint, PendingBatch batch) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        headers.setBearerAuth(endpoint.getApiKey());
+
+        ByteArrayResource file = new ByteArrayResource(batch.content.toByteArray()) {
+            @Override
+            public String getFilename() {
+                return "batch-" + batch.model + ".jsonl";
+            }
+        };
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("purpose", "batch");
+        body.add("file", file);
+
+        JsonNode uploaded = restTemplate.postForObject(endpoint.getBaseUrl() + "/v1/files",
+                new HttpEntity<>(body, headers), JsonNode.class);
+        if (uploaded == null || !uploaded.hasNonNull("id")) {
+            throw new IllegalStateException("Batch file upload returned no id");
+        }
+        return uploaded.get("id").asText();
+    }
+
+    /**
+     * Check every submitted batch and deliver the results of finished ones
+     */
+    private void pollJobs() {
+        for (BatchJob job : jobs.values()) {
+            try {
+                JsonNode status = restTemplate.exchange(
+                        job.endpoint.getBaseUrl() + "/v1/batches/" + job.batchId, HttpMethod.GET,
+                        new HttpEntity<>(jsonHeaders(job.endpoint)), JsonNode.class).getBody();
+                if (status == null) {
+                    continue;
+                }
+
+                String state = status.path("status").asText();
+                boolean failed = FAILED_STATUSES.contains(state);
+                if (!STATUS_COMPLETED.equals(state) && !failed) {
+                    continue;
+                }
+
+                // Expired and cancelled batches can still carry partial output
+                deliverFile(job, status.path("output_file_id").asText(null));
+                deliverFile(job, status.path("error_file_id").asText(null));
+                failAll(job.results, new IllegalStateException("Request missing from batch " + job.batchId
+                        + " with status " + state));
+
+                jobs.remove(job.batchId);
+                (failed ? failedBatches : completedBatches).incrementAndGet();
+                log.info("Batch {} finished with status {}", job.batchId, state);
+            } catch (Exception e) {
+                log.warn("Failed to poll batch {}: {}", job.batchId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stream a result file and complete the callers of its lines
+     */
+    private void deliverFile(BatchJob job, String fileId) {
+        if (fileId == null || fileId.isEmpty()) {
+            return;
+        }
+        restTemplate.execute(job.endpoint.getBaseUrl() + "/v1/files/" + fileId + "/content", HttpMethod.GET,
+                request -> request.getHeaders().setBearerAuth(job.endpoint.getApiKey()),
+                response -> {
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isBlank()) {
+                            deliverLine(job, objectMapper.readTree(line));
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private void deliverLine(BatchJob job, JsonNode line) {
+        CompletableFuture<JsonNode> result = job.results.remove(line.path("custom_id").asText());
+        if (result == null) {
+            return;
+        }
+
+        JsonNode response = line.path("response");
+        int statusCode = response.path("status_code").asInt(0);
+        if (statusCode == 200 && response.has("body")) {
+            result.complete(response.get("body"));
+            return;
+        }
+
+        failedRequests.incrementAndGet();
+        String message = line.path("error").path("message").asText(
+                response.path("body").path("error").path("message").asText("status " + statusCode));
+        result.completeExceptionally(new IllegalStateException("Batch request failed: " + message));
+    }
+
+    private void failAll(Map<String, CompletableFuture<JsonNode>> results, Exception cause) {
+        results.values().forEach(result -> {
+            if (result.completeExceptionally(cause)) {
+                failedRequests.incrementAndGet();
+            }
+        });
+        results.clear();
+    }
+
+    private static HttpHeaders jsonHeaders(LlmEndpoint endpoint) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(endpoint.getApiKey());
+        return headers;
+    }
+
+    /**
+     * Requests collected for one batch file
+     */
+    private static class PendingBatch {
+        private final String url;
+        private final String model;
+        private final long createdAt = System.currentTimeMillis();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private final Map<String, CompletableFuture<JsonNode>> results = new ConcurrentHashMap<>();
+
+        PendingBatch(String url, String model) {
+            this.url = url;
+            this.model = model;
+        }
+
+        void add(String customId, byte[] line, CompletableFuture<JsonNode> result) {
+            content.writeBytes(line);
+            results.put(customId, result);
+        }
+
+        int size() {
+            return results.size();
+        }
+
+        long bytes() {
+            return content.size();
+        }
+    }
+
+    /**
+     * A batch submitted to an endpoint, with the callers still waiting on it
+     */
+    private static class BatchJob {
+        private final String batchId;
+        private final LlmEndpoint endpoint;
+        private final Map<String, CompletableFuture<JsonNode>> results;
+
+        BatchJob(String batchId, LlmEndpoint endpoint, Map<String, CompletableFuture<JsonNode>> results) {
+            this.batchId = batchId;
+            this.endpoint = endpoint;
+            this.results = results;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.dto.LlmCacheRequest;
+import com.fastgpt.ai.entity.App;
+import com.fastgpt.ai.repository.AppRepository;
+import com.fastgpt.ai.service.LlmResponseCacheService;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.service.UsageTrackingService;
+import com.fastgpt.ai.service.VectorService;
+import com.fastgpt.ai.util.PackedVector;
+import com.fastgpt.ai.util.VectorEncoding;
+import com.fastgpt.ai.util.VectorMath;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Redis backed implementation of the LLM response cache
+ * Disabled by default; enable globally with llm.cache.enabled or per app with the
+ * "responseCache" entry of the app metadata:
+ * { enabled, ttlSeconds, semanticEnabled, semanticThreshold }
+ * Answers are stored under their exact key only. The semantic tier keeps, per app and context,
+ * a Redis hash of packed float32 question embeddings by entry hash; each instance holds a
+ * normalized in-memory copy that is re-read every llm.cache.semantic.refresh-ms, so a lookup
+ * scores locally and reads just the matched answer.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LlmResponseCacheServiceImpl implements LlmResponseCacheService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final VectorService vectorService;
+    private final AppRepository appRepository;
+    private final UsageTrackingService usageTrackingService;
+    private final TokenizerService tokenizerService;
+
+    // Keys for Redis
+    private static final String EXACT_KEY_PREFIX = "llm:cache:exact:";
+    private static final String SEMANTIC_KEY_PREFIX = "llm:cache:semantic:";
+    // Set of the semantic keys of an app, for eviction without KEYS
+    private static final String SEMANTIC_KEYS_PREFIX = "llm:cache:semantic-keys:";
+    // Maximum number of semantic indexes held in memory
+    private static final int MAX_LOCAL_INDEXES = 1000;
+
+    // App metadata entry holding the per-app cache settings
+    private static final String APP_SETTINGS_KEY = "responseCache";
+    // How long per-app settings are reused before the app is read again
+    private static final Duration APP_SETTINGS_TTL = Duration.ofMinutes(1);
+
+    private static final String TIER_EXACT = "exact";
+    private static final String TIER_SEMANTIC = "semantic";
+
+    @Value("${llm.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${llm.cache.ttl-seconds:3600}")
+    private long defaultTtlSeconds;
+
+    @Value("${llm.cache.semantic.enabled:true}")
+    private boolean semanticEnabled;
+
+    @Value("${llm.cache.semantic.threshold:0.95}")
+    private double defaultSemanticThreshold;
+
+    // Maximum number of questions kept per app and context for semantic matching
+    @Value("${llm.cache.semantic.max-entries:500}")
+    private int semanticMaxEntries;
+
+    // How long the in-memory copy of a semantic index is used before it is re-read from Redis
+    @Value("${llm.cache.semantic.refresh-ms:10000}")
+    private long semanticRefreshMs;
+
+    private final Map<String, CacheSettings> appSettings = new ConcurrentHashMap<>();
+
+    // In-memory semantic indexes by semantic key, least recently used dropped first
+    private final Map<String, SemanticIndex> semanticIndexes = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SemanticIndex> eldest) {
+                    return size() > MAX_LOCAL_INDEXES;
+                }
+            });
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong semanticHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+
+    @Override
+    public String getOrGenerate(LlmCacheRequest request, Supplier<String> generator) {
+        CacheSettings settings = resolveSettings(request.getAppId());
+        if (!settings.enabled || request.isBypass()) {
+            return generator.get();
+        }
+
+        String entryHash = hash(request.getAppId(), request.getModel(), new TreeMap<>(nullToEmpty(request.getParams())),
+                request.getSystemPrompt(), request.getMessages());
+        String exactKey = EXACT_KEY_PREFIX + entryHash;
+
+        // Exact tier
+        CachedAnswer cached = readExact(exactKey);
+        if (cached != null) {
+            recordHit(request, TIER_EXACT, cached.tokens);
+            return cached.answer;
+        }
+
+        // Semantic tier
+        String semanticKey = null;
+        float[] embedding = null;
+        if (settings.semanticEnabled && StringUtils.hasText(request.getQuery())) {
+            semanticKey = SEMANTIC_KEY_PREFIX + request.getAppId() + ":"
+                    + hash(request.getModel(), request.getContextHash());
+            try {
+                embedding = VectorMath.normalized(VectorMath.toArray(
+                        vectorService.generateEmbedding(request.getQuery(), null)));
+                CachedAnswer match = findSemanticMatch(semanticKey, embedding, settings);
+                if (match != null) {
+                    recordHit(request, TIER_SEMANTIC, match.tokens);
+                    return match.answer;
+                }
+            } catch (Exception e) {
+                log.warn("Semantic cache lookup failed, falling back to generation: {}", e.getMessage());
+                embedding = null;
+            }
+        }
+
+        misses.incrementAndGet();
+        usageTrackingService.trackCacheLookup(request.getAppId(), request.getTeamId(), request.getUserId(),
+                request.getModel(), null, 0);
+
+        String answer = generator.get();
+        if (StringUtils.hasText(answer)) {
+            store(request, exactKey, entryHash, semanticKey, embedding, answer, settings);
+        }
+        return answer;
+    }
+
+    @Override
+    public String hash(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(objectMapper.writeValueAsString(parts).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Failed to hash cache key", e);
+        }
+    }
+
+    @Override
+    public void evictApp(String appId) {
+        String keysKey = SEMANTIC_KEYS_PREFIX + appId;
+        Set<String> keys = stringRedisTemplate.opsForSet().members(keysKey);
+        List<String> toDelete = new ArrayList<>(keys != null ? keys : Set.of());
+        toDelete.add(keysKey);
+
+        // Semantic keys written before the per-app set existed are found with SCAN
+        ScanOptions options = ScanOptions.scanOptions().match(SEMANTIC_KEY_PREFIX + appId + ":*").count(500).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            cursor.forEachRemaining(toDelete::add);
+        }
+        stringRedisTemplate.delete(toDelete);
+
+        String localPrefix = SEMANTIC_KEY_PREFIX + appId + ":";
+        synchronized (semanticIndexes) {
+            semanticIndexes.keySet().removeIf(key -> key.startsWith(localPrefix));
+        }
+        appSettings.remove(appId);
+        // Exact entries are not indexed by app and expire with their TTL
+        log.info("Evicted semantic cache entries of app: {}", appId);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        long exact = exactHits.get();
+        long semantic = semanticHits.get();
+        long missed = misses.get();
+        long lookups = exact + semantic + missed;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("exactHits", exact);
+        stats.put("semanticHits", semantic);
+        stats.put("misses", missed);
+        stats.put("hitRatio", lookups > 0 ? (double) (exact + semantic) / lookups : 0.0);
+        stats.put("savedTokens", savedTokens.get());
+        return stats;
+    }
+
+    private CachedAnswer readExact(String key) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(key);
+            return json != null ? objectMapper.readValue(json, CachedAnswer.class) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read exact cache entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Find the most similar previous question above the threshold and read its answer
+     * @param embedding Normalized query embedding
+     */
+    private CachedAnswer findSemanticMatch(String key, float[] embedding, CacheSettings settings) {
+        SemanticIndex index = semanticIndex(key, settings);
+        String entryHash = index.search(embedding, (float) settings.semanticThreshold);
+        if (entryHash == null) {
+            return null;
+        }
+
+        CachedAnswer answer = readExact(EXACT_KEY_PREFIX + entryHash);
+        if (answer == null) {
+            // The answer expired before the next refresh dropped its question
+            index.remove(entryHash);
+            stringRedisTemplate.opsForHash().delete(key, entryHash);
+        }
+        return answer;
+    }
+
+    /**
+     * Get the in-memory copy of a semantic index, reading it from Redis when missing or stale
+     * Expired and unreadable questions are dropped from Redis on the way.
+     */
+    private SemanticIndex semanticIndex(String key, CacheSettings settings) {
+        long now = System.currentTimeMillis();
+        SemanticIndex index = semanticIndexes.get(key);
+        if (index != null && now - index.loadedAt < semanticRefreshMs) {
+            return index;
+        }
+
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        long ttlMillis = settings.ttl.toMillis();
+        SemanticIndex loaded = new SemanticIndex(now);
+        List<Object> expired = new ArrayList<>();
+
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String value = entry.getValue().toString();
+            int separator = value.indexOf(':');
+            try {
+                long createdAt = Long.parseLong(value.substring(0, separator));
+                if (now - createdAt > ttlMillis) {
+                    expired.add(entry.getKey());
+                    continue;
+                }
+                float[] vector = VectorMath.toArray(VectorEncoding.decode(
+                        Base64.getDecoder().decode(value.substring(separator + 1))));
+                VectorMath.normalize(vector);
+                loaded.add(entry.getKey().toString(), vector);
+            } catch (RuntimeException e) {
+                // Entries of an older format are dropped and rebuilt on the next miss
+                expired.add(entry.getKey());
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(key, expired.toArray());
+        }
+        semanticIndexes.put(key, loaded);
+        return loaded;
+    }
+
+    private void store(LlmCacheRequest request, String exactKey, String entryHash, String semanticKey,
+                       float[] embedding, String answer, CacheSettings settings) {
+        try {
+            CachedAnswer entry = new CachedAnswer();
+            entry.answer = answer;
+            entry.tokens = estimateTokens(request, answer);
+            entry.createdAt = System.currentTimeMillis();
+
+            stringRedisTemplate.opsForValue().set(exactKey, objectMapper.writeValueAsString(entry), settings.ttl);
+
+            if (semanticKey != null && embedding != null) {
+                // Keep the semantic set bounded; a full set is not extended until entries expire
+                Long size = stringRedisTemplate.opsForHash().size(semanticKey);
+                if (size == null || size < semanticMaxEntries) {
+                    String packed = Base64.getEncoder().encodeToString(
+                            VectorEncoding.encode(new PackedVector(embedding), false));
+                    stringRedisTemplate.opsForHash().put(semanticKey, entryHash, entry.createdAt + ":" + packed);
+                    stringRedisTemplate.expire(semanticKey, settings.ttl);
+
+                    String keysKey = SEMANTIC_KEYS_PREFIX + request.getAppId();
+                    stringRedisTemplate.opsForSet().add(keysKey, semanticKey);
+                    stringRedisTemplate.expire(keysKey, settings.ttl);
+
+                    SemanticIndex index = semanticIndexes.get(semanticKey);
+                    if (index != null) {
+                        index.add(entryHash, embedding);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to store cache entry: {}", e.getMessage());
+        }
+    }
+
+    private void recordHit(LlmCacheRequest request, String tier, int tokens) {
+        (TIER_EXACT.equals(tier) ? exactHits : semanticHits).incrementAndGet();
+        savedTokens.addAndGet(tokens);
+        usageTrackingService.trackCacheLookup(request.getAppId(), request.getTeamId(), request.getUserId(),
+                request.getModel(), tier, tokens);
+        log.debug("LLM cache {} hit for app: {}, saved tokens: {}", tier, request.getAppId(), tokens);
+    }
+
+    /**
+     * Count the tokens of the call, prompt and answer
+     */
+    private int estimateTokens(LlmCacheRequest request, String answer) {
+        return tokenizerService.countTokens(answer)
+                + tokenizerService.countTokens(request.getSystemPrompt())
+                + tokenizerService.countMessageTokens(request.getMessages());
+    }
+
+    /**
+     * Resolve the cache settings of an app, falling back to the global defaults
+     */
+    private CacheSettings resolveSettings(String appId) {
+        if (!StringUtils.hasText(appId)) {
+            return defaultSettings();
+        }
+
+        CacheSettings settings = appSettings.get(appId);
+        if (settings != null && System.currentTimeMillis() - settings.loadedAt < APP_SETTINGS_TTL.toMillis()) {
+            return settings;
+        }
+
+        settings = defaultSettings();
+        try {
+            Object config = appRepository.findByAppId(appId)
+                    .map(App::getMetadata)
+                    .map(metadata -> metadata.get(APP_SETTINGS_KEY))
+                    .orElse(null);
+            if (config instanceof Map<?, ?> map) {
+                if (map.get("enabled") instanceof Boolean enabled) {
+                    settings.enabled = enabled;
+                }
+                if (map.get("ttlSeconds") instanceof Number ttlSeconds) {
+                    settings.ttl = Duration.ofSeconds(ttlSeconds.longValue());
+                }
+                if (map.get("semanticEnabled") instanceof Boolean semantic) {
+                    settings.semanticEnabled = semantic;
+                }
+                if (map.get("semanticThreshold") instanceof Number threshold) {
+                    settings.semanticThreshold = threshold.doubleValue();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load cache settings for app {}: {}", appId, e.getMessage());
+        }
+
+        appSettings.put(appId, settings);
+        return settings;
+    }
+
+    private CacheSettings defaultSettings() {
+        CacheSettings settings = new CacheSettings();
+        settings.enabled = cacheEnabled;
+        settings.ttl = Duration.ofSeconds(defaultTtlSeconds);
+        settings.semanticEnabled = semanticEnabled;
+        settings.semanticThreshold = defaultSemanticThreshold;
+        settings.loadedAt = System.currentTimeMillis();
+        return settings;
+    }
+
+    private static Map<String, Object> nullToEmpty(Map<String, Object> map) {
+        return map != null ? map : Map.of();
+    }
+
+    /**
+     * Effective cache settings of an app
+     */
+    private static class CacheSettings {
+        boolean enabled;
+        Duration ttl;
+        boolean semanticEnabled;
+        double semanticThreshold;
+        long loadedAt;
+    }
+
+    /**
+     * A cached answer as stored in Redis
+     */
+    static class CachedAnswer {
+        public String answer;
+        public int tokens;
+        public long createdAt;
+    }
+
+    /**
+     * In-memory copy of the normalized question embeddings of one app and context
+     */
+    private static class SemanticIndex {
+        private final long loadedAt;
+        private final List<String> entryHashes = new ArrayList<>();
+        private final List<float[]> vectors = new ArrayList<>();
+
+        SemanticIndex(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+
+        synchronized void add(String entryHash, float[] vector) {
+            entryHashes.add(entryHash);
+            vectors.add(vector);
+        }
+
+        synchronized void remove(String entryHash) {
+            int index = entryHashes.indexOf(entryHash);
+            if (index >= 0) {
+                entryHashes.remove(index);
+                vectors.remove(index);
+            }
+        }
+
+        /**
+         * @return The entry hash of the most similar question at or above the threshold, or null
+         */
+        synchronized String search(float[] query, float threshold) {
+            String best = null;
+            float bestScore = threshold;
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] vector = vectors.get(i);
+                if (vector.length != query.length) {
+                    continue;
+                }
+                float score = VectorMath.dot(query, vector);
+                if (score >= bestScore) {
+                    best = entryHashes.get(i);
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+}
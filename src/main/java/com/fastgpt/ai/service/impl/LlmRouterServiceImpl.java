@@ -0,0 +1,437 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.dto.LlmEndpoint;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import com.fastgpt.ai.service.LlmRouterService;
+import com.fastgpt.ai.util.CancellationToken;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Latency-aware router over OpenAI-compatible endpoints
+ * Endpoints are configured as comma-separated lists in llm.router.endpoints and
+ * llm.router.api-keys; without them the single spring.ai.openai endpoint is used
+ */
+@Slf4j
+@Service
+public class LlmRouterServiceImpl implements LlmRouterService {
+
+    @Value("${spring.ai.openai.api-key}")
+    private String defaultApiKey;
+
+    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
+    private String defaultBaseUrl;
+
+    @Value("${llm.router.endpoints:}")
+    private String endpointUrls;
+
+    // One key for all endpoints, or one per endpoint in the same order
+    @Value("${llm.router.api-keys:}")
+    private String endpointApiKeys;
+
+    @Value("${llm.router.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // Lower bound of the hedge delay, so fast calls are not hedged on jitter
+    @Value("${llm.router.hedge.min-delay-ms:200}")
+    private long hedgeMinDelayMs;
+
+    // Threads running hedged attempts; when all are busy calls run unhedged on the caller
+    @Value("${llm.router.hedge.max-threads:64}")
+    private int hedgeMaxThreads;
+
+    // How long an endpoint is skipped after a 5xx, 429 or connection error
+    @Value("${llm.router.cooldown-ms:5000}")
+    private long cooldownMs;
+
+    // Smoothing factor of the latency and error rate EWMAs
+    private static final double EWMA_ALPHA = 0.2;
+    // Number of recent latencies kept per operation for the p95
+    private static final int LATENCY_WINDOW = 128;
+    // Samples required before the p95 is trusted for hedging
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final List<EndpointState> endpoints = new ArrayList<>();
+    private ExecutorService hedgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        List<String> urls = splitList(endpointUrls);
+        List<String> keys = splitList(endpointApiKeys);
+
+        if (urls.isEmpty()) {
+            endpoints.add(new EndpointState(new LlmEndpoint("default", defaultBaseUrl, defaultApiKey)));
+        } else {
+            for (int i = 0; i < urls.size(); i++) {
+                String apiKey = keys.isEmpty() ? defaultApiKey : keys.get(Math.min(i, keys.size() - 1));
+                endpoints.add(new EndpointState(new LlmEndpoint("endpoint-" + i, urls.get(i), apiKey)));
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        hedgeExecutor = new ThreadPoolExecutor(0, hedgeMaxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "llm-router-hedge-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        log.info("LLM router initialized with {} endpoint(s), hedging {}", endpoints.size(),
+                hedgeEnabled ? "enabled" : "disabled");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public <T> T execute(String operation, boolean hedgeable, Function<LlmEndpoint, T> call) {
+        CancellationToken token = CancellationToken.current();
+        List<EndpointState> ranked = rank(operation);
+        RuntimeException lastError = null;
+
+        for (int i = 0; i < ranked.size(); i++) {
+            token.throwIfCancelled();
+            EndpointState primary = ranked.get(i);
+
+            try {
+                long hedgeDelay = primary.hedgeDelayMillis(operation, hedgeMinDelayMs);
+                if (hedgeable && hedgeEnabled && hedgeDelay > 0 && i + 1 < ranked.size()) {
+                    EndpointState backup = ranked.get(i + 1);
+                    // A failed hedged pair has used up both endpoints
+                    i++;
+                    return executeHedged(operation, primary, backup, hedgeDelay, call, token);
+                }
+                return attempt(operation, primary, call);
+            } catch (RuntimeException e) {
+                if (!isRetryable(e) || token.isCancelled()) {
+                    throw e;
+                }
+                lastError = e;
+                log.warn("LLM {} call failed on {}, failing over: {}", operation, primary.endpoint.getName(), e.getMessage());
+            }
+        }
+
+        throw lastError != null ? lastError : new IllegalStateException("No LLM endpoint configured");
+    }
+
+    @Override
+    public List<LlmEndpoint> getEndpoints() {
+        return endpoints.stream().map(state -> state.endpoint).toList();
+    }
+
+    @Override
+    public List<Map<String, Object>> getEndpointStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (EndpointState state : endpoints) {
+            stats.add(state.toStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Run one attempt on the calling thread, recording its outcome
+     * An attempt aborted through its own cancellation token (the client left or the hedge settled)
+     * is not held against the endpoint and surfaces as {@link ExecutionCancelledException}.
+     */
+    private <T> T attempt(String operation, EndpointState state, Function<LlmEndpoint, T> call) {
+        state.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            T result = call.apply(state.endpoint);
+            state.recordSuccess(operation, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        } catch (RuntimeException e) {
+            CancellationToken token = CancellationToken.current();
+            if (token.isCancelled()) {
+                throw e instanceof ExecutionCancelledException ? e : new ExecutionCancelledException(token.getReason(), e);
+            }
+            if (isRetryable(e)) {
+                state.recordFailure(retryAfterMillis(e));
+            }
+            throw e;
+        } finally {
+            state.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Start on the primary endpoint; if it is slower than its p95, send the same call to the
+     * backup endpoint and take whichever succeeds first. The loser is cancelled.
+     * When the hedge pool is full the call is not hedged.
+     */
+    private <T> T executeHedged(String operation, EndpointState primary, EndpointState backup, long hedgeDelay,
+                                Function<LlmEndpoint, T> call, CancellationToken callerToken) {
+        CancellationToken primaryToken = CancellationToken.create();
+        CancellationToken backupToken = CancellationToken.create();
+        Runnable unregister = callerToken.onCancel(() -> {
+            primaryToken.cancel(callerToken.getReason());
+            backupToken.cancel(callerToken.getReason());
+        });
+
+        try {
+            CompletableFuture<T> primaryFuture;
+            try {
+                primaryFuture = CompletableFuture.supplyAsync(
+                        bound(primaryToken, () -> attempt(operation, primary, call)), hedgeExecutor);
+            } catch (RejectedExecutionException e) {
+                return attempt(operation, primary, call);
+            }
+
+            try {
+                return primaryFuture.get(hedgeDelay, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Slower than usual; hedge below
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            }
+
+            CompletableFuture<T> backupFuture;
+            try {
+                backupFuture = CompletableFuture.supplyAsync(
+                        bound(backupToken, () -> attempt(operation, backup, call)), hedgeExecutor);
+            } catch (RejectedExecutionException e) {
+                // No thread left for the backup, wait for the primary alone
+                backupFuture = primaryFuture;
+            }
+            if (backupFuture != primaryFuture) {
+                primary.hedged.incrementAndGet();
+                log.debug("Hedging LLM {} call from {} to {}", operation, primary.endpoint.getName(), backup.endpoint.getName());
+            }
+
+            return firstSuccessful(primaryFuture, backupFuture);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionCancelledException("Interrupted while waiting for LLM response", e);
+        } finally {
+            // Abort whichever attempt is still running
+            primaryToken.cancel("Hedged request settled");
+            backupToken.cancel("Hedged request settled");
+            unregister.run();
+        }
+    }
+
+    private <T> T firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<T, Throwable> settle = (result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        };
+        first.whenComplete(settle);
+        second.whenComplete(settle);
+
+        try {
+            return winner.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static <T> Supplier<T> bound(CancellationToken token, Supplier<T> supplier) {
+        return () -> {
+            CancellationToken.Scope scope = token.bind();
+            try (scope) {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * Order the endpoints by their score for an operation; endpoints cooling down after errors go last
+     */
+    private List<EndpointState> rank(String operation) {
+        long now = System.currentTimeMillis();
+        List<EndpointState> ranked = new ArrayList<>(endpoints);
+        ranked.sort(Comparator
+                .comparing((EndpointState state) -> state.isCoolingDown(now))
+                .thenComparingDouble(state -> state.score(operation)));
+        return ranked;
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        return e instanceof HttpServerErrorException
+                || e instanceof HttpClientErrorException.TooManyRequests
+                || e instanceof ResourceAccessException;
+    }
+
+    /**
+     * Honour the Retry-After header of a 429, in seconds
+     */
+    private long retryAfterMillis(RuntimeException e) {
+        if (e instanceof HttpClientErrorException.TooManyRequests tooManyRequests) {
+            HttpHeaders headers = tooManyRequests.getResponseHeaders();
+            String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+            if (retryAfter != null) {
+                try {
+                    return Math.max(cooldownMs, Long.parseLong(retryAfter.trim()) * 1000);
+                } catch (NumberFormatException ignored) {
+                    // HTTP-date form, fall back to the default cooldown
+                }
+            }
+        }
+        return cooldownMs;
+    }
+
+    private static RuntimeException unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+
+    private static List<String> splitList(String value) {
+        if (!StringUtils.hasText(value)) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .toList();
+    }
+
+    /**
+     * Live state of one endpoint
+     */
+    private static class EndpointState {
+        private final LlmEndpoint endpoint;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Calls on this endpoint that were hedged to another one
+        private final AtomicLong hedged = new AtomicLong();
+        private final Map<String, LatencyStats> latencies = new HashMap<>();
+        private double errorRate;
+        private long coolDownUntil;
+        private long successes;
+        private long failures;
+
+        EndpointState(LlmEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized void recordSuccess(String operation, long latencyMs) {
+            latencies.computeIfAbsent(operation, key -> new LatencyStats()).record(latencyMs);
+            errorRate = (1 - EWMA_ALPHA) * errorRate;
+            successes++;
+        }
+
+        synchronized void recordFailure(long cooldownMs) {
+            errorRate = (1 - EWMA_ALPHA) * errorRate + EWMA_ALPHA;
+            coolDownUntil = System.currentTimeMillis() + cooldownMs;
+            failures++;
+        }
+
+        synchronized boolean isCoolingDown(long now) {
+            return coolDownUntil > now;
+        }
+
+        /**
+         * Lower is better: expected latency of the operation, scaled by queueing and recent errors.
+         * Latency is compared per operation, since a chat call and an embedding call differ by
+         * orders of magnitude; endpoints without samples for the operation score lowest so they
+         * get explored.
+         */
+        synchronized double score(String operation) {
+            LatencyStats stats = latencies.get(operation);
+            double latency = stats != null ? stats.ewma : 0;
+            return (latency + 1) * (inFlight.get() + 1) * (1 + 10 * errorRate);
+        }
+
+        /**
+         * Delay before a hedged attempt is sent, or -1 while there are too few samples to hedge
+         */
+        synchronized long hedgeDelayMillis(String operation, long minDelayMs) {
+            LatencyStats stats = latencies.get(operation);
+            if (stats == null || stats.count < MIN_HEDGE_SAMPLES) {
+                return -1;
+            }
+            return Math.max(minDelayMs, stats.percentile(0.95));
+        }
+
+        synchronized Map<String, Object> toStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("name", endpoint.getName());
+            stats.put("baseUrl", endpoint.getBaseUrl());
+            stats.put("inFlight", inFlight.get());
+            stats.put("errorRate", errorRate);
+            stats.put("successes", successes);
+            stats.put("failures", failures);
+            stats.put("hedged", hedged.get());
+            stats.put("coolingDown", isCoolingDown(System.currentTimeMillis()));
+
+            Map<String, Object> operations = new HashMap<>();
+            latencies.forEach((operation, latency) -> operations.put(operation, Map.of(
+                    "ewmaMs", latency.ewma,
+                    "p95Ms", latency.percentile(0.95),
+                    "samples", latency.count)));
+            stats.put("latency", operations);
+            return stats;
+        }
+    }
+
+    /**
+     * EWMA and recent window of the latencies of one operation
+     */
+    private static class LatencyStats {
+        private final long[] window = new long[LATENCY_WINDOW];
+        private long count;
+        private double ewma;
+
+        void record(long latencyMs) {
+            ewma = count == 0 ? latencyMs : (1 - EWMA_ALPHA) * ewma + EWMA_ALPHA * latencyMs;
+            window[(int) (count % LATENCY_WINDOW)] = latencyMs;
+            count++;
+        }
+
+        long percentile(double percentile) {
+            int size = (int) Math.min(count, LATENCY_WINDOW);
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(window, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+        }
+    }
+}
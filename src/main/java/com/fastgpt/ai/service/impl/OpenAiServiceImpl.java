@@ -1,27 +1,60 @@
 package com.fastgpt.ai.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fastgpt.ai.dto.LlmCacheRequest;
+import com.fastgpt.ai.dto.LlmEndpoint;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import com.fastgpt.ai.exception.RateLimitExceededException;
+import com.fastgpt.ai.exception.StreamingException;
 import com.fastgpt.ai.service.AiService;
 import com.fastgpt.ai.service.ChatConfigService;
+import com.fastgpt.ai.service.LlmBatchService;
+import com.fastgpt.ai.service.LlmResponseCacheService;
+import com.fastgpt.ai.service.LlmRouterService;
+import com.fastgpt.ai.service.ProviderRateLimiter;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.ChatCompletionRequest;
+import com.fastgpt.ai.util.RequestPriority;
+import com.fastgpt.ai.util.SingleFlight;
+import com.fastgpt.ai.util.StreamingSingleFlight;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -31,73 +64,81 @@ public class OpenAiServiceImpl implements AiService {
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     private final ChatConfigService chatConfigService;
+    private final LlmResponseCacheService llmResponseCacheService;
+    private final LlmRouterService llmRouterService;
+    private final ProviderRateLimiter providerRateLimiter;
+    private final TokenizerService tokenizerService;
+    private final LlmBatchService llmBatchService;
+    // Runs the upstream side of streaming completions, see AsyncConfig
+    @Qualifier("llmStreamExecutor")
+    private final Executor llmStreamExecutor;
     
-    @Value("${spring.ai.openai.api-key}")
-    private String apiKey;
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final String SSE_DONE = "[DONE]";
     
-    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
-    private String baseUrl;
+    // Pre-encoded system messages, keyed by prompt
+    private static final int MAX_ENCODED_SYSTEM_MESSAGES = 1000;
+    
+    // In-flight upstream calls keyed by request
+    private final SingleFlight<ChatCompletionRequest, String> completionFlights = new SingleFlight<>();
+    private StreamingSingleFlight<ChatCompletionRequest, Map<String, Object>> streamFlights;
+    
+    private final Map<String, SerializableString> encodedSystemMessages = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SerializableString> eldest) {
+                    return size() > MAX_ENCODED_SYSTEM_MESSAGES;
+                }
+            });
+
+    @PostConstruct
+    public void init() {
+        streamFlights = new StreamingSingleFlight<>(llmStreamExecutor);
+    }
 
     @Override
     public String generateResponse(List<Map<String, String>> messages, String systemPrompt, Map<String, Object> modelConfig) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-            
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            
-            // Set model from config or default to gpt-3.5-turbo
-            String model = modelConfig.containsKey("model") ? 
-                    modelConfig.get("model").toString() : "gpt-3.5-turbo";
-            requestBody.put("model", model);
-            
-            // Set temperature from config or default to 0.7
-            double temperature = 0.7;
-            if (modelConfig.containsKey("temperature")) {
-                try {
-                    temperature = Double.parseDouble(modelConfig.get("temperature").toString());
-                } catch (NumberFormatException e) {
-                    log.warn("Invalid temperature value: {}", modelConfig.get("temperature"));
-                }
-            }
-            requestBody.put("temperature", temperature);
-            
-            // Set max tokens if provided
-            if (modelConfig.containsKey("max_tokens")) {
-                try {
-                    int maxTokens = Integer.parseInt(modelConfig.get("max_tokens").toString());
-                    requestBody.put("max_tokens", maxTokens);
-                } catch (NumberFormatException e) {
-                    log.warn("Invalid max_tokens value: {}", modelConfig.get("max_tokens"));
-                }
-            }
-            
-            // Create messages array
-            ArrayNode messagesNode = requestBody.putArray("messages");
-            
-            // Add system prompt if provided
-            if (StringUtils.hasText(systemPrompt)) {
-                ObjectNode systemMessage = messagesNode.addObject();
-                systemMessage.put("role", "system");
-                systemMessage.put("content", systemPrompt);
-            }
-            
-            // Add all other messages
-            for (Map<String, String> message : messages) {
-                ObjectNode messageNode = messagesNode.addObject();
-                messageNode.put("role", message.get("role"));
-                messageNode.put("content", message.get("content"));
-            }
-            
-            HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                    baseUrl + "/v1/chat/completions", request, String.class);
-            
-            return extractContentFromResponse(response.getBody());
+            return requestCompletion(messages, systemPrompt, modelConfig);
+        } catch (ExecutionCancelledException | RateLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
+            // Fail loudly so an error text is never stored as an answer or cached
             log.error("Error calling OpenAI API", e);
-            return "I'm sorry, I encountered an error while processing your request.";
+            throw new RuntimeException("Failed to generate response: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> generateStreamingResponse(List<Map<String, String>> messages, String systemPrompt,
+                                                         Map<String, Object> modelConfig,
+                                                         BiConsumer<String, Boolean> chunkConsumer) {
+        CancellationToken cancellationToken = CancellationToken.current();
+        cancellationToken.throwIfCancelled();
+        
+        ChatCompletionRequest request = buildRequest(messages, systemPrompt, modelConfig).streaming();
+        // The stream runs on another thread, so take the priority of the caller
+        RequestPriority priority = RequestPriority.current();
+        
+        try {
+            // Identical concurrent streams share one upstream call and receive the same deltas
+            Map<String, Object> usage = streamFlights.execute(request,
+                    sink -> llmRouterService.execute(LlmRouterService.OPERATION_CHAT_STREAM, false,
+                            endpoint -> limited(endpoint, request, priority,
+                                    () -> streamCompletion(endpoint, request, sink))),
+                    chunk -> chunkConsumer.accept(chunk, false));
+            
+            chunkConsumer.accept("", true);
+            return usage != null ? new HashMap<>(usage) : new HashMap<>();
+        } catch (ExecutionCancelledException | RateLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            // The connection was aborted by the cancellation token
+            if (cancellationToken.isCancelled()) {
+                throw new ExecutionCancelledException(cancellationToken.getReason(), e);
+            }
+            log.error("Error streaming from OpenAI API", e);
+            throw new StreamingException("Error streaming from OpenAI API: " + e.getMessage(), e);
         }
     }
 
@@ -120,30 +161,312 @@ public class OpenAiServiceImpl implements AiService {
             modelConfig = chatConfigService.getModelConfig(appId);
         }
         
-        return generateResponse(messages, systemPrompt, modelConfig);
+        LlmCacheRequest cacheRequest = LlmCacheRequest.builder()
+                .appId(appId)
+                .model(String.valueOf(modelConfig.getOrDefault("model", "gpt-3.5-turbo")))
+                .params(modelConfig)
+                .systemPrompt(systemPrompt)
+                .messages(messages)
+                .query(prompt)
+                .contextHash(llmResponseCacheService.hash(systemPrompt))
+                .build();
+        
+        String finalSystemPrompt = systemPrompt;
+        Map<String, Object> finalModelConfig = modelConfig;
+        try {
+            // Only successful completions reach the cache
+            return llmResponseCacheService.getOrGenerate(cacheRequest,
+                    () -> requestCompletion(messages, finalSystemPrompt, finalModelConfig));
+        } catch (ExecutionCancelledException | RateLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error calling OpenAI API", e);
+            return "I'm sorry, I encountered an error while processing your request.";
+        }
+    }
+    
+    /**
+     * Call the chat completion endpoint
+     * @throws IllegalStateException if the response has no content
+     */
+    private String requestCompletion(List<Map<String, String>> messages, String systemPrompt, Map<String, Object> modelConfig) {
+        // Don't start a generation nobody will read
+        CancellationToken.current().throwIfCancelled();
+        
+        ChatCompletionRequest request = buildRequest(messages, systemPrompt, modelConfig);
+        // Hedged attempts run on other threads, so take the priority of the caller
+        RequestPriority priority = RequestPriority.current();
+        
+        if (priority == RequestPriority.OFFLINE && llmBatchService.isEnabled()) {
+            return requestBatchCompletion(request);
+        }
+        
+        // Identical concurrent requests share one upstream call; a call aborted by the cancellation
+        // token fails as ExecutionCancelledException, so followers still waiting run it again
+        return completionFlights.execute(request, () -> llmRouterService.execute(LlmRouterService.OPERATION_CHAT, true,
+                endpoint -> limited(endpoint, request, priority, () -> restTemplate.execute(
+                        endpoint.getBaseUrl() + "/v1/chat/completions",
+                        HttpMethod.POST,
+                        httpRequest -> {
+                            httpRequest.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                            httpRequest.getHeaders().setBearerAuth(endpoint.getApiKey());
+                            writeBody(httpRequest, request);
+                        },
+                        response -> extractContentFromResponse(response.getBody())))));
     }
     
     /**
-     * Extract the content from OpenAI API response
+     * Queue the completion in a provider batch and wait for its result
+     * Batch requests bypass the synchronous rate limits and are billed at the batch price
+     */
+    private String requestBatchCompletion(ChatCompletionRequest request) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            request.writeTo(body, objectMapper.getFactory());
+        } catch (IOException e) {
+            throw new IllegalStateException("Error serializing chat completion request", e);
+        }
+        
+        JsonNode response = llmBatchService.await(llmBatchService.submit("/v1/chat/completions",
+                request.getModel(), body.toString(StandardCharsets.UTF_8)));
+        return extractContent(response);
+    }
+    
+    /**
+     * Run a call against an endpoint within the rate limits of its API key and model
+     * The token estimate covers the prompt and the completion budget
+     */
+    private <T> T limited(LlmEndpoint endpoint, ChatCompletionRequest request, RequestPriority priority, Supplier<T> call) {
+        int estimatedTokens = request.getMaxTokens() != null ? request.getMaxTokens() : 0;
+        estimatedTokens += tokenizerService.countTokens(request.getSystemPrompt());
+        estimatedTokens += tokenizerService.countMessageTokens(request.getMessages());
+        return providerRateLimiter.execute(endpoint.getApiKey(), request.getModel(),
+                estimatedTokens, priority, call);
+    }
+    
+    /**
+     * Write the request straight to the connection, without an intermediate body string
+     */
+    private void writeBody(ClientHttpRequest httpRequest, ChatCompletionRequest request) throws IOException {
+        JsonFactory jsonFactory = objectMapper.getFactory();
+        if (httpRequest instanceof StreamingHttpOutputMessage streamingRequest) {
+            streamingRequest.setBody(out -> request.writeTo(out, jsonFactory));
+        } else {
+            request.writeTo(httpRequest.getBody(), jsonFactory);
+        }
+    }
+    
+    /**
+     * Stream one completion from an endpoint into the sink
+     * Once a delta has been forwarded the stream can no longer fail over, so later errors are not retryable
      */
-    private String extractContentFromResponse(String responseBody) {
+    private Map<String, Object> streamCompletion(LlmEndpoint endpoint, ChatCompletionRequest request, Consumer<String> sink) {
+        AtomicBoolean started = new AtomicBoolean();
         try {
-            JsonNode rootNode = objectMapper.readTree(responseBody);
-            JsonNode choicesNode = rootNode.path("choices");
+            return restTemplate.execute(
+                    endpoint.getBaseUrl() + "/v1/chat/completions",
+                    HttpMethod.POST,
+                    httpRequest -> {
+                        httpRequest.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                        httpRequest.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+                        httpRequest.getHeaders().setBearerAuth(endpoint.getApiKey());
+                        writeBody(httpRequest, request);
+                    },
+                    response -> readEventStream(response.getBody(), chunk -> {
+                        started.set(true);
+                        sink.accept(chunk);
+                    }, CancellationToken.current()));
+        } catch (ResourceAccessException e) {
+            if (started.get()) {
+                throw new StreamingException("Stream from " + endpoint.getName() + " broke off: " + e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Build the chat completion request from the messages and model config
+     */
+    private ChatCompletionRequest buildRequest(List<Map<String, String>> messages, String systemPrompt, Map<String, Object> modelConfig) {
+        // Set model from config or default to gpt-3.5-turbo
+        String model = modelConfig.containsKey("model") ? 
+                modelConfig.get("model").toString() : "gpt-3.5-turbo";
+        
+        // Set temperature from config or default to 0.7
+        double temperature = 0.7;
+        if (modelConfig.containsKey("temperature")) {
+            try {
+                temperature = Double.parseDouble(modelConfig.get("temperature").toString());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid temperature value: {}", modelConfig.get("temperature"));
+            }
+        }
+        
+        // Set max tokens if provided
+        Integer maxTokens = null;
+        if (modelConfig.containsKey("max_tokens")) {
+            try {
+                maxTokens = Integer.parseInt(modelConfig.get("max_tokens").toString());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid max_tokens value: {}", modelConfig.get("max_tokens"));
+            }
+        }
+        
+        // The system prompt is static per app, so its JSON is encoded once
+        SerializableString systemMessage = null;
+        if (StringUtils.hasText(systemPrompt)) {
+            systemMessage = encodedSystemMessages.computeIfAbsent(systemPrompt, prompt -> {
+                ObjectNode node = objectMapper.createObjectNode();
+                node.put("role", "system");
+                node.put("content", prompt);
+                return new SerializedString(node.toString());
+            });
+        }
+        
+        return new ChatCompletionRequest(model, temperature, maxTokens, false, systemPrompt, systemMessage, messages);
+    }
+    
+    /**
+     * Read a server-sent event stream of chat completion chunks
+     * Content deltas are forwarded as they arrive; the usage of the final chunk is returned
+     */
+    private Map<String, Object> readEventStream(InputStream body, Consumer<String> chunkConsumer,
+                                                CancellationToken cancellationToken) throws IOException {
+        Map<String, Object> usage = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        
+        String line;
+        while ((line = reader.readLine()) != null) {
+            cancellationToken.throwIfCancelled();
+            
+            // Only data lines carry chunks; comments, ids and blank separators are skipped
+            if (!line.startsWith(SSE_DATA_PREFIX)) {
+                continue;
+            }
+            String data = line.substring(SSE_DATA_PREFIX.length()).trim();
+            if (SSE_DONE.equals(data)) {
+                break;
+            }
+            if (data.isEmpty()) {
+                continue;
+            }
+            
+            String content = parseChunk(data, usage);
+            if (content != null && !content.isEmpty()) {
+                chunkConsumer.accept(content);
+            }
+        }
+        
+        return usage;
+    }
+    
+    /**
+     * Parse one chunk with the streaming parser, without building a tree
+     * @return The content delta of the first choice, or null if the chunk has none
+     */
+    private String parseChunk(String data, Map<String, Object> usage) throws IOException {
+        String content = null;
+        
+        try (JsonParser parser = objectMapper.getFactory().createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
             
-            if (choicesNode.isArray() && choicesNode.size() > 0) {
-                JsonNode firstChoice = choicesNode.get(0);
-                JsonNode messageNode = firstChoice.path("message");
-                if (!messageNode.isMissingNode()) {
-                    return messageNode.path("content").asText();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    content = parseChoices(parser);
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseUsage(parser, usage);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        
+        return content;
+    }
+    
+    /**
+     * Read the choices array, returning the content delta of choice 0
+     */
+    private String parseChoices(JsonParser parser) throws IOException {
+        String content = null;
+        
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int index = 0;
+            String delta = null;
+            
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                
+                if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    index = parser.getIntValue();
+                } else if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String deltaField = parser.currentName();
+                        JsonToken deltaValue = parser.nextToken();
+                        if ("content".equals(deltaField) && deltaValue == JsonToken.VALUE_STRING) {
+                            delta = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
                 }
             }
             
-            log.error("Unexpected response format: {}", responseBody);
-            return "I couldn't process the response. Please try again later.";
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing OpenAI response", e);
-            return "I couldn't understand the response. Please try again later.";
+            if (index == 0 && delta != null) {
+                content = delta;
+            }
+        }
+        
+        return content;
+    }
+    
+    /**
+     * Read the integer token counts of a usage object
+     */
+    private void parseUsage(JsonParser parser, Map<String, Object> usage) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                usage.put(field, parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+    
+    /**
+     * Extract the content from OpenAI API response
+     */
+    private String extractContentFromResponse(InputStream responseBody) {
+        JsonNode rootNode;
+        try {
+            rootNode = objectMapper.readTree(responseBody);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error parsing OpenAI response", e);
+        }
+        return extractContent(rootNode);
+    }
+    
+    /**
+     * Extract the content from a parsed chat completion
+     */
+    private String extractContent(JsonNode rootNode) {
+        JsonNode choicesNode = rootNode.path("choices");
+        if (choicesNode.isArray() && choicesNode.size() > 0) {
+            JsonNode messageNode = choicesNode.get(0).path("message");
+            if (!messageNode.isMissingNode()) {
+                return messageNode.path("content").asText();
+            }
         }
+        
+        throw new IllegalStateException("Unexpected response format: " + rootNode);
     }
-} 
\ No newline at end of file
+}
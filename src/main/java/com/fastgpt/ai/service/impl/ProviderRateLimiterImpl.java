@@ -0,0 +1,283 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import com.fastgpt.ai.exception.RateLimitExceededException;
+import com.fastgpt.ai.service.ProviderRateLimiter;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * AIMD and token-bucket implementation of the provider rate limiter
+ * The in-flight limit grows by one per round of successful calls and halves on 429, 503
+ * or timeouts; the RPM and TPM buckets refill continuously
+ */
+@Slf4j
+@Service
+public class ProviderRateLimiterImpl implements ProviderRateLimiter {
+
+    @Value("${llm.limiter.enabled:true}")
+    private boolean limiterEnabled;
+
+    @Value("${llm.limiter.initial-concurrency:16}")
+    private int initialConcurrency;
+
+    @Value("${llm.limiter.min-concurrency:1}")
+    private int minConcurrency;
+
+    @Value("${llm.limiter.max-concurrency:128}")
+    private int maxConcurrency;
+
+    // Requests and tokens per minute allowed per API key and model
+    @Value("${llm.limiter.rpm:3000}")
+    private int requestsPerMinute;
+
+    @Value("${llm.limiter.tpm:250000}")
+    private int tokensPerMinute;
+
+    // Maximum time a call waits in the queue before failing
+    @Value("${llm.limiter.queue-timeout-ms:30000}")
+    private long queueTimeoutMs;
+
+    // Multiplicative decrease factor applied on overload
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> T execute(String apiKey, String model, int estimatedTokens, RequestPriority priority, Supplier<T> call) {
+        if (!limiterEnabled) {
+            return call.get();
+        }
+
+        String label = keyLabel(apiKey) + ":" + model;
+        Limiter limiter = limiters.computeIfAbsent(apiKey + ":" + model, key -> new Limiter(label));
+
+        limiter.acquire(estimatedTokens, priority);
+        boolean overloaded = false;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            limiter.release(overloaded);
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Limiter limiter : limiters.values()) {
+            stats.add(limiter.toStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Whether a failure signals an overloaded provider: 429, 5xx or an I/O timeout.
+     * A call aborted through its cancellation token fails with an I/O error too, but says nothing
+     * about the provider, so client disconnects and hedge losers never lower the limit.
+     */
+    private static boolean isOverload(RuntimeException e) {
+        if (CancellationToken.current().isCancelled() || hasCause(e, ExecutionCancelledException.class)) {
+            return false;
+        }
+        return e instanceof HttpClientErrorException.TooManyRequests
+                || e instanceof HttpServerErrorException
+                || (e instanceof ResourceAccessException
+                        && (hasCause(e, SocketTimeoutException.class) || hasCause(e, ConnectTimeoutException.class)));
+    }
+
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Show only the tail of an API key
+     */
+    private static String keyLabel(String apiKey) {
+        if (apiKey == null || apiKey.length() < 4) {
+            return "****";
+        }
+        return "****" + apiKey.substring(apiKey.length() - 4);
+    }
+
+    /**
+     * A call waiting for a permit
+     */
+    private static class Waiter {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final Condition condition;
+
+        Waiter(RequestPriority priority, long sequence, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Limiter of one API key and model
+     */
+    private class Limiter {
+        private final String label;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Higher priority first, then first come first served
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+        private double limit = initialConcurrency;
+        private int inFlight;
+        private double requestBudget = requestsPerMinute;
+        private double tokenBudget = tokensPerMinute;
+        private long lastRefillNanos = System.nanoTime();
+        private long sequence;
+        private long overloads;
+
+        Limiter(String label) {
+            this.label = label;
+        }
+
+        void acquire(int estimatedTokens, RequestPriority priority) {
+            // A call larger than the whole budget is admitted on a full bucket
+            int cost = Math.max(0, Math.min(estimatedTokens, tokensPerMinute));
+            CancellationToken token = CancellationToken.current();
+
+            lock.lock();
+            Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+            queue.add(waiter);
+            Runnable unregister = token.onCancel(() -> signal(waiter));
+
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+                while (true) {
+                    token.throwIfCancelled();
+
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0) {
+                        throw new RateLimitExceededException("Timed out waiting for provider capacity: " + label);
+                    }
+
+                    if (queue.peek() == waiter) {
+                        refill();
+                        boolean underLimit = inFlight < (int) limit;
+                        if (underLimit && requestBudget >= 1 && tokenBudget >= cost) {
+                            queue.poll();
+                            inFlight++;
+                            requestBudget -= 1;
+                            tokenBudget -= cost;
+                            return;
+                        }
+                        // Budgets refill with time, so the head wakes up on its own
+                        if (underLimit) {
+                            waitNanos = Math.min(waitNanos, nanosUntilBudget(cost));
+                        }
+                    }
+
+                    waiter.condition.awaitNanos(waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionCancelledException("Interrupted while waiting for provider capacity", e);
+            } finally {
+                queue.remove(waiter);
+                signalHead();
+                lock.unlock();
+                unregister.run();
+            }
+        }
+
+        void release(boolean overloaded) {
+            lock.lock();
+            try {
+                if (overloaded) {
+                    limit = Math.max(minConcurrency, limit * BACKOFF_RATIO);
+                    // Stop sending until the request bucket refills
+                    requestBudget = Math.min(requestBudget, 0);
+                    overloads++;
+                    log.warn("Provider overloaded for {}, concurrency limit lowered to {}", label, (int) limit);
+                } else if (inFlight >= limit / 2) {
+                    // Only grow a limit that is actually in use
+                    limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+                }
+                inFlight--;
+                signalHead();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> toStats() {
+            lock.lock();
+            try {
+                refill();
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("key", label);
+                stats.put("limit", (int) limit);
+                stats.put("inFlight", inFlight);
+                stats.put("queued", queue.size());
+                stats.put("requestBudget", (int) requestBudget);
+                stats.put("tokenBudget", (int) tokenBudget);
+                stats.put("overloads", overloads);
+                return stats;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double minutes = (now - lastRefillNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+            lastRefillNanos = now;
+            requestBudget = Math.min(requestsPerMinute, requestBudget + minutes * requestsPerMinute);
+            tokenBudget = Math.min(tokensPerMinute, tokenBudget + minutes * tokensPerMinute);
+        }
+
+        private long nanosUntilBudget(int cost) {
+            double requestMinutes = Math.max(0, 1 - requestBudget) / requestsPerMinute;
+            double tokenMinutes = Math.max(0, cost - tokenBudget) / tokensPerMinute;
+            return Math.max(1, (long) (Math.max(requestMinutes, tokenMinutes) * TimeUnit.MINUTES.toNanos(1)));
+        }
+
+        private void signalHead() {
+            Waiter head = queue.peek();
+            if (head != null) {
+                head.condition.signal();
+            }
+        }
+
+        private void signal(Waiter waiter) {
+            lock.lock();
+            try {
+                waiter.condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package com.fastgpt.ai.service.impl;
 
 import com.fastgpt.ai.dto.KbDataDTO;
+import com.fastgpt.ai.dto.LlmCacheRequest;
+import com.fastgpt.ai.dto.request.VectorSearchRequest;
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.repository.KnowledgeBaseRepository;
 import com.fastgpt.ai.service.AiService;
+import com.fastgpt.ai.service.ChatConfigService;
+import com.fastgpt.ai.service.LlmResponseCacheService;
 import com.fastgpt.ai.service.RagService;
 import com.fastgpt.ai.service.VectorService;
+import com.fastgpt.ai.util.ScatterGather;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of Retrieval Augmented Generation (RAG) service
@@ -20,6 +34,34 @@ public class RagServiceImpl implements RagService {
     
     private final VectorService vectorService;
     private final AiService aiService;
+    private final ChatConfigService chatConfigService;
+    private final LlmResponseCacheService llmResponseCacheService;
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    
+    // Embeddings and knowledge base searches in flight across all RAG requests
+    @Value("${rag.retrieval.concurrency:8}")
+    private int retrievalConcurrency;
+    
+    // Time for embedding the query and searching every knowledge base; later results are dropped
+    @Value("${rag.retrieval.timeout-ms:5000}")
+    private long retrievalTimeoutMs;
+    
+    private ExecutorService retrievalExecutor;
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        retrievalExecutor = Executors.newFixedThreadPool(retrievalConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "rag-retrieval-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        retrievalExecutor.shutdownNow();
+    }
 
     @Override
     public Map<String, Object> getRagResponse(String query, List<String> kbIds, Map<String, Object> extraParams) {
@@ -43,8 +85,25 @@ public class RagServiceImpl implements RagService {
             // Create the complete prompt with context
             String fullPrompt = createRagPrompt(query, formattedContext, systemPrompt);
             
-            // Generate answer using AI service
-            String answer = aiService.generateText(fullPrompt);
+            // Generate answer using AI service; FAQ-style questions are served from the response cache
+            String appId = (String) extraParams.get("appId");
+            Map<String, Object> modelConfig = chatConfigService.getModelConfig(appId);
+            List<Map<String, String>> messages = List.of(Map.of("role", "user", "content", fullPrompt));
+            
+            LlmCacheRequest cacheRequest = LlmCacheRequest.builder()
+                    .appId(appId)
+                    .teamId((String) extraParams.get("teamId"))
+                    .userId((String) extraParams.get("userId"))
+                    .model(String.valueOf(modelConfig.getOrDefault("model", "")))
+                    .params(modelConfig)
+                    .messages(messages)
+                    .query(query)
+                    .contextHash(llmResponseCacheService.hash(systemPrompt, formattedContext))
+                    .bypass(Boolean.TRUE.equals(extraParams.get("bypassCache")))
+                    .build();
+            
+            String answer = llmResponseCacheService.getOrGenerate(cacheRequest,
+                    () -> aiService.generateResponse(messages, null, modelConfig));
             
             // Prepare result with answer and sources
             result.put("answer", answer);
@@ -63,48 +122,54 @@ public class RagServiceImpl implements RagService {
     }
     
     /**
-     * Perform retrieval to find relevant context for a query
+     * Retrieve the best matches of a query across knowledge bases
+     * The query is embedded once per embedding model and every knowledge base is searched
+     * concurrently. Knowledge bases that fail or miss the deadline are left out, so a slow one
+     * cannot hold back the others' results.
      */
     private List<KbDataDTO> retrieveContext(String query, List<String> kbIds, int limit, double minScore) {
-        List<KbDataDTO> allResults = new ArrayList<>();
+        List<KnowledgeBase> knowledgeBases = knowledgeBaseRepository.findByKbIdIn(kbIds);
+        if (knowledgeBases.size() < new HashSet<>(kbIds).size()) {
+            Set<String> missing = new LinkedHashSet<>(kbIds);
+            knowledgeBases.forEach(kb -> missing.remove(kb.getKbId()));
+            log.warn("Knowledge bases not found for retrieval: {}", missing);
+        }
+        if (knowledgeBases.isEmpty()) {
+            return new ArrayList<>();
+        }
         
-        for (String kbId : kbIds) {
-            try {
-                log.info("Executing vector search for kbId: {}", kbId);
-                
-                // Prepare vector search request
-                Map<String, Object> vectorSearchRequest = new HashMap<>();
-                vectorSearchRequest.put("query", query);
-                vectorSearchRequest.put("kbId", kbId);
-                vectorSearchRequest.put("limit", limit);
-                vectorSearchRequest.put("minScore", minScore);
-                
-                // Execute vector search
-                List<KbDataDTO> kbResults = vectorService.search(vectorSearchRequest);
-                allResults.addAll(kbResults);
-                
-                log.info("Retrieved {} results from kbId: {}", kbResults.size(), kbId);
-            } catch (Exception e) {
-                log.error("Error searching kbId {}: {}", kbId, e.getMessage(), e);
+        try (ScatterGather retrieval = ScatterGather.start("Knowledge base retrieval", retrievalTimeoutMs)) {
+            Map<String, CompletableFuture<List<Float>>> embeddings = new HashMap<>();
+            Map<String, CompletableFuture<List<KbDataDTO>>> searches = new LinkedHashMap<>();
+            for (KnowledgeBase kb : knowledgeBases) {
+                String model = kb.getVectorModel();
+                CompletableFuture<List<Float>> embedding = embeddings.computeIfAbsent(model != null ? model : "",
+                        key -> retrieval.submit(() -> vectorService.generateEmbedding(query, model), retrievalExecutor));
+                VectorSearchRequest request = VectorSearchRequest.builder()
+                        .kbId(kb.getKbId())
+                        .query(query)
+                        .limit(limit)
+                        .minScore(minScore)
+                        .useRawQuery(false)
+                        .build();
+                searches.put(kb.getKbId(), retrieval.then(embedding, queryVector -> {
+                    List<KbDataDTO> kbResults = vectorService.search(request.toBuilder().queryVector(queryVector).build());
+                    log.info("Retrieved {} results from kbId: {}", kbResults.size(), kb.getKbId());
+                    return kbResults.stream()
+                            .filter(doc -> doc.getScore() != null && doc.getScore() >= minScore)
+                            .toList();
+                }, retrievalExecutor));
             }
+            
+            // One heap over every knowledge base's results keeps the global top matches
+            return retrieval.gather(searches, limit, KbDataDTO::getScore, (kbId, error) -> {
+                if (error == null) {
+                    log.warn("Knowledge base {} missed the retrieval deadline of {}ms", kbId, retrievalTimeoutMs);
+                } else {
+                    log.error("Error searching kbId {}: {}", kbId, error.getMessage(), error);
+                }
+            });
         }
-        
-        // Merge and rank all results
-        return mergeAndRankResults(allResults, limit, minScore);
-    }
-    
-    /**
-     * Merge and rank results from multiple knowledge bases
-     */
-    private List<KbDataDTO> mergeAndRankResults(List<KbDataDTO> allResults, int limit, double minScore) {
-        // Sort by score (highest first)
-        allResults.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
-        
-        // Filter by minimum score and limit results
-        return allResults.stream()
-                .filter(doc -> doc.getScore() >= minScore)
-                .limit(limit)
-                .toList();
     }
     
     /**
@@ -0,0 +1,592 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.service.StreamRelayService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis Stream based implementation of the stream relay
+ * Each instance reads all of its open session streams with a single blocking XREAD and fans
+ * the events out to all of its local emitters, so any instance can serve reconnects and watchers.
+ * Events are written to the emitters of a session in order on a small delivery pool, so a slow
+ * client does not hold up the reader or other sessions. Cancel requests are broadcast over a
+ * pub/sub channel to the instance running the session.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StreamRelayServiceImpl implements StreamRelayService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // Keys for Redis
+    private static final String STREAM_KEY_PREFIX = "stream:session:";
+    private static final String STREAM_END_KEY_PREFIX = "stream:session:end:";
+    private static final String STREAM_OWNER_KEY_PREFIX = "stream:session:owner:";
+    private static final String STREAM_WATCHERS_KEY_PREFIX = "stream:session:watchers:";
+    // Pub/sub channel of cancel requests, the message is the session ID
+    private static final String CANCEL_CHANNEL = "stream:session:cancel";
+
+    // Record fields
+    private static final String FIELD_EVENT = "event";
+    private static final String FIELD_DATA = "data";
+    private static final String END_EVENT = "__end";
+
+    // Stream TTL while running (1 hour) and after completion (5 minutes, for late reconnects)
+    private static final Duration STREAM_TTL = Duration.ofHours(1);
+    private static final Duration COMPLETED_STREAM_TTL = Duration.ofMinutes(5);
+    // Approximate maximum number of events kept per session, trimmed by XADD itself
+    private static final XAddOptions TRIM_OPTIONS = XAddOptions.maxlen(10000).approximateTrimming(true);
+    // Maximum number of events read per XREAD
+    private static final int READ_BATCH_SIZE = 100;
+
+    @Value("${stream.relay.enabled:true}")
+    private boolean relayEnabled;
+
+    // How long one XREAD blocks; also the longest delay before a newly opened session is read
+    @Value("${stream.relay.poll-timeout-ms:250}")
+    private long pollTimeoutMs;
+
+    @Value("${stream.relay.delivery-threads:8}")
+    private int deliveryThreads;
+
+    // Session relays on this instance by session ID
+    private final Map<String, SessionRelay> sessionRelays = new ConcurrentHashMap<>();
+    // Session owners when the relay is disabled
+    private final Map<String, String> localOwners = new ConcurrentHashMap<>();
+    // Cancel handlers of the sessions running on this instance
+    private final Map<String, Runnable> cancelHandlers = new ConcurrentHashMap<>();
+
+    // Signalled when a session relay is opened while the reader is idle
+    private final Object readerSignal = new Object();
+    private volatile boolean running;
+    private Thread reader;
+    private ExecutorService deliveryExecutor;
+    private RedisMessageListenerContainer cancelListener;
+
+    @PostConstruct
+    public void init() {
+        if (!relayEnabled) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "stream-relay-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        reader = new Thread(this::readLoop, "stream-relay-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        cancelListener = new RedisMessageListenerContainer();
+        cancelListener.setConnectionFactory(stringRedisTemplate.getRequiredConnectionFactory());
+        cancelListener.addMessageListener((message, pattern) ->
+                handleCancelRequest(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CANCEL_CHANNEL));
+        cancelListener.afterPropertiesSet();
+        cancelListener.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (reader != null) {
+            reader.interrupt();
+        }
+        if (deliveryExecutor != null) {
+            deliveryExecutor.shutdownNow();
+        }
+        if (cancelListener != null) {
+            try {
+                cancelListener.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to stop the stream cancel listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void open(String sessionId, String ownerId) {
+        if (!relayEnabled) {
+            localOwners.put(sessionId, ownerId);
+            return;
+        }
+        stringRedisTemplate.opsForValue().set(STREAM_OWNER_KEY_PREFIX + sessionId, ownerId, STREAM_TTL);
+    }
+
+    @Override
+    public String getOwner(String sessionId) {
+        if (!relayEnabled) {
+            return localOwners.get(sessionId);
+        }
+        return stringRedisTemplate.opsForValue().get(STREAM_OWNER_KEY_PREFIX + sessionId);
+    }
+
+    @Override
+    public String publish(String sessionId, String eventName, Object data) {
+        String payload = serialize(data);
+
+        if (!relayEnabled) {
+            SessionRelay relay = sessionRelays.get(sessionId);
+            if (relay != null) {
+                relay.deliver(null, eventName, payload);
+            }
+            return null;
+        }
+
+        // XADD with MAXLEN ~ and the TTL refresh in one round trip
+        String key = STREAM_KEY_PREFIX + sessionId;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.xAdd(StreamRecords.string(Map.of(FIELD_EVENT, eventName, FIELD_DATA, payload)).withStreamKey(key),
+                    TRIM_OPTIONS);
+            redis.expire(key, STREAM_TTL.getSeconds());
+            return null;
+        });
+
+        Object recordId = results.isEmpty() ? null : results.get(0);
+        return recordId instanceof RecordId ? ((RecordId) recordId).getValue() : null;
+    }
+
+    @Override
+    public void complete(String sessionId) {
+        if (!relayEnabled) {
+            localOwners.remove(sessionId);
+            SessionRelay relay = sessionRelays.remove(sessionId);
+            if (relay != null) {
+                relay.completeAll();
+            }
+            return;
+        }
+
+        String key = STREAM_KEY_PREFIX + sessionId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.xAdd(StreamRecords.string(Map.of(FIELD_EVENT, END_EVENT, FIELD_DATA, "")).withStreamKey(key),
+                    TRIM_OPTIONS);
+            redis.set(STREAM_END_KEY_PREFIX + sessionId, "1", Expiration.from(COMPLETED_STREAM_TTL), SetOption.upsert());
+            redis.expire(key, COMPLETED_STREAM_TTL.getSeconds());
+            redis.expire(STREAM_OWNER_KEY_PREFIX + sessionId, COMPLETED_STREAM_TTL.getSeconds());
+            redis.expire(STREAM_WATCHERS_KEY_PREFIX + sessionId, COMPLETED_STREAM_TTL.getSeconds());
+            return null;
+        });
+    }
+
+    @Override
+    public Runnable attach(String sessionId, SseEmitter emitter, String lastEventId) {
+        SessionRelay relay = sessionRelays.get(sessionId);
+        if (relay == null) {
+            // Opened outside the map, so its Redis lookup never blocks other sessions
+            SessionRelay opened = openSessionRelay(sessionId);
+            relay = sessionRelays.putIfAbsent(sessionId, opened);
+            if (relay == null) {
+                relay = opened;
+                synchronized (readerSignal) {
+                    readerSignal.notifyAll();
+                }
+            }
+        }
+        Subscriber subscriber = new Subscriber(emitter);
+
+        // Hold the subscriber lock while catching up, so live events wait until the backlog is sent
+        synchronized (subscriber) {
+            relay.subscribers.add(subscriber);
+            subscriber.lastDeliveredId = lastEventId != null && !lastEventId.isEmpty()
+                    ? normalizeId(lastEventId) : relay.startId;
+            countWatcher(sessionId, 1);
+
+            // Also run without a Last-Event-ID, so a subscriber of a finished session completes at once
+            if (relayEnabled && !sendBacklog(sessionId, subscriber)) {
+                detach(sessionId, subscriber);
+                return () -> { };
+            }
+        }
+
+        log.debug("Attached emitter to session stream: {}, subscribers: {}", sessionId, relay.subscribers.size());
+        return () -> detach(sessionId, subscriber);
+    }
+
+    @Override
+    public int getWatcherCount(String sessionId) {
+        if (!relayEnabled) {
+            SessionRelay relay = sessionRelays.get(sessionId);
+            return relay != null ? relay.subscribers.size() : 0;
+        }
+
+        String count = stringRedisTemplate.opsForValue().get(STREAM_WATCHERS_KEY_PREFIX + sessionId);
+        return count != null ? Math.max(0, Integer.parseInt(count)) : 0;
+    }
+
+    @Override
+    public void requestCancel(String sessionId) {
+        if (!relayEnabled) {
+            handleCancelRequest(sessionId);
+            return;
+        }
+        stringRedisTemplate.convertAndSend(CANCEL_CHANNEL, sessionId);
+    }
+
+    @Override
+    public Runnable onCancelRequested(String sessionId, Runnable handler) {
+        cancelHandlers.put(sessionId, handler);
+        return () -> cancelHandlers.remove(sessionId, handler);
+    }
+
+    @Override
+    public boolean isActive(String sessionId) {
+        if (!relayEnabled) {
+            return sessionRelays.containsKey(sessionId);
+        }
+
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(STREAM_KEY_PREFIX + sessionId))
+                && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(STREAM_END_KEY_PREFIX + sessionId));
+    }
+
+    /**
+     * Run the cancel handler of a session if it is running on this instance
+     */
+    private void handleCancelRequest(String sessionId) {
+        Runnable handler = cancelHandlers.get(sessionId);
+        if (handler == null) {
+            return;
+        }
+        try {
+            handler.run();
+            log.debug("Cancelled session {} on request", sessionId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to cancel session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Create the relay for a session on this instance
+     * Reading starts after the newest existing event, or just before the end event of a finished
+     * session so that it is still read; subscribers catch up from the backlog
+     */
+    private SessionRelay openSessionRelay(String sessionId) {
+        SessionRelay relay = new SessionRelay(sessionId);
+        if (!relayEnabled) {
+            return relay;
+        }
+
+        List<MapRecord<String, Object, Object>> newest = stringRedisTemplate.opsForStream()
+                .reverseRange(STREAM_KEY_PREFIX + sessionId, Range.unbounded(), Limit.limit().count(2));
+        int start = newest != null && !newest.isEmpty()
+                && END_EVENT.equals(String.valueOf(newest.get(0).getValue().get(FIELD_EVENT))) ? 1 : 0;
+        relay.startId = newest == null || newest.size() <= start ? "0-0" : newest.get(start).getId().getValue();
+        relay.readId = relay.startId;
+
+        log.debug("Opened stream relay for session: {} from {}", sessionId, relay.startId);
+        return relay;
+    }
+
+    /**
+     * Read all open session streams of this instance with one blocking XREAD at a time
+     */
+    @SuppressWarnings("unchecked")
+    private void readLoop() {
+        while (running) {
+            try {
+                List<SessionRelay> relays = new ArrayList<>(sessionRelays.values());
+                if (relays.isEmpty()) {
+                    synchronized (readerSignal) {
+                        if (sessionRelays.isEmpty()) {
+                            readerSignal.wait(1000);
+                        }
+                    }
+                    continue;
+                }
+
+                StreamOffset<String>[] offsets = relays.stream()
+                        .map(relay -> StreamOffset.create(STREAM_KEY_PREFIX + relay.sessionId, ReadOffset.from(relay.readId)))
+                        .toArray(StreamOffset[]::new);
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        StreamReadOptions.empty().count(READ_BATCH_SIZE).block(Duration.ofMillis(pollTimeoutMs)),
+                        offsets);
+                if (records == null) {
+                    continue;
+                }
+
+                for (MapRecord<String, Object, Object> record : records) {
+                    SessionRelay relay = sessionRelays.get(record.getStream().substring(STREAM_KEY_PREFIX.length()));
+                    String recordId = record.getId().getValue();
+                    if (relay == null || compareIds(recordId, relay.readId) <= 0) {
+                        continue;
+                    }
+                    relay.readId = recordId;
+                    Object data = record.getValue().get(FIELD_DATA);
+                    relay.enqueue(recordId, String.valueOf(record.getValue().get(FIELD_EVENT)),
+                            data != null ? data.toString() : "");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Failed to read session streams: {}", e.getMessage());
+                try {
+                    Thread.sleep(Math.max(pollTimeoutMs, 1000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the events a reconnecting or watching client has not seen yet
+     * @return false if the session has already ended, after completing the subscriber, or the emitter is gone
+     */
+    private boolean sendBacklog(String sessionId, Subscriber subscriber) {
+        List<MapRecord<String, Object, Object>> backlog = stringRedisTemplate.opsForStream()
+                .range(STREAM_KEY_PREFIX + sessionId,
+                        Range.rightUnbounded(Range.Bound.inclusive(subscriber.lastDeliveredId)));
+
+        if (backlog == null) {
+            return true;
+        }
+
+        for (MapRecord<String, Object, Object> record : backlog) {
+            String eventName = String.valueOf(record.getValue().get(FIELD_EVENT));
+            if (END_EVENT.equals(eventName)) {
+                subscriber.complete();
+                return false;
+            }
+            Object data = record.getValue().get(FIELD_DATA);
+            if (!subscriber.send(record.getId().getValue(), eventName, data != null ? data.toString() : "")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Detach a subscriber and close the session relay when it was the last one
+     */
+    private void detach(String sessionId, Subscriber subscriber) {
+        SessionRelay relay = sessionRelays.get(sessionId);
+        if (relay == null) {
+            return;
+        }
+
+        relay.release(subscriber);
+        if (relay.subscribers.isEmpty() && sessionRelays.remove(sessionId, relay)) {
+            relay.close();
+        }
+    }
+
+    /**
+     * Count emitters attached to a session on all instances
+     */
+    private void countWatcher(String sessionId, int delta) {
+        if (!relayEnabled) {
+            return;
+        }
+        String key = STREAM_WATCHERS_KEY_PREFIX + sessionId;
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                redis.incrBy(key, delta);
+                redis.expire(key, STREAM_TTL.getSeconds());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to update watcher count of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private String serialize(Object data) {
+        if (data instanceof String) {
+            return (String) data;
+        }
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize stream event data: {}", e.getMessage());
+            return String.valueOf(data);
+        }
+    }
+
+    /**
+     * Normalize an event ID to the full "ms-seq" form
+     */
+    private static String normalizeId(String id) {
+        return id.indexOf('-') >= 0 ? id : id + "-0";
+    }
+
+    /**
+     * Compare two Redis stream record IDs
+     */
+    private static int compareIds(String left, String right) {
+        String[] l = normalizeId(left).split("-", 2);
+        String[] r = normalizeId(right).split("-", 2);
+        int result = Long.compare(Long.parseLong(l[0]), Long.parseLong(r[0]));
+        return result != 0 ? result : Long.compare(Long.parseLong(l[1]), Long.parseLong(r[1]));
+    }
+
+    /**
+     * Relay of one session stream to the local emitters of this instance
+     */
+    private class SessionRelay {
+        private final String sessionId;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private volatile String startId = "0-0";
+        // Newest event read from the session stream, written by the reader only
+        private volatile String readId = "0-0";
+        // Events read but not yet delivered, drained by one delivery thread at a time
+        private final Queue<String[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        SessionRelay(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void enqueue(String recordId, String eventName, String data) {
+            pending.add(new String[] {recordId, eventName, data});
+            if (draining.compareAndSet(false, true)) {
+                deliveryExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                String[] event;
+                while ((event = pending.poll()) != null) {
+                    try {
+                        deliver(event[0], event[1], event[2]);
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to deliver stream event for session {}: {}", sessionId, e.getMessage());
+                    }
+                }
+                draining.set(false);
+            } while (!pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        void deliver(String recordId, String eventName, String data) {
+            if (END_EVENT.equals(eventName)) {
+                if (sessionRelays.remove(sessionId, this)) {
+                    completeAll();
+                }
+                return;
+            }
+
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.send(recordId, eventName, data)) {
+                    release(subscriber);
+                }
+            }
+        }
+
+        /**
+         * Remove a subscriber, counting it out once however often it is released
+         */
+        void release(Subscriber subscriber) {
+            if (subscribers.remove(subscriber)) {
+                countWatcher(sessionId, -1);
+            }
+        }
+
+        void completeAll() {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.complete();
+            }
+            subscribers.clear();
+            close();
+        }
+
+        void close() {
+            // The reader stops including the session once the relay is out of the session map
+            pending.clear();
+            log.debug("Closed stream relay for session: {}", sessionId);
+        }
+    }
+
+    /**
+     * A local emitter attached to a session stream
+     */
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private String lastDeliveredId = "0-0";
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Send an event unless it has already been delivered
+         * @return false if the emitter is gone
+         */
+        synchronized boolean send(String recordId, String eventName, String data) {
+            if (recordId != null && compareIds(recordId, lastDeliveredId) <= 0) {
+                return true;
+            }
+
+            try {
+                SseEmitter.SseEventBuilder event = SseEmitter.event()
+                        .name(eventName)
+                        .data(data, MediaType.APPLICATION_JSON);
+                if (recordId != null) {
+                    event.id(recordId);
+                    lastDeliveredId = recordId;
+                }
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Failed to relay stream event, dropping emitter: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        synchronized void complete() {
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // Emitter already completed
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.fastgpt.ai.service.impl;
 
+import com.fastgpt.ai.service.StreamRelayService;
 import com.fastgpt.ai.service.StreamService;
 import com.fastgpt.ai.service.WorkflowService;
 import lombok.RequiredArgsConstructor;
@@ -24,6 +25,7 @@ import java.util.function.Consumer;
 public class StreamServiceImpl implements StreamService {
     
     private final WorkflowService workflowService;
+    private final StreamRelayService streamRelayService;
     
     // Default timeout: 30 minutes
     private static final long DEFAULT_TIMEOUT = 30 * 60 * 1000L;
@@ -193,11 +195,19 @@ public class StreamServiceImpl implements StreamService {
     }
     
     @Override
-    public SseEmitter streamWorkflowExecution(String workflowId, Map<String, Object> inputs) {
+    public SseEmitter streamWorkflowExecution(String workflowId, String userId, Map<String, Object> inputs) {
         SseEmitter emitter = createEmitter();
+        String executionId = UUID.randomUUID().toString();
+        
+        // Record the owner before the first event, so only this user can watch the execution
+        streamRelayService.open(executionId, userId);
+        
+        // Relay the execution stream to this emitter; other instances can attach with the execution ID
+        Runnable detach = streamRelayService.attach(executionId, emitter, null);
         
         // Send initial acknowledgment
-        sendData(emitter, "start", Map.of(
+        streamRelayService.publish(executionId, "start", Map.of(
+                "executionId", executionId,
                 "workflowId", workflowId,
                 "status", "started"
         ));
@@ -205,26 +215,28 @@ public class StreamServiceImpl implements StreamService {
         // Execute the workflow in a separate thread
         Thread workflowThread = new Thread(() -> {
             try {
-                // Create a progress consumer that will send updates to the client
+                // Create a progress consumer that will publish updates to the execution stream
                 Consumer<Map<String, Object>> progressConsumer = progress -> 
-                    sendData(emitter, "progress", progress);
+                    streamRelayService.publish(executionId, "progress", progress);
                 
                 // Execute the workflow with streaming
                 Map<String, Object> result = workflowService.executeWorkflowWithStream(
                         workflowId, inputs, progressConsumer);
                 
-                // Complete the emitter with the final result
-                complete(emitter, Map.of(
+                // Complete the stream with the final result
+                streamRelayService.publish(executionId, "complete", Map.of(
                         "status", "completed",
                         "result", result
                 ));
+                streamRelayService.complete(executionId);
             } catch (Exception e) {
                 log.error("Error during workflow execution: {}", workflowId, e);
-                sendData(emitter, "error", Map.of(
-                        "message", e.getMessage(),
+                streamRelayService.publish(executionId, "error", Map.of(
+                        "message", e.getMessage() != null ? e.getMessage() : "",
                         "type", e.getClass().getSimpleName()
                 ));
-                completeWithError(emitter, e);
+                streamRelayService.complete(executionId);
+                detach.run();
             }
         });
         
@@ -233,4 +245,27 @@ public class StreamServiceImpl implements StreamService {
         
         return emitter;
     }
-} 
\ No newline at end of file
+    
+    @Override
+    public SseEmitter watchExecution(String executionId, String userId, String lastEventId) {
+        // Unknown and foreign executions look the same to the caller
+        String ownerId = streamRelayService.getOwner(executionId);
+        if (ownerId == null || !ownerId.equals(userId)) {
+            return null;
+        }
+        
+        SseEmitter emitter = new SseEmitter(DEFAULT_TIMEOUT);
+        
+        // Replay from the beginning unless the client resumes from a known event
+        Runnable detach = streamRelayService.attach(executionId, emitter,
+                lastEventId != null && !lastEventId.isEmpty() ? lastEventId : "0");
+        
+        emitter.onTimeout(detach);
+        emitter.onCompletion(detach);
+        emitter.onError(e -> detach.run());
+        
+        startHeartbeat(emitter, HEARTBEAT_INTERVAL);
+        
+        return emitter;
+    }
+}
\ No newline at end of file
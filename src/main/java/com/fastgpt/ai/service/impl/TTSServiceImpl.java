@@ -1,9 +1,9 @@
 package com.fastgpt.ai.service.impl;
 
+import com.fastgpt.ai.service.LlmRouterService;
 import com.fastgpt.ai.service.TTSService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
@@ -25,12 +25,7 @@ import java.util.Map;
 public class TTSServiceImpl implements TTSService {
 
     private final RestTemplate restTemplate;
-
-    @Value("${spring.ai.openai.api-key}")
-    private String openaiApiKey;
-    
-    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
-    private String openaiBaseUrl;
+    private final LlmRouterService llmRouterService;
     
     private static final String DEFAULT_TTS_MODEL = "tts-1";
     private static final String DEFAULT_TTS_HD_MODEL = "tts-1-hd";
@@ -80,11 +75,6 @@ public class TTSServiceImpl implements TTSService {
         }
         
         try {
-            // Prepare headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openaiApiKey);
-            
             // Prepare request body
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("model", model);
@@ -93,17 +83,20 @@ public class TTSServiceImpl implements TTSService {
             requestBody.put("speed", speed);
             requestBody.put("response_format", "mp3");
             
-            // Create HTTP entity
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
-            
-            // Make API call with byte array response
-            String endpoint = openaiBaseUrl + "/v1/audio/speech";
-            ResponseEntity<byte[]> responseEntity = restTemplate.exchange(
-                endpoint,
-                HttpMethod.POST,
-                requestEntity,
-                byte[].class
-            );
+            // Make API call with byte array response on the best available endpoint
+            ResponseEntity<byte[]> responseEntity = llmRouterService.execute(LlmRouterService.OPERATION_AUDIO, false, endpoint -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.setBearerAuth(endpoint.getApiKey());
+                
+                HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
+                return restTemplate.exchange(
+                    endpoint.getBaseUrl() + "/v1/audio/speech",
+                    HttpMethod.POST,
+                    requestEntity,
+                    byte[].class
+                );
+            });
             
             // Check if successful
             if (responseEntity.getStatusCode() == HttpStatus.OK && responseEntity.getBody() != null) {
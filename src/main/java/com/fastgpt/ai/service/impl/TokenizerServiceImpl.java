@@ -0,0 +1,223 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.util.BpeEncoding;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BPE tokenizer backed by a tiktoken rank file
+ * The vocabulary is loaded from tokenizer.vocab-location. Without it, token counts fall back
+ * to a CJK-aware estimate and encode/decode are unavailable; setting tokenizer.allow-estimate
+ * to false makes startup fail instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenizerServiceImpl implements TokenizerService {
+
+    private final ResourceLoader resourceLoader;
+
+    @Value("${tokenizer.encoding:cl100k_base}")
+    private String encodingName;
+
+    @Value("${tokenizer.vocab-location:classpath:tokenizer/${tokenizer.encoding:cl100k_base}.tiktoken}")
+    private String vocabLocation;
+
+    // Start without a vocabulary, estimating counts, instead of failing
+    @Value("${tokenizer.allow-estimate:true}")
+    private boolean allowEstimate;
+
+    // Encoded pieces kept in the LRU
+    @Value("${tokenizer.cache-size:10000}")
+    private int cacheSize;
+
+    // Tokens added per chat message and for the reply primer
+    private static final int TOKENS_PER_MESSAGE = 3;
+    private static final int TOKENS_PER_REPLY = 3;
+
+    private volatile BpeEncoding encoding;
+
+    @PostConstruct
+    public void init() {
+        Resource resource = resourceLoader.getResource(vocabLocation);
+        if (!resource.exists()) {
+            if (!allowEstimate) {
+                throw new IllegalStateException("Tokenizer vocabulary not found at " + vocabLocation
+                        + "; provide the rank file or set tokenizer.allow-estimate=true");
+            }
+            log.warn("Tokenizer vocabulary not found at {}, token counts are estimated; add the {} rank file "
+                    + "to count exactly", vocabLocation, encodingName);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (InputStream in = resource.getInputStream()) {
+            encoding = BpeEncoding.load(encodingName, in, cacheSize);
+            log.info("Loaded {} tokenizer with {} tokens in {}ms",
+                    encodingName, encoding.getVocabularySize(), System.currentTimeMillis() - start);
+        } catch (IOException | IllegalArgumentException e) {
+            if (!allowEstimate) {
+                throw new IllegalStateException("Failed to load tokenizer vocabulary from " + vocabLocation, e);
+            }
+            log.error("Failed to load tokenizer vocabulary from {}, token counts are estimated", vocabLocation, e);
+        }
+    }
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        BpeEncoding current = encoding;
+        return current != null ? current.count(text) : estimate(text);
+    }
+
+    @Override
+    public int countMessageTokens(List<Map<String, String>> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        int tokens = TOKENS_PER_REPLY;
+        for (Map<String, String> message : messages) {
+            tokens += TOKENS_PER_MESSAGE;
+            tokens += countTokens(message.get("role"));
+            tokens += countTokens(message.get("content"));
+        }
+        return tokens;
+    }
+
+    @Override
+    public int[] encode(String text) {
+        return requireEncoding().encode(text);
+    }
+
+    @Override
+    public String decode(int[] tokens) {
+        return requireEncoding().decode(tokens);
+    }
+
+    @Override
+    public List<String> splitByTokens(String text, int chunkTokens, int overlapTokens) {
+        if (chunkTokens <= 0) {
+            throw new IllegalArgumentException("chunkTokens must be positive");
+        }
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return chunks;
+        }
+        int overlap = Math.max(0, Math.min(overlapTokens, chunkTokens - 1));
+
+        BpeEncoding current = encoding;
+        if (current == null) {
+            return splitByEstimate(text, chunkTokens, overlap);
+        }
+
+        BpeEncoding.IntBuffer charEnds = new BpeEncoding.IntBuffer(text.length() / 3 + 8);
+        int tokenCount = current.encode(text, charEnds).length;
+
+        int start = 0;
+        int startChar = 0;
+        while (start < tokenCount) {
+            // Back off to the last token that ends on a character boundary
+            int end = Math.min(start + chunkTokens, tokenCount);
+            while (end > start + 1 && charEnds.get(end - 1) < 0) {
+                end--;
+            }
+            // A single character can span several tokens; extend forward to finish it
+            while (end < tokenCount && charEnds.get(end - 1) < 0) {
+                end++;
+            }
+            int endChar = charEnds.get(end - 1);
+            chunks.add(text.substring(startChar, endChar));
+            if (end == tokenCount) {
+                break;
+            }
+
+            // Step back for the overlap, landing on a character boundary
+            int next = Math.max(start + 1, end - overlap);
+            while (next < end && charEnds.get(next - 1) < 0) {
+                next++;
+            }
+            start = next;
+            startChar = charEnds.get(next - 1);
+        }
+        return chunks;
+    }
+
+    @Override
+    public boolean isExact() {
+        return encoding != null;
+    }
+
+    private BpeEncoding requireEncoding() {
+        BpeEncoding current = encoding;
+        if (current == null) {
+            throw new IllegalStateException("Tokenizer vocabulary is not loaded from " + vocabLocation);
+        }
+        return current;
+    }
+
+    /**
+     * Split by estimated token weights when no vocabulary is loaded
+     */
+    private List<String> splitByEstimate(String text, int chunkTokens, int overlap) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = start;
+            double weight = 0;
+            while (end < text.length() && weight + weightOf(text.charAt(end)) <= chunkTokens) {
+                weight += weightOf(text.charAt(end));
+                end++;
+            }
+            end = Math.max(end, start + 1);
+            chunks.add(text.substring(start, end));
+            if (end >= text.length()) {
+                break;
+            }
+
+            int next = end;
+            double overlapWeight = 0;
+            while (next > start + 1 && overlapWeight + weightOf(text.charAt(next - 1)) <= overlap) {
+                overlapWeight += weightOf(text.charAt(next - 1));
+                next--;
+            }
+            start = next;
+        }
+        return chunks;
+    }
+
+    /**
+     * Estimate tokens when no vocabulary is loaded
+     * CJK characters are about one token each in cl100k; other text averages four characters per token
+     */
+    private static int estimate(String text) {
+        double tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            tokens += weightOf(text.charAt(i));
+        }
+        return (int) Math.ceil(tokens);
+    }
+
+    private static double weightOf(char ch) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(ch);
+        if (script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL) {
+            return 1.0;
+        }
+        return 0.25;
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.stereotype.Service;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 资源使用统计服务实现
@@ -17,6 +19,9 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class UsageTrackingServiceImpl implements UsageTrackingService {
 
+    // 各应用的缓存统计：命中、未命中、节省的token数
+    private final Map<String, CacheUsage> cacheUsages = new ConcurrentHashMap<>();
+
     @Override
     public void trackWorkflowUsage(
             String appName,
@@ -122,6 +127,41 @@ public class UsageTrackingServiceImpl implements UsageTrackingService {
         }
     }
     
+    @Override
+    public void trackCacheLookup(
+            String appId,
+            String teamId,
+            String userId,
+            String model,
+            String tier,
+            int savedTokens) {
+        
+        CacheUsage cacheUsage = cacheUsages.computeIfAbsent(appId != null ? appId : "", key -> new CacheUsage());
+        if (tier != null) {
+            cacheUsage.hits.increment();
+            cacheUsage.savedTokens.add(savedTokens);
+            log.debug("Cache hit tracked: app={}, team={}, user={}, model={}, tier={}, savedTokens={}",
+                    appId, teamId, userId, model, tier, savedTokens);
+        } else {
+            cacheUsage.misses.increment();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getCacheUsage(String appId) {
+        CacheUsage cacheUsage = cacheUsages.get(appId != null ? appId : "");
+        long hits = cacheUsage != null ? cacheUsage.hits.sum() : 0;
+        long misses = cacheUsage != null ? cacheUsage.misses.sum() : 0;
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("appId", appId);
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        result.put("savedTokens", cacheUsage != null ? cacheUsage.savedTokens.sum() : 0L);
+        return result;
+    }
+    
     /**
      * 计算API调用成本
      * 实际项目中应根据最新的定价策略计算
@@ -169,4 +209,13 @@ public class UsageTrackingServiceImpl implements UsageTrackingService {
         Object value = map.get(key);
         return value instanceof Map ? (Map<String, Object>) value : null;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 单个应用的缓存统计
+     */
+    private static class CacheUsage {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder savedTokens = new LongAdder();
+    }
+}
@@ -0,0 +1,219 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.config.VectorValueConverter;
+import com.fastgpt.ai.entity.KbData;
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.repository.KnowledgeBaseRepository;
+import com.fastgpt.ai.service.VectorEncodingService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rewrites legacy array vectors of kb_data as packed binary with raw documents and bulk updates
+ * Each update only applies while the vector is still an array, so concurrent writes through the
+ * converter are never overwritten.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorEncodingServiceImpl implements VectorEncodingService {
+
+    private final MongoTemplate mongoTemplate;
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+
+    @Value("${vector.encoding.format:float32}")
+    private String format;
+
+    @Value("${vector.encoding.migration.on-startup:true}")
+    private boolean migrateOnStartup;
+
+    @Value("${vector.encoding.migration.batch-size:500}")
+    private int batchSize;
+
+    // $type number of arrays
+    private static final int BSON_ARRAY = 4;
+
+    private final Map<String, MigrationStats> migrations = new ConcurrentHashMap<>();
+    // One migration at a time keeps the extra load on Mongo bounded
+    private final ExecutorService migrationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vector-encoding-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup && isBinary()) {
+            log.info("Queued vector encoding migration of {} knowledge bases", migrateAll());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrationExecutor.shutdownNow();
+    }
+
+    @Override
+    public boolean migrate(String kbId) {
+        if (!isBinary()) {
+            return false;
+        }
+        migrationExecutor.execute(() -> migrateKnowledgeBase(kbId));
+        return true;
+    }
+
+    @Override
+    public int migrateAll() {
+        if (!isBinary()) {
+            return 0;
+        }
+        List<KnowledgeBase> knowledgeBases = knowledgeBaseRepository.findAll();
+        knowledgeBases.forEach(kb -> migrate(kb.getKbId()));
+        return knowledgeBases.size();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> knowledgeBases = new LinkedHashMap<>();
+        migrations.forEach((kbId, stats) -> {
+            long before = stats.bytesBefore.get();
+            long after = stats.bytesAfter.get();
+            knowledgeBases.put(kbId, Map.of(
+                    "migrated", stats.documents.get(),
+                    "bytesBefore", before,
+                    "bytesAfter", after,
+                    "savedBytes", before - after,
+                    "savedRatio", before > 0 ? (double) (before - after) / before : 0.0,
+                    "running", stats.running));
+        });
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("format", format);
+        result.put("knowledgeBases", knowledgeBases);
+        return result;
+    }
+
+    private boolean isBinary() {
+        return !VectorValueConverter.FORMAT_ARRAY.equalsIgnoreCase(format);
+    }
+
+    /**
+     * Rewrite the array vectors of a knowledge base in batches ordered by _id
+     * Paging by _id skips documents that cannot be converted instead of reading them again.
+     */
+    private void migrateKnowledgeBase(String kbId) {
+        String collection = mongoTemplate.getCollectionName(KbData.class);
+        boolean half = VectorValueConverter.FORMAT_FLOAT16.equalsIgnoreCase(format);
+        MigrationStats stats = migrations.computeIfAbsent(kbId, id -> new MigrationStats());
+        stats.running = true;
+        long start = System.currentTimeMillis();
+        long migrated = 0;
+        try {
+            Object lastId = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                Criteria criteria = Criteria.where("kb_id").is(kbId).and("vector").type(BSON_ARRAY);
+                if (lastId != null) {
+                    criteria.and("_id").gt(lastId);
+                }
+                Query query = new Query(criteria).with(Sort.by("_id")).limit(batchSize);
+                query.fields().include("vector");
+                List<Document> documents = mongoTemplate.find(query, Document.class, collection);
+                if (documents.isEmpty()) {
+                    break;
+                }
+
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+                int updates = 0;
+                long before = 0;
+                long after = 0;
+                for (Document document : documents) {
+                    lastId = document.get("_id");
+                    List<Float> vector = toFloats(document.get("vector"));
+                    if (vector == null) {
+                        continue;
+                    }
+                    Binary binary = VectorValueConverter.encode(vector, half);
+                    bulk.updateOne(new Query(Criteria.where("_id").is(lastId).and("vector").type(BSON_ARRAY)),
+                            new Update().set("vector", binary));
+                    before += arrayBytes(vector.size());
+                    after += binaryBytes(binary);
+                    updates++;
+                }
+                if (updates > 0) {
+                    int modified = bulk.execute().getModifiedCount();
+                    // Documents changed in between were written by the converter already
+                    stats.documents.addAndGet(modified);
+                    stats.bytesBefore.addAndGet(before * modified / updates);
+                    stats.bytesAfter.addAndGet(after * modified / updates);
+                    migrated += modified;
+                }
+            }
+            log.info("Migrated {} vectors of knowledge base {} to {} in {}ms",
+                    migrated, kbId, format, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.warn("Failed to migrate vectors of knowledge base {}: {}", kbId, e.getMessage());
+        } finally {
+            stats.running = false;
+        }
+    }
+
+    // Null for elements that are not numbers
+    private static List<Float> toFloats(Object value) {
+        if (!(value instanceof List<?> list)) {
+            return null;
+        }
+        List<Float> vector = new ArrayList<>(list.size());
+        for (Object element : list) {
+            if (!(element instanceof Number number)) {
+                return null;
+            }
+            vector.add(number.floatValue());
+        }
+        return vector;
+    }
+
+    /**
+     * BSON size of an array of doubles: length and terminator, and per element a type byte,
+     * the decimal index as a C string and eight bytes
+     */
+    private static long arrayBytes(int dimensions) {
+        long bytes = 5;
+        for (int i = 0; i < dimensions; i++) {
+            bytes += 1 + String.valueOf(i).length() + 1 + 8;
+        }
+        return bytes;
+    }
+
+    // Length, subtype and data
+    private static long binaryBytes(Binary binary) {
+        return 5L + binary.getData().length;
+    }
+
+    private static class MigrationStats {
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong bytesBefore = new AtomicLong();
+        private final AtomicLong bytesAfter = new AtomicLong();
+        private volatile boolean running;
+    }
+}
@@ -0,0 +1,341 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.service.VectorIndexService;
+import com.fastgpt.ai.service.VectorStoreService;
+import com.fastgpt.ai.util.HnswIndex;
+import com.fastgpt.ai.util.MappedVectorStore;
+import com.fastgpt.ai.util.QuantizedVectors;
+import com.fastgpt.ai.util.VectorMatch;
+import com.fastgpt.ai.util.VectorMath;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorIndexServiceImpl implements VectorIndexService {
+
+    private final VectorStoreService vectorStoreService;
+
+    @Value("${vector.index.enabled:true}")
+    private boolean indexEnabled;
+
+    // Directory of the index snapshots, one file per knowledge base
+    @Value("${vector.index.dir:data/vector-index}")
+    private String indexDir;
+
+    @Value("${vector.index.m:16}")
+    private int defaultM;
+
+    @Value("${vector.index.ef-construction:200}")
+    private int defaultEfConstruction;
+
+    @Value("${vector.index.ef-search:100}")
+    private int defaultEfSearch;
+
+    // Searches of quantized knowledge bases walk the graph on the codes and re-rank this many
+    // candidates per requested match with exact vectors
+    @Value("${vector.quantization.rerank-factor:10}")
+    private int rerankFactor;
+
+    @Value("${vector.index.snapshot-interval-ms:300000}")
+    private long snapshotIntervalMs;
+
+    // Indexes built at once; searches of the others scan the vector store meanwhile
+    @Value("${vector.index.build-threads:2}")
+    private int buildThreads;
+
+    private final Map<String, IndexHolder> indexes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+    private ExecutorService buildExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!indexEnabled) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vector-index-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotAll, snapshotIntervalMs, snapshotIntervalMs,
+                TimeUnit.MILLISECONDS);
+        AtomicInteger threadCount = new AtomicInteger();
+        buildExecutor = Executors.newFixedThreadPool(buildThreads, runnable -> {
+            Thread thread = new Thread(runnable, "vector-index-build-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            buildExecutor.shutdownNow();
+            snapshotAll();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return indexEnabled && vectorStoreService.isEnabled();
+    }
+
+    @Override
+    public List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, Predicate<String> filter) {
+        if (!isEnabled()) {
+            return null;
+        }
+        MappedVectorStore store = vectorStoreService.acquireStore(kb.getKbId());
+        if (store == null) {
+            return null;
+        }
+        try {
+            if (store.getDimensions() != queryVector.size()) {
+                return null;
+            }
+            HnswIndex index = holder(kb.getKbId()).ready(kb, store);
+            if (index == null) {
+                return null;
+            }
+            int efSearch = kb.getHnswEfSearch() != null ? kb.getHnswEfSearch() : defaultEfSearch;
+            QuantizedVectors codes = vectorStoreService.getQuantized(kb, store);
+            if (codes != null) {
+                int candidates = (int) Math.min(Integer.MAX_VALUE, (long) limit * rerankFactor);
+                return index.search(VectorMath.toArray(queryVector), limit, efSearch, filter, codes, candidates);
+            }
+            return index.search(VectorMath.toArray(queryVector), limit, efSearch, filter);
+        } finally {
+            store.release();
+        }
+    }
+
+    @Override
+    public void add(String kbId, String dataId, List<Float> vector) {
+        if (!isEnabled() || vector == null || vector.isEmpty()) {
+            return;
+        }
+        IndexHolder holder = indexes.get(kbId);
+        if (holder != null) {
+            holder.catchUp();
+        }
+    }
+
+    @Override
+    public void remove(String kbId, String dataId) {
+        // Tombstones are read from the vector store, which the caller has already updated
+    }
+
+    @Override
+    public void drop(String kbId) {
+        IndexHolder holder = indexes.remove(kbId);
+        if (holder != null) {
+            holder.close();
+        }
+        try {
+            Files.deleteIfExists(snapshotPath(kbId));
+        } catch (IOException e) {
+            log.warn("Failed to delete vector index snapshot of knowledge base {}: {}", kbId, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        indexes.forEach((kbId, holder) -> {
+            HnswIndex index = holder.index;
+            if (index != null) {
+                stats.put(kbId, Map.of(
+                        "size", index.size(),
+                        "watermark", index.watermark(),
+                        "dimensions", index.getDimensions(),
+                        "m", index.getM(),
+                        "efConstruction", index.getEfConstruction(),
+                        "building", holder.building));
+            }
+        });
+        return stats;
+    }
+
+    private IndexHolder holder(String kbId) {
+        return indexes.computeIfAbsent(kbId, IndexHolder::new);
+    }
+
+    /**
+     * Write the changed indexes to disk
+     */
+    private void snapshotAll() {
+        indexes.forEach((kbId, holder) -> {
+            HnswIndex index = holder.index;
+            if (index == null || !holder.dirty) {
+                return;
+            }
+            try {
+                holder.dirty = false;
+                Files.createDirectories(Paths.get(indexDir));
+                index.save(snapshotPath(kbId));
+                log.debug("Saved vector index of knowledge base {} with {} entries", kbId, index.size());
+            } catch (IOException e) {
+                holder.dirty = true;
+                log.warn("Failed to save vector index of knowledge base {}: {}", kbId, e.getMessage());
+            }
+        });
+    }
+
+    private Path snapshotPath(String kbId) {
+        return Paths.get(indexDir, kbId + ".hnsw");
+    }
+
+    /**
+     * Index of one knowledge base over its current vector store
+     * The index is loaded from its snapshot when the snapshot was written for the same store and
+     * built from the store otherwise, in the background either way; both then catch up with the
+     * ordinals appended since. A compacted store renumbers its ordinals, so it gets a new index.
+     * The holder keeps a reference to the store of its index, released when the index is replaced.
+     */
+    private class IndexHolder {
+        private final String kbId;
+        private volatile HnswIndex index;
+        private volatile boolean building;
+        private volatile boolean dirty;
+
+        IndexHolder(String kbId) {
+            this.kbId = kbId;
+        }
+
+        /**
+         * Get the index of a store, starting a build when there is none
+         * @return The index, or null until it is built
+         */
+        HnswIndex ready(KnowledgeBase kb, MappedVectorStore store) {
+            HnswIndex current = index;
+            if (current != null && current.getStore() == store) {
+                return current;
+            }
+            synchronized (this) {
+                // The build's reference passes to the index it installs
+                if (!building && store.acquire()) {
+                    building = true;
+                    try {
+                        buildExecutor.execute(() -> build(kb, store));
+                    } catch (RejectedExecutionException e) {
+                        building = false;
+                        store.release();
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Index the ordinals written since the last catch-up
+         */
+        void catchUp() {
+            HnswIndex current = index;
+            if (current != null && current.catchUp() > 0) {
+                dirty = true;
+            }
+        }
+
+        private void build(KnowledgeBase kb, MappedVectorStore store) {
+            HnswIndex built = null;
+            try {
+                long start = System.currentTimeMillis();
+                built = load(store);
+                boolean restored = built != null;
+                if (built == null) {
+                    built = newIndex(kb, store);
+                }
+                int inserted = built.catchUp();
+                // Writes that missed the index being replaced are picked up after installing it
+                if (!install(built)) {
+                    return;
+                }
+                inserted += built.catchUp();
+                dirty = dirty || inserted > 0 || !restored;
+                log.info("{} vector index of knowledge base {} with {} entries in {}ms ({} caught up)",
+                        restored ? "Loaded" : "Built", kbId, built.size(), System.currentTimeMillis() - start, inserted);
+            } catch (RuntimeException e) {
+                if (built == null || index != built) {
+                    store.release();
+                }
+                log.warn("Failed to build vector index of knowledge base {}: {}", kbId, e.getMessage());
+            } finally {
+                building = false;
+            }
+        }
+
+        /**
+         * Replace the index, releasing the store of the previous one
+         * @return false if the knowledge base was dropped meanwhile, in which case the new index is discarded
+         */
+        private boolean install(HnswIndex built) {
+            HnswIndex previous;
+            synchronized (this) {
+                if (indexes.get(kbId) != this) {
+                    built.getStore().release();
+                    return false;
+                }
+                previous = index;
+                index = built;
+            }
+            if (previous != null) {
+                previous.getStore().release();
+            }
+            return true;
+        }
+
+        synchronized void close() {
+            if (index != null) {
+                index.getStore().release();
+                index = null;
+            }
+        }
+
+        /**
+         * @return The snapshot index, or null if there is none for this store
+         */
+        private HnswIndex load(MappedVectorStore store) {
+            Path snapshot = snapshotPath(kbId);
+            if (!Files.exists(snapshot)) {
+                return null;
+            }
+            try {
+                return HnswIndex.load(snapshot, store);
+            } catch (IOException | RuntimeException e) {
+                log.info("Discarding vector index snapshot of knowledge base {}: {}", kbId, e.getMessage());
+                return null;
+            }
+        }
+
+        private HnswIndex newIndex(KnowledgeBase kb, MappedVectorStore store) {
+            int m = kb != null && kb.getHnswM() != null ? kb.getHnswM() : defaultM;
+            int efConstruction = kb != null && kb.getHnswEfConstruction() != null
+                    ? kb.getHnswEfConstruction() : defaultEfConstruction;
+            return new HnswIndex(store, m, efConstruction);
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package com.fastgpt.ai.service.impl;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fastgpt.ai.dto.KbDataDTO;
 import com.fastgpt.ai.dto.request.VectorSearchRequest;
 import com.fastgpt.ai.entity.KbData;
 import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.exception.RateLimitExceededException;
 import com.fastgpt.ai.exception.ResourceNotFoundException;
 import com.fastgpt.ai.mapper.KbDataMapper;
 import com.fastgpt.ai.repository.KbDataRepository;
 import com.fastgpt.ai.repository.KnowledgeBaseRepository;
+import com.fastgpt.ai.service.EmbeddingCacheService;
+import com.fastgpt.ai.service.LexicalIndexService;
+import com.fastgpt.ai.service.LlmBatchService;
+import com.fastgpt.ai.service.LlmRouterService;
+import com.fastgpt.ai.service.ProviderRateLimiter;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.service.VectorIndexService;
 import com.fastgpt.ai.service.VectorService;
+import com.fastgpt.ai.service.VectorShardService;
+import com.fastgpt.ai.service.VectorStoreService;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.RequestPriority;
+import com.fastgpt.ai.util.SingleFlight;
+import com.fastgpt.ai.util.TopScores;
+import com.fastgpt.ai.util.VectorMatch;
+import com.fastgpt.ai.util.VectorMath;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -20,11 +42,22 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
@@ -34,24 +67,88 @@ public class VectorServiceImpl implements VectorService {
     private final KbDataRepository kbDataRepository;
     private final KnowledgeBaseRepository knowledgeBaseRepository;
     private final KbDataMapper kbDataMapper;
+    @Qualifier("embeddingRestTemplate")
     private final RestTemplate restTemplate;
+    private final LlmRouterService llmRouterService;
+    private final ProviderRateLimiter providerRateLimiter;
+    private final TokenizerService tokenizerService;
+    private final LlmBatchService llmBatchService;
+    private final VectorIndexService vectorIndexService;
+    private final VectorStoreService vectorStoreService;
+    private final VectorShardService vectorShardService;
+    private final LexicalIndexService lexicalIndexService;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final ObjectMapper objectMapper;
     
-    // Model to dimension mapping
-    private static final Map<String, Integer> MODEL_DIMENSIONS = Map.of(
-        "text-embedding-ada-002", 1536,
-        "text-embedding-3-small", 1536,
-        "text-embedding-3-large", 3072
-    );
+    // Default embedding model
+    @Value("${vector.default-model:text-embedding-ada-002}")
+    private String defaultModel;
     
-    // Default to OpenAI embedding API
-    @Value("${spring.ai.openai.api-key}")
-    private String openaiApiKey;
+    // In-flight embedding calls keyed by model and text
+    private final SingleFlight<String, List<Float>> embeddingFlights = new SingleFlight<>();
     
-    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
-    private String openaiBaseUrl;
+    // Embeddings are requested at the model's own size
+    private static final int NATIVE_DIMENSIONS = 0;
     
-    @Value("${vector.default-model:text-embedding-ada-002}")
-    private String defaultModel;
+    // Provider limits on one embeddings request; OpenAI allows 2048 inputs and 300k tokens
+    @Value("${vector.embedding.batch-max-inputs:256}")
+    private int batchMaxInputs;
+    
+    @Value("${vector.embedding.batch-max-tokens:32000}")
+    private int batchMaxTokens;
+    
+    // Batches in flight across all callers; the rate limiter still applies per API key
+    @Value("${vector.embedding.batch-concurrency:4}")
+    private int batchConcurrency;
+    
+    // Knowledge bases up to this size skip the HNSW index and quantized codes for an exact scan
+    @Value("${vector.search.exact-threshold:2000}")
+    private int exactThreshold;
+    
+    // Vectors per fork-join task of an exact scan
+    @Value("${vector.search.partition-size:8192}")
+    private int partitionSize;
+    
+    // Candidates each ranking contributes to a hybrid search, per requested result
+    @Value("${vector.search.hybrid-candidate-factor:4}")
+    private int hybridCandidateFactor;
+    
+    // Rank offset of reciprocal rank fusion; larger values flatten the weight of top ranks
+    @Value("${vector.search.rrf-k:60}")
+    private int rrfK;
+    
+    // BM25 rankings of hybrid searches in flight, run beside the vector ranking
+    @Value("${vector.search.lexical-concurrency:4}")
+    private int lexicalConcurrency;
+    
+    private static final String SEARCH_MODE_VECTOR = "vector";
+    private static final String SEARCH_MODE_LEXICAL = "lexical";
+    private static final String SEARCH_MODE_HYBRID = "hybrid";
+    
+    private ExecutorService embeddingExecutor;
+    private ExecutorService lexicalExecutor;
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        embeddingExecutor = Executors.newFixedThreadPool(batchConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger lexicalThreadCount = new AtomicInteger();
+        lexicalExecutor = Executors.newFixedThreadPool(lexicalConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "lexical-search-" + lexicalThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        embeddingExecutor.shutdownNow();
+        lexicalExecutor.shutdownNow();
+    }
 
     @Override
     public List<Float> generateEmbedding(String text, String model) {
@@ -59,30 +156,205 @@ public class VectorServiceImpl implements VectorService {
             model = defaultModel;
         }
         
+        if (RequestPriority.current() == RequestPriority.OFFLINE && llmBatchService.isEnabled()) {
+            return llmBatchService.await(submitEmbedding(text, model));
+        }
+        
+        // Identical concurrent requests (e.g. parallel workflow branches) share one cache lookup and upstream call
+        String embeddingModel = model;
+        return embeddingFlights.execute(embeddingModel + "\n" + text, () -> embeddingCacheService.getOrCompute(
+                embeddingModel, NATIVE_DIMENSIONS, text, () -> requestEmbedding(text, embeddingModel)));
+    }
+    
+    @Override
+    public List<List<Float>> generateEmbeddings(List<String> texts, String model) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        if (model == null || model.isEmpty()) {
+            model = defaultModel;
+        }
+        
+        if (RequestPriority.current() == RequestPriority.OFFLINE && llmBatchService.isEnabled()) {
+            String embeddingModel = model;
+            List<CompletableFuture<List<Float>>> futures = texts.stream()
+                    .map(text -> submitEmbedding(text, embeddingModel))
+                    .collect(Collectors.toList());
+            return futures.stream().map(llmBatchService::await).collect(Collectors.toList());
+        }
+        
+        // Cached texts are filled in directly; each distinct missing text is embedded once
+        List<List<Float>> embeddings = embeddingCacheService.getAll(model, NATIVE_DIMENSIONS, texts);
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (embeddings.get(i) == null) {
+                missing.computeIfAbsent(texts.get(i), key -> new ArrayList<>()).add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return embeddings;
+        }
+        
+        // Batch workers act for the caller, so they take its cancellation token and priority
+        String embeddingModel = model;
+        CancellationToken token = CancellationToken.current();
+        RequestPriority priority = RequestPriority.current();
+        List<List<String>> batches = packBatches(missing.keySet());
+        List<CompletableFuture<List<List<Float>>>> futures = new ArrayList<>(batches.size());
+        for (List<String> batch : batches) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (CancellationToken.Scope tokenScope = token.bind();
+                     RequestPriority.Scope priorityScope = priority.bind()) {
+                    token.throwIfCancelled();
+                    return requestEmbeddings(batch, embeddingModel);
+                }
+            }, embeddingExecutor));
+        }
+        
+        for (int b = 0; b < batches.size(); b++) {
+            List<String> batch = batches.get(b);
+            List<List<Float>> batchEmbeddings = embeddingCacheService.putAll(embeddingModel, NATIVE_DIMENSIONS,
+                    batch, join(futures.get(b)));
+            for (int i = 0; i < batch.size(); i++) {
+                for (int position : missing.get(batch.get(i))) {
+                    embeddings.set(position, batchEmbeddings.get(i));
+                }
+            }
+        }
+        log.debug("Embedded {} texts ({} cached) in {} batches", texts.size(),
+                texts.size() - missing.size(), batches.size());
+        return embeddings;
+    }
+    
+    /**
+     * Split texts into consecutive batches within the provider's input and token limits
+     * A text over the token limit on its own is sent alone and left to the provider to reject.
+     */
+    private List<List<String>> packBatches(Collection<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int batchTokens = 0;
+        for (String text : texts) {
+            int tokens = tokenizerService.countTokens(text);
+            if (!batch.isEmpty() && (batch.size() >= batchMaxInputs || batchTokens + tokens > batchMaxTokens)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchTokens = 0;
+            }
+            batch.add(text);
+            batchTokens += tokens;
+        }
+        batches.add(batch);
+        return batches;
+    }
+    
+    /**
+     * Wait for a batch, rethrowing its failure as thrown by the batch
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<List<Float>> submitEmbedding(String text, String model) {
+        if (model == null || model.isEmpty()) {
+            model = defaultModel;
+        }
+        if (!llmBatchService.isEnabled()) {
+            String embeddingModel = model;
+            return CompletableFuture.supplyAsync(() -> generateEmbedding(text, embeddingModel));
+        }
+        
+        List<Float> cached = embeddingCacheService.get(model, NATIVE_DIMENSIONS, text);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        String embeddingModel = model;
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("model", model);
+        requestBody.put("input", text);
+        return llmBatchService.submit("/v1/embeddings", model, requestBody.toString())
+                .thenApply(response -> {
+                    return embeddingCacheService.put(embeddingModel, NATIVE_DIMENSIONS, text,
+                            parseEmbedding(response));
+                });
+    }
+    
+    /**
+     * Read the first embedding of an embeddings response
+     */
+    private static List<Float> parseEmbedding(JsonNode response) {
+        JsonNode embedding = response.path("data").path(0).path("embedding");
+        if (!embedding.isArray() || embedding.isEmpty()) {
+            throw new IllegalStateException("Failed to generate embedding: No embedding data in response");
+        }
+        List<Float> vector = new ArrayList<>(embedding.size());
+        for (JsonNode value : embedding) {
+            vector.add(value.floatValue());
+        }
+        return Collections.unmodifiableList(vector);
+    }
+    
+    /**
+     * Call the embedding endpoint
+     */
+    private List<Float> requestEmbedding(String text, String model) {
+        return requestEmbeddings(List.of(text), model).get(0);
+    }
+    
+    /**
+     * Call the embedding endpoint with several inputs
+     * @return The embeddings in input order
+     */
+    private List<List<Float>> requestEmbeddings(List<String> texts, String model) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openaiApiKey);
-            
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("model", model);
-            requestBody.put("input", text);
+            requestBody.put("input", texts);
+            // Hedged attempts run on other threads, so take the priority of the caller
+            RequestPriority priority = RequestPriority.current();
+            int tokens = texts.stream().mapToInt(tokenizerService::countTokens).sum();
             
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                openaiBaseUrl + "/v1/embeddings", request, Map.class);
+            ResponseEntity<Map> response = llmRouterService.execute(LlmRouterService.OPERATION_EMBEDDING, true, endpoint ->
+                    providerRateLimiter.execute(endpoint.getApiKey(), model, tokens, priority, () -> {
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.setContentType(MediaType.APPLICATION_JSON);
+                        headers.setBearerAuth(endpoint.getApiKey());
+                        
+                        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+                        return restTemplate.postForEntity(
+                            endpoint.getBaseUrl() + "/v1/embeddings", request, Map.class);
+                    }));
             
             if (response.getBody() != null && response.getBody().containsKey("data")) {
                 List<Map<String, Object>> data = (List<Map<String, Object>>) response.getBody().get("data");
-                if (!data.isEmpty()) {
-                    List<Double> embedding = (List<Double>) data.get(0).get("embedding");
-                    return embedding.stream()
-                            .map(Double::floatValue)
-                            .collect(Collectors.toList());
+                if (data.size() == texts.size()) {
+                    // Items carry the position of their input and need not arrive in order
+                    List<List<Float>> embeddings = new ArrayList<>(Collections.nCopies(texts.size(), null));
+                    for (int i = 0; i < data.size(); i++) {
+                        Map<String, Object> item = data.get(i);
+                        int index = item.get("index") instanceof Number number ? number.intValue() : i;
+                        List<Number> embedding = (List<Number>) item.get("embedding");
+                        // Shared between coalesced callers, so it must not be mutated
+                        embeddings.set(index, Collections.unmodifiableList(embedding.stream()
+                                .map(Number::floatValue)
+                                .collect(Collectors.toList())));
+                    }
+                    return embeddings;
                 }
             }
             
             throw new RuntimeException("Failed to generate embedding: No embedding data in response");
+        } catch (RateLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error generating embedding: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate embedding: " + e.getMessage(), e);
@@ -99,24 +371,8 @@ public class VectorServiceImpl implements VectorService {
             throw new IllegalArgumentException("Vectors must have the same dimension");
         }
         
-        // Calculate dot product
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-        
-        for (int i = 0; i < vector1.size(); i++) {
-            dotProduct += vector1.get(i) * vector2.get(i);
-            norm1 += Math.pow(vector1.get(i), 2);
-            norm2 += Math.pow(vector2.get(i), 2);
-        }
-        
-        // Calculate cosine similarity
-        double magnitude = Math.sqrt(norm1) * Math.sqrt(norm2);
-        if (magnitude == 0) {
-            return 0.0;
-        }
-        
-        return dotProduct / magnitude;
+        // Unbox once and let the vectorized kernel compute the dot product and both norms
+        return VectorMath.cosine(VectorMath.toArray(vector1), VectorMath.toArray(vector2));
     }
 
     @Override
@@ -125,112 +381,246 @@ public class VectorServiceImpl implements VectorService {
         KnowledgeBase kb = knowledgeBaseRepository.findByKbId(request.getKbId())
             .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", request.getKbId()));
         
-        // Get all kb data
-        List<KbData> allData = kbDataRepository.findByKbId(request.getKbId());
+        String searchMode = request.getSearchMode() != null ? request.getSearchMode() : SEARCH_MODE_VECTOR;
+        boolean rawQuery = Boolean.TRUE.equals(request.getUseRawQuery());
+        boolean lexical = lexicalIndexService.isEnabled()
+                && request.getQuery() != null && !request.getQuery().isBlank();
         
-        if (allData.isEmpty()) {
-            return new ArrayList<>();
+        // Raw queries are ranked by keywords rather than returned in storage order; while the keyword
+        // index is loading, keyword searches get the filtered storage-order slice instead
+        if (lexical && (rawQuery || SEARCH_MODE_LEXICAL.equals(searchMode))) {
+            List<VectorMatch> matches = lexicalMatches(kb, request, request.getLimit());
+            if (matches != null) {
+                return hydrate(matches, Double.NEGATIVE_INFINITY);
+            }
+            rawQuery = true;
         }
-        
-        // Filter by ids if specified
-        if (request.getFilterIds() != null && !request.getFilterIds().isEmpty()) {
-            allData = allData.stream()
-                    .filter(data -> !request.getFilterIds().contains(data.getDataId()))
-                    .collect(Collectors.toList());
+        if (rawQuery) {
+            return kbDataMapper.toDTOList(kbDataRepository.findFiltered(request.getKbId(), request.getFilterIds(),
+                    request.getMetadataFilters(), request.getLimit()));
         }
-        
-        // Apply metadata filters if specified
-        if (request.getMetadataFilters() != null && !request.getMetadataFilters().isEmpty()) {
-            allData = allData.stream()
-                    .filter(data -> matchesMetadataFilters(data, request.getMetadataFilters()))
-                    .collect(Collectors.toList());
+        if (lexical && SEARCH_MODE_HYBRID.equals(searchMode)) {
+            return hybridSearch(kb, request);
         }
+        return hydrate(denseMatches(kb, request, request.getLimit()), request.getMinScore());
+    }
+    
+    /**
+     * Run the BM25 and vector rankings in parallel and fuse them by reciprocal rank
+     * Each side contributes weight / (k + rank) per result; the sum is divided by its largest
+     * possible value, so a result ranked first on both sides scores 1.
+     */
+    private List<KbDataDTO> hybridSearch(KnowledgeBase kb, VectorSearchRequest request) {
+        int candidates = request.getLimit() * Math.max(1, hybridCandidateFactor);
+        CancellationToken token = CancellationToken.current();
+        RequestPriority priority = RequestPriority.current();
+        CompletableFuture<List<VectorMatch>> lexicalFuture = CompletableFuture.supplyAsync(() -> {
+            try (CancellationToken.Scope tokenScope = token.bind();
+                 RequestPriority.Scope priorityScope = priority.bind()) {
+                token.throwIfCancelled();
+                return lexicalMatches(kb, request, candidates);
+            }
+        }, lexicalExecutor);
         
-        if (request.getUseRawQuery()) {
-            // For raw queries, just return the data without vector search
-            return allData.stream()
-                    .limit(request.getLimit())
-                    .map(kbDataMapper::toDTO)
-                    .collect(Collectors.toList());
+        double minScore = request.getMinScore();
+        List<VectorMatch> dense = denseMatches(kb, request, candidates).stream()
+                .filter(match -> match.getScore() >= minScore)
+                .collect(Collectors.toList());
+        List<VectorMatch> lexical = join(lexicalFuture);
+        if (lexical == null) {
+            // The keyword index is still loading; rank by vectors alone meanwhile
+            lexical = List.of();
         }
         
-        // Generate embedding for the query
-        List<Float> queryVector = generateEmbedding(request.getQuery(), kb.getVectorModel());
+        double vectorWeight = request.getVectorWeight() != null ? request.getVectorWeight() : 1.0;
+        double lexicalWeight = request.getLexicalWeight() != null ? request.getLexicalWeight() : 1.0;
+        Map<String, Double> fused = new LinkedHashMap<>();
+        addReciprocalRanks(fused, dense, vectorWeight);
+        addReciprocalRanks(fused, lexical, lexicalWeight);
+        double best = (vectorWeight + lexicalWeight) / (rrfK + 1);
         
-        // Calculate similarity scores
-        List<ScoredKbData> scoredResults = allData.stream()
-                .map(data -> {
-                    double score = calculateSimilarity(queryVector, data.getVector());
-                    return new ScoredKbData(data, score);
-                })
-                .filter(scoredData -> scoredData.getScore() >= request.getMinScore())
-                .sorted(Comparator.comparingDouble(ScoredKbData::getScore).reversed())
+        List<VectorMatch> matches = fused.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
                 .limit(request.getLimit())
+                .map(entry -> new VectorMatch(entry.getKey(), best > 0 ? entry.getValue() / best : 0))
                 .collect(Collectors.toList());
-        
-        // Convert to DTOs and return
-        return scoredResults.stream()
-                .map(scoredData -> {
-                    KbDataDTO dto = kbDataMapper.toDTO(scoredData.getData());
-                    dto.setScore(scoredData.getScore());
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        return hydrate(matches, Double.NEGATIVE_INFINITY);
     }
-
-    @Override
-    public int countTokens(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
+    
+    private void addReciprocalRanks(Map<String, Double> fused, List<VectorMatch> ranking, double weight) {
+        for (int rank = 0; rank < ranking.size(); rank++) {
+            fused.merge(ranking.get(rank).getId(), weight / (rrfK + rank + 1), Double::sum);
         }
-        
-        // Simple approximation: 1 token ≈ 4 characters for English text
-        // For more accurate counting, integrate with a tokenizer library
-        return (int) Math.ceil(text.length() / 4.0);
     }
     
     /**
-     * Check if a kb data entry matches the metadata filters
+     * Rank the data of the knowledge base by BM25, honouring the ID and metadata filters
+     * Metadata filters are resolved on the bitmaps of the keyword index.
+     * @return Matches, or null until the keyword index is ready
      */
-    private boolean matchesMetadataFilters(KbData data, Map<String, List<String>> filters) {
-        if (data.getCollectionMeta() == null || data.getCollectionMeta().isEmpty()) {
-            return false;
+    private List<VectorMatch> lexicalMatches(KnowledgeBase kb, VectorSearchRequest request, int limit) {
+        return lexicalIndexService.search(kb.getKbId(), request.getQuery(), limit, excludedFilter(request),
+                request.getMetadataFilters());
+    }
+    
+    /**
+     * Rank the data of the knowledge base by vector similarity
+     * Sharded knowledge bases are searched across their shards. Otherwise uses the index or vector
+     * store, with metadata filters resolved on the bitmaps of the store, or scores the filtered
+     * vectors from Mongo when neither is available. Matches are not cut at the minimum score.
+     */
+    private List<VectorMatch> denseMatches(KnowledgeBase kb, VectorSearchRequest request, int limit) {
+        if (vectorShardService.isSharded(kb)) {
+            List<VectorMatch> matches = vectorShardService.search(kb, queryVector(kb, request), limit,
+                    request.getMinScore(), request.getFilterIds(), request.getMetadataFilters());
+            if (matches != null) {
+                return matches;
+            }
         }
         
-        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
-            String key = filter.getKey();
-            List<String> values = filter.getValue();
-            
-            if (!data.getCollectionMeta().containsKey(key)) {
-                return false;
+        boolean hasMetadataFilters = request.getMetadataFilters() != null && !request.getMetadataFilters().isEmpty();
+        if (hasMetadataFilters && vectorStoreService.isEnabled()) {
+            List<VectorMatch> matches = Boolean.TRUE.equals(request.getExact())
+                    ? vectorStoreService.searchExact(kb.getKbId(), queryVector(kb, request), limit,
+                            request.getMinScore(), excludedFilter(request), request.getMetadataFilters())
+                    : vectorStoreService.search(kb, queryVector(kb, request), limit, request.getMinScore(),
+                            excludedFilter(request), request.getMetadataFilters());
+            if (matches != null) {
+                return matches;
             }
-            
-            if (!values.contains(data.getCollectionMeta().get(key))) {
-                return false;
+        } else if (!hasMetadataFilters && (vectorIndexService.isEnabled() || vectorStoreService.isEnabled())) {
+            List<VectorMatch> matches = searchVectors(kb, request, limit);
+            if (matches != null) {
+                return matches;
             }
         }
         
-        return true;
+        // Filters run in Mongo, on the kb_id indexes of kb_data; only IDs and vectors are loaded for scoring
+        List<KbData> candidates = kbDataRepository.findVectors(request.getKbId(), request.getFilterIds(),
+                request.getMetadataFilters());
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // Generate embedding for the query
+        float[] query = VectorMath.toArray(queryVector(kb, request));
+        if (VectorMath.normalize(query) == 0) {
+            return new ArrayList<>();
+        }
+        
+        // Score partitions in parallel into bounded heaps of list positions, then merge them
+        float minScore = request.getMinScore().floatValue();
+        int chunk = Math.max(1, partitionSize);
+        int partitions = (candidates.size() + chunk - 1) / chunk;
+        IntStream partitionStream = IntStream.range(0, partitions);
+        TopScores top = (partitions > 1 ? partitionStream.parallel() : partitionStream)
+                .mapToObj(p -> {
+                    TopScores partition = new TopScores(limit);
+                    for (int i = p * chunk, end = Math.min(candidates.size(), i + chunk); i < end; i++) {
+                        float score = VectorMath.cosine(query, candidates.get(i).getVector());
+                        if (score >= minScore && score > partition.threshold()) {
+                            partition.offer(i, score);
+                        }
+                    }
+                    return partition;
+                })
+                .reduce(TopScores::merge)
+                .orElseGet(() -> new TopScores(0))
+                .sort();
+        
+        List<VectorMatch> matches = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            matches.add(new VectorMatch(candidates.get(top.id(i)).getDataId(), top.score(i)));
+        }
+        return matches;
+    }
+
+    @Override
+    public List<List<KbDataDTO>> searchQueries(VectorSearchRequest request, List<String> queries) {
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(request.getKbId())
+            .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", request.getKbId()));
+        
+        List<List<Float>> queryVectors = generateEmbeddings(queries, kb.getVectorModel());
+        List<List<KbDataDTO>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            VectorSearchRequest queryRequest = request.toBuilder()
+                    .query(queries.get(i))
+                    .queryVector(queryVectors.get(i))
+                    .build();
+            results.add(search(queryRequest));
+        }
+        return results;
     }
     
     /**
-     * Helper class to store KB data with its score
+     * Take the query embedding of a request, or generate it with the model of the knowledge base
      */
-    private static class ScoredKbData {
-        private final KbData data;
-        private final double score;
+    private List<Float> queryVector(KnowledgeBase kb, VectorSearchRequest request) {
+        List<Float> queryVector = request.getQueryVector();
+        return queryVector != null && !queryVector.isEmpty()
+                ? queryVector : generateEmbedding(request.getQuery(), kb.getVectorModel());
+    }
+
+    /**
+     * Search the HNSW index of the knowledge base, or scan its vector store when it has no index,
+     * is small or exact results are requested
+     * @return Matches, or null if the knowledge base has neither
+     */
+    private List<VectorMatch> searchVectors(KnowledgeBase kb, VectorSearchRequest request, int limit) {
+        List<Float> queryVector = queryVector(kb, request);
         
-        public ScoredKbData(KbData data, double score) {
-            this.data = data;
-            this.score = score;
+        Predicate<String> filter = excludedFilter(request);
+        // Small knowledge bases and ground-truth requests are scored exactly
+        boolean exact = Boolean.TRUE.equals(request.getExact())
+                || (kb.getKbDataCount() != null && kb.getKbDataCount() <= exactThreshold);
+        if (exact) {
+            return vectorStoreService.searchExact(kb.getKbId(), queryVector, limit, request.getMinScore(), filter, null);
         }
-        
-        public KbData getData() {
-            return data;
+        // Quantized knowledge bases walk the index on their codes
+        List<VectorMatch> matches = vectorIndexService.search(kb, queryVector, limit, filter);
+        if (matches == null) {
+            matches = vectorStoreService.search(kb, queryVector, limit, request.getMinScore(), filter, null);
         }
+        return matches;
+    }
+    
+    /**
+     * Reject the data IDs the request excludes
+     * @return The filter, or null if nothing is excluded
+     */
+    private static Predicate<String> excludedFilter(VectorSearchRequest request) {
+        if (request.getFilterIds() == null || request.getFilterIds().isEmpty()) {
+            return null;
+        }
+        Set<String> excludedIds = new HashSet<>(request.getFilterIds());
+        return dataId -> !excludedIds.contains(dataId);
+    }
+    
+    /**
+     * Load the full documents of the matches with one $in query, keeping the match order
+     */
+    private List<KbDataDTO> hydrate(List<VectorMatch> matches, double minScore) {
+        List<String> dataIds = matches.stream()
+                .filter(match -> match.getScore() >= minScore)
+                .map(VectorMatch::getId)
+                .collect(Collectors.toList());
+        Map<String, KbData> dataById = kbDataRepository.findByDataIdIn(dataIds).stream()
+                .collect(Collectors.toMap(KbData::getDataId, data -> data, (first, second) -> first));
         
-        public double getScore() {
-            return score;
+        List<KbDataDTO> results = new ArrayList<>(dataIds.size());
+        for (VectorMatch match : matches) {
+            KbData data = dataById.get(match.getId());
+            if (data != null && match.getScore() >= minScore) {
+                KbDataDTO dto = kbDataMapper.toDTO(data);
+                dto.setScore(match.getScore());
+                results.add(dto);
+            }
         }
+        return results;
+    }
+
+    @Override
+    public int countTokens(String text) {
+        return tokenizerService.countTokens(text);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,740 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.config.PooledClientHttpRequestFactory;
+import com.fastgpt.ai.dto.VectorShardMatchDTO;
+import com.fastgpt.ai.dto.request.VectorShardSearchRequest;
+import com.fastgpt.ai.dto.response.ApiResponse;
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.exception.ForbiddenException;
+import com.fastgpt.ai.exception.InvalidArgumentException;
+import com.fastgpt.ai.exception.ResourceNotFoundException;
+import com.fastgpt.ai.repository.KbDataRepository;
+import com.fastgpt.ai.repository.KnowledgeBaseRepository;
+import com.fastgpt.ai.service.VectorIndexService;
+import com.fastgpt.ai.service.VectorShardService;
+import com.fastgpt.ai.service.VectorStoreService;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.ScatterGather;
+import com.fastgpt.ai.util.VectorMatch;
+import com.fastgpt.ai.util.VectorShards;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Redis-coordinated implementation of sharded vector search
+ * Only the owners of a shard keep it loaded: a shard whose owners all fail is left out of the
+ * result rather than built on the coordinating instance, which would hold every shard in the
+ * end. Each instance reads the write stream on its own thread from an offset it keeps in Redis,
+ * so writes made while it was not reading are applied when it resumes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorShardServiceImpl implements VectorShardService {
+
+    private final VectorStoreService vectorStoreService;
+    private final VectorIndexService vectorIndexService;
+    private final KbDataRepository kbDataRepository;
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    @Qualifier("shardRestTemplate")
+    private final RestTemplate restTemplate;
+
+    // Keys for Redis
+    private static final String INSTANCES_KEY = "vector:shard:instances";
+    private static final String HEARTBEAT_KEY_PREFIX = "vector:shard:heartbeat:";
+    private static final String ASSIGNMENT_KEY_PREFIX = "vector:shard:assignment:";
+    private static final String WRITES_KEY = "vector:shard:writes";
+    private static final String OFFSET_KEY_PREFIX = "vector:shard:offset:";
+    private static final String SECRET_KEY = "vector:shard:secret";
+
+    // Assignment and write record fields
+    private static final String FIELD_SHARDS = "shards";
+    private static final String FIELD_KB_ID = "kbId";
+    private static final String FIELD_UPSERTS = "upserts";
+    private static final String FIELD_DELETES = "deletes";
+    private static final String FIELD_DROP = "drop";
+
+    // Approximate number of write records kept, trimmed by XADD itself
+    private static final XAddOptions TRIM_OPTIONS = XAddOptions.maxlen(100000).approximateTrimming(true);
+    // Maximum number of write records read per XREAD, and how long one XREAD blocks
+    private static final int READ_BATCH_SIZE = 100;
+    private static final Duration READ_BLOCK = Duration.ofSeconds(1);
+    // An instance away for longer starts at the end of the stream; its stores are reconciled when opened
+    private static final Duration OFFSET_TTL = Duration.ofDays(1);
+    private static final String STREAM_START = "0-0";
+
+    private static final String SHARD_SEARCH_PATH = "/api/v1/kb/internal/shards/{kbId}/{shard}/search";
+
+    @Value("${vector.shard.enabled:false}")
+    private boolean shardEnabled;
+
+    // Defaults to host:port
+    @Value("${vector.shard.instance-id:}")
+    private String instanceId;
+
+    // Base URL other instances call this one at, defaults to http://host:port
+    @Value("${vector.shard.advertise-url:}")
+    private String advertiseUrl;
+
+    // Secret the instances send with shard searches; generated once in Redis if not set
+    @Value("${vector.shard.secret:}")
+    private volatile String secret;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    // Owners per shard; the first live one serves it, the others take over when it fails
+    @Value("${vector.shard.replicas:2}")
+    private int replicas;
+
+    // Time for searching every shard; shards answering later are left out
+    @Value("${vector.shard.timeout-ms:2000}")
+    private long timeoutMs;
+
+    // Shard searches in flight across all requests, local and remote
+    @Value("${vector.shard.concurrency:16}")
+    private int concurrency;
+
+    // An instance missing three heartbeats is no longer called
+    @Value("${vector.shard.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${vector.shard.assignment-cache-ms:5000}")
+    private long assignmentCacheMs;
+
+    // Live instance IDs to base URLs, refreshed with every heartbeat
+    private volatile Map<String, String> liveInstances = Map.of();
+    private final Map<String, CachedAssignment> assignments = new ConcurrentHashMap<>();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong partialSearches = new AtomicLong();
+    private final AtomicLong localShardSearches = new AtomicLong();
+    private final AtomicLong remoteShardSearches = new AtomicLong();
+    private final AtomicLong remoteFailures = new AtomicLong();
+    private final AtomicLong unavailableShards = new AtomicLong();
+
+    private ExecutorService shardExecutor;
+    private ExecutorService migrationExecutor;
+    private ScheduledExecutorService heartbeatScheduler;
+    private volatile boolean running;
+    private Thread writesReader;
+
+    private record CachedAssignment(int shards, Map<Integer, List<String>> owners, long expiresAt) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!shardEnabled) {
+            return;
+        }
+        String host = hostName();
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = host + ":" + serverPort;
+        }
+        if (advertiseUrl == null || advertiseUrl.isBlank()) {
+            advertiseUrl = "http://" + host + ":" + serverPort;
+        }
+        if (secret != null && secret.isBlank()) {
+            secret = null;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        shardExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "vector-shard-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        migrationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vector-shard-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vector-shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Register before serving, so that the first assignments include this instance
+        heartbeat();
+        heartbeatScheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        running = true;
+        writesReader = new Thread(this::readWrites, "vector-shard-writes");
+        writesReader.setDaemon(true);
+        writesReader.start();
+
+        // Migrations are idempotent, so one cut short by a restart is simply run again
+        try {
+            for (KnowledgeBase kb : knowledgeBaseRepository.findByVectorShardsTargetIsNotNull()) {
+                migrationExecutor.execute(() -> migrate(kb.getKbId()));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to resume vector shard migrations: {}", e.getMessage());
+        }
+        log.info("Vector shard instance {} registered at {}", instanceId, advertiseUrl);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!shardEnabled) {
+            return;
+        }
+        running = false;
+        if (writesReader != null) {
+            writesReader.interrupt();
+        }
+        heartbeatScheduler.shutdownNow();
+        migrationExecutor.shutdownNow();
+        shardExecutor.shutdownNow();
+        // Leave at once rather than after the heartbeat expires, so searches stop calling this instance
+        try {
+            stringRedisTemplate.delete(HEARTBEAT_KEY_PREFIX + instanceId);
+            stringRedisTemplate.opsForHash().delete(INSTANCES_KEY, instanceId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to unregister vector shard instance {}: {}", instanceId, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isSharded(KnowledgeBase kb) {
+        return shardEnabled && vectorStoreService.isEnabled()
+                && kb.getVectorShards() != null && kb.getVectorShards() > 1;
+    }
+
+    @Override
+    public List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, double minScore,
+                                    Collection<String> excludedIds, Map<String, List<String>> metadataFilters) {
+        if (!isSharded(kb)) {
+            return null;
+        }
+        searches.incrementAndGet();
+        int shards = kb.getVectorShards();
+        Map<Integer, List<String>> assignment = assignment(kb);
+        VectorShardSearchRequest request = VectorShardSearchRequest.builder()
+                .queryVector(queryVector)
+                .limit(limit)
+                .minScore(minScore)
+                .shards(shards)
+                .excludedIds(excludedIds != null ? new ArrayList<>(excludedIds) : null)
+                .metadataFilters(metadataFilters)
+                .build();
+
+        try (ScatterGather scatter = ScatterGather.start("Vector shard search", timeoutMs)) {
+            Map<Integer, CompletableFuture<List<VectorShardMatchDTO>>> futures = new LinkedHashMap<>();
+            for (int shard = 0; shard < shards; shard++) {
+                int current = shard;
+                List<String> owners = assignment.getOrDefault(shard, List.of());
+                futures.put(shard, scatter.submit(
+                        () -> searchShard(kb, current, owners, request, scatter.getDeadline()), shardExecutor));
+            }
+
+            AtomicInteger missing = new AtomicInteger();
+            List<VectorShardMatchDTO> top = scatter.gather(futures, limit, VectorShardMatchDTO::getScore,
+                    (shard, error) -> {
+                        missing.incrementAndGet();
+                        if (error != null) {
+                            log.warn("Shard {} of knowledge base {} failed: {}", shard, kb.getKbId(), error.getMessage());
+                        }
+                    });
+            if (missing.get() > 0) {
+                partialSearches.incrementAndGet();
+                log.warn("Vector search of knowledge base {} is missing {} of {} shards", kb.getKbId(), missing.get(), shards);
+            }
+            return top.stream()
+                    .map(match -> new VectorMatch(match.getDataId(), match.getScore()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public List<VectorShardMatchDTO> searchLocal(String kbId, int shard, String callerSecret, VectorShardSearchRequest request) {
+        if (!shardEnabled || callerSecret == null || !MessageDigest.isEqual(
+                callerSecret.getBytes(StandardCharsets.UTF_8), secret().getBytes(StandardCharsets.UTF_8))) {
+            throw new ForbiddenException("Shard searches are only served to the other instances");
+        }
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
+        if (!isSharded(kb)) {
+            throw new InvalidArgumentException("Knowledge base " + kbId + " is not sharded on this instance");
+        }
+        if (!kb.getVectorShards().equals(request.getShards()) || shard < 0 || shard >= kb.getVectorShards()) {
+            throw new InvalidArgumentException("Knowledge base " + kbId + " has no shard " + shard
+                    + " of " + request.getShards());
+        }
+        return local(kb, shard, request);
+    }
+
+    @Override
+    public void publish(String kbId, Collection<String> upsertedIds, Collection<String> deletedIds) {
+        if (!shardEnabled || (upsertedIds.isEmpty() && deletedIds.isEmpty())) {
+            return;
+        }
+        // Data IDs are UUIDs, so a comma-separated list needs no escaping
+        append(Map.of(
+                FIELD_KB_ID, kbId,
+                FIELD_UPSERTS, String.join(",", upsertedIds),
+                FIELD_DELETES, String.join(",", deletedIds)));
+    }
+
+    @Override
+    public void reshard(String kbId, int shards) {
+        if (!shardEnabled) {
+            throw new InvalidArgumentException("Vector sharding is not enabled");
+        }
+        if (shards < 1 || shards > VectorShards.BUCKETS) {
+            throw new InvalidArgumentException("Vector shards must be between 1 and " + VectorShards.BUCKETS);
+        }
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
+        int current = kb.getVectorShards() != null ? kb.getVectorShards() : 1;
+        // Asking for the current count cancels a pending migration
+        kb.setVectorShardsTarget(shards != current ? shards : null);
+        knowledgeBaseRepository.save(kb);
+        if (shards != current) {
+            migrationExecutor.execute(() -> migrate(kbId));
+        }
+    }
+
+    @Override
+    public Map<Integer, List<String>> assign(String kbId) {
+        KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId)
+                .orElseThrow(() -> new ResourceNotFoundException("Knowledge Base", "kbId", kbId));
+        if (!isSharded(kb)) {
+            throw new InvalidArgumentException("Knowledge base " + kbId + " is not sharded");
+        }
+        return assign(kbId, kb.getVectorShards(), true);
+    }
+
+    @Override
+    public Map<Integer, List<String>> getAssignment(String kbId) {
+        if (!shardEnabled) {
+            return Map.of();
+        }
+        Map<Integer, List<String>> owners = readAssignment(kbId, null);
+        return owners != null ? owners : Map.of();
+    }
+
+    @Override
+    public void drop(String kbId) {
+        if (!shardEnabled) {
+            return;
+        }
+        assignments.remove(kbId);
+        stringRedisTemplate.delete(ASSIGNMENT_KEY_PREFIX + kbId);
+        append(Map.of(FIELD_KB_ID, kbId, FIELD_DROP, "1"));
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", shardEnabled);
+        stats.put("instanceId", instanceId);
+        stats.put("liveInstances", liveInstances);
+        stats.put("searches", searches.get());
+        stats.put("partialSearches", partialSearches.get());
+        stats.put("localShardSearches", localShardSearches.get());
+        stats.put("remoteShardSearches", remoteShardSearches.get());
+        stats.put("remoteFailures", remoteFailures.get());
+        stats.put("unavailableShards", unavailableShards.get());
+        stats.put("cachedAssignments", assignments.size());
+        return stats;
+    }
+
+    /**
+     * Search one shard on its first owner that answers
+     * This instance searches its own store; remote owners are skipped while their heartbeat is
+     * missing.
+     * @throws IllegalStateException if no owner answers, leaving the shard out of the result
+     */
+    private List<VectorShardMatchDTO> searchShard(KnowledgeBase kb, int shard, List<String> owners,
+                                                  VectorShardSearchRequest request, long deadline) {
+        for (String owner : owners) {
+            if (owner.equals(instanceId)) {
+                localShardSearches.incrementAndGet();
+                return local(kb, shard, request);
+            }
+            String url = liveInstances.get(owner);
+            if (url == null) {
+                continue;
+            }
+            try {
+                remoteShardSearches.incrementAndGet();
+                return remote(url, kb.getKbId(), shard, request, deadline);
+            } catch (RestClientException e) {
+                // Past the deadline the remaining owners would be cut off as well
+                CancellationToken.current().throwIfCancelled();
+                remoteFailures.incrementAndGet();
+                log.warn("Shard {} of knowledge base {} failed on {}: {}", shard, kb.getKbId(), owner, e.getMessage());
+            }
+        }
+        unavailableShards.incrementAndGet();
+        throw new IllegalStateException("no owner of " + owners + " answered");
+    }
+
+    private List<VectorShardMatchDTO> local(KnowledgeBase kb, int shard, VectorShardSearchRequest request) {
+        Predicate<String> filter = null;
+        if (request.getExcludedIds() != null && !request.getExcludedIds().isEmpty()) {
+            Set<String> excludedIds = new HashSet<>(request.getExcludedIds());
+            filter = dataId -> !excludedIds.contains(dataId);
+        }
+        double minScore = request.getMinScore() != null ? request.getMinScore() : Double.NEGATIVE_INFINITY;
+        List<VectorMatch> matches = vectorStoreService.searchShard(kb, shard, request.getQueryVector(),
+                request.getLimit(), minScore, filter, request.getMetadataFilters());
+        // A shard stored with other dimensions than the query has nothing to match
+        if (matches == null) {
+            return List.of();
+        }
+        return matches.stream()
+                .map(match -> new VectorShardMatchDTO(match.getId(), match.getScore()))
+                .toList();
+    }
+
+    private List<VectorShardMatchDTO> remote(String url, String kbId, int shard, VectorShardSearchRequest request,
+                                             long deadline) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(SECRET_HEADER, secret());
+        PooledClientHttpRequestFactory.TimeoutScope scope =
+                PooledClientHttpRequestFactory.withResponseTimeout(Duration.ofMillis(Math.max(1, remainingMs)));
+        try (scope) {
+            ApiResponse<List<VectorShardMatchDTO>> response = restTemplate.exchange(url + SHARD_SEARCH_PATH,
+                    HttpMethod.POST, new HttpEntity<>(request, headers),
+                    new ParameterizedTypeReference<ApiResponse<List<VectorShardMatchDTO>>>() {},
+                    kbId, shard).getBody();
+            if (response == null || response.getData() == null) {
+                throw new RestClientException("Empty shard search response from " + url);
+            }
+            return response.getData();
+        }
+    }
+
+    /**
+     * Get the secret of the instances, generating it in Redis if the first instance has not yet
+     */
+    private String secret() {
+        String current = secret;
+        if (current == null) {
+            stringRedisTemplate.opsForValue().setIfAbsent(SECRET_KEY, UUID.randomUUID().toString());
+            current = stringRedisTemplate.opsForValue().get(SECRET_KEY);
+            secret = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get the owners of the shards of a knowledge base, assigning them on first use
+     */
+    private Map<Integer, List<String>> assignment(KnowledgeBase kb) {
+        String kbId = kb.getKbId();
+        int shards = kb.getVectorShards();
+        CachedAssignment cached = assignments.get(kbId);
+        if (cached != null && cached.shards() == shards && System.nanoTime() < cached.expiresAt()) {
+            return cached.owners();
+        }
+        Map<Integer, List<String>> owners = readAssignment(kbId, shards);
+        if (owners == null) {
+            // Rendezvous hashing gives every coordinator the same owners, so racing assignments
+            // agree, and one still on a previous shard count does not replace the current one
+            owners = assign(kbId, shards, false);
+        }
+        assignments.put(kbId, new CachedAssignment(shards, owners,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(assignmentCacheMs)));
+        return owners;
+    }
+
+    /**
+     * Assign shards to the live instances and store the assignment in one transaction
+     * @param replace Whether to replace an assignment, or only store one if there is none
+     * @return Owners per shard, also when an existing assignment was kept
+     */
+    private Map<Integer, List<String>> assign(String kbId, int shards, boolean replace) {
+        List<String> instances = new ArrayList<>(liveInstances.keySet());
+        if (instances.isEmpty()) {
+            instances.add(instanceId);
+        }
+        Map<Integer, List<String>> owners = VectorShards.assign(kbId, shards, instances, replicas);
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_SHARDS, String.valueOf(shards));
+        owners.forEach((shard, ids) -> fields.put(String.valueOf(shard), String.join(",", ids)));
+        String key = ASSIGNMENT_KEY_PREFIX + kbId;
+        List<Object> written = stringRedisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                if (!replace) {
+                    // EXEC is discarded if another instance writes the key after this check
+                    redis.watch(key);
+                    if (Boolean.TRUE.equals(redis.hasKey(key))) {
+                        redis.unwatch();
+                        return null;
+                    }
+                }
+                redis.multi();
+                redis.delete(key);
+                redis.opsForHash().putAll(key, fields);
+                return redis.exec();
+            }
+        });
+        assignments.remove(kbId);
+
+        if (written != null && !written.isEmpty()) {
+            log.info("Assigned {} shards of knowledge base {} to {} instances", shards, kbId, instances.size());
+        }
+        return owners;
+    }
+
+    /**
+     * @param shards Expected shard count, or null for any
+     * @return Owners per shard, or null if there is no assignment for the expected shard count
+     */
+    private Map<Integer, List<String>> readAssignment(String kbId, Integer shards) {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(ASSIGNMENT_KEY_PREFIX + kbId);
+        Object stored = fields.get(FIELD_SHARDS);
+        if (stored == null || (shards != null && !stored.toString().equals(String.valueOf(shards)))) {
+            return null;
+        }
+        Map<Integer, List<String>> owners = new TreeMap<>();
+        fields.forEach((field, value) -> {
+            if (!FIELD_SHARDS.equals(field)) {
+                owners.put(Integer.parseInt(field.toString()), split(value.toString()));
+            }
+        });
+        return owners;
+    }
+
+    /**
+     * Move a knowledge base to its target shard count
+     * Items get their shard bucket before the knowledge base switches, so shard stores built
+     * for the new count hold all of them; new items get theirs when stored. The stores of the
+     * previous layout are then dropped on every instance and built again on demand.
+     */
+    private void migrate(String kbId) {
+        try {
+            KnowledgeBase kb = knowledgeBaseRepository.findByKbId(kbId).orElse(null);
+            if (kb == null || kb.getVectorShardsTarget() == null) {
+                return;
+            }
+            int shards = kb.getVectorShardsTarget();
+            long start = System.currentTimeMillis();
+            long backfilled = shards > 1 ? kbDataRepository.assignShardBuckets(kbId) : 0;
+
+            // A later reshard or the deletion of the knowledge base supersedes this migration
+            kb = knowledgeBaseRepository.findByKbId(kbId).orElse(null);
+            if (kb == null || !Integer.valueOf(shards).equals(kb.getVectorShardsTarget())) {
+                return;
+            }
+            Integer previous = kb.getVectorShards();
+            kb.setVectorShards(shards);
+            kb.setVectorShardsTarget(null);
+            knowledgeBaseRepository.save(kb);
+
+            if (shards > 1) {
+                assign(kbId, shards, true);
+            } else {
+                stringRedisTemplate.delete(ASSIGNMENT_KEY_PREFIX + kbId);
+            }
+            append(Map.of(FIELD_KB_ID, kbId, FIELD_DROP, "1"));
+            log.info("Resharded knowledge base {} from {} to {} shards in {}ms, {} items given shard buckets",
+                    kbId, previous != null ? previous : 1, shards, System.currentTimeMillis() - start, backfilled);
+        } catch (RuntimeException e) {
+            log.warn("Failed to reshard knowledge base {}, retried on the next start: {}", kbId, e.getMessage());
+        }
+    }
+
+    /**
+     * Refresh this instance's registration and the view of the live instances
+     */
+    private void heartbeat() {
+        try {
+            stringRedisTemplate.opsForValue().set(HEARTBEAT_KEY_PREFIX + instanceId, advertiseUrl,
+                    Duration.ofMillis(heartbeatMs * 3));
+            stringRedisTemplate.opsForHash().put(INSTANCES_KEY, instanceId, advertiseUrl);
+
+            List<String> registered = stringRedisTemplate.opsForHash().keys(INSTANCES_KEY).stream()
+                    .map(Object::toString)
+                    .toList();
+            List<String> urls = stringRedisTemplate.opsForValue()
+                    .multiGet(registered.stream().map(id -> HEARTBEAT_KEY_PREFIX + id).toList());
+            Map<String, String> live = new TreeMap<>();
+            for (int i = 0; i < registered.size(); i++) {
+                String url = urls != null ? urls.get(i) : null;
+                if (url != null) {
+                    live.put(registered.get(i), url);
+                } else {
+                    // Expired heartbeat: the instance re-registers itself if it comes back
+                    stringRedisTemplate.opsForHash().delete(INSTANCES_KEY, registered.get(i));
+                }
+            }
+            liveInstances = live;
+        } catch (RuntimeException e) {
+            log.warn("Vector shard heartbeat of instance {} failed: {}", instanceId, e.getMessage());
+        }
+    }
+
+    private void append(Map<String, String> fields) {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                ((StringRedisConnection) connection).xAdd(
+                        StreamRecords.string(fields).withStreamKey(WRITES_KEY), TRIM_OPTIONS));
+    }
+
+    /**
+     * Apply the write stream to this instance's shard stores, one blocking XREAD at a time
+     * The position is saved after each batch, and a reader starting or recovering from an error
+     * continues from it. If records after it were trimmed meanwhile, the loaded shard stores are
+     * closed, to be reconciled with KbData when next opened.
+     */
+    @SuppressWarnings("unchecked")
+    private void readWrites() {
+        String readId = null;
+        boolean resuming = true;
+        while (running) {
+            try {
+                if (readId == null) {
+                    readId = startOffset();
+                } else if (resuming) {
+                    reloadIfTrimmed(readId);
+                }
+                resuming = false;
+
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        StreamReadOptions.empty().count(READ_BATCH_SIZE).block(READ_BLOCK),
+                        StreamOffset.create(WRITES_KEY, ReadOffset.from(readId)));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                for (MapRecord<String, Object, Object> record : records) {
+                    applyWrites(record.getValue());
+                    readId = record.getId().getValue();
+                }
+                stringRedisTemplate.opsForValue().set(OFFSET_KEY_PREFIX + instanceId, readId, OFFSET_TTL);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                resuming = true;
+                log.warn("Failed to read vector shard writes on instance {}: {}", instanceId, e.getMessage());
+                try {
+                    Thread.sleep(READ_BLOCK.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the saved position of this instance, or the last record for an instance without one
+     */
+    private String startOffset() {
+        String saved = stringRedisTemplate.opsForValue().get(OFFSET_KEY_PREFIX + instanceId);
+        if (saved != null) {
+            reloadIfTrimmed(saved);
+            return saved;
+        }
+        List<MapRecord<String, Object, Object>> last = stringRedisTemplate.opsForStream()
+                .reverseRange(WRITES_KEY, Range.unbounded(), Limit.limit().count(1));
+        return last == null || last.isEmpty() ? STREAM_START : last.get(0).getId().getValue();
+    }
+
+    // Trimming removes the oldest records first, so none after the position are gone while its own record is there
+    private void reloadIfTrimmed(String readId) {
+        if (STREAM_START.equals(readId)) {
+            return;
+        }
+        List<MapRecord<String, Object, Object>> current = stringRedisTemplate.opsForStream()
+                .range(WRITES_KEY, Range.closed(readId, readId));
+        if (current == null || current.isEmpty()) {
+            log.warn("Vector shard writes after {} were trimmed before instance {} read them, reloading its shards",
+                    readId, instanceId);
+            vectorStoreService.unloadShards();
+        }
+    }
+
+    /**
+     * Apply a write record to the shard stores loaded on this instance
+     */
+    private void applyWrites(Map<Object, Object> record) {
+        Map<String, String> fields = new HashMap<>();
+        record.forEach((field, value) -> fields.put(field.toString(), value.toString()));
+        String kbId = fields.get(FIELD_KB_ID);
+        try {
+            if (fields.containsKey(FIELD_DROP)) {
+                // Also the whole-store index, which misses the writes made while the knowledge base was sharded
+                vectorStoreService.drop(kbId);
+                vectorIndexService.drop(kbId);
+                assignments.remove(kbId);
+                return;
+            }
+            vectorStoreService.updateShards(kbId, split(fields.get(FIELD_UPSERTS)), split(fields.get(FIELD_DELETES)));
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply vector shard writes of knowledge base {}: {}", kbId, e.getMessage());
+        }
+    }
+
+    private static List<String> split(String value) {
+        return value == null || value.isEmpty() ? List.of() : Arrays.asList(value.split(","));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,939 @@
+package com.fastgpt.ai.service.impl;
+
+import com.fastgpt.ai.entity.KbData;
+import com.fastgpt.ai.entity.KnowledgeBase;
+import com.fastgpt.ai.repository.KbDataRepository;
+import com.fastgpt.ai.service.VectorStoreService;
+import com.fastgpt.ai.util.MappedVectorStore;
+import com.fastgpt.ai.util.MetadataBitmaps;
+import com.fastgpt.ai.util.ProductQuantizer;
+import com.fastgpt.ai.util.QuantizedVectors;
+import com.fastgpt.ai.util.ScalarQuantizer;
+import com.fastgpt.ai.util.TopScores;
+import com.fastgpt.ai.util.VectorMatch;
+import com.fastgpt.ai.util.VectorMath;
+import com.fastgpt.ai.util.VectorQuantizer;
+import com.fastgpt.ai.util.VectorShards;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorStoreServiceImpl implements VectorStoreService {
+
+    private final KbDataRepository kbDataRepository;
+
+    @Value("${vector.store.enabled:true}")
+    private boolean storeEnabled;
+
+    // One directory per knowledge base, holding the current generation of its store
+    @Value("${vector.store.dir:data/vector-store}")
+    private String storeDir;
+
+    @Value("${vector.store.compact-interval-ms:600000}")
+    private long compactIntervalMs;
+
+    // Compact a store once this fraction of its vectors are tombstones
+    @Value("${vector.store.max-deleted-ratio:0.3}")
+    private double maxDeletedRatio;
+
+    // Items read from KbData per query when a store is built or checked on load
+    @Value("${vector.store.load-page-size:1000}")
+    private int loadPageSize;
+
+    // Quantized searches re-rank this many candidates per requested match with exact vectors
+    @Value("${vector.quantization.rerank-factor:10}")
+    private int rerankFactor;
+
+    // Vectors read from a store to train its quantizer
+    @Value("${vector.quantization.train-sample:4096}")
+    private int trainSample;
+
+    // Default one byte per 16 dimensions, 64x smaller than float32
+    @Value("${vector.quantization.pq-subspaces:0}")
+    private int pqSubspaces;
+
+    @Value("${vector.quantization.pq-iterations:8}")
+    private int pqIterations;
+
+    // Vectors per fork-join task of an exact scan
+    @Value("${vector.search.partition-size:8192}")
+    private int partitionSize;
+
+    // Metadata filters matching at most this many vectors score only those, exactly
+    @Value("${vector.search.prefilter-max:8192}")
+    private int prefilterMax;
+
+    private static final String CURRENT = "CURRENT";
+    private static final String SHARD_INFIX = ".shard-";
+    private static final String QUANTIZATION_INT8 = "int8";
+    private static final String QUANTIZATION_PQ = "pq";
+    private static final int DIMENSIONS_PER_SUBSPACE = 16;
+    // Times a filtered quantized search is retried with four times the candidates
+    private static final int MAX_WIDENINGS = 3;
+
+    // Keyed by store name: the knowledge base ID, or kbId.shard-N-of-M
+    private final Map<String, StoreHolder> stores = new ConcurrentHashMap<>();
+    private ScheduledExecutorService compactionScheduler;
+    private ExecutorService quantizationExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!storeEnabled) {
+            return;
+        }
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vector-store-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(this::maintain, compactIntervalMs, compactIntervalMs,
+                TimeUnit.MILLISECONDS);
+        // Training takes seconds per knowledge base, so it runs off the search path
+        quantizationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vector-quantization");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        if (quantizationExecutor != null) {
+            quantizationExecutor.shutdownNow();
+        }
+        stores.values().forEach(StoreHolder::close);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return storeEnabled;
+    }
+
+    @Override
+    public QuantizedVectors getQuantized(KnowledgeBase kb, MappedVectorStore store) {
+        String quantization = storeEnabled ? quantization(kb) : null;
+        if (quantization == null) {
+            return null;
+        }
+        return holder(kb.getKbId()).quantized(store, quantizationKey(quantization, kb, store));
+    }
+
+    @Override
+    public List<VectorMatch> search(KnowledgeBase kb, List<Float> queryVector, int limit, double minScore,
+                                    Predicate<String> filter, Map<String, List<String>> metadataFilters) {
+        if (!storeEnabled) {
+            return null;
+        }
+        return search(holder(kb.getKbId()), kb, queryVector, limit, minScore, filter, metadataFilters);
+    }
+
+    @Override
+    public List<VectorMatch> searchShard(KnowledgeBase kb, int shard, List<Float> queryVector, int limit,
+                                         double minScore, Predicate<String> filter,
+                                         Map<String, List<String>> metadataFilters) {
+        if (!storeEnabled || kb.getVectorShards() == null || shard < 0 || shard >= kb.getVectorShards()) {
+            return null;
+        }
+        StoreHolder holder = shardHolder(kb.getKbId(), kb.getVectorShards(), shard);
+        List<VectorMatch> matches = search(holder, kb, queryVector, limit, minScore, filter, metadataFilters);
+        // An empty shard has no store yet
+        return matches == null && holder.get() == null ? new ArrayList<>() : matches;
+    }
+
+    private List<VectorMatch> search(StoreHolder holder, KnowledgeBase kb, List<Float> queryVector, int limit,
+                                     double minScore, Predicate<String> filter,
+                                     Map<String, List<String>> metadataFilters) {
+        MappedVectorStore store = holder.acquire();
+        if (store == null) {
+            return null;
+        }
+        try {
+            return store.getDimensions() == queryVector.size()
+                    ? search(holder, store, kb, queryVector, limit, minScore, filter, metadataFilters) : null;
+        } finally {
+            store.release();
+        }
+    }
+
+    private List<VectorMatch> search(StoreHolder holder, MappedVectorStore store, KnowledgeBase kb,
+                                     List<Float> queryVector, int limit, double minScore, Predicate<String> filter,
+                                     Map<String, List<String>> metadataFilters) {
+        RoaringBitmap allowed = null;
+        if (metadataFilters != null && !metadataFilters.isEmpty()) {
+            MetadataBitmaps bitmaps = holder.metadata(store);
+            if (bitmaps == null) {
+                return null;
+            }
+            allowed = bitmaps.match(metadataFilters);
+            // Few matches are cheaper to score exactly than to find among all the codes
+            if (allowed.getLongCardinality() <= prefilterMax) {
+                return prefiltered(store, queryVector, limit, minScore, filter, allowed);
+            }
+        }
+
+        String quantization = quantization(kb);
+        if (quantization != null) {
+            QuantizedVectors quantized = holder.quantized(store, quantizationKey(quantization, kb, store));
+            if (quantized != null) {
+                return rerank(store, quantized, queryVector, limit, minScore, filter, allowed);
+            }
+        }
+
+        return exact(store, queryVector, limit, minScore, filter, allowed);
+    }
+
+    @Override
+    public List<VectorMatch> searchExact(String kbId, List<Float> queryVector, int limit, double minScore,
+                                         Predicate<String> filter, Map<String, List<String>> metadataFilters) {
+        if (!storeEnabled) {
+            return null;
+        }
+        StoreHolder holder = holder(kbId);
+        MappedVectorStore store = holder.acquire();
+        if (store == null) {
+            return null;
+        }
+        try {
+            if (store.getDimensions() != queryVector.size()) {
+                return null;
+            }
+            if (metadataFilters == null || metadataFilters.isEmpty()) {
+                return exact(store, queryVector, limit, minScore, filter, null);
+            }
+            MetadataBitmaps bitmaps = holder.metadata(store);
+            if (bitmaps == null) {
+                return null;
+            }
+            RoaringBitmap allowed = bitmaps.match(metadataFilters);
+            return allowed.getLongCardinality() <= prefilterMax
+                    ? prefiltered(store, queryVector, limit, minScore, filter, allowed)
+                    : exact(store, queryVector, limit, minScore, filter, allowed);
+        } finally {
+            store.release();
+        }
+    }
+
+    /**
+     * Scan the whole store in parallel partitions
+     * @param allowed Ordinals passing the metadata filters, or null for all
+     */
+    private List<VectorMatch> exact(MappedVectorStore store, List<Float> queryVector, int limit, double minScore,
+                                    Predicate<String> filter, RoaringBitmap allowed) {
+        TopScores top = store.top(VectorMath.toArray(queryVector), limit, (float) minScore,
+                allowed != null ? allowed::contains : null, filter, partitionSize);
+        return store.matches(top);
+    }
+
+    /**
+     * Score only the ordinals passing the metadata filters
+     */
+    private List<VectorMatch> prefiltered(MappedVectorStore store, List<Float> queryVector, int limit,
+                                          double minScore, Predicate<String> filter, RoaringBitmap allowed) {
+        if (allowed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TopScores top = store.top(VectorMath.toArray(queryVector), limit, (float) minScore, allowed.toArray(), filter);
+        return store.matches(top);
+    }
+
+    /**
+     * Find candidates on the quantized codes and score them with the full-precision vectors
+     * Candidates are chosen on the codes and the metadata bitmap alone; tombstones and the ID
+     * filter are applied when they are scored, in one batch, and the ID filter may widen the
+     * search a few times while too few candidates pass it.
+     */
+    private List<VectorMatch> rerank(MappedVectorStore store, QuantizedVectors quantized, List<Float> queryVector,
+                                     int limit, double minScore, Predicate<String> filter, RoaringBitmap allowed) {
+        float[] query = VectorMath.toArray(queryVector);
+        if (VectorMath.normalize(query) == 0) {
+            return new ArrayList<>();
+        }
+        IntPredicate accept = allowed != null ? allowed::contains : null;
+        int wanted = (int) Math.min(Integer.MAX_VALUE >> 8, (long) limit * rerankFactor);
+        for (int round = 0; ; round++) {
+            int[] candidates = quantized.candidates(query, wanted, accept, partitionSize);
+            TopScores top = store.top(query, limit, (float) minScore, candidates, filter);
+            if (top.size() >= limit || filter == null || candidates.length < wanted || round == MAX_WIDENINGS) {
+                return store.matches(top);
+            }
+            wanted *= 4;
+        }
+    }
+
+    /**
+     * @return int8, pq, or null if the knowledge base keeps only full-precision vectors
+     */
+    private static String quantization(KnowledgeBase kb) {
+        String mode = kb.getVectorQuantization();
+        if (QUANTIZATION_INT8.equalsIgnoreCase(mode)) {
+            return QUANTIZATION_INT8;
+        }
+        return QUANTIZATION_PQ.equalsIgnoreCase(mode) ? QUANTIZATION_PQ : null;
+    }
+
+    /**
+     * Identify the quantizer settings of a knowledge base, so changed settings retrain its codes
+     */
+    private String quantizationKey(String quantization, KnowledgeBase kb, MappedVectorStore store) {
+        if (QUANTIZATION_INT8.equals(quantization)) {
+            return QUANTIZATION_INT8;
+        }
+        int dimensions = store.getDimensions();
+        int subspaces = kb.getPqSubspaces() != null ? kb.getPqSubspaces()
+                : pqSubspaces > 0 ? pqSubspaces : Math.max(1, dimensions / DIMENSIONS_PER_SUBSPACE);
+        return QUANTIZATION_PQ + ":" + Math.max(1, Math.min(subspaces, dimensions));
+    }
+
+    /**
+     * Train a quantizer for a settings key on a sample of a store
+     */
+    private VectorQuantizer train(String key, MappedVectorStore store) {
+        float[][] sample = QuantizedVectors.sample(store, trainSample);
+        if (sample.length == 0) {
+            return null;
+        }
+        if (QUANTIZATION_INT8.equals(key)) {
+            return ScalarQuantizer.train(sample);
+        }
+        int subspaces = Integer.parseInt(key.substring(QUANTIZATION_PQ.length() + 1));
+        return ProductQuantizer.train(sample, subspaces, pqIterations, 42L);
+    }
+
+    @Override
+    public MappedVectorStore acquireStore(String kbId) {
+        return storeEnabled ? holder(kbId).acquire() : null;
+    }
+
+    @Override
+    public void add(String kbId, String dataId, List<Float> vector, Map<String, String> metadata) {
+        if (!storeEnabled || vector == null || vector.isEmpty()) {
+            return;
+        }
+        StoreHolder holder = holder(kbId);
+        MappedVectorStore store = holder.get();
+        if (store != null && store.getDimensions() != vector.size()) {
+            log.info("Vector dimensions of knowledge base {} changed from {} to {}, dropping its store",
+                    kbId, store.getDimensions(), vector.size());
+            drop(kbId);
+            return;
+        }
+        holder.add(dataId, VectorMath.toArray(vector), metadata);
+    }
+
+    @Override
+    public void remove(String kbId, String dataId) {
+        if (!storeEnabled) {
+            return;
+        }
+        StoreHolder holder = holder(kbId);
+        if (holder.get() != null) {
+            holder.remove(dataId);
+        }
+    }
+
+    @Override
+    public void updateShards(String kbId, Collection<String> upsertedIds, Collection<String> deletedIds) {
+        if (!storeEnabled) {
+            return;
+        }
+        String prefix = kbId + SHARD_INFIX;
+        // Shards not loaded here read the writes from KbData when they are
+        List<StoreHolder> loaded = stores.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix) && entry.getValue().loaded)
+                .map(Map.Entry::getValue)
+                .toList();
+        if (loaded.isEmpty()) {
+            return;
+        }
+        List<KbData> upserts = upsertedIds.isEmpty() ? List.of() : kbDataRepository.findByDataIdIn(upsertedIds);
+        for (StoreHolder holder : loaded) {
+            for (KbData data : upserts) {
+                List<Float> vector = data.getVector();
+                MappedVectorStore store = holder.store;
+                if (vector != null && !vector.isEmpty()
+                        && VectorShards.shardOf(data.getDataId(), holder.shards) == holder.shard
+                        && (store == null || store.getDimensions() == vector.size())) {
+                    holder.add(data.getDataId(), VectorMath.toArray(vector), data.getCollectionMeta());
+                }
+            }
+            for (String dataId : deletedIds) {
+                if (holder.store != null && VectorShards.shardOf(dataId, holder.shards) == holder.shard) {
+                    holder.remove(dataId);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void unloadShards() {
+        stores.entrySet().removeIf(entry -> {
+            if (!entry.getKey().contains(SHARD_INFIX)) {
+                return false;
+            }
+            entry.getValue().close();
+            return true;
+        });
+    }
+
+    @Override
+    public void drop(String kbId) {
+        StoreHolder holder = stores.remove(kbId);
+        if (holder != null) {
+            holder.close();
+        }
+        try {
+            FileSystemUtils.deleteRecursively(Paths.get(storeDir, kbId));
+        } catch (IOException e) {
+            log.warn("Failed to delete vector store of knowledge base {}: {}", kbId, e.getMessage());
+        }
+        dropShards(kbId);
+    }
+
+    /**
+     * Close and delete the shard stores of a knowledge base, loaded or only on disk
+     */
+    private void dropShards(String kbId) {
+        String prefix = kbId + SHARD_INFIX;
+        stores.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            entry.getValue().close();
+            return true;
+        });
+        Path root = Paths.get(storeDir);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.filter(dir -> dir.getFileName().toString().startsWith(prefix)).toList()) {
+                FileSystemUtils.deleteRecursively(dir);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete shard stores of knowledge base {}: {}", kbId, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stores.forEach((name, holder) -> {
+            MappedVectorStore store = holder.store;
+            if (store != null) {
+                QuantizedVectors quantized = holder.quantized;
+                StoreBitmaps bitmaps = holder.bitmaps;
+                stats.put(name, Map.of(
+                        "size", store.size(),
+                        "deleted", store.deletedCount(),
+                        "dimensions", store.getDimensions(),
+                        "bytes", 4L * store.getDimensions() * store.ordinalLimit(),
+                        "quantization", quantized != null ? holder.quantizedKey : "none",
+                        "codeBytes", quantized != null ? quantized.memoryBytes() : 0L,
+                        "metadataBytes", bitmaps != null ? bitmaps.bitmaps().memoryBytes() : 0L));
+            }
+        });
+        return stats;
+    }
+
+    private StoreHolder holder(String kbId) {
+        return stores.computeIfAbsent(kbId, key -> new StoreHolder(kbId, 1, 0));
+    }
+
+    private StoreHolder shardHolder(String kbId, int shards, int shard) {
+        return stores.computeIfAbsent(storeName(kbId, shards, shard), key -> new StoreHolder(kbId, shards, shard));
+    }
+
+    // Shard stores live beside the whole store, e.g. kb1.shard-3-of-8, so either can be dropped alone
+    private static String storeName(String kbId, int shards, int shard) {
+        return shards > 1 ? kbId + SHARD_INFIX + shard + "-of-" + shards : kbId;
+    }
+
+    /**
+     * Compact stores with many tombstones and write dirty pages of the others to disk
+     */
+    private void maintain() {
+        stores.forEach((name, holder) -> {
+            MappedVectorStore store = holder.store;
+            if (store == null) {
+                return;
+            }
+            try {
+                int deleted = store.deletedCount();
+                if (deleted > 0 && deleted >= (store.size() + deleted) * maxDeletedRatio) {
+                    holder.compact();
+                } else {
+                    store.flush();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to maintain vector store of knowledge base {}: {}", name, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Lazily opened store of one knowledge base, or of one shard of it
+     * The directory of a knowledge base holds generations gen-1, gen-2, ..., and a CURRENT file
+     * naming the one in use; compaction writes the next generation and then switches CURRENT.
+     * A replaced generation is deleted once the searches and indexes reading it release it.
+     */
+    private class StoreHolder {
+        private final String kbId;
+        // The knowledge base ID, or the ID and shard for a shard store; names its directory
+        private final String name;
+        private final int shards;
+        private final int shard;
+        private final Path baseDir;
+        private volatile MappedVectorStore store;
+        private volatile boolean loaded;
+        private int generation;
+        // Codes of the vectors of quantizedStore, trained for quantizedKey on trainedSize vectors
+        private volatile QuantizedVectors quantized;
+        private volatile String quantizedKey;
+        private MappedVectorStore quantizedStore;
+        private int trainedSize;
+        // Codes being encoded in the background, kept in sync with writes until installed
+        private QuantizedVectors pending;
+        private boolean quantizing;
+        // Metadata bitmaps over the ordinals of one store, built on the first filtered search
+        private volatile StoreBitmaps bitmaps;
+
+        StoreHolder(String kbId, int shards, int shard) {
+            this.kbId = kbId;
+            this.name = storeName(kbId, shards, shard);
+            this.shards = shards;
+            this.shard = shard;
+            this.baseDir = Paths.get(storeDir, name);
+        }
+
+        /**
+         * @return The store, or null if the knowledge base has no vectors yet
+         */
+        MappedVectorStore get() {
+            if (!loaded) {
+                synchronized (this) {
+                    if (!loaded) {
+                        store = load();
+                        loaded = true;
+                    }
+                }
+            }
+            return store;
+        }
+
+        /**
+         * Get the store with a reference the caller must release
+         * @return The store, or null if the knowledge base has no vectors yet
+         */
+        MappedVectorStore acquire() {
+            while (true) {
+                MappedVectorStore current = get();
+                // A store retired since it was read has already been replaced by its successor
+                if (current == null || current.acquire()) {
+                    return current;
+                }
+            }
+        }
+
+        synchronized void add(String dataId, float[] vector, Map<String, String> metadata) {
+            try {
+                if (store == null) {
+                    store = MappedVectorStore.open(nextGeneration(), vector.length);
+                    switchToCurrent();
+                }
+                int previous = store.ordinalOf(dataId);
+                int ordinal = store.add(dataId, vector);
+                StoreBitmaps current = bitmaps;
+                if (current != null && current.store() == store) {
+                    current.bitmaps().add(ordinal, metadata);
+                }
+                if (quantized != null || pending != null) {
+                    float[] normalized = new float[store.getDimensions()];
+                    store.read(ordinal, normalized);
+                    for (QuantizedVectors codes : new QuantizedVectors[] {quantized, pending}) {
+                        if (codes != null) {
+                            codes.set(ordinal, normalized);
+                            if (previous >= 0) {
+                                codes.remove(previous);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to store vector of " + dataId, e);
+            }
+        }
+
+        synchronized void remove(String dataId) {
+            try {
+                int ordinal = store.ordinalOf(dataId);
+                if (store.remove(dataId) && ordinal >= 0) {
+                    for (QuantizedVectors codes : new QuantizedVectors[] {quantized, pending}) {
+                        if (codes != null) {
+                            codes.remove(ordinal);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to delete vector of " + dataId, e);
+            }
+        }
+
+        /**
+         * Copy the live vectors into the next generation and switch to it
+         */
+        synchronized void compact() throws IOException {
+            MappedVectorStore previous = store;
+            Path previousDir = generationDir(generation);
+            MappedVectorStore compacted = previous.compactTo(nextGeneration());
+            switchToCurrent();
+            store = compacted;
+            // Ordinals changed, so the codes are re-encoded with the same quantizer and the bitmaps rebuilt
+            bitmaps = null;
+            VectorQuantizer quantizer = quantized != null ? quantized.getQuantizer() : null;
+            String key = quantizedKey;
+            quantized = null;
+            pending = null;
+            if (quantizer != null) {
+                quantizing = true;
+                quantizationExecutor.execute(() -> quantize(compacted, key, quantizer));
+            }
+            previous.close();
+            previous.retire(() -> {
+                try {
+                    FileSystemUtils.deleteRecursively(previousDir);
+                } catch (IOException e) {
+                    log.warn("Failed to delete compacted vector store {}: {}", previousDir, e.getMessage());
+                }
+            });
+            log.info("Compacted vector store of knowledge base {}: {} tombstones removed",
+                    name, previous.deletedCount());
+        }
+
+        /**
+         * Get the metadata bitmaps of a store, building them from KbData on first use
+         * @return The bitmaps, or null if the store was replaced by compaction meanwhile
+         */
+        MetadataBitmaps metadata(MappedVectorStore current) {
+            StoreBitmaps built = bitmaps;
+            if (built == null || built.store() != current) {
+                synchronized (this) {
+                    if (store != current) {
+                        return null;
+                    }
+                    built = bitmaps;
+                    if (built == null || built.store() != current) {
+                        built = new StoreBitmaps(current, buildMetadata(current));
+                        bitmaps = built;
+                    }
+                }
+            }
+            return built.bitmaps();
+        }
+
+        // Writes wait on the holder lock, so none are missed between the query and installing the bitmaps
+        private MetadataBitmaps buildMetadata(MappedVectorStore current) {
+            long start = System.currentTimeMillis();
+            MetadataBitmaps built = new MetadataBitmaps();
+            for (KbData data : kbDataRepository.findMetadata(kbId, shards, shard)) {
+                int ordinal = current.ordinalOf(data.getDataId());
+                if (ordinal >= 0) {
+                    built.add(ordinal, data.getCollectionMeta());
+                }
+            }
+            built.optimize();
+            log.info("Built metadata bitmaps of knowledge base {} with {} values in {} bytes in {}ms",
+                    name, built.valueCount(), built.memoryBytes(), System.currentTimeMillis() - start);
+            return built;
+        }
+
+        /**
+         * Get the codes of a store for a quantization key, training them in the background when
+         * they are missing, of other settings, or the store has doubled since training
+         * @return The codes, or null while none match the key
+         */
+        QuantizedVectors quantized(MappedVectorStore current, String key) {
+            QuantizedVectors codes = quantized;
+            boolean usable = codes != null && current == quantizedStore && key.equals(quantizedKey);
+            if (usable && current.size() <= 2L * Math.max(trainedSize, trainSample)) {
+                return codes;
+            }
+            synchronized (this) {
+                if (!quantizing) {
+                    quantizing = true;
+                    quantizationExecutor.execute(() -> quantize(current, key, null));
+                }
+            }
+            return usable ? codes : null;
+        }
+
+        /**
+         * Train a quantizer unless one is given, encode the store with it, and install the codes
+         */
+        private void quantize(MappedVectorStore target, String key, VectorQuantizer given) {
+            boolean acquired = target.acquire();
+            try {
+                if (!acquired) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                VectorQuantizer quantizer = given != null ? given : train(key, target);
+                if (quantizer == null) {
+                    return;
+                }
+                QuantizedVectors codes = new QuantizedVectors(quantizer);
+                synchronized (this) {
+                    if (store != target) {
+                        return;
+                    }
+                    pending = codes;
+                }
+                // Writes during encoding go to the pending codes too
+                float[] vector = new float[target.getDimensions()];
+                int ordinals = target.ordinalLimit();
+                for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+                    if (!target.isDeleted(ordinal)) {
+                        target.read(ordinal, vector);
+                        codes.set(ordinal, vector);
+                    }
+                }
+                synchronized (this) {
+                    if (store != target || pending != codes) {
+                        return;
+                    }
+                    quantized = codes;
+                    quantizedKey = key;
+                    quantizedStore = target;
+                    trainedSize = target.size();
+                    pending = null;
+                }
+                log.info("Quantized {} vectors of knowledge base {} as {} into {} bytes in {}ms",
+                        codes.size(), name, key, codes.memoryBytes(), System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                log.warn("Failed to quantize vectors of knowledge base {}: {}", name, e.getMessage());
+            } finally {
+                if (acquired) {
+                    target.release();
+                }
+                synchronized (this) {
+                    quantizing = false;
+                }
+            }
+        }
+
+        synchronized void close() {
+            if (store != null) {
+                try {
+                    store.flush();
+                    store.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close vector store of knowledge base {}: {}", name, e.getMessage());
+                }
+            }
+        }
+
+        private MappedVectorStore load() {
+            MappedVectorStore opened = open();
+            if (opened != null) {
+                try {
+                    reconcile(opened);
+                    return opened;
+                } catch (IOException | RuntimeException e) {
+                    log.info("Discarding vector store of knowledge base {}: {}", name, e.getMessage());
+                    try {
+                        opened.close();
+                    } catch (IOException ignored) {
+                        // Deleted below
+                    }
+                }
+            }
+            try {
+                FileSystemUtils.deleteRecursively(baseDir);
+                generation = 0;
+                return build();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to build vector store of knowledge base {}: {}", name, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Open the current generation
+         * @return The store, or null if it is missing or of an older format
+         */
+        private MappedVectorStore open() {
+            Path current = baseDir.resolve(CURRENT);
+            if (!Files.exists(current)) {
+                return null;
+            }
+            try {
+                String name = Files.readString(current, StandardCharsets.UTF_8).trim();
+                generation = Integer.parseInt(name.substring("gen-".length()));
+                Path dir = generationDir(generation);
+                int dimensions = MappedVectorStore.readDimensions(dir);
+                return dimensions > 0 ? MappedVectorStore.open(dir, dimensions) : null;
+            } catch (IOException | RuntimeException e) {
+                log.info("Discarding unreadable vector store of knowledge base {}: {}", name, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Bring an opened store in line with KbData, matching vectors by data ID
+         * The data IDs of the items with a vector are streamed in _id order: vectors the store is
+         * missing are added, and live vectors whose data is gone are tombstoned, so a store that
+         * missed writes while closed is repaired rather than rebuilt. Items without a vector are
+         * not expected in the store.
+         */
+        private void reconcile(MappedVectorStore opened) throws IOException {
+            long start = System.currentTimeMillis();
+            BitSet present = new BitSet(opened.ordinalLimit());
+            List<String> missing = new ArrayList<>();
+            int added = 0;
+            String afterId = null;
+            List<KbData> page;
+            do {
+                page = kbDataRepository.findVectorIdPage(kbId, shards, shard, afterId, loadPageSize);
+                for (KbData data : page) {
+                    int ordinal = opened.ordinalOf(data.getDataId());
+                    if (ordinal >= 0) {
+                        present.set(ordinal);
+                    } else {
+                        missing.add(data.getDataId());
+                    }
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+                if (missing.size() >= loadPageSize || (page.size() < loadPageSize && !missing.isEmpty())) {
+                    added += addMissing(opened, missing, present);
+                    missing.clear();
+                }
+            } while (page.size() == loadPageSize);
+
+            int removed = 0;
+            int ordinals = opened.ordinalLimit();
+            for (int ordinal = present.nextClearBit(0); ordinal < ordinals; ordinal = present.nextClearBit(ordinal + 1)) {
+                if (!opened.isDeleted(ordinal) && opened.remove(opened.idOf(ordinal))) {
+                    removed++;
+                }
+            }
+            opened.flush();
+            log.info("Opened vector store of knowledge base {} with {} vectors in {}ms ({} added, {} removed)",
+                    name, opened.size(), System.currentTimeMillis() - start, added, removed);
+        }
+
+        private int addMissing(MappedVectorStore opened, List<String> dataIds, BitSet present) throws IOException {
+            int added = 0;
+            for (KbData data : kbDataRepository.findByDataIdIn(dataIds)) {
+                List<Float> vector = data.getVector();
+                if (vector == null || vector.isEmpty() || !kbId.equals(data.getKbId())) {
+                    continue;
+                }
+                if (vector.size() != opened.getDimensions()) {
+                    throw new IOException("vector dimensions changed from " + opened.getDimensions()
+                            + " to " + vector.size());
+                }
+                // Synced by the flush at the end of the reconciliation
+                present.set(opened.append(data.getDataId(), VectorMath.toArray(vector)));
+                added++;
+            }
+            return added;
+        }
+
+        /**
+         * Build a new generation from the vectors in KbData, streamed in _id order
+         * @return The store, or null if the knowledge base has no vectors
+         */
+        private MappedVectorStore build() throws IOException {
+            long start = System.currentTimeMillis();
+            MappedVectorStore built = null;
+            String afterId = null;
+            List<KbData> page;
+            do {
+                page = kbDataRepository.findVectorPage(kbId, shards, shard, afterId, loadPageSize);
+                for (KbData data : page) {
+                    List<Float> vector = data.getVector();
+                    if (vector == null || vector.isEmpty()) {
+                        continue;
+                    }
+                    if (built == null) {
+                        built = MappedVectorStore.open(nextGeneration(), vector.size());
+                    }
+                    if (vector.size() == built.getDimensions()) {
+                        built.append(data.getDataId(), VectorMath.toArray(vector));
+                    }
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == loadPageSize);
+            if (built != null) {
+                built.flush();
+                switchToCurrent();
+                log.info("Built vector store of knowledge base {} with {} vectors in {}ms",
+                        name, built.size(), System.currentTimeMillis() - start);
+            }
+            return built;
+        }
+
+        private Path nextGeneration() {
+            // A replaced generation stays on disk until its last reader releases it
+            do {
+                generation++;
+            } while (Files.exists(generationDir(generation)));
+            return generationDir(generation);
+        }
+
+        private Path generationDir(int number) {
+            return baseDir.resolve("gen-" + number);
+        }
+
+        /**
+         * Point CURRENT at the latest generation, atomically
+         */
+        private void switchToCurrent() throws IOException {
+            Path temp = baseDir.resolve(CURRENT + ".tmp");
+            Files.writeString(temp, "gen-" + generation, StandardCharsets.UTF_8);
+            Files.move(temp, baseDir.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Metadata bitmaps and the store generation whose ordinals they hold
+     */
+    private record StoreBitmaps(MappedVectorStore store, MetadataBitmaps bitmaps) {
+    }
+}
@@ -8,11 +8,14 @@ import com.fastgpt.ai.entity.workflow.Edge;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fastgpt.ai.entity.workflow.NodeInput;
 import com.fastgpt.ai.entity.workflow.NodeOutput;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
 import com.fastgpt.ai.service.NodeDispatcher;
 import com.fastgpt.ai.service.NodeDispatcherRegistry;
 import com.fastgpt.ai.service.UsageTrackingService;
 import com.fastgpt.ai.service.VariableManager;
 import com.fastgpt.ai.service.WorkflowDispatcher;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.RequestPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -45,6 +48,17 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                                               String teamId,
                                               String appId,
                                               BiConsumer<String, Boolean> streamConsumer) {
+        return dispatchWorkflow(workflow, inputs, userId, teamId, appId, streamConsumer, CancellationToken.current());
+    }
+
+    @Override
+    public Map<String, Object> dispatchWorkflow(WorkflowDTO workflow, 
+                                              Map<String, Object> inputs,
+                                              String userId,
+                                              String teamId,
+                                              String appId,
+                                              BiConsumer<String, Boolean> streamConsumer,
+                                              CancellationToken cancellationToken) {
         // 保存节点响应和资源使用情况
         List<Map<String, Object>> flowResponses = new ArrayList<>();
         List<Map<String, Object>> flowUsages = new ArrayList<>();
@@ -76,7 +90,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                 flowResponses, 
                 flowUsages, 
                 streamConsumer, 
-                finalOutputs
+                finalOutputs,
+                cancellationToken
             );
             
             // 跟踪工作流使用情况
@@ -88,6 +103,9 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
             }
             
             return finalOutputs;
+        } catch (ExecutionCancelledException e) {
+            log.info("Workflow {} cancelled: {}", workflow.getWorkflowId(), e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Error dispatching workflow", e);
             Map<String, Object> errorResult = new HashMap<>();
@@ -154,7 +172,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
         List<Map<String, Object>> flowResponses,
         List<Map<String, Object>> flowUsages,
         BiConsumer<String, Boolean> streamConsumer,
-        Map<String, Object> finalOutputs
+        Map<String, Object> finalOutputs,
+        CancellationToken cancellationToken
     ) {
         // 找到入口节点
         List<Node> entryNodes = runtimeNodes.stream()
@@ -184,7 +203,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                 flowUsages, 
                 streamConsumer, 
                 executedNodeIds, 
-                skippedNodeIds
+                skippedNodeIds,
+                cancellationToken
             );
             
             // 收集输出
@@ -215,8 +235,12 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
         List<Map<String, Object>> flowUsages,
         BiConsumer<String, Boolean> streamConsumer,
         List<String> executedNodeIds,
-        Set<String> skippedNodeIds
+        Set<String> skippedNodeIds,
+        CancellationToken cancellationToken
     ) {
+        // 已取消则不再执行剩余节点
+        cancellationToken.throwIfCancelled();
+        
         // 检查运行次数限制
         if (remainingRuns <= 0) {
             return;
@@ -236,7 +260,7 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
             
             // 执行节点
             long nodeStartTime = System.currentTimeMillis();
-            Map<String, Object> result = executeNode(node, runtimeNodes, variables);
+            Map<String, Object> result = executeNode(node, runtimeNodes, variables, cancellationToken);
             long nodeExecutionTime = System.currentTimeMillis() - nodeStartTime;
             
             // 跟踪节点执行
@@ -277,7 +301,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                     flowUsages, 
                     streamConsumer, 
                     executedNodeIds, 
-                    skippedNodeIds
+                    skippedNodeIds,
+                    cancellationToken
                 );
             }
             
@@ -293,7 +318,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                     flowUsages, 
                     streamConsumer, 
                     executedNodeIds, 
-                    skippedNodeIds
+                    skippedNodeIds,
+                    cancellationToken
                 );
             }
         } else if ("skip".equals(status)) {
@@ -328,7 +354,8 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
                         flowUsages, 
                         streamConsumer, 
                         executedNodeIds, 
-                        skippedNodeIds
+                        skippedNodeIds,
+                        cancellationToken
                     );
                 }
             }
@@ -338,10 +365,17 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
     /**
      * 执行单个节点
      */
-    private Map<String, Object> executeNode(Node node, List<Node> runtimeNodes, Map<String, Object> variables) {
+    private Map<String, Object> executeNode(Node node, 
+                                            List<Node> runtimeNodes, 
+                                            Map<String, Object> variables,
+                                            CancellationToken cancellationToken) {
         log.debug("Executing node: {}", node.getName());
         
-        try {
+        // 绑定取消令牌，节点内的外部调用会在取消时中断
+        // 未由调用方指定优先级的工作流按批量任务排队，让位于交互式对话
+        CancellationToken.Scope scope = cancellationToken.bind();
+        RequestPriority.Scope priorityScope = RequestPriority.BATCH.bindIfAbsent();
+        try (scope; priorityScope) {
             // 获取节点参数
             Map<String, Object> params = getNodeParams(node, runtimeNodes, variables);
             
@@ -354,6 +388,9 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
             // 执行节点
             NodeOutDTO outDTO = dispatcher.dispatch(node, params);
             
+            // 节点执行期间被取消时丢弃结果
+            cancellationToken.throwIfCancelled();
+            
             // 转换结果
             Map<String, Object> result = new HashMap<>();
             if (outDTO != null) {
@@ -388,7 +425,12 @@ public class WorkflowDispatcherImpl implements WorkflowDispatcher {
             updateNodeOutputs(node, result);
             
             return result;
+        } catch (ExecutionCancelledException e) {
+            throw e;
         } catch (Exception e) {
+            if (cancellationToken.isCancelled()) {
+                throw new ExecutionCancelledException(cancellationToken.getReason(), e);
+            }
             log.error("Error executing node: {}", node.getName(), e);
             
             // 构建错误结果
@@ -11,6 +11,7 @@ import com.fastgpt.ai.dto.request.WorkflowUpdateRequest;
 import com.fastgpt.ai.entity.Workflow;
 import com.fastgpt.ai.entity.workflow.Edge;
 import com.fastgpt.ai.entity.workflow.Node;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
 import com.fastgpt.ai.exception.ResourceNotFoundException;
 import com.fastgpt.ai.exception.WorkflowExecutionException;
 import com.fastgpt.ai.mapper.WorkflowMapper;
@@ -27,6 +28,7 @@ import com.fastgpt.ai.service.impl.workflow.LoopDispatcher;
 import com.fastgpt.ai.service.impl.workflow.InteractiveNodeDispatcher;
 import com.fastgpt.ai.service.impl.workflow.HttpRequestDispatcher;
 import com.fastgpt.ai.service.impl.workflow.CodeExecutionDispatcher;
+import com.fastgpt.ai.util.CancellationToken;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
@@ -523,7 +525,13 @@ public class WorkflowServiceImpl implements WorkflowService {
             
             // Call RAG service through knowledge base service
             List<com.fastgpt.ai.dto.KbDataDTO> searchResults = knowledgeBaseService.search(
-                    new com.fastgpt.ai.dto.request.VectorSearchRequest(kbIds.get(0), query, limit, minScore, null, null, false));
+                    com.fastgpt.ai.dto.request.VectorSearchRequest.builder()
+                            .kbId(kbIds.get(0))
+                            .query(query)
+                            .limit(limit)
+                            .minScore(minScore)
+                            .useRawQuery(false)
+                            .build());
             
             // Convert search results to map for output
             Map<String, Object> resultsMap = new HashMap<>();
@@ -971,6 +979,11 @@ public class WorkflowServiceImpl implements WorkflowService {
             log.info("Streaming workflow execution completed: {} (ID: {}) in {}ms, processed {} nodes", 
                     workflowId, executionId, durationMs, executor.getVisitedNodes().size());
             
+        } catch (ExecutionCancelledException e) {
+            log.info("Streaming workflow execution cancelled: {} (ID: {})", workflowId, executionId);
+            monitorService.recordWorkflowError(executionId, workflowId, "Cancelled: " + e.getMessage(), 
+                    System.currentTimeMillis() - startTime, 0);
+            throw e;
         } catch (Exception e) {
             log.error("Error in streaming workflow execution", e);
             monitorService.recordWorkflowError(executionId, workflowId, e.getMessage(), 
@@ -1224,6 +1237,8 @@ public class WorkflowServiceImpl implements WorkflowService {
                 // 发送最后的数据块
                 flushCurrentChunk(true);
                 
+            } catch (ExecutionCancelledException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("Error in streaming workflow execution", e);
                 sendErrorChunk(e.getMessage());
@@ -1272,6 +1287,10 @@ public class WorkflowServiceImpl implements WorkflowService {
                 return Collections.emptyMap();
             }
             
+            // 已取消则不再执行剩余节点
+            CancellationToken cancellationToken = CancellationToken.current();
+            cancellationToken.throwIfCancelled();
+            
             NodeDefDTO node = nodeMap.get(nodeId);
             long nodeStartTime = System.currentTimeMillis();
             
@@ -1334,7 +1353,12 @@ public class WorkflowServiceImpl implements WorkflowService {
                 
                 return combinedOutputs;
                 
+            } catch (ExecutionCancelledException e) {
+                throw e;
             } catch (Exception e) {
+                if (cancellationToken.isCancelled()) {
+                    throw new ExecutionCancelledException(cancellationToken.getReason(), e);
+                }
                 log.error("Error executing node: {}", nodeId, e);
                 recordNodeError(node, e);
                 
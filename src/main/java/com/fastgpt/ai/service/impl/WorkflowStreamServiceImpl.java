@@ -3,13 +3,18 @@ package com.fastgpt.ai.service.impl;
 import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.dto.workflow.StreamProgressUpdate;
 import com.fastgpt.ai.dto.workflow.WorkflowDTO;
+import com.fastgpt.ai.exception.ExecutionCancelledException;
 import com.fastgpt.ai.exception.StreamingException;
 import com.fastgpt.ai.exception.WorkflowExecutionException;
+import com.fastgpt.ai.service.StreamRelayService;
 import com.fastgpt.ai.service.WorkflowMonitorService;
 import com.fastgpt.ai.service.WorkflowService;
 import com.fastgpt.ai.service.WorkflowStreamService;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.RequestPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -36,50 +41,75 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
 
     private final WorkflowService workflowService;
     private final WorkflowMonitorService monitorService;
+    private final StreamRelayService streamRelayService;
     private final ScheduledExecutorService heartbeatExecutor = Executors.newScheduledThreadPool(2);
     
     // Active emitters by execution ID
     private final Map<String, SseEmitter> activeEmitters = new ConcurrentHashMap<>();
-    // Cancellation flags by execution ID 
-    private final Map<String, Boolean> cancellationFlags = new ConcurrentHashMap<>();
+    // Stream relay detach handles by execution ID
+    private final Map<String, Runnable> relayDetachers = new ConcurrentHashMap<>();
+    // Cancellation tokens by execution ID
+    private final Map<String, CancellationToken> cancellationTokens = new ConcurrentHashMap<>();
     
     // Constants
     private static final long HEARTBEAT_INTERVAL_MS = 10000; // 10 seconds
     private static final long MAX_HEARTBEAT_COUNT = 300; // 5 minutes (10s * 300)
     private static final long SSE_TIMEOUT = 300 * 1000; // 5 minutes
     
+    // How long an execution keeps running after its client went away, waiting for a watcher to reattach
+    @Value("${workflow.stream.reattach-grace-ms:30000}")
+    private long reattachGraceMs;
+    
+    @Override
+    public String createExecution(String userId) {
+        String executionId = UUID.randomUUID().toString();
+        streamRelayService.open(executionId, userId);
+        return executionId;
+    }
+    
     @Override
     @Async
     public CompletableFuture<Void> streamWorkflowToEmitter(String workflowId, Map<String, Object> inputs, SseEmitter emitter) {
-        String executionId = UUID.randomUUID().toString();
+        String executionId = inputs.containsKey("executionId")
+                ? inputs.get("executionId").toString()
+                : UUID.randomUUID().toString();
         CompletableFuture<Void> completionFuture = new CompletableFuture<>();
         
+        // Share the execution ID with the progress updates so watchers can follow the same stream
+        Map<String, Object> executionInputs = new HashMap<>(inputs);
+        executionInputs.put("executionId", executionId);
+        
         try {
             // Configure emitter for long timeout
+            // A lost connection does not stop the execution, the client may reconnect through the
+            // watch endpoint on any instance; it is cancelled only if nobody reattaches in time
             emitter.onTimeout(() -> {
                 log.warn("SSE connection timed out for execution: {}", executionId);
-                cleanupResources(executionId);
+                releaseEmitter(executionId);
                 completionFuture.complete(null);
             });
             
             emitter.onCompletion(() -> {
                 log.info("SSE connection completed for execution: {}", executionId);
-                cleanupResources(executionId);
+                releaseEmitter(executionId);
                 completionFuture.complete(null);
             });
             
             emitter.onError(ex -> {
                 log.error("SSE connection error for execution: {}", executionId, ex);
-                cleanupResources(executionId);
+                releaseEmitter(executionId);
                 completionFuture.completeExceptionally(ex);
             });
             
-            // Store active emitter for potential cancellation
+            // Store active emitter and cancellation token for potential cancellation
             activeEmitters.put(executionId, emitter);
-            cancellationFlags.put(executionId, false);
+            cancellationTokens.computeIfAbsent(executionId, id -> CancellationToken.create());
+            
+            // Events are published to the execution stream and relayed to this and any other attached emitter
+            relayDetachers.put(executionId, streamRelayService.attach(executionId, emitter, null));
             
             // Send start event
-            sendEvent(emitter, "start", StreamProgressUpdate.builder()
+            streamRelayService.publish(executionId, "start", StreamProgressUpdate.builder()
                     .executionId(executionId)
                     .workflowId(workflowId)
                     .updateType(StreamProgressUpdate.UpdateType.CHUNK)
@@ -91,10 +121,11 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
             startHeartbeat(emitter);
             
             // Execute workflow with streaming
-            executeWithProgressUpdates(workflowId, inputs, progressUpdate -> {
+            executeWithProgressUpdates(workflowId, executionInputs, progressUpdate -> {
                 try {
                     // Check if cancelled
-                    if (cancellationFlags.getOrDefault(executionId, false)) {
+                    CancellationToken token = cancellationTokens.get(executionId);
+                    if (token != null && token.isCancelled()) {
                         throw new StreamingException("Workflow execution cancelled by user");
                     }
                     
@@ -120,28 +151,26 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
                             eventName = "update";
                     }
                     
-                    // Send the event
-                    sendEvent(emitter, eventName, progressUpdate);
+                    // Publish the event
+                    streamRelayService.publish(executionId, eventName, progressUpdate);
                     
-                    // If complete, close the emitter
+                    // If complete, close the execution stream
                     if (progressUpdate.isComplete()) {
-                        log.info("Workflow execution complete, closing emitter for {}", executionId);
-                        cleanupResources(executionId);
-                        emitter.complete();
+                        log.info("Workflow execution complete, closing stream for {}", executionId);
+                        streamRelayService.complete(executionId);
                         completionFuture.complete(null);
                     }
                 } catch (Exception e) {
                     log.error("Error sending SSE event for execution: {}", executionId, e);
                     try {
-                        sendEvent(emitter, "error", StreamProgressUpdate.builder()
+                        streamRelayService.publish(executionId, "error", StreamProgressUpdate.builder()
                                 .executionId(executionId)
                                 .workflowId(workflowId)
                                 .updateType(StreamProgressUpdate.UpdateType.ERROR)
                                 .errorMessage(e.getMessage())
                                 .complete(true)
                                 .build());
-                        cleanupResources(executionId);
-                        emitter.complete();
+                        streamRelayService.complete(executionId);
                     } catch (Exception ex) {
                         // Ignore, connection likely closed
                     }
@@ -150,15 +179,14 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
             }).exceptionally(ex -> {
                 log.error("Error executing workflow: {}", workflowId, ex);
                 try {
-                    sendEvent(emitter, "error", StreamProgressUpdate.builder()
+                    streamRelayService.publish(executionId, "error", StreamProgressUpdate.builder()
                             .executionId(executionId)
                             .workflowId(workflowId)
                             .updateType(StreamProgressUpdate.UpdateType.ERROR)
                             .errorMessage(ex.getMessage())
                             .complete(true)
                             .build());
-                    cleanupResources(executionId);
-                    emitter.complete();
+                    streamRelayService.complete(executionId);
                 } catch (Exception e) {
                     // Ignore, connection likely closed
                 }
@@ -235,9 +263,20 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
             // Register execution in monitor
             monitorService.startExecution(workflowId, inputs, executionId);
             
-            // Execute workflow asynchronously
+            // Release the caller as soon as the execution is cancelled
+            CancellationToken token = cancellationTokens.computeIfAbsent(executionId, id -> CancellationToken.create());
+            token.onCancel(() -> resultFuture.completeExceptionally(
+                    new ExecutionCancelledException(token.getReason())));
+            // A cancel requested on another instance reaches this one through the relay
+            Runnable unregisterCancel = streamRelayService.onCancelRequested(executionId,
+                    () -> token.cancel("Execution cancelled by user"));
+            
+            // Execute workflow asynchronously, with the token bound for nodes and outbound calls;
+            // a client is watching the stream, so provider calls queue as interactive rather than batch
             CompletableFuture.runAsync(() -> {
-                try {
+                CancellationToken.Scope scope = token.bind();
+                RequestPriority.Scope priorityScope = RequestPriority.INTERACTIVE.bind();
+                try (scope; priorityScope) {
                     // Get workflow
                     WorkflowDTO workflow = workflowService.getWorkflowById(workflowId);
                     
@@ -281,6 +320,10 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
                     // Complete the future with the result
                     resultFuture.complete(result);
                     
+                } catch (ExecutionCancelledException e) {
+                    log.info("Workflow execution cancelled: {} ({})", executionId, e.getMessage());
+                    monitorService.failExecution(executionId, "Cancelled: " + e.getMessage());
+                    resultFuture.completeExceptionally(e);
                 } catch (Exception e) {
                     log.error("Error executing workflow with progress updates: {}", workflowId, e);
                     
@@ -298,6 +341,9 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
                     
                     // Complete the future exceptionally
                     resultFuture.completeExceptionally(e);
+                } finally {
+                    cancellationTokens.remove(executionId, token);
+                    unregisterCancel.run();
                 }
             });
             
@@ -332,25 +378,48 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
         return heartbeatFuture;
     }
 
+    @Override
+    public SseEmitter watchExecution(String executionId, String userId, String lastEventId) {
+        // Unknown and foreign executions look the same to the caller
+        String ownerId = streamRelayService.getOwner(executionId);
+        if (ownerId == null || !ownerId.equals(userId)) {
+            return null;
+        }
+        
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        
+        // Replay from the beginning unless the client resumes from a known event
+        Runnable detach = streamRelayService.attach(executionId, emitter,
+                lastEventId != null && !lastEventId.isEmpty() ? lastEventId : "0");
+        
+        emitter.onTimeout(detach);
+        emitter.onCompletion(detach);
+        emitter.onError(ex -> detach.run());
+        
+        startHeartbeat(emitter);
+        
+        return emitter;
+    }
+
     @Override
     public boolean cancelStreaming(String executionId) {
-        // Set cancellation flag
-        cancellationFlags.put(executionId, true);
+        // Cancel the token, which skips the remaining nodes and aborts in-flight calls
+        boolean cancelled = cancelExecution(executionId, "Execution cancelled by user");
         
-        // Get emitter and close it if available
+        // Close the execution stream if its client is attached to this instance
         SseEmitter emitter = activeEmitters.get(executionId);
         if (emitter != null) {
             try {
                 // Send cancellation event
-                sendEvent(emitter, "cancel", StreamProgressUpdate.builder()
+                streamRelayService.publish(executionId, "cancel", StreamProgressUpdate.builder()
                         .executionId(executionId)
                         .updateType(StreamProgressUpdate.UpdateType.ERROR)
                         .errorMessage("Execution cancelled by user")
                         .complete(true)
                         .build());
                 
-                // Complete the emitter
-                emitter.complete();
+                // Complete the stream on all instances
+                streamRelayService.complete(executionId);
                 
                 // Cleanup resources
                 cleanupResources(executionId);
@@ -362,7 +431,46 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
             }
         }
         
-        return false;
+        if (!cancelled && streamRelayService.isActive(executionId)) {
+            // Running on another instance, which cancels its token and ends the stream
+            streamRelayService.requestCancel(executionId);
+            return true;
+        }
+        
+        return cancelled;
+    }
+    
+    /**
+     * Detach the emitter that started an execution, and cancel the execution after the grace
+     * period unless a watcher is attached to it by then
+     */
+    private void releaseEmitter(String executionId) {
+        activeEmitters.remove(executionId);
+        Runnable detach = relayDetachers.remove(executionId);
+        if (detach != null) {
+            detach.run();
+        }
+        
+        if (cancellationTokens.containsKey(executionId)) {
+            heartbeatExecutor.schedule(() -> {
+                try {
+                    if (streamRelayService.getWatcherCount(executionId) == 0
+                            && cancelExecution(executionId, "No client attached to the execution")) {
+                        log.info("Cancelled execution {}, no client reattached within {}ms", executionId, reattachGraceMs);
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to check watchers of execution {}: {}", executionId, e.getMessage());
+                }
+            }, reattachGraceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Cancel the token of an execution running on this instance
+     */
+    private boolean cancelExecution(String executionId, String reason) {
+        CancellationToken token = cancellationTokens.get(executionId);
+        return token != null && token.cancel(reason);
     }
     
     /**
@@ -379,6 +487,11 @@ public class WorkflowStreamServiceImpl implements WorkflowStreamService {
      */
     private void cleanupResources(String executionId) {
         activeEmitters.remove(executionId);
-        cancellationFlags.remove(executionId);
+        cancellationTokens.remove(executionId);
+        
+        Runnable detach = relayDetachers.remove(executionId);
+        if (detach != null) {
+            detach.run();
+        }
     }
 } 
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.fastgpt.ai.service.impl.dataset;
 
+import com.fastgpt.ai.dto.KbDataDTO;
 import com.fastgpt.ai.dto.SearchDataResponseItemDTO;
+import com.fastgpt.ai.dto.request.VectorSearchRequest;
 import com.fastgpt.ai.service.AiService;
+import com.fastgpt.ai.service.TokenizerService;
 import com.fastgpt.ai.service.VectorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +25,13 @@ public class DeepRagSearchService {
     private final AiService aiService;
     private final VectorService vectorService;
     private final QueryExtensionService queryExtensionService;
+    private final TokenizerService tokenizerService;
+    
+    // Queries searched per iteration: the follow-up question and its extensions
+    private static final int QUERIES_PER_ITERATION = 3;
+    
+    // Results per dataset and query
+    private static final int RESULTS_PER_QUERY = 10;
     
     // Prompts for deep search
     private static final String DEEP_SEARCH_PROMPT_TEMPLATE = 
@@ -115,12 +125,15 @@ public class DeepRagSearchService {
             // Add to generated queries list
             generatedQueries.add(followUpQuestion);
             
-            // Perform vector search with the follow-up question
-            List<SearchDataResponseItemDTO> iterationResults = vectorService.searchSimilarVectors(
-                followUpQuestion,
-                datasetIds,
-                similarityThreshold
-            );
+            // Search with the follow-up question and its extensions, embedded in one batch
+            List<String> queries = queryExtensionService.extendQuery(followUpQuestion, model, QUERIES_PER_ITERATION);
+            if (queries.size() > 1) {
+                QueryExtensionService.TokenUsage usage = queryExtensionService.estimateTokenUsage(
+                    followUpQuestion, String.join("\n", queries.subList(1, queries.size())));
+                inputTokens.addAndGet(usage.inputTokens());
+                outputTokens.addAndGet(usage.outputTokens());
+            }
+            List<SearchDataResponseItemDTO> iterationResults = searchQueries(queries, datasetIds, similarityThreshold);
             
             // Filter out results we've already seen
             List<SearchDataResponseItemDTO> newResults = iterationResults.stream()
@@ -157,6 +170,60 @@ public class DeepRagSearchService {
         );
     }
     
+    /**
+     * Search every dataset with every query, keeping the best score of each item
+     */
+    private List<SearchDataResponseItemDTO> searchQueries(
+            List<String> queries,
+            List<String> datasetIds,
+            double similarityThreshold) {
+        
+        Map<String, SearchDataResponseItemDTO> best = new LinkedHashMap<>();
+        for (String datasetId : datasetIds) {
+            VectorSearchRequest request = VectorSearchRequest.builder()
+                .kbId(datasetId)
+                .query(queries.get(0))
+                .limit(RESULTS_PER_QUERY)
+                .minScore(similarityThreshold)
+                .useRawQuery(false)
+                .build();
+            try {
+                for (List<KbDataDTO> results : vectorService.searchQueries(request, queries)) {
+                    for (KbDataDTO result : results) {
+                        SearchDataResponseItemDTO item = toSearchItem(result);
+                        best.merge(item.getId(), item,
+                            (existing, candidate) -> candidate.getScore() > existing.getScore() ? candidate : existing);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error searching dataset {}: {}", datasetId, e.getMessage(), e);
+            }
+        }
+        
+        return best.values().stream()
+            .sorted(Comparator.comparing(SearchDataResponseItemDTO::getScore).reversed())
+            .collect(Collectors.toList());
+    }
+    
+    private SearchDataResponseItemDTO toSearchItem(KbDataDTO data) {
+        SearchDataResponseItemDTO item = new SearchDataResponseItemDTO();
+        item.setId(data.getDataId());
+        item.setTeamId(data.getTeamId());
+        item.setUserId(data.getUserId());
+        item.setKbId(data.getKbId());
+        item.setModuleId(data.getModuleId());
+        item.setQ(data.getQ());
+        item.setA(data.getA());
+        item.setFileId(data.getFileId());
+        item.setChunkIndex(data.getChunkIndex());
+        item.setCreateTime(data.getCreateTime());
+        item.setUpdateTime(data.getUpdateTime());
+        item.setScore(data.getScore());
+        item.setVectorModel(data.getVectorModel());
+        item.setCollectionId(data.getCollectionId());
+        return item;
+    }
+    
     /**
      * Generate a follow-up question based on existing results
      */
@@ -180,9 +247,9 @@ public class DeepRagSearchService {
             // Generate follow-up question
             String followUpQuestion = aiService.generateSimpleResponse(prompt, null);
             
-            // Update token counts (estimate)
-            inputTokens.addAndGet(prompt.length() / 4); // Very rough estimation
-            outputTokens.addAndGet(followUpQuestion != null ? followUpQuestion.length() / 4 : 0);
+            // Update token counts
+            inputTokens.addAndGet(tokenizerService.countTokens(prompt));
+            outputTokens.addAndGet(tokenizerService.countTokens(followUpQuestion));
             
             // Clean up and return the question
             return followUpQuestion != null 
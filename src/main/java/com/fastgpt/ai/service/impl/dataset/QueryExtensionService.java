@@ -1,6 +1,10 @@
 package com.fastgpt.ai.service.impl.dataset;
 
+import com.fastgpt.ai.dto.KbDataDTO;
+import com.fastgpt.ai.dto.request.VectorSearchRequest;
 import com.fastgpt.ai.service.AiService;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.service.VectorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -21,6 +25,8 @@ import java.util.stream.Collectors;
 public class QueryExtensionService {
 
     private final AiService aiService;
+    private final TokenizerService tokenizerService;
+    private final VectorService vectorService;
     
     // Prompt templates
     private static final String QUERY_EXTENSION_PROMPT = 
@@ -77,18 +83,46 @@ public class QueryExtensionService {
         }
     }
     
+    /**
+     * Search a knowledge base with a query and its extensions
+     * All queries are embedded in one batched call; each item keeps its best score across queries
+     * 
+     * @param request Search settings and the original query
+     * @param model The LLM model to use for extension
+     * @param maxQueries Maximum number of queries, including the original
+     * @return Merged results ordered by score, up to the request limit
+     */
+    public List<KbDataDTO> searchExtended(VectorSearchRequest request, String model, int maxQueries) {
+        List<String> queries = extendQuery(request.getQuery(), model, maxQueries);
+        if (queries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        Map<String, KbDataDTO> best = new LinkedHashMap<>();
+        for (List<KbDataDTO> results : vectorService.searchQueries(request, queries)) {
+            for (KbDataDTO result : results) {
+                best.merge(result.getDataId(), result,
+                        (existing, candidate) -> candidate.getScore() > existing.getScore() ? candidate : existing);
+            }
+        }
+        
+        return best.values().stream()
+                .sorted(Comparator.comparing(KbDataDTO::getScore).reversed())
+                .limit(request.getLimit())
+                .collect(Collectors.toList());
+    }
+    
     /**
      * Get the tokens used for query extension
-     * This is an estimation for billing purposes
+     * Counted with the shared tokenizer for billing purposes
      * 
      * @param query The original query
      * @param result The query extension result
      * @return TokenUsage containing input and output token counts
      */
     public TokenUsage estimateTokenUsage(String query, String result) {
-        // This is a simplified estimation - a more accurate implementation would use a proper tokenizer
-        int inputTokens = (QUERY_EXTENSION_PROMPT.length() + query.length()) / 4; // Rough estimate: 4 chars ≈ 1 token
-        int outputTokens = result != null ? result.length() / 4 : 0;
+        int inputTokens = tokenizerService.countTokens(String.format(QUERY_EXTENSION_PROMPT, query));
+        int outputTokens = tokenizerService.countTokens(result);
         
         return new TokenUsage(inputTokens, outputTokens);
     }
@@ -4,6 +4,7 @@ import com.fastgpt.ai.constant.FlowNodeTypeEnum;
 import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fastgpt.ai.service.NodeDispatcher;
+import com.fastgpt.ai.service.TokenizerService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -23,6 +24,8 @@ import java.util.regex.Pattern;
 @RequiredArgsConstructor
 public class DocumentSplitterNodeDispatcher implements NodeDispatcher {
 
+    private final TokenizerService tokenizerService;
+
     @Override
     public String getNodeType() {
         return "documentSplitter";
@@ -62,7 +65,7 @@ public class DocumentSplitterNodeDispatcher implements NodeDispatcher {
             
             // 使用情况统计
             Map<String, Object> usage = new HashMap<>();
-            usage.put("tokens", text.length() / 4);
+            usage.put("tokens", tokenizerService.countTokens(text));
             
             Map<String, Object> usages = new HashMap<>();
             usages.put("documentSplitter", usage);
@@ -132,13 +135,8 @@ public class DocumentSplitterNodeDispatcher implements NodeDispatcher {
                 break;
                 
             case "token":
-                // 按估算的token数量分割（这里用字符数/4简单估算）
-                int tokensPerChunk = chunkSize;
-                int charsPerChunk = tokensPerChunk * 4;
-                for (int i = 0; i < text.length(); i += charsPerChunk - (chunkOverlap * 4)) {
-                    int end = Math.min(i + charsPerChunk, text.length());
-                    textChunks.add(text.substring(i, end));
-                }
+                // 按分词器计算的token数量分割
+                textChunks.addAll(tokenizerService.splitByTokens(text, chunkSize, chunkOverlap));
                 break;
                 
             default:
@@ -1,17 +1,20 @@
 package com.fastgpt.ai.service.impl.node;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fastgpt.ai.config.PooledClientHttpRequestFactory;
 import com.fastgpt.ai.constant.FlowNodeTypeEnum;
 import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fastgpt.ai.service.NodeDispatcher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +27,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class HttpRequestNodeDispatcher implements NodeDispatcher {
 
+    @Qualifier("toolRestTemplate")
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
 
@@ -72,12 +76,16 @@ public class HttpRequestNodeDispatcher implements NodeDispatcher {
             HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, httpHeaders);
             
             long startTime = System.currentTimeMillis();
-            ResponseEntity<String> response = restTemplate.exchange(
-                url,
-                HttpMethod.valueOf(method.toUpperCase()),
-                requestEntity,
-                String.class
-            );
+            ResponseEntity<String> response;
+            try (PooledClientHttpRequestFactory.TimeoutScope scope =
+                         PooledClientHttpRequestFactory.withResponseTimeout(Duration.ofMillis(timeout))) {
+                response = restTemplate.exchange(
+                    url,
+                    HttpMethod.valueOf(method.toUpperCase()),
+                    requestEntity,
+                    String.class
+                );
+            }
             long endTime = System.currentTimeMillis();
             
             // 处理响应
@@ -5,6 +5,7 @@ import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fastgpt.ai.service.AiService;
 import com.fastgpt.ai.service.NodeDispatcher;
+import com.fastgpt.ai.service.TokenizerService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -24,6 +25,7 @@ import java.util.Map;
 public class MultimodalProcessingNodeDispatcher implements NodeDispatcher {
 
     private final AiService aiService;
+    private final TokenizerService tokenizerService;
 
     @Override
     public String getNodeType() {
@@ -125,9 +127,11 @@ public class MultimodalProcessingNodeDispatcher implements NodeDispatcher {
         
         // 使用统计
         Map<String, Object> usage = new HashMap<>();
-        usage.put("prompt_tokens", prompt.length() / 4 + imageUrls.size() * 1000);  // 图像通常消耗更多token
-        usage.put("completion_tokens", 100);
-        usage.put("total_tokens", prompt.length() / 4 + imageUrls.size() * 1000 + 100);
+        int promptTokens = tokenizerService.countTokens(prompt) + imageUrls.size() * 1000;  // 图像通常消耗更多token
+        int completionTokens = tokenizerService.countTokens(response.toString());
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
         
         // 结果
         Map<String, Object> result = new HashMap<>();
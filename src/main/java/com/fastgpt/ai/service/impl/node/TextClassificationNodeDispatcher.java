@@ -5,6 +5,7 @@ import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fastgpt.ai.service.AiService;
 import com.fastgpt.ai.service.NodeDispatcher;
+import com.fastgpt.ai.service.TokenizerService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -23,6 +24,7 @@ import java.util.Map;
 public class TextClassificationNodeDispatcher implements NodeDispatcher {
 
     private final AiService aiService;
+    private final TokenizerService tokenizerService;
 
     @Override
     public String getNodeType() {
@@ -126,7 +128,7 @@ public class TextClassificationNodeDispatcher implements NodeDispatcher {
         
         // 使用统计
         Map<String, Object> usage = new HashMap<>();
-        usage.put("tokens", text.length() / 4);  // 简单估算token数
+        usage.put("tokens", tokenizerService.countTokens(text));
         
         // 结果
         Map<String, Object> result = new HashMap<>();
@@ -3,8 +3,9 @@ package com.fastgpt.ai.service.impl.node;
 import com.fastgpt.ai.constant.FlowNodeTypeEnum;
 import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
-import com.fastgpt.ai.service.AiService;
 import com.fastgpt.ai.service.NodeDispatcher;
+import com.fastgpt.ai.service.TokenizerService;
+import com.fastgpt.ai.service.VectorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,7 +23,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class TextEmbeddingNodeDispatcher implements NodeDispatcher {
 
-    private final AiService aiService;
+    private final VectorService vectorService;
+    private final TokenizerService tokenizerService;
 
     @Override
     public String getNodeType() {
@@ -40,16 +42,12 @@ public class TextEmbeddingNodeDispatcher implements NodeDispatcher {
             // 选择模型
             String model = (String) inputs.getOrDefault("model", "text-embedding-ada-002");
             
-            // 调用AI服务生成嵌入向量
-            Map<String, Object> result = aiService.embedText(text, model);
+            // 生成嵌入向量，相同文本命中嵌入缓存时不调用模型
+            List<Float> embedding = vectorService.generateEmbedding(text, model);
             
-            // 获取嵌入向量
-            @SuppressWarnings("unchecked")
-            List<Double> embedding = (List<Double>) result.getOrDefault("embedding", null);
-            
-            // 获取使用统计
-            @SuppressWarnings("unchecked")
-            Map<String, Object> usage = (Map<String, Object>) result.getOrDefault("usage", new HashMap<>());
+            // 使用统计
+            Map<String, Object> usage = new HashMap<>();
+            usage.put("tokens", tokenizerService.countTokens(text));
             
             // 构建输出
             Map<String, Object> outputs = new HashMap<>();
@@ -1,11 +1,13 @@
 package com.fastgpt.ai.service.impl.workflow;
 
+import com.fastgpt.ai.config.PooledClientHttpRequestFactory;
 import com.fastgpt.ai.dto.workflow.NodeOutDTO;
 import com.fastgpt.ai.entity.workflow.Node;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClientException;
@@ -13,6 +15,7 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -25,6 +28,7 @@ import java.util.regex.Pattern;
 @RequiredArgsConstructor
 public class HttpRequestDispatcher {
 
+    @Qualifier("toolRestTemplate")
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     
@@ -247,13 +251,16 @@ public class HttpRequestDispatcher {
             throw new IllegalArgumentException("Invalid HTTP method: " + method);
         }
         
-        // Execute the request
-        return restTemplate.exchange(
-            url,
-            httpMethod,
-            requestEntity,
-            String.class
-        );
+        // Execute the request with the node's own response timeout
+        try (PooledClientHttpRequestFactory.TimeoutScope scope =
+                     PooledClientHttpRequestFactory.withResponseTimeout(Duration.ofMillis(timeout))) {
+            return restTemplate.exchange(
+                url,
+                httpMethod,
+                requestEntity,
+                String.class
+            );
+        }
     }
     
     /**
@@ -2,6 +2,7 @@ package com.fastgpt.ai.service.impl.workflow.tool;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
@@ -22,6 +23,7 @@ import java.nio.charset.StandardCharsets;
 @RequiredArgsConstructor
 public class WebSearchToolProvider implements ToolProvider {
 
+    @Qualifier("toolRestTemplate")
     private final RestTemplate restTemplate;
     
     @Value("${tools.search.enabled:false}")
@@ -0,0 +1,632 @@
+package com.fastgpt.ai.stub;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fastgpt.ai.constant.EmbeddingModels;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic OpenAI-compatible stub server for load tests
+ * Serves chat completions (plain and SSE), embeddings, speech and transcription on the JDK
+ * HTTP server, plus the files and batches API; batches complete as soon as they are created. Outputs depend only on the request, so runs are repeatable; latency, token
+ * rate and injected errors follow the {@link StubProfile}.
+ *
+ * Standalone: java -cp app.jar -Dloader.main=com.fastgpt.ai.stub.LlmStubServer
+ *   org.springframework.boot.loader.launch.PropertiesLauncher --port=18080 --latency-ms=300
+ */
+@Slf4j
+public class LlmStubServer {
+
+    private static final String[] WORDS = {
+            "the", "model", "answer", "is", "based", "on", "retrieved", "context", "and", "a",
+            "knowledge", "base", "with", "several", "relevant", "passages", "that", "describe", "how",
+            "to", "configure", "workflow", "nodes", "for", "data", "processing", "in", "FastGPT",
+            "知识库", "检索", "结果", "表明", "该", "问题", "需要", "进一步", "分析"
+    };
+
+    // Bytes of synthesized audio per input character, about 32 kbit/s at 15 characters per second
+    private static final int AUDIO_BYTES_PER_CHAR = 270;
+
+    private final ObjectMapper objectMapper;
+    private volatile StubProfile profile;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    // Uploaded batch inputs and generated batch outputs, by file ID
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> batches = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public LlmStubServer(StubProfile profile, ObjectMapper objectMapper) {
+        this.profile = profile;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Start listening
+     * @param port Port to bind, or 0 for an ephemeral port
+     * @return The bound port
+     */
+    public synchronized int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", handler(this::chatCompletions));
+        server.createContext("/v1/embeddings", handler(this::embeddings));
+        server.createContext("/v1/audio/speech", handler(this::speech));
+        server.createContext("/v1/audio/transcriptions", handler(this::transcription));
+        server.createContext("/v1/files", handler(this::files, "POST", "GET"));
+        server.createContext("/v1/batches", handler(this::batches, "POST", "GET"));
+        server.start();
+        log.info("LLM stub server listening on {}", getBaseUrl());
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Base URL to configure as an endpoint, without the /v1 path
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public StubProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Replace the profile; applies to requests that arrive afterwards
+     */
+    public void setProfile(StubProfile profile) {
+        this.profile = profile;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        return stats;
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        void handle(HttpExchange exchange, StubProfile profile) throws IOException;
+    }
+
+    private HttpHandler handler(Route route) {
+        return handler(route, "POST");
+    }
+
+    private HttpHandler handler(Route route, String... methods) {
+        List<String> allowed = List.of(methods);
+        return exchange -> {
+            requests.incrementAndGet();
+            StubProfile current = profile;
+            try (exchange) {
+                if (!allowed.contains(exchange.getRequestMethod())) {
+                    sendError(exchange, 405, "Method not allowed", "invalid_request_error");
+                    return;
+                }
+                if (injectFault(exchange, current)) {
+                    return;
+                }
+                route.handle(exchange, current);
+            } catch (IOException e) {
+                // The client went away mid-response
+                log.debug("Stub response aborted: {}", e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Answer with an injected 429 or 500 according to the profile
+     * @return true if a fault was sent
+     */
+    private boolean injectFault(HttpExchange exchange, StubProfile current) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < current.getThrottleRate()) {
+            injectedErrors.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 429, "Rate limit reached (stub)", "rate_limit_exceeded");
+            return true;
+        }
+        if (roll < current.getThrottleRate() + current.getErrorRate()) {
+            injectedErrors.incrementAndGet();
+            sleep(firstByteDelay(current));
+            sendError(exchange, 500, "Internal server error (stub)", "server_error");
+            return true;
+        }
+        return false;
+    }
+
+    private void chatCompletions(HttpExchange exchange, StubProfile current) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String model = request.path("model").asText("gpt-3.5-turbo");
+        int maxTokens = request.path("max_tokens").asInt(current.getCompletionTokens());
+
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : request.path("messages")) {
+            prompt.append(message.path("role").asText()).append(':').append(message.path("content").asText()).append('\n');
+        }
+        int promptTokens = estimateTokens(prompt);
+        List<String> completion = completion(prompt.toString(), Math.min(maxTokens, current.getCompletionTokens()));
+        String id = "chatcmpl-" + UUID.nameUUIDFromBytes(prompt.toString().getBytes(StandardCharsets.UTF_8));
+
+        sleep(firstByteDelay(current));
+        if (request.path("stream").asBoolean(false)) {
+            boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+            streamCompletion(exchange, current, id, model, completion, promptTokens, includeUsage);
+            return;
+        }
+
+        sleep(tokenDelay(current, completion.size()));
+        sendJson(exchange, completionResponse(id, model, completion, promptTokens));
+    }
+
+    private ObjectNode completionResponse(String id, String model, List<String> completion, int promptTokens) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", id);
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", model);
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", String.join("", completion));
+        choice.put("finish_reason", "stop");
+        putUsage(response.putObject("usage"), promptTokens, completion.size());
+        return response;
+    }
+
+    /**
+     * Build the non-streamed response to a chat completion request, without delays
+     */
+    private ObjectNode completionResponse(JsonNode request, StubProfile current) {
+        String model = request.path("model").asText("gpt-3.5-turbo");
+        int maxTokens = request.path("max_tokens").asInt(current.getCompletionTokens());
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : request.path("messages")) {
+            prompt.append(message.path("role").asText()).append(':').append(message.path("content").asText()).append('\n');
+        }
+        List<String> completion = completion(prompt.toString(), Math.min(maxTokens, current.getCompletionTokens()));
+        String id = "chatcmpl-" + UUID.nameUUIDFromBytes(prompt.toString().getBytes(StandardCharsets.UTF_8));
+        return completionResponse(id, model, completion, estimateTokens(prompt));
+    }
+
+    private void streamCompletion(HttpExchange exchange, StubProfile current, String id, String model,
+                                  List<String> completion, int promptTokens, boolean includeUsage) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        long created = System.currentTimeMillis() / 1000;
+
+        for (int i = 0; i < completion.size(); i++) {
+            ObjectNode chunk = chunk(id, model, created);
+            ObjectNode choice = chunk.putArray("choices").addObject();
+            choice.put("index", 0);
+            ObjectNode delta = choice.putObject("delta");
+            if (i == 0) {
+                delta.put("role", "assistant");
+            }
+            delta.put("content", completion.get(i));
+            choice.putNull("finish_reason");
+            writeEvent(out, chunk.toString());
+            sleep(tokenDelay(current, 1));
+        }
+
+        ObjectNode last = chunk(id, model, created);
+        ObjectNode choice = last.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("delta");
+        choice.put("finish_reason", "stop");
+        writeEvent(out, last.toString());
+
+        if (includeUsage) {
+            ObjectNode usage = chunk(id, model, created);
+            usage.putArray("choices");
+            putUsage(usage.putObject("usage"), promptTokens, completion.size());
+            writeEvent(out, usage.toString());
+        }
+        writeEvent(out, "[DONE]");
+    }
+
+    private void embeddings(HttpExchange exchange, StubProfile current) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String model = request.path("model").asText("text-embedding-ada-002");
+        int dimensions = request.path("dimensions").asInt(EmbeddingModels.dimensionsOf(model));
+
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = request.path("input");
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+
+        int promptTokens = 0;
+        for (String text : inputs) {
+            promptTokens += estimateTokens(text);
+        }
+        sleep(firstByteDelay(current));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        // Large vectors are written straight to the response
+        try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("object", "list");
+            generator.writeArrayFieldStart("data");
+            for (int i = 0; i < inputs.size(); i++) {
+                generator.writeStartObject();
+                generator.writeStringField("object", "embedding");
+                generator.writeNumberField("index", i);
+                generator.writeArrayFieldStart("embedding");
+                for (float value : vector(inputs.get(i), dimensions)) {
+                    generator.writeNumber(value);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeStringField("model", model);
+            generator.writeObjectFieldStart("usage");
+            generator.writeNumberField("prompt_tokens", promptTokens);
+            generator.writeNumberField("total_tokens", promptTokens);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Build an embeddings response in memory, for batch output lines
+     */
+    private ObjectNode embeddingResponse(JsonNode request) {
+        String model = request.path("model").asText("text-embedding-ada-002");
+        int dimensions = request.path("dimensions").asInt(EmbeddingModels.dimensionsOf(model));
+        JsonNode input = request.path("input");
+        List<String> inputs = new ArrayList<>();
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("object", "list");
+        ArrayNode data = response.putArray("data");
+        int promptTokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            ObjectNode item = data.addObject();
+            item.put("object", "embedding");
+            item.put("index", i);
+            ArrayNode embedding = item.putArray("embedding");
+            for (float value : vector(inputs.get(i), dimensions)) {
+                embedding.add(value);
+            }
+            promptTokens += estimateTokens(inputs.get(i));
+        }
+        response.put("model", model);
+        response.putObject("usage").put("prompt_tokens", promptTokens).put("total_tokens", promptTokens);
+        return response;
+    }
+
+    /**
+     * POST /v1/files uploads a batch input; GET /v1/files/{id}/content downloads a file
+     */
+    private void files(HttpExchange exchange, StubProfile current) throws IOException {
+        if ("GET".equals(exchange.getRequestMethod())) {
+            String path = exchange.getRequestURI().getPath();
+            String fileId = path.replaceFirst("^/v1/files/", "").replaceFirst("/content$", "");
+            byte[] content = files.get(fileId);
+            if (content == null) {
+                sendError(exchange, 404, "No such file: " + fileId, "invalid_request_error");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/jsonl");
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+            return;
+        }
+
+        byte[] content = multipartFile(exchange);
+        if (content == null) {
+            sendError(exchange, 400, "Missing file part", "invalid_request_error");
+            return;
+        }
+        String fileId = "file-" + UUID.randomUUID();
+        files.put(fileId, content);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", fileId);
+        response.put("object", "file");
+        response.put("bytes", content.length);
+        response.put("purpose", "batch");
+        sendJson(exchange, response);
+    }
+
+    /**
+     * POST /v1/batches runs every line of the input file at once; GET /v1/batches/{id} returns its status
+     * Lines fail with 500 at the profile's error rate
+     */
+    private void batches(HttpExchange exchange, StubProfile current) throws IOException {
+        if ("GET".equals(exchange.getRequestMethod())) {
+            String batchId = exchange.getRequestURI().getPath().replaceFirst("^/v1/batches/", "");
+            ObjectNode batch = batches.get(batchId);
+            if (batch == null) {
+                sendError(exchange, 404, "No such batch: " + batchId, "invalid_request_error");
+                return;
+            }
+            sendJson(exchange, batch);
+            return;
+        }
+
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String inputFileId = request.path("input_file_id").asText();
+        byte[] input = files.get(inputFileId);
+        if (input == null) {
+            sendError(exchange, 400, "No such file: " + inputFileId, "invalid_request_error");
+            return;
+        }
+
+        StringBuilder output = new StringBuilder();
+        int completed = 0;
+        int failed = 0;
+        for (String line : new String(input, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode item = objectMapper.readTree(line);
+            JsonNode body = item.path("body");
+            ObjectNode result = objectMapper.createObjectNode();
+            result.put("id", "batch_req_" + UUID.randomUUID());
+            result.put("custom_id", item.path("custom_id").asText());
+            ObjectNode response = result.putObject("response");
+            response.put("request_id", UUID.randomUUID().toString());
+
+            if (ThreadLocalRandom.current().nextDouble() < current.getErrorRate()) {
+                injectedErrors.incrementAndGet();
+                response.put("status_code", 500);
+                response.putObject("body").putObject("error")
+                        .put("message", "Internal server error (stub)").put("type", "server_error");
+                failed++;
+            } else if (item.path("url").asText().endsWith("/embeddings")) {
+                response.put("status_code", 200);
+                response.set("body", embeddingResponse(body));
+                completed++;
+            } else {
+                response.put("status_code", 200);
+                response.set("body", completionResponse(body, current));
+                completed++;
+            }
+            result.putNull("error");
+            output.append(result).append('\n');
+        }
+
+        String outputFileId = "file-" + UUID.randomUUID();
+        files.put(outputFileId, output.toString().getBytes(StandardCharsets.UTF_8));
+
+        ObjectNode batch = objectMapper.createObjectNode();
+        String batchId = "batch_" + UUID.randomUUID();
+        batch.put("id", batchId);
+        batch.put("object", "batch");
+        batch.put("endpoint", request.path("endpoint").asText());
+        batch.put("input_file_id", inputFileId);
+        batch.put("completion_window", request.path("completion_window").asText("24h"));
+        batch.put("status", "completed");
+        batch.put("output_file_id", outputFileId);
+        batch.putNull("error_file_id");
+        batch.put("created_at", System.currentTimeMillis() / 1000);
+        batch.putObject("request_counts")
+                .put("total", completed + failed)
+                .put("completed", completed)
+                .put("failed", failed);
+        batches.put(batchId, batch);
+        sendJson(exchange, batch);
+    }
+
+    /**
+     * Extract the "file" part of a multipart upload
+     * @return The part content, or null if there is none
+     */
+    private static byte[] multipartFile(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null || !contentType.contains("boundary=")) {
+            return null;
+        }
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + 9).replace("\"", "");
+        // Batch files are JSONL, so decoding as ISO-8859-1 keeps the bytes intact
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+        for (String part : body.split("--" + Pattern.quote(boundary))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if (headerEnd < 0 || !part.substring(0, headerEnd).contains("name=\"file\"")) {
+                continue;
+            }
+            String content = part.substring(headerEnd + 4);
+            if (content.endsWith("\r\n")) {
+                content = content.substring(0, content.length() - 2);
+            }
+            return content.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return null;
+    }
+
+    private void speech(HttpExchange exchange, StubProfile current) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String text = request.path("input").asText("");
+        byte[] audio = audio(text);
+        sleep(firstByteDelay(current));
+
+        exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+        exchange.sendResponseHeaders(200, audio.length);
+        exchange.getResponseBody().write(audio);
+    }
+
+    private void transcription(HttpExchange exchange, StubProfile current) throws IOException {
+        // The multipart body is only hashed, so equal uploads get equal transcripts
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        int words = Math.max(1, body.length / 4000);
+        List<String> text = completion(String.valueOf(Arrays.hashCode(body)), Math.min(words, current.getCompletionTokens()));
+        sleep(firstByteDelay(current));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("text", String.join("", text).trim());
+        response.put("language", "en");
+        sendJson(exchange, response);
+    }
+
+    /**
+     * Generate a deterministic completion, one token per element
+     */
+    private static List<String> completion(String seed, int tokens) {
+        Random random = new Random(seed.hashCode());
+        List<String> words = new ArrayList<>(tokens);
+        for (int i = 0; i < tokens; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            words.add(i == 0 ? word : " " + word);
+        }
+        return words;
+    }
+
+    /**
+     * Generate a deterministic unit vector for a text
+     */
+    private static float[] vector(String text, int dimensions) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Generate deterministic audio bytes sized like an MP3 of the spoken text
+     */
+    private static byte[] audio(String text) {
+        byte[] audio = new byte[Math.max(1, text.length()) * AUDIO_BYTES_PER_CHAR];
+        new Random(text.hashCode()).nextBytes(audio);
+        // ID3 tag header, so clients sniffing the type see MP3
+        audio[0] = 'I';
+        audio[1] = 'D';
+        audio[2] = '3';
+        return audio;
+    }
+
+    private static int estimateTokens(CharSequence text) {
+        return Math.max(1, text.length() / 4);
+    }
+
+    private static void putUsage(ObjectNode usage, int promptTokens, int completionTokens) {
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private ObjectNode chunk(String id, String model, long created) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", created);
+        chunk.put("model", model);
+        return chunk;
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void sendJson(HttpExchange exchange, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message, String type) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("message", message).put("type", type);
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static long firstByteDelay(StubProfile current) {
+        long jitter = current.getJitterMs() > 0 ? ThreadLocalRandom.current().nextLong(current.getJitterMs() + 1) : 0;
+        return current.getLatencyMs() + jitter;
+    }
+
+    private static long tokenDelay(StubProfile current, int tokens) {
+        return current.getTokensPerSecond() > 0 ? (long) (tokens * 1000 / current.getTokensPerSecond()) : 0;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Run the stub standalone
+     * Options: --port, --latency-ms, --jitter-ms, --tokens-per-second, --completion-tokens,
+     * --error-rate, --throttle-rate
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int port = Integer.parseInt(options.getOrDefault("port", "18080"));
+        LlmStubServer server = new LlmStubServer(StubProfile.fromOptions(options), new ObjectMapper());
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+}
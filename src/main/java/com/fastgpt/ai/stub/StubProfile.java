@@ -0,0 +1,80 @@
+package com.fastgpt.ai.stub;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Latency, throughput and error-injection profile of the LLM stub server
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StubProfile {
+
+    /**
+     * Delay before the first byte of a response, in milliseconds
+     */
+    @Builder.Default
+    private long latencyMs = 300;
+
+    /**
+     * Random extra delay added to the latency, up to this many milliseconds
+     */
+    @Builder.Default
+    private long jitterMs = 100;
+
+    /**
+     * Completion tokens generated per second; 0 or less sends them without delay
+     */
+    @Builder.Default
+    private double tokensPerSecond = 50;
+
+    /**
+     * Completion length when the request sets no max_tokens
+     */
+    @Builder.Default
+    private int completionTokens = 200;
+
+    /**
+     * Fraction of requests answered with 500
+     */
+    @Builder.Default
+    private double errorRate = 0;
+
+    /**
+     * Fraction of requests answered with 429
+     */
+    @Builder.Default
+    private double throttleRate = 0;
+
+    /**
+     * Build a profile from --key=value style options, using defaults for missing keys
+     */
+    public static StubProfile fromOptions(Map<String, String> options) {
+        StubProfile profile = new StubProfile();
+        if (options.containsKey("latency-ms")) {
+            profile.setLatencyMs(Long.parseLong(options.get("latency-ms")));
+        }
+        if (options.containsKey("jitter-ms")) {
+            profile.setJitterMs(Long.parseLong(options.get("jitter-ms")));
+        }
+        if (options.containsKey("tokens-per-second")) {
+            profile.setTokensPerSecond(Double.parseDouble(options.get("tokens-per-second")));
+        }
+        if (options.containsKey("completion-tokens")) {
+            profile.setCompletionTokens(Integer.parseInt(options.get("completion-tokens")));
+        }
+        if (options.containsKey("error-rate")) {
+            profile.setErrorRate(Double.parseDouble(options.get("error-rate")));
+        }
+        if (options.containsKey("throttle-rate")) {
+            profile.setThrottleRate(Double.parseDouble(options.get("throttle-rate")));
+        }
+        return profile;
+    }
+}
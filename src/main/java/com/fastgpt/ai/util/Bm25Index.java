@@ -0,0 +1,397 @@
+package com.fastgpt.ai.util;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index ranked by Okapi BM25
+ * Documents get int ordinals on add; each term keeps growable arrays of ordinals and term
+ * frequencies, and metadata is kept as bitmaps of ordinals. Removed documents are tombstones,
+ * skipped by searches and dropped once they outnumber the live ones. As in Lucene, document
+ * frequencies count tombstones until then, so a search walks each posting list once.
+ * Searches share a read lock; updates take the write lock.
+ */
+public final class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MIN_COMPACT_DELETED = 1024;
+    private static final int MAGIC = 0x424D3235;
+    private static final int VERSION = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] ids = new String[0];
+    private int[] lengths = new int[0];
+    private final BitSet deleted = new BitSet();
+    private MetadataBitmaps metadata = new MetadataBitmaps();
+    private int size;
+    private int deletedCount;
+    private long totalLength;
+    private long savedAt;
+
+    /**
+     * Index the tokens of a document, replacing any previous version of it
+     * @param documentMetadata Metadata matched by the search filters, or null
+     */
+    public void add(String id, List<String> tokens, Map<String, String> documentMetadata) {
+        Map<String, int[]> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.computeIfAbsent(token, term -> new int[1])[0]++;
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (deletedCount >= MIN_COMPACT_DELETED && deletedCount > size - deletedCount) {
+                compact();
+            }
+            int ordinal = size++;
+            if (ordinal == ids.length) {
+                int capacity = Math.max(16, ids.length + (ids.length >> 1));
+                ids = Arrays.copyOf(ids, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            ids[ordinal] = id;
+            lengths[ordinal] = tokens.size();
+            ordinals.put(id, ordinal);
+            totalLength += tokens.size();
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new Postings()).add(ordinal, frequency[0]));
+            metadata.add(ordinal, documentMetadata);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a document
+     * @return true if it was indexed
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Time the snapshot this index was loaded from was taken, in epoch milliseconds, or 0 for an
+     * index built in memory
+     */
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return ordinals.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * IDs of the indexed documents, copied
+     */
+    public Set<String> ids() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(ordinals.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank the documents containing any query token
+     * Document at a time: the posting lists of the query terms are merged by ordinal, so each
+     * document is scored once and goes straight into the top selection.
+     * @param limit Number of matches
+     * @param filter Accepts the IDs that may be returned, or null for all
+     * @param metadataFilters Accepted metadata values per key, or null for all
+     * @return Matches ordered by descending BM25 score
+     */
+    public List<VectorMatch> search(List<String> queryTokens, int limit, Predicate<String> filter,
+                                    Map<String, List<String>> metadataFilters) {
+        lock.readLock().lock();
+        try {
+            int live = size - deletedCount;
+            if (live == 0 || limit <= 0) {
+                return List.of();
+            }
+            RoaringBitmap allowed = null;
+            if (metadataFilters != null && !metadataFilters.isEmpty()) {
+                allowed = metadata.match(metadataFilters);
+                if (allowed.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            // Repeated query tokens count once
+            List<Postings> lists = new ArrayList<>();
+            for (String term : new LinkedHashSet<>(queryTokens)) {
+                Postings list = postings.get(term);
+                if (list != null && list.size > 0) {
+                    lists.add(list);
+                }
+            }
+            int terms = lists.size();
+            float[] idfs = new float[terms];
+            int[] positions = new int[terms];
+            for (int t = 0; t < terms; t++) {
+                int documentFrequency = lists.get(t).size;
+                idfs[t] = (float) Math.log(1 + (size - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            }
+            float averageLength = (float) totalLength / live;
+
+            TopScores top = new TopScores(limit);
+            while (true) {
+                int ordinal = Integer.MAX_VALUE;
+                for (int t = 0; t < terms; t++) {
+                    Postings list = lists.get(t);
+                    if (positions[t] < list.size) {
+                        ordinal = Math.min(ordinal, list.ordinals[positions[t]]);
+                    }
+                }
+                if (ordinal == Integer.MAX_VALUE) {
+                    break;
+                }
+                boolean skipped = deleted.get(ordinal) || (allowed != null && !allowed.contains(ordinal));
+                float norm = K1 * (1 - B + B * lengths[ordinal] / averageLength);
+                float score = 0f;
+                for (int t = 0; t < terms; t++) {
+                    Postings list = lists.get(t);
+                    if (positions[t] < list.size && list.ordinals[positions[t]] == ordinal) {
+                        if (!skipped) {
+                            int frequency = list.frequencies[positions[t]];
+                            score += idfs[t] * frequency * (K1 + 1) / (frequency + norm);
+                        }
+                        positions[t]++;
+                    }
+                }
+                if (!skipped && score > top.threshold() && (filter == null || filter.test(ids[ordinal]))) {
+                    top.offer(ordinal, score);
+                }
+            }
+            top.sort();
+            VectorMatch[] matches = new VectorMatch[top.size()];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = new VectorMatch(ids[top.id(i)], top.score(i));
+            }
+            return Arrays.asList(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the live documents to a snapshot, renumbered without tombstones, replacing the file atomically
+     * The snapshot holds every update made before it was taken, as returned by {@link #getSavedAt()}.
+     */
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            int[] renumbered = renumbering();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(size - deletedCount);
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                if (renumbered[ordinal] >= 0) {
+                    out.writeUTF(ids[ordinal]);
+                    out.writeInt(lengths[ordinal]);
+                }
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> term : postings.entrySet()) {
+                Postings list = term.getValue();
+                int kept = 0;
+                for (int i = 0; i < list.size; i++) {
+                    if (renumbered[list.ordinals[i]] >= 0) {
+                        kept++;
+                    }
+                }
+                out.writeUTF(term.getKey());
+                out.writeInt(kept);
+                for (int i = 0; i < list.size; i++) {
+                    int ordinal = renumbered[list.ordinals[i]];
+                    if (ordinal >= 0) {
+                        out.writeInt(ordinal);
+                        out.writeInt(list.frequencies[i]);
+                    }
+                }
+            }
+            metadata.renumber(renumbered).write(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot written by {@link #save(Path)}
+     * @throws IOException If the file is unreadable
+     */
+    public static Bm25Index load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a BM25 snapshot: " + file);
+            }
+            Bm25Index index = new Bm25Index();
+            index.savedAt = in.readLong();
+            int documents = in.readInt();
+            index.ids = new String[Math.max(16, documents)];
+            index.lengths = new int[index.ids.length];
+            for (int ordinal = 0; ordinal < documents; ordinal++) {
+                index.ids[ordinal] = in.readUTF();
+                index.lengths[ordinal] = in.readInt();
+                index.ordinals.put(index.ids[ordinal], ordinal);
+                index.totalLength += index.lengths[ordinal];
+            }
+            index.size = documents;
+            int terms = in.readInt();
+            for (int t = 0; t < terms; t++) {
+                String term = in.readUTF();
+                int count = in.readInt();
+                Postings list = new Postings(Math.max(1, count));
+                for (int i = 0; i < count; i++) {
+                    list.add(in.readInt(), in.readInt());
+                }
+                if (count > 0) {
+                    index.postings.put(term, list);
+                }
+            }
+            index.metadata = MetadataBitmaps.read(in);
+            return index;
+        }
+    }
+
+    private boolean removeLocked(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return false;
+        }
+        deleted.set(ordinal);
+        deletedCount++;
+        totalLength -= lengths[ordinal];
+        return true;
+    }
+
+    /**
+     * Renumber the live documents and drop the postings of removed ones
+     */
+    private void compact() {
+        int[] renumbered = renumbering();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int target = renumbered[ordinal];
+            if (target >= 0) {
+                ids[target] = ids[ordinal];
+                lengths[target] = lengths[ordinal];
+                ordinals.put(ids[target], target);
+            }
+        }
+        int live = size - deletedCount;
+        Arrays.fill(ids, live, size, null);
+        postings.values().removeIf(list -> list.renumber(renumbered) == 0);
+        metadata = metadata.renumber(renumbered);
+        deleted.clear();
+        deletedCount = 0;
+        size = live;
+    }
+
+    // New ordinal of each live document in order, -1 for tombstones
+    private int[] renumbering() {
+        int[] renumbered = new int[size];
+        int live = 0;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            renumbered[ordinal] = deleted.get(ordinal) ? -1 : live++;
+        }
+        return renumbered;
+    }
+
+    /**
+     * Ordinals of the documents containing a term, ascending, with the term's frequency in each
+     */
+    private static final class Postings {
+        private int[] ordinals;
+        private int[] frequencies;
+        private int size;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            ordinals = new int[capacity];
+            frequencies = new int[capacity];
+        }
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        // Returns the number of postings left
+        int renumber(int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int ordinal = renumbered[ordinals[i]];
+                if (ordinal >= 0) {
+                    ordinals[kept] = ordinal;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            return kept;
+        }
+    }
+}
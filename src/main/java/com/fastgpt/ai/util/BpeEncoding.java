@@ -0,0 +1,436 @@
+package com.fastgpt.ai.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level BPE encoding compatible with the tiktoken cl100k_base and o200k_base vocabularies.
+ * Text is split with the encoding's pre-tokenizer pattern, each piece is encoded to UTF-8 and
+ * merged by rank. Special tokens are treated as ordinary text.
+ * Instances are immutable apart from a bounded LRU of encoded pieces and are thread-safe.
+ */
+public final class BpeEncoding {
+
+    public static final String CL100K_BASE = "cl100k_base";
+    public static final String O200K_BASE = "o200k_base";
+
+    private static final String CL100K_PATTERN =
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+
+    private static final String O200K_PATTERN = String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+");
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    private final String name;
+    private final Pattern pattern;
+    private final Map<ByteSlice, Integer> ranks;
+    private final byte[][] decoder;
+    private final Map<String, int[]> pieceCache;
+
+    private BpeEncoding(String name, Pattern pattern, Map<ByteSlice, Integer> ranks, byte[][] decoder, int cacheSize) {
+        this.name = name;
+        this.pattern = pattern;
+        this.ranks = ranks;
+        this.decoder = decoder;
+        this.pieceCache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Load an encoding from a tiktoken rank file (one "base64-token rank" pair per line)
+     * @param name Encoding name, which selects the pre-tokenizer pattern
+     * @param rankFile The rank file; not closed by this method
+     * @param cacheSize Maximum number of encoded pieces kept in the LRU
+     */
+    public static BpeEncoding load(String name, InputStream rankFile, int cacheSize) throws IOException {
+        String regex = switch (name) {
+            case CL100K_BASE -> CL100K_PATTERN;
+            case O200K_BASE -> O200K_PATTERN;
+            default -> throw new IllegalArgumentException("Unsupported encoding: " + name);
+        };
+
+        Map<ByteSlice, Integer> ranks = new HashMap<>(256 * 1024);
+        int maxRank = -1;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(rankFile, StandardCharsets.US_ASCII));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            byte[] token = Base64.getDecoder().decode(line.substring(0, space));
+            int rank = Integer.parseInt(line.substring(space + 1).trim());
+            ranks.put(new ByteSlice(token, 0, token.length), rank);
+            maxRank = Math.max(maxRank, rank);
+        }
+        if (ranks.isEmpty()) {
+            throw new IOException("Empty rank file for encoding " + name);
+        }
+
+        byte[][] decoder = new byte[maxRank + 1][];
+        for (Map.Entry<ByteSlice, Integer> entry : ranks.entrySet()) {
+            decoder[entry.getValue()] = entry.getKey().bytes;
+        }
+
+        return new BpeEncoding(name, Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS), ranks, decoder, cacheSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVocabularySize() {
+        return ranks.size();
+    }
+
+    /**
+     * Count the tokens of a text without materializing them
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        Scratch scratch = new Scratch();
+        Matcher matcher = pattern.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            int length = scratch.utf8(text, matcher.start(), matcher.end(), false);
+            count += countPiece(text, matcher.start(), matcher.end(), length, scratch);
+        }
+        return count;
+    }
+
+    /**
+     * Encode a text into token ids
+     */
+    public int[] encode(String text) {
+        return encode(text, null);
+    }
+
+    /**
+     * Encode a text into token ids, recording where each token ends in the text
+     * @param charEnds Receives, per token, the char offset where the token ends, or -1 when
+     *                 the token ends inside a multi-byte character; may be null
+     */
+    public int[] encode(String text, IntBuffer charEnds) {
+        IntBuffer tokens = new IntBuffer(text == null ? 0 : text.length() / 3 + 8);
+        if (text == null || text.isEmpty()) {
+            return tokens.toArray();
+        }
+        Scratch scratch = new Scratch();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            int start = matcher.start();
+            int end = matcher.end();
+            int length = scratch.utf8(text, start, end, charEnds != null);
+
+            if (charEnds == null) {
+                String piece = text.substring(start, end);
+                int[] cached = pieceCache.get(piece);
+                if (cached == null) {
+                    cached = encodePiece(length, scratch);
+                    pieceCache.put(piece, cached);
+                }
+                tokens.addAll(cached);
+                continue;
+            }
+
+            // Offsets need the merged boundaries, so bypass the cache
+            int parts = mergePiece(length, scratch);
+            for (int i = 0; i < parts; i++) {
+                tokens.add(rankOf(scratch.bytes, scratch.pos[i], scratch.pos[i + 1], scratch.probe));
+                charEnds.add(scratch.charAt[scratch.pos[i + 1]]);
+            }
+        }
+        return tokens.toArray();
+    }
+
+    /**
+     * Decode token ids back into text; invalid UTF-8 is replaced
+     */
+    public String decode(int[] tokens) {
+        int length = 0;
+        for (int token : tokens) {
+            length += tokenBytes(token).length;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (int token : tokens) {
+            byte[] tokenBytes = tokenBytes(token);
+            System.arraycopy(tokenBytes, 0, bytes, offset, tokenBytes.length);
+            offset += tokenBytes.length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] tokenBytes(int token) {
+        if (token < 0 || token >= decoder.length || decoder[token] == null) {
+            throw new IllegalArgumentException("Unknown token: " + token);
+        }
+        return decoder[token];
+    }
+
+    private int countPiece(String text, int start, int end, int length, Scratch scratch) {
+        // Most pieces are whole vocabulary entries
+        if (ranks.containsKey(scratch.probe.set(scratch.bytes, 0, length))) {
+            return 1;
+        }
+        int[] cached = pieceCache.get(text.substring(start, end));
+        if (cached != null) {
+            return cached.length;
+        }
+        return mergePiece(length, scratch);
+    }
+
+    private int[] encodePiece(int length, Scratch scratch) {
+        int parts = mergePiece(length, scratch);
+        int[] tokens = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            tokens[i] = rankOf(scratch.bytes, scratch.pos[i], scratch.pos[i + 1], scratch.probe);
+        }
+        return tokens;
+    }
+
+    /**
+     * Merge the bytes of a piece by rank, leaving the part boundaries in scratch.pos
+     * @return The number of parts, i.e. tokens
+     */
+    private int mergePiece(int length, Scratch scratch) {
+        int[] pos = scratch.positions(length + 1);
+        int[] rank = scratch.rank;
+        byte[] bytes = scratch.bytes;
+        ByteSlice probe = scratch.probe;
+
+        if (ranks.containsKey(probe.set(bytes, 0, length))) {
+            pos[0] = 0;
+            pos[1] = length;
+            return 1;
+        }
+
+        int boundaries = length + 1;
+        for (int i = 0; i < boundaries; i++) {
+            pos[i] = i;
+        }
+        for (int i = 0; i < boundaries - 2; i++) {
+            rank[i] = rankOrNone(bytes, pos[i], pos[i + 2], probe);
+        }
+        rank[boundaries - 2] = NO_RANK;
+        rank[boundaries - 1] = NO_RANK;
+
+        while (boundaries > 2) {
+            int min = NO_RANK;
+            int index = -1;
+            for (int i = 0; i < boundaries - 1; i++) {
+                if (rank[i] < min) {
+                    min = rank[i];
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                break;
+            }
+
+            // Merge part index with part index + 1 by dropping boundary index + 1
+            if (index > 0) {
+                rank[index - 1] = index + 2 < boundaries
+                        ? rankOrNone(bytes, pos[index - 1], pos[index + 2], probe) : NO_RANK;
+            }
+            rank[index] = index + 3 < boundaries
+                    ? rankOrNone(bytes, pos[index], pos[index + 3], probe) : NO_RANK;
+            System.arraycopy(pos, index + 2, pos, index + 1, boundaries - index - 2);
+            System.arraycopy(rank, index + 2, rank, index + 1, boundaries - index - 2);
+            boundaries--;
+        }
+        return boundaries - 1;
+    }
+
+    private int rankOrNone(byte[] bytes, int from, int to, ByteSlice probe) {
+        Integer rank = ranks.get(probe.set(bytes, from, to));
+        return rank != null ? rank : NO_RANK;
+    }
+
+    private int rankOf(byte[] bytes, int from, int to, ByteSlice probe) {
+        Integer rank = ranks.get(probe.set(bytes, from, to));
+        if (rank == null) {
+            // Every single byte is in the vocabulary, so merged parts always resolve
+            throw new IllegalStateException("Byte sequence missing from " + name + " vocabulary");
+        }
+        return rank;
+    }
+
+    /**
+     * Growable int list
+     */
+    public static final class IntBuffer {
+        private int[] values;
+        private int size;
+
+        public IntBuffer(int capacity) {
+            this.values = new int[Math.max(capacity, 8)];
+        }
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] more) {
+            if (size + more.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + more.length));
+            }
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+
+        public int get(int index) {
+            return values[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Per-call working buffers, reused across the pieces of one text
+     */
+    private static final class Scratch {
+        private byte[] bytes = new byte[64];
+        // Char offset at each byte position, or -1 inside a multi-byte character
+        private int[] charAt = new int[65];
+        private int[] pos = new int[65];
+        private int[] rank = new int[65];
+        private final ByteSlice probe = new ByteSlice(null, 0, 0);
+
+        int[] positions(int count) {
+            if (pos.length < count) {
+                pos = new int[count * 2];
+                rank = new int[count * 2];
+            }
+            return pos;
+        }
+
+        /**
+         * Encode chars [start, end) as UTF-8 into the byte buffer; lone surrogates become '?'
+         * @return The number of bytes written
+         */
+        int utf8(String text, int start, int end, boolean trackChars) {
+            int needed = (end - start) * 3 + 1;
+            if (bytes.length < needed) {
+                bytes = new byte[needed * 2];
+            }
+            if (trackChars && charAt.length < needed) {
+                charAt = new int[needed * 2];
+            }
+
+            int b = 0;
+            for (int c = start; c < end; c++) {
+                int first = b;
+                int charStart = c;
+                char ch = text.charAt(c);
+                if (ch < 0x80) {
+                    bytes[b++] = (byte) ch;
+                } else if (ch < 0x800) {
+                    bytes[b++] = (byte) (0xC0 | (ch >> 6));
+                    bytes[b++] = (byte) (0x80 | (ch & 0x3F));
+                } else if (Character.isHighSurrogate(ch) && c + 1 < end && Character.isLowSurrogate(text.charAt(c + 1))) {
+                    int cp = Character.toCodePoint(ch, text.charAt(++c));
+                    bytes[b++] = (byte) (0xF0 | (cp >> 18));
+                    bytes[b++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    bytes[b++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    bytes[b++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(ch)) {
+                    bytes[b++] = '?';
+                } else {
+                    bytes[b++] = (byte) (0xE0 | (ch >> 12));
+                    bytes[b++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                    bytes[b++] = (byte) (0x80 | (ch & 0x3F));
+                }
+                if (trackChars) {
+                    charAt[first] = charStart;
+                    for (int i = first + 1; i < b; i++) {
+                        charAt[i] = -1;
+                    }
+                }
+            }
+            if (trackChars) {
+                charAt[b] = end;
+            }
+            return b;
+        }
+    }
+
+    /**
+     * A byte range usable as a hash key; the probe instance is re-pointed for lookups
+     */
+    private static final class ByteSlice {
+        private byte[] bytes;
+        private int from;
+        private int to;
+        private int hash;
+
+        ByteSlice(byte[] bytes, int from, int to) {
+            if (bytes != null) {
+                set(bytes, from, to);
+            }
+        }
+
+        ByteSlice set(byte[] bytes, int from, int to) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+            int h = 1;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + bytes[i];
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ByteSlice other)) {
+                return false;
+            }
+            return hash == other.hash
+                    && Arrays.equals(bytes, from, to, other.bytes, other.from, other.to);
+        }
+    }
+}
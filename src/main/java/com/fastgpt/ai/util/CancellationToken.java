@@ -0,0 +1,144 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cancellation token shared by a chat generation or workflow execution
+ * and every outbound call made on its behalf.
+ * The token is bound to the executing thread, so node dispatchers and HTTP clients
+ * can pick it up without changing their signatures.
+ */
+@Slf4j
+public final class CancellationToken {
+
+    /**
+     * Token that is never cancelled, used when no execution scope is bound
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+    private volatile String reason;
+
+    private CancellationToken() {
+    }
+
+    /**
+     * Create a new token
+     */
+    public static CancellationToken create() {
+        return new CancellationToken();
+    }
+
+    /**
+     * Get the token bound to the current thread
+     * @return The bound token, or NONE
+     */
+    public static CancellationToken current() {
+        CancellationToken token = CURRENT.get();
+        return token != null ? token : NONE;
+    }
+
+    /**
+     * Bind this token to the current thread until the returned scope is closed
+     */
+    public Scope bind() {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Cancel the token and run the registered callbacks once
+     * @param reason Why the execution was cancelled
+     * @return true if this call cancelled the token
+     */
+    public boolean cancel(String reason) {
+        if (this == NONE) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            this.reason = reason;
+            this.cancelled = true;
+        }
+
+        // Whoever removes a callback runs it, so each callback runs exactly once
+        for (Runnable callback : callbacks) {
+            if (callbacks.remove(callback)) {
+                runCallback(callback);
+            }
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Throw if the token has been cancelled
+     * @throws ExecutionCancelledException if cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new ExecutionCancelledException(reason != null ? reason : "Execution cancelled");
+        }
+    }
+
+    /**
+     * Register a callback that aborts in-flight work, e.g. closing an HTTP connection.
+     * Runs immediately if the token is already cancelled.
+     * @param callback The callback
+     * @return A runnable that unregisters the callback
+     */
+    public Runnable onCancel(Runnable callback) {
+        if (this == NONE) {
+            return () -> { };
+        }
+
+        // Wrap so the same callback instance can be registered and removed independently
+        Runnable registration = callback::run;
+        callbacks.add(registration);
+        if (cancelled && callbacks.remove(registration)) {
+            runCallback(registration);
+        }
+        return () -> callbacks.remove(registration);
+    }
+
+    private void runCallback(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.debug("Cancellation callback failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Scope of a token bound to a thread
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
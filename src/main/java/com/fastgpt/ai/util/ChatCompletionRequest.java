@@ -0,0 +1,131 @@
+package com.fastgpt.ai.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Chat completion request that is written straight to an output stream.
+ * The message list is referenced, not copied, and the system message is pre-encoded
+ * once per prompt. Equal requests produce identical bodies, so instances also serve
+ * as coalescing keys; the referenced messages must not be mutated while in use.
+ */
+public final class ChatCompletionRequest {
+
+    private final String model;
+    private final double temperature;
+    private final Integer maxTokens;
+    private final boolean stream;
+    private final String systemPrompt;
+    private final SerializableString encodedSystemMessage;
+    private final List<Map<String, String>> messages;
+    private int hash;
+
+    /**
+     * @param encodedSystemMessage The system message as a complete JSON object, or null for none
+     */
+    public ChatCompletionRequest(String model, double temperature, Integer maxTokens, boolean stream,
+                                 String systemPrompt, SerializableString encodedSystemMessage,
+                                 List<Map<String, String>> messages) {
+        this.model = model;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.stream = stream;
+        this.systemPrompt = encodedSystemMessage != null ? systemPrompt : null;
+        this.encodedSystemMessage = encodedSystemMessage;
+        this.messages = messages != null ? messages : List.of();
+    }
+
+    /**
+     * Copy of this request with streaming switched on
+     */
+    public ChatCompletionRequest streaming() {
+        return new ChatCompletionRequest(model, temperature, maxTokens, true,
+                systemPrompt, encodedSystemMessage, messages);
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public Integer getMaxTokens() {
+        return maxTokens;
+    }
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    public List<Map<String, String>> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Write the JSON body to the stream as UTF-8; the stream is flushed but not closed
+     */
+    public void writeTo(OutputStream out, JsonFactory factory) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("model", model);
+            generator.writeNumberField("temperature", temperature);
+            if (maxTokens != null) {
+                generator.writeNumberField("max_tokens", maxTokens);
+            }
+            if (stream) {
+                generator.writeBooleanField("stream", true);
+                // Ask for a final chunk carrying the token usage
+                generator.writeObjectFieldStart("stream_options");
+                generator.writeBooleanField("include_usage", true);
+                generator.writeEndObject();
+            }
+
+            generator.writeArrayFieldStart("messages");
+            if (encodedSystemMessage != null) {
+                generator.writeRawValue(encodedSystemMessage);
+            }
+            for (Map<String, String> message : messages) {
+                generator.writeStartObject();
+                generator.writeStringField("role", message.get("role"));
+                generator.writeStringField("content", message.get("content"));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChatCompletionRequest other)) {
+            return false;
+        }
+        return Double.compare(temperature, other.temperature) == 0
+                && stream == other.stream
+                && Objects.equals(model, other.model)
+                && Objects.equals(maxTokens, other.maxTokens)
+                && Objects.equals(systemPrompt, other.systemPrompt)
+                && messages.equals(other.messages);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(model, temperature, maxTokens, stream, systemPrompt, messages);
+            hash = h;
+        }
+        return h;
+    }
+}
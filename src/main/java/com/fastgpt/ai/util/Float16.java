@@ -0,0 +1,77 @@
+package com.fastgpt.ai.util;
+
+/**
+ * IEEE 754 half-precision conversions
+ * Embeddings are unit-scale values, so half precision keeps about three significant digits
+ * at half the size of float32.
+ */
+public final class Float16 {
+
+    private Float16() {
+    }
+
+    /**
+     * Round a float to the nearest half-precision value
+     * @return The half-precision bits
+     */
+    public static short fromFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // Infinity, or NaN with a mantissa bit kept set
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal: shift in the implicit bit and round to nearest even
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >>> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >>> 13);
+        int remainder = mantissa & 0x1FFF;
+        // A carry out of the mantissa correctly bumps the exponent, up to infinity
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Widen half-precision bits to a float
+     */
+    public static float toFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // Subnormal: 2^-24 per mantissa unit
+            float magnitude = mantissa * 0x1p-24f;
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
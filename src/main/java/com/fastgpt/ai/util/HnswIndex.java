@@ -0,0 +1,620 @@
+package com.fastgpt.ai.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical navigable small world graph for approximate nearest-neighbour search.
+ * The graph is built over the ordinals of a {@link MappedVectorStore} and reads the unit-length
+ * vectors from it, so it holds only links on the heap and the score of a match is its cosine
+ * similarity. Ordinals are indexed in order up to a watermark; catching up indexes the ones
+ * appended since. Tombstoned ordinals stay in the graph as routing nodes and are never returned;
+ * they leave it when the store is compacted and the index is rebuilt on the new store.
+ * The graph of a quantized store can be searched on the heap-resident codes instead, with only
+ * the best candidates read from the mapped vectors.
+ * Searches share a read lock; inserts take the write lock.
+ */
+public final class HnswIndex {
+
+    // "HNSW"
+    private static final int MAGIC = 0x484E5357;
+    // Version 2 holds only links and the store ID and watermark they belong to
+    private static final int VERSION = 2;
+    // Times a filtered search on codes is retried with four times the candidates
+    private static final int MAX_WIDENINGS = 3;
+
+    // Per-thread visit marks, shared by all indexes and grown to the largest one searched
+    private static final ThreadLocal<Visited> VISITED = ThreadLocal.withInitial(Visited::new);
+
+    private final MappedVectorStore store;
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // links[ordinal][level] holds the neighbour count followed by the neighbours; null if not in the graph
+    private int[][][] links = new int[0][][];
+    // Ordinals below the watermark have been indexed, or skipped as tombstones
+    private int watermark;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Vectors read while inserting, under the write lock
+    private final float[] baseVector;
+    private final float[] nodeVector;
+    private final float[] candidateVector;
+
+    /**
+     * @param store Store whose ordinals are indexed
+     * @param m Neighbours per node on the upper levels; level 0 keeps twice as many
+     * @param efConstruction Candidate list size while inserting
+     */
+    public HnswIndex(MappedVectorStore store, int m, int efConstruction) {
+        if (m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: m=" + m + ", efConstruction=" + efConstruction);
+        }
+        this.store = store;
+        this.dimensions = store.getDimensions();
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1.0 / Math.log(m);
+        this.baseVector = new float[dimensions];
+        this.nodeVector = new float[dimensions];
+        this.candidateVector = new float[dimensions];
+    }
+
+    public MappedVectorStore getStore() {
+        return store;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * Number of ordinals in the graph, including those tombstoned since they were indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ordinals below this have been indexed
+     */
+    public int watermark() {
+        lock.readLock().lock();
+        try {
+            return watermark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index the ordinals appended to the store since the watermark, skipping tombstoned ones
+     * The write lock is taken per ordinal, so searches interleave with a long catch-up.
+     * @return Number of ordinals inserted
+     */
+    public int catchUp() {
+        int inserted = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            lock.writeLock().lock();
+            try {
+                if (watermark >= store.ordinalLimit()) {
+                    return inserted;
+                }
+                int ordinal = watermark++;
+                if (!store.isDeleted(ordinal)) {
+                    insert(ordinal, randomLevel());
+                    inserted++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Find the nearest live entries to a query
+     * @param query Query vector, normalized here
+     * @param k Number of matches
+     * @param ef Candidate list size; larger is slower and more accurate, and at least k is used
+     * @param filter Accepts the IDs that may be returned, or null for all
+     * @return Matches ordered by descending similarity
+     */
+    public List<VectorMatch> search(float[] query, int k, int ef, Predicate<String> filter) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float[] normalized = VectorMath.normalized(query);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return new ArrayList<>();
+            }
+            NodeDistance toQuery = node -> distance(normalized, node);
+            int current = greedyDescend(toQuery, entryPoint, maxLevel, 0);
+            LongHeap results = searchLayer(toQuery, current, Math.max(ef, k), 0,
+                    node -> !store.isDeleted(node) && (filter == null || filter.test(store.idOf(node))));
+
+            long[] sorted = results.drainAscending();
+            List<VectorMatch> matches = new ArrayList<>(Math.min(k, sorted.length));
+            for (int i = 0; i < sorted.length && matches.size() < k; i++) {
+                matches.add(new VectorMatch(store.idOf(node(sorted[i])), 1.0 - distance(sorted[i])));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the nearest live entries to a query, walking the graph on quantized codes
+     * The walk reads only the codes, holding their lock once; the best candidates are then
+     * scored with the exact vectors in one batch, which drops tombstoned and filtered ones. A
+     * filter that leaves too few of them widens the walk a few times.
+     * @param codes Codes of the ordinals of this index's store
+     * @param candidates Candidates to score exactly; at least k are used
+     * @see #search(float[], int, int, Predicate)
+     */
+    public List<VectorMatch> search(float[] query, int k, int ef, Predicate<String> filter, QuantizedVectors codes,
+                                    int candidates) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        float[] normalized = VectorMath.normalized(query);
+        int wanted = Math.min(Integer.MAX_VALUE >> 8, Math.max(k, candidates));
+        for (int round = 0; ; round++) {
+            int[] ordinals = candidates(normalized, wanted, Math.max(ef, wanted), codes);
+            TopScores top = store.top(normalized, k, -1f, ordinals, filter);
+            if (top.size() >= k || filter == null || ordinals.length < wanted || round == MAX_WIDENINGS) {
+                return store.matches(top);
+            }
+            wanted *= 4;
+        }
+    }
+
+    // Best ordinals by approximate score, among those with a code
+    private int[] candidates(float[] normalizedQuery, int n, int ef, QuantizedVectors codes) {
+        lock.readLock().lock();
+        try (QuantizedVectors.Reader reader = codes.reader(normalizedQuery)) {
+            if (entryPoint < 0) {
+                return new int[0];
+            }
+            NodeDistance toQuery = node -> Math.max(0f, 1f - reader.score(node));
+            int current = greedyDescend(toQuery, entryPoint, maxLevel, 0);
+            long[] sorted = searchLayer(toQuery, current, ef, 0, reader::contains).drainAscending();
+            int[] ordinals = new int[Math.min(n, sorted.length)];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = node(sorted[i]);
+            }
+            return ordinals;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the links to a snapshot, replacing the file atomically
+     */
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeLong(store.getStoreId());
+            out.writeInt(watermark);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < watermark; node++) {
+                int[][] levels = links[node];
+                if (levels == null) {
+                    out.writeByte(0);
+                    continue;
+                }
+                out.writeByte(levels.length);
+                for (int[] level : levels) {
+                    out.writeShort(level[0]);
+                    for (int i = 1; i <= level[0]; i++) {
+                        out.writeInt(level[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot written by {@link #save(Path)} for the same store
+     * Ordinals appended after the snapshot are not indexed until {@link #catchUp()}.
+     * @throws IOException If the file is unreadable or was written for another store
+     */
+    public static HnswIndex load(Path file, MappedVectorStore store) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an HNSW snapshot: " + file);
+            }
+            int dimensions = in.readInt();
+            HnswIndex index = new HnswIndex(store, in.readInt(), in.readInt());
+            long storeId = in.readLong();
+            int watermark = in.readInt();
+            if (dimensions != store.getDimensions() || storeId != store.getStoreId()
+                    || watermark > store.ordinalLimit()) {
+                throw new IOException("HNSW snapshot " + file + " was written for another vector store");
+            }
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            index.ensureCapacity(watermark);
+
+            for (int node = 0; node < watermark; node++) {
+                int levels = in.readByte();
+                if (levels == 0) {
+                    continue;
+                }
+                index.links[node] = new int[levels][];
+                for (int level = 0; level < levels; level++) {
+                    int[] neighbours = index.newLinks(level);
+                    neighbours[0] = in.readShort();
+                    for (int i = 1; i <= neighbours[0]; i++) {
+                        neighbours[i] = in.readInt();
+                    }
+                    index.links[node][level] = neighbours;
+                }
+                index.size++;
+            }
+            index.watermark = watermark;
+            return index;
+        }
+    }
+
+    private void insert(int node, int level) {
+        ensureCapacity(node + 1);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = newLinks(l);
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = baseVector;
+        store.read(node, vector);
+        NodeDistance toBase = other -> distance(vector, other);
+        int current = greedyDescend(toBase, entryPoint, maxLevel, level + 1);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(toBase, current, efConstruction, l, null).drainAscending();
+            int[] selected = selectNeighbours(candidates, m);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbour : selected) {
+                connect(neighbour, node, l);
+            }
+            current = node(candidates[0]);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Walk from the top level down to the target level, moving to the closest neighbour each step
+     */
+    private int greedyDescend(NodeDistance distance, int start, int fromLevel, int toLevel) {
+        int current = start;
+        float currentDistance = distance.to(current);
+        for (int level = fromLevel; level >= toLevel; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbours = links[current][level];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float d = distance.to(neighbours[i]);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = neighbours[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one level
+     * @param accept Nodes that may enter the results, or null for all; rejected nodes are still traversed
+     * @return Max-heap of at most ef results
+     */
+    private LongHeap searchLayer(NodeDistance distance, int entry, int ef, int level, IntPredicate accept) {
+        Visited visited = VISITED.get();
+        visited.reset(links.length);
+
+        LongHeap candidates = new LongHeap(false, ef * 2);
+        LongHeap results = new LongHeap(true, ef + 1);
+
+        long start = pack(distance.to(entry), entry);
+        visited.mark(entry);
+        candidates.push(start);
+        if (accept == null || accept.test(entry)) {
+            results.push(start);
+        }
+
+        while (!candidates.isEmpty()) {
+            long candidate = candidates.pop();
+            if (results.size() >= ef && distance(candidate) > distance(results.peek())) {
+                break;
+            }
+            int[] neighbours = links[node(candidate)][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!visited.mark(neighbour)) {
+                    continue;
+                }
+                float d = distance.to(neighbour);
+                if (results.size() < ef || d < distance(results.peek())) {
+                    long entryKey = pack(d, neighbour);
+                    candidates.push(entryKey);
+                    if (accept == null || accept.test(neighbour)) {
+                        results.push(entryKey);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Keep candidates that are closer to the base than to any neighbour already kept,
+     * which spreads the links across directions instead of one dense cluster
+     * @param candidates Packed candidates in ascending distance to the base
+     */
+    private int[] selectNeighbours(long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        for (long candidate : candidates) {
+            if (count >= max) {
+                break;
+            }
+            int node = node(candidate);
+            float toBase = distance(candidate);
+            boolean diverse = true;
+            if (count > 0) {
+                store.read(node, candidateVector);
+            }
+            for (int i = 0; i < count; i++) {
+                if (distance(candidateVector, selected[i]) < toBase) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = node;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Add a back link, pruning the neighbour's list when it is full
+     */
+    private void connect(int node, int neighbour, int level) {
+        int[] neighbours = links[node][level];
+        int capacity = neighbours.length - 1;
+        if (neighbours[0] < capacity) {
+            neighbours[++neighbours[0]] = neighbour;
+            return;
+        }
+
+        store.read(node, nodeVector);
+        long[] candidates = new long[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            candidates[i - 1] = pack(distance(nodeVector, neighbours[i]), neighbours[i]);
+        }
+        candidates[capacity] = pack(distance(nodeVector, neighbour), neighbour);
+        Arrays.sort(candidates);
+
+        int[] selected = selectNeighbours(candidates, capacity);
+        neighbours[0] = selected.length;
+        System.arraycopy(selected, 0, neighbours, 1, selected.length);
+    }
+
+    private int[] newLinks(int level) {
+        return new int[1 + (level == 0 ? maxM0 : m)];
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= links.length) {
+            return;
+        }
+        links = Arrays.copyOf(links, Math.max(capacity, Math.max(16, links.length + (links.length >> 1))));
+    }
+
+    /**
+     * Cosine distance of a normalized vector to a stored one, clamped at 0 so packed keys sort correctly
+     */
+    private float distance(float[] query, int node) {
+        return Math.max(0f, 1f - store.score(query, node));
+    }
+
+    /**
+     * Distance of a node to the query or base vector of one search
+     */
+    @FunctionalInterface
+    private interface NodeDistance {
+        float to(int node);
+    }
+
+    // Non-negative floats order like their bit patterns, so distance and node pack into one sortable long
+    private static long pack(float distance, int node) {
+        return ((long) Float.floatToRawIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private static float distance(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static int node(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Binary heap of packed (distance, node) keys
+     */
+    private static final class LongHeap {
+        private final boolean max;
+        private long[] heap;
+        private int size;
+
+        LongHeap(boolean max, int capacity) {
+            this.max = max;
+            this.heap = new long[Math.max(4, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(value, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], last)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+
+        long[] drainAscending() {
+            long[] values = Arrays.copyOf(heap, size);
+            Arrays.sort(values);
+            size = 0;
+            return values;
+        }
+
+        private boolean before(long a, long b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /**
+     * Visit marks reset by bumping a generation instead of clearing
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length + (marks.length >> 1))];
+                generation = 0;
+            }
+            if (++generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return true if the node was not visited before
+         */
+        boolean mark(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,700 @@
+package com.fastgpt.ai.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Append-only store of unit-length float32 vectors in memory-mapped segment files.
+ * Each vector gets an int ordinal on append; ordinal n lives at a fixed offset of segment
+ * n / segmentCapacity, so reads are plain offset arithmetic with no per-vector objects.
+ * A journal maps ordinals to data IDs and records deletes, which are tombstones until the
+ * store is compacted into a new directory. Each store has a random ID, written in the journal
+ * header, so state derived from its ordinals can tell whether it still belongs to it.
+ *
+ * {@link #add} and {@link #remove} are durable when they return: the vector's pages are forced
+ * before the journal record naming them is written and synced. A record torn by a crash is cut
+ * off the journal when the store is reopened.
+ *
+ * Readers that outlive a single call, such as an index built over the ordinals, hold a reference
+ * with {@link #acquire()}; a retired store runs its cleanup once the last of them releases it.
+ *
+ * Layout of a store directory: vectors.journal, segment-00000.vec, segment-00001.vec, ...
+ */
+public final class MappedVectorStore implements Closeable {
+
+    // "VECS"
+    private static final int MAGIC = 0x56454353;
+    // Version 2 stores unit-length vectors; version 3 adds the store ID
+    private static final int VERSION = 3;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final String JOURNAL = "vectors.journal";
+    // Segments stay well under the 2 GB limit of a mapped buffer
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    private final Path dir;
+    private final int dimensions;
+    private final int segmentCapacity;
+    private long storeId;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Little-endian mappings for the dot product kernels, and float views of them for bulk copies
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private String[] ids = new String[0];
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private int size;
+    private int deletedCount;
+    private FileChannel journalChannel;
+    private DataOutputStream journal;
+    // The owner holds one reference until it retires the store
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile Runnable onReleased;
+
+    private MappedVectorStore(Path dir, int dimensions) {
+        this.dir = dir;
+        this.dimensions = dimensions;
+        this.segmentCapacity = (int) Math.max(1, SEGMENT_BYTES / (4L * dimensions));
+    }
+
+    /**
+     * Open a store, creating it if the directory holds none
+     * @param dimensions Vector dimensions; must match an existing store
+     */
+    public static MappedVectorStore open(Path dir, int dimensions) throws IOException {
+        Files.createDirectories(dir);
+        MappedVectorStore store = new MappedVectorStore(dir, dimensions);
+        Path journalFile = dir.resolve(JOURNAL);
+        boolean exists = Files.exists(journalFile);
+        if (exists) {
+            long length = store.replay(journalFile);
+            if (length < Files.size(journalFile)) {
+                // Cut off the torn record, or the next append would follow its garbage
+                try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                    channel.force(true);
+                }
+            }
+        } else {
+            store.storeId = new SecureRandom().nextLong();
+        }
+
+        store.journalChannel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        store.journal = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(store.journalChannel)));
+        if (!exists) {
+            store.journal.writeInt(MAGIC);
+            store.journal.writeInt(VERSION);
+            store.journal.writeInt(dimensions);
+            store.journal.writeLong(store.storeId);
+            store.syncJournal();
+        }
+        return store;
+    }
+
+    /**
+     * Read the dimensions of an existing store
+     * @return The dimensions, or 0 if the directory holds no store
+     */
+    public static int readDimensions(Path dir) throws IOException {
+        Path journalFile = dir.resolve(JOURNAL);
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(journalFile))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a vector store journal: " + journalFile);
+            }
+            return in.readInt();
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Random ID of this store, fixed at creation; a compacted copy gets a new one
+     */
+    public long getStoreId() {
+        return storeId;
+    }
+
+    /**
+     * Number of live vectors
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of tombstoned vectors still taking space
+     */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Highest ordinal in use plus one, including tombstones
+     */
+    public int ordinalLimit() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a vector, tombstoning any previous vector of the same ID
+     * The vector is stored at unit length; the caller's array is not changed.
+     * @return The ordinal of the vector
+     */
+    public int add(String id, float[] vector) throws IOException {
+        return put(id, vector, true);
+    }
+
+    /**
+     * Append a vector without syncing it to disk
+     * For filling a store nobody reads yet; it is durable only after {@link #flush()}.
+     * @return The ordinal of the vector
+     */
+    public int append(String id, float[] vector) throws IOException {
+        return put(id, vector, false);
+    }
+
+    private int put(String id, float[] vector, boolean sync) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float[] normalized = VectorMath.normalized(vector);
+        lock.writeLock().lock();
+        try {
+            Integer previous = ordinals.get(id);
+            if (previous != null) {
+                tombstone(previous);
+                writeRecord(RECORD_DELETE, previous, null);
+            }
+
+            int ordinal = size;
+            ensureCapacity(ordinal + 1);
+            segment(ordinal).put(offset(ordinal), normalized);
+            ids[ordinal] = id;
+            ordinals.put(id, ordinal);
+            size++;
+            writeRecord(RECORD_ADD, ordinal, id);
+            if (sync) {
+                // The vector reaches disk before the journal names it, so a replayed ordinal always has its data
+                mappings.get(ordinal / segmentCapacity).force(offset(ordinal) * Float.BYTES, dimensions * Float.BYTES);
+                syncJournal();
+            }
+            return ordinal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstone the vector of an ID
+     * @return true if the ID was present
+     */
+    public boolean remove(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(id);
+            if (ordinal == null) {
+                return false;
+            }
+            tombstone(ordinal);
+            writeRecord(RECORD_DELETE, ordinal, null);
+            syncJournal();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ordinal of an ID
+     * @return The ordinal, or -1 if the ID has no live vector
+     */
+    public int ordinalOf(String id) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(id);
+            return ordinal != null ? ordinal : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String idOf(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return ids[ordinal];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copy a unit-length vector into a caller-owned array
+     */
+    public void read(int ordinal, float[] target) {
+        lock.readLock().lock();
+        try {
+            segment(ordinal).get(offset(ordinal), target, 0, dimensions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cosine similarity of one stored vector with a unit-length query
+     */
+    public float score(float[] normalizedQuery, int ordinal) {
+        lock.readLock().lock();
+        try {
+            return VectorMath.dot(normalizedQuery, mappings.get(ordinal / segmentCapacity), offset(ordinal) * Float.BYTES);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether an ordinal has been tombstoned
+     */
+    public boolean isDeleted(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return deleted.get(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Score every live vector against a query by cosine similarity
+     * Stored vectors are unit length, so each segment is scored with one batched dot product pass.
+     * @param accept Ordinals to score, or null for all
+     * @param consumer Receives the ordinal and score of each scored vector
+     */
+    public void scan(float[] query, IntPredicate accept, ScoreConsumer consumer) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float[] normalizedQuery = query.clone();
+        if (VectorMath.normalize(normalizedQuery) == 0) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            float[] scores = new float[Math.min(size, segmentCapacity)];
+            for (int first = 0; first < size; first += segmentCapacity) {
+                int count = Math.min(segmentCapacity, size - first);
+                VectorMath.dotAll(normalizedQuery, mappings.get(first / segmentCapacity), 0, count, scores);
+                for (int i = 0; i < count; i++) {
+                    int ordinal = first + i;
+                    if (!deleted.get(ordinal) && (accept == null || accept.test(ordinal))) {
+                        consumer.accept(ordinal, scores[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Select the live vectors most similar to a query, scoring partitions of ordinals in parallel
+     * Each partition keeps a bounded heap of its best ordinals and the heaps are merged at the end,
+     * so no object is created per scored vector. Partitions run on the common fork-join pool while
+     * the caller holds the read lock, so the filter must not call back into the store.
+     * @param k Number of matches
+     * @param minScore Minimum cosine similarity
+     * @param filter Accepts the IDs that may be returned, or null for all
+     * @param partitionSize Ordinals per task; a store no larger is scanned on the calling thread
+     * @return The best ordinals and their scores, best first
+     */
+    public TopScores top(float[] query, int k, float minScore, Predicate<String> filter, int partitionSize) {
+        return top(query, k, minScore, null, filter, partitionSize);
+    }
+
+    /**
+     * Select the live vectors most similar to a query among the ordinals an ordinal filter accepts
+     * @param accept Accepts the ordinals that may be returned, or null for all; called from the
+     *               fork-join pool, so it must be thread-safe
+     * @see #top(float[], int, float, Predicate, int)
+     */
+    public TopScores top(float[] query, int k, float minScore, IntPredicate accept, Predicate<String> filter,
+                         int partitionSize) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float[] normalizedQuery = query.clone();
+        if (VectorMath.normalize(normalizedQuery) == 0) {
+            return new TopScores(0);
+        }
+
+        lock.readLock().lock();
+        try {
+            int chunk = Math.max(1, partitionSize);
+            int partitions = (size + chunk - 1) / chunk;
+            if (partitions <= 1) {
+                return topOf(normalizedQuery, 0, size, k, minScore, accept, filter).sort();
+            }
+            return IntStream.range(0, partitions).parallel()
+                    .mapToObj(p -> topOf(normalizedQuery, p * chunk, Math.min(size, (p + 1) * chunk), k, minScore,
+                            accept, filter))
+                    .reduce(TopScores::merge)
+                    .orElseGet(() -> new TopScores(0))
+                    .sort();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Score ordinals [from, to), one batched pass per segment they span
+    private TopScores topOf(float[] normalizedQuery, int from, int to, int k, float minScore, IntPredicate accept,
+                            Predicate<String> filter) {
+        TopScores top = new TopScores(k);
+        float[] scores = new float[Math.min(segmentCapacity, to - from)];
+        for (int first = from; first < to; ) {
+            int segmentEnd = (first / segmentCapacity + 1) * segmentCapacity;
+            int count = Math.min(to, segmentEnd) - first;
+            VectorMath.dotAll(normalizedQuery, mappings.get(first / segmentCapacity), offset(first) * Float.BYTES,
+                    count, scores);
+            for (int i = 0; i < count; i++) {
+                int ordinal = first + i;
+                float score = scores[i];
+                if (score >= minScore && score > top.threshold() && !deleted.get(ordinal)
+                        && (accept == null || accept.test(ordinal)) && (filter == null || filter.test(ids[ordinal]))) {
+                    top.offer(ordinal, score);
+                }
+            }
+            first += count;
+        }
+        return top;
+    }
+
+    /**
+     * Select the most similar of a list of vectors, scoring only those
+     * For filters that leave few candidates, where a scan of the whole store would mostly be wasted.
+     * @param ordinals Candidate ordinals; tombstoned and out of range ones are skipped
+     * @param filter Accepts the IDs that may be returned, or null for all
+     * @return The best ordinals and their scores, best first
+     */
+    public TopScores top(float[] query, int k, float minScore, int[] ordinals, Predicate<String> filter) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float[] normalizedQuery = query.clone();
+        if (VectorMath.normalize(normalizedQuery) == 0) {
+            return new TopScores(0);
+        }
+
+        lock.readLock().lock();
+        try {
+            TopScores top = new TopScores(k);
+            for (int ordinal : ordinals) {
+                if (ordinal < 0 || ordinal >= size || deleted.get(ordinal)) {
+                    continue;
+                }
+                float score = VectorMath.dot(normalizedQuery, mappings.get(ordinal / segmentCapacity),
+                        offset(ordinal) * Float.BYTES);
+                if (score >= minScore && score > top.threshold() && (filter == null || filter.test(ids[ordinal]))) {
+                    top.offer(ordinal, score);
+                }
+            }
+            return top.sort();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pair selected ordinals with their IDs, under one hold of the read lock
+     * @param top Ordinals and scores, e.g. from {@link #top}
+     */
+    public List<VectorMatch> matches(TopScores top) {
+        List<VectorMatch> matches = new ArrayList<>(top.size());
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < top.size(); i++) {
+                matches.add(new VectorMatch(ids[top.id(i)], top.score(i)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    /**
+     * Copy the live vectors into a new store, renumbering their ordinals
+     * Writes are blocked while copying, so the new store is complete when returned.
+     */
+    public MappedVectorStore compactTo(Path target) throws IOException {
+        lock.readLock().lock();
+        try {
+            MappedVectorStore compacted = open(target, dimensions);
+            float[] vector = new float[dimensions];
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                if (!deleted.get(ordinal)) {
+                    segment(ordinal).get(offset(ordinal), vector, 0, dimensions);
+                    compacted.append(ids[ordinal], vector);
+                }
+            }
+            compacted.flush();
+            return compacted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the dirty pages and then the journal to disk
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer mapping : mappings) {
+                mapping.force();
+            }
+            syncJournal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Close the journal; the mappings are released when the store is garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            journal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register a reader of the store, which must {@link #release()} it when done
+     * @return false if the store was retired and its last reader has already released it
+     */
+    public boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a reference taken with {@link #acquire()}
+     */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0 && onReleased != null) {
+            onReleased.run();
+        } else if (count < 0) {
+            throw new IllegalStateException("Vector store released more often than acquired: " + dir);
+        }
+    }
+
+    /**
+     * Drop the owner's reference; the cleanup runs on the thread of the last reader to release
+     * the store, or right away if nobody holds it
+     */
+    public void retire(Runnable cleanup) {
+        if (onReleased != null) {
+            throw new IllegalStateException("Vector store already retired: " + dir);
+        }
+        onReleased = cleanup;
+        release();
+    }
+
+    // Replay the journal and return the length of its intact records
+    private long replay(Path journalFile) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(journalFile), 1 << 16));
+        try (DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a vector store journal: " + journalFile);
+            }
+            int storedDimensions = in.readInt();
+            if (storedDimensions != dimensions) {
+                throw new IOException("Vector store " + dir + " has " + storedDimensions + " dimensions, not " + dimensions);
+            }
+            storeId = in.readLong();
+
+            while (true) {
+                long recordStart = counter.count;
+                byte type;
+                int ordinal;
+                String id = null;
+                try {
+                    type = in.readByte();
+                    ordinal = in.readInt();
+                    if (type == RECORD_ADD) {
+                        id = in.readUTF();
+                    }
+                } catch (EOFException | UTFDataFormatException e) {
+                    // A record cut short by a crash is dropped with everything after it
+                    return recordStart;
+                }
+
+                if (type == RECORD_ADD) {
+                    ensureCapacity(ordinal + 1);
+                    ids[ordinal] = id;
+                    ordinals.put(id, ordinal);
+                    size = Math.max(size, ordinal + 1);
+                } else if (type == RECORD_DELETE) {
+                    if (ordinal < size && ids[ordinal] != null && ordinals.get(ids[ordinal]) == ordinal) {
+                        ordinals.remove(ids[ordinal]);
+                    }
+                    tombstone(ordinal);
+                } else {
+                    throw new IOException("Corrupt vector store journal: " + journalFile);
+                }
+            }
+        }
+    }
+
+    private void writeRecord(byte type, int ordinal, String id) throws IOException {
+        journal.writeByte(type);
+        journal.writeInt(ordinal);
+        if (id != null) {
+            journal.writeUTF(id);
+        }
+    }
+
+    private void syncJournal() throws IOException {
+        journal.flush();
+        journalChannel.force(false);
+    }
+
+    private void tombstone(int ordinal) {
+        if (!deleted.get(ordinal)) {
+            deleted.set(ordinal);
+            deletedCount++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, Math.max(16, ids.length + (ids.length >> 1))));
+        }
+        while ((long) segments.size() * segmentCapacity < capacity) {
+            segments.add(mapSegment(segments.size()));
+        }
+    }
+
+    private FloatBuffer mapSegment(int index) throws IOException {
+        Path file = dir.resolve(String.format("segment-%05d.vec", index));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4L * dimensions * segmentCapacity);
+            mappings.add(mapping);
+            return mapping.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    private FloatBuffer segment(int ordinal) {
+        return segments.get(ordinal / segmentCapacity);
+    }
+
+    private int offset(int ordinal) {
+        return (ordinal % segmentCapacity) * dimensions;
+    }
+
+    /**
+     * Counts the bytes read through it, to find where the intact part of a journal ends
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Receives a scored vector
+     */
+    @FunctionalInterface
+    public interface ScoreConsumer {
+        void accept(int ordinal, float score);
+    }
+}
@@ -0,0 +1,189 @@
+package com.fastgpt.ai.util;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Roaring bitmaps of vector ordinals per metadata key and value
+ * A filter of keys to accepted values becomes a union of bitmaps per key and an intersection
+ * across keys, so its cost follows the number of matching vectors rather than the size of the
+ * store. Ordinals are never removed: the store tombstones replaced and deleted vectors, and
+ * callers skip tombstones, so stale bits are dropped with the next compaction.
+ */
+public final class MetadataBitmaps {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Map<String, RoaringBitmap>> bitmaps = new HashMap<>();
+
+    /**
+     * Record the metadata of a vector
+     */
+    public void add(int ordinal, Map<String, String> metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            metadata.forEach((key, value) -> {
+                if (key != null && value != null) {
+                    bitmaps.computeIfAbsent(key, k -> new HashMap<>())
+                            .computeIfAbsent(value, v -> new RoaringBitmap())
+                            .add(ordinal);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ordinals whose metadata has, for every filtered key, one of its values
+     * As in the Mongo filter, a key without values matches nothing.
+     * @param filters Accepted values per metadata key
+     * @return A new bitmap owned by the caller
+     */
+    public RoaringBitmap match(Map<String, List<String>> filters) {
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> unions = new ArrayList<>(filters.size());
+            for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+                Map<String, RoaringBitmap> values = bitmaps.get(filter.getKey());
+                RoaringBitmap union = new RoaringBitmap();
+                if (values != null && filter.getValue() != null) {
+                    for (String value : filter.getValue()) {
+                        RoaringBitmap ordinals = values.get(value);
+                        if (ordinals != null) {
+                            union.or(ordinals);
+                        }
+                    }
+                }
+                if (union.isEmpty()) {
+                    return union;
+                }
+                unions.add(union);
+            }
+            if (unions.isEmpty()) {
+                return new RoaringBitmap();
+            }
+            // Smallest first, so every intersection is at most its size
+            unions.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+            RoaringBitmap result = unions.get(0);
+            for (int i = 1; i < unions.size() && !result.isEmpty(); i++) {
+                result.and(unions.get(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compress runs of consecutive ordinals, e.g. after a bulk build
+     */
+    public void optimize() {
+        lock.writeLock().lock();
+        try {
+            bitmaps.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the bitmaps with every ordinal mapped to its new number, e.g. after a compaction
+     * @param renumbered New ordinal per old ordinal, or -1 to drop it
+     */
+    public MetadataBitmaps renumber(int[] renumbered) {
+        MetadataBitmaps copy = new MetadataBitmaps();
+        lock.readLock().lock();
+        try {
+            bitmaps.forEach((key, values) -> values.forEach((value, ordinals) -> {
+                RoaringBitmap mapped = new RoaringBitmap();
+                ordinals.forEach((int ordinal) -> {
+                    if (ordinal < renumbered.length && renumbered[ordinal] >= 0) {
+                        mapped.add(renumbered[ordinal]);
+                    }
+                });
+                if (!mapped.isEmpty()) {
+                    mapped.runOptimize();
+                    copy.bitmaps.computeIfAbsent(key, k -> new HashMap<>()).put(value, mapped);
+                }
+            }));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return copy;
+    }
+
+    /**
+     * Write the bitmaps in the portable roaring format
+     */
+    public void write(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(bitmaps.size());
+            for (Map.Entry<String, Map<String, RoaringBitmap>> key : bitmaps.entrySet()) {
+                out.writeUTF(key.getKey());
+                out.writeInt(key.getValue().size());
+                for (Map.Entry<String, RoaringBitmap> value : key.getValue().entrySet()) {
+                    out.writeUTF(value.getKey());
+                    value.getValue().serialize(out);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read bitmaps written by {@link #write(DataOutputStream)}
+     */
+    public static MetadataBitmaps read(DataInputStream in) throws IOException {
+        MetadataBitmaps read = new MetadataBitmaps();
+        int keys = in.readInt();
+        for (int k = 0; k < keys; k++) {
+            Map<String, RoaringBitmap> values = read.bitmaps.computeIfAbsent(in.readUTF(), key -> new HashMap<>());
+            int valueCount = in.readInt();
+            for (int v = 0; v < valueCount; v++) {
+                String value = in.readUTF();
+                RoaringBitmap ordinals = new RoaringBitmap();
+                ordinals.deserialize(in);
+                values.put(value, ordinals);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Number of distinct metadata key and value pairs
+     */
+    public int valueCount() {
+        lock.readLock().lock();
+        try {
+            return bitmaps.values().stream().mapToInt(Map::size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return bitmaps.values().stream()
+                    .flatMap(values -> values.values().stream())
+                    .mapToLong(RoaringBitmap::getLongSizeInBytes)
+                    .sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
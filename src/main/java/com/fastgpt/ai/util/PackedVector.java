@@ -0,0 +1,46 @@
+package com.fastgpt.ai.util;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view of a float array
+ * Decoded vectors keep their primitive array, so {@link VectorMath#toArray(java.util.List)} can
+ * copy it directly instead of unboxing element by element. Elements are boxed only when read
+ * through the list interface.
+ */
+public final class PackedVector extends AbstractList<Float> implements RandomAccess {
+
+    private final float[] values;
+
+    /**
+     * @param values Taken over without copying; must not be changed afterwards
+     */
+    public PackedVector(float[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public Float get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * The backing array, for kernels in this package that only read it
+     */
+    float[] values() {
+        return values;
+    }
+
+    /**
+     * Copy the values into a new array
+     */
+    public float[] toFloatArray() {
+        return values.clone();
+    }
+}
@@ -0,0 +1,197 @@
+package com.fastgpt.ai.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization: vectors are split into subspaces and each sub-vector is replaced by
+ * the index of its nearest of 256 centroids learned with k-means, one byte per subspace.
+ * With 1536 dimensions, 384 subspaces are 16x smaller than float32 and 96 subspaces 64x.
+ * A query is scored through a table of its dot products with every centroid, one lookup
+ * per subspace.
+ */
+public final class ProductQuantizer implements VectorQuantizer {
+
+    private static final int CENTROIDS = 256;
+
+    private final int dimensions;
+    // Subspace m covers dimensions [bounds[m], bounds[m + 1])
+    private final int[] bounds;
+    // Centroids of subspace m, transposed: dimension d of centroid c is at d * CENTROIDS + c
+    private final float[][] centroids;
+    // Squared lengths of the centroids, for nearest-centroid searches while encoding
+    private final float[][] norms;
+
+    private ProductQuantizer(int dimensions, int[] bounds, float[][] centroids) {
+        this.dimensions = dimensions;
+        this.bounds = bounds;
+        this.centroids = centroids;
+        this.norms = new float[centroids.length][];
+        for (int m = 0; m < centroids.length; m++) {
+            norms[m] = squaredNorms(centroids[m], bounds[m + 1] - bounds[m]);
+        }
+    }
+
+    /**
+     * Learn the centroids of each subspace from sample vectors
+     * @param subspaces Number of subspaces, at most the number of dimensions
+     * @param iterations k-means iterations per subspace
+     * @param seed Seed of the initial centroid choice
+     */
+    public static ProductQuantizer train(float[][] sample, int subspaces, int iterations, long seed) {
+        if (sample.length == 0) {
+            throw new IllegalArgumentException("Cannot train a quantizer without vectors");
+        }
+        int dimensions = sample[0].length;
+        if (subspaces < 1 || subspaces > dimensions) {
+            throw new IllegalArgumentException("Subspaces must be between 1 and " + dimensions + ", got " + subspaces);
+        }
+        // Spread the remainder over the first subspaces when the split is uneven
+        int[] bounds = new int[subspaces + 1];
+        for (int m = 0; m < subspaces; m++) {
+            bounds[m + 1] = bounds[m] + dimensions / subspaces + (m < dimensions % subspaces ? 1 : 0);
+        }
+
+        float[][] centroids = new float[subspaces][];
+        IntStream.range(0, subspaces).parallel().forEach(m ->
+                centroids[m] = kMeans(sample, bounds[m], bounds[m + 1] - bounds[m], iterations, new Random(seed + m)));
+        return new ProductQuantizer(dimensions, bounds, centroids);
+    }
+
+    /**
+     * Lloyd's k-means over one subspace, from randomly chosen sample points
+     * Unused centroids of a small sample stay at the first point and are never nearest.
+     */
+    private static float[] kMeans(float[][] sample, int from, int length, int iterations, Random random) {
+        int k = Math.min(CENTROIDS, sample.length);
+        float[] centers = new float[length * CENTROIDS];
+        int[] order = IntStream.range(0, sample.length).toArray();
+        for (int c = 0; c < CENTROIDS; c++) {
+            int chosen = 0;
+            if (c < k) {
+                int j = c + random.nextInt(sample.length - c);
+                int swap = order[c];
+                order[c] = order[j];
+                order[j] = swap;
+                chosen = order[c];
+            }
+            setCenter(centers, length, c, sample[chosen], from);
+        }
+
+        int[] assignment = new int[sample.length];
+        float[] products = new float[CENTROIDS];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float[] norms = squaredNorms(centers, length);
+            for (int i = 0; i < sample.length; i++) {
+                assignment[i] = nearest(sample[i], from, centers, length, norms, k, products);
+            }
+
+            float[] sums = new float[length * CENTROIDS];
+            int[] counts = new int[CENTROIDS];
+            for (int i = 0; i < sample.length; i++) {
+                int c = assignment[i];
+                for (int d = 0; d < length; d++) {
+                    sums[d * CENTROIDS + c] += sample[i][from + d];
+                }
+                counts[c]++;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // Reseed an empty cluster with a random point
+                    setCenter(centers, length, c, sample[random.nextInt(sample.length)], from);
+                    continue;
+                }
+                for (int d = 0; d < length; d++) {
+                    centers[d * CENTROIDS + c] = sums[d * CENTROIDS + c] / counts[c];
+                }
+            }
+        }
+        return centers;
+    }
+
+    private static void setCenter(float[] centers, int length, int c, float[] vector, int from) {
+        for (int d = 0; d < length; d++) {
+            centers[d * CENTROIDS + c] = vector[from + d];
+        }
+    }
+
+    private static float[] squaredNorms(float[] centers, int length) {
+        float[] norms = new float[CENTROIDS];
+        for (int d = 0; d < length; d++) {
+            for (int c = 0; c < CENTROIDS; c++) {
+                float value = centers[d * CENTROIDS + c];
+                norms[c] += value * value;
+            }
+        }
+        return norms;
+    }
+
+    /**
+     * Dot products of a sub-vector with every centroid
+     * The inner loop runs over the transposed centroids, which the JIT vectorizes.
+     */
+    private static void products(float[] vector, int from, float[] centers, int length, float[] products) {
+        Arrays.fill(products, 0f);
+        for (int d = 0; d < length; d++) {
+            float value = vector[from + d];
+            int row = d * CENTROIDS;
+            for (int c = 0; c < CENTROIDS; c++) {
+                products[c] += value * centers[row + c];
+            }
+        }
+    }
+
+    // The nearest center by Euclidean distance minimizes |c|^2 - 2 x.c
+    private static int nearest(float[] vector, int from, float[] centers, int length, float[] norms, int k,
+                               float[] products) {
+        products(vector, from, centers, length, products);
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = norms[c] - 2f * products[c];
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int codeSize() {
+        return centroids.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        float[] products = new float[CENTROIDS];
+        for (int m = 0; m < centroids.length; m++) {
+            codes[offset + m] = (byte) nearest(vector, bounds[m], centroids[m], bounds[m + 1] - bounds[m], norms[m],
+                    CENTROIDS, products);
+        }
+    }
+
+    @Override
+    public CodeScorer scorer(float[] query) {
+        int subspaces = centroids.length;
+        float[] table = new float[subspaces * CENTROIDS];
+        float[] products = new float[CENTROIDS];
+        for (int m = 0; m < subspaces; m++) {
+            products(query, bounds[m], centroids[m], bounds[m + 1] - bounds[m], products);
+            System.arraycopy(products, 0, table, m * CENTROIDS, CENTROIDS);
+        }
+        return (codes, offset) -> {
+            float score = 0f;
+            for (int m = 0, row = 0; m < subspaces; m++, row += CENTROIDS) {
+                score += table[row + (codes[offset + m] & 0xFF)];
+            }
+            return score;
+        };
+    }
+}
@@ -0,0 +1,219 @@
+package com.fastgpt.ai.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed codes of the vectors of a {@link MappedVectorStore}, addressed by the same ordinals.
+ * Codes live on the heap in one contiguous array; the full-precision vectors stay in the
+ * mapped segments and are only read to re-rank the candidates found on the codes.
+ * Searches share a read lock; updates take the write lock. A scan splits the ordinals into
+ * partitions scored in parallel, and a graph search scores codes through a {@link Reader},
+ * which holds the read lock for the whole search rather than per code.
+ */
+public final class QuantizedVectors {
+
+    private final VectorQuantizer quantizer;
+    private final int codeSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private byte[] codes = new byte[0];
+    private final BitSet encoded = new BitSet();
+    private int limit;
+
+    public QuantizedVectors(VectorQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.codeSize = quantizer.codeSize();
+    }
+
+    /**
+     * Read up to maxVectors live vectors, evenly spaced over the store, for training a quantizer
+     */
+    public static float[][] sample(MappedVectorStore store, int maxVectors) {
+        int ordinals = store.ordinalLimit();
+        int stride = Math.max(1, ordinals / Math.max(1, maxVectors));
+        float[][] sample = new float[Math.min(maxVectors, store.size())][];
+        int count = 0;
+        for (int ordinal = 0; ordinal < ordinals && count < sample.length; ordinal += stride) {
+            if (!store.isDeleted(ordinal)) {
+                sample[count] = new float[store.getDimensions()];
+                store.read(ordinal, sample[count++]);
+            }
+        }
+        return Arrays.copyOf(sample, count);
+    }
+
+    /**
+     * Encode every live vector of a store
+     */
+    public static QuantizedVectors encode(MappedVectorStore store, VectorQuantizer quantizer) {
+        QuantizedVectors quantized = new QuantizedVectors(quantizer);
+        float[] vector = new float[store.getDimensions()];
+        int ordinals = store.ordinalLimit();
+        for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+            if (!store.isDeleted(ordinal)) {
+                store.read(ordinal, vector);
+                quantized.set(ordinal, vector);
+            }
+        }
+        return quantized;
+    }
+
+    public VectorQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Encode the vector of an ordinal
+     */
+    public void set(int ordinal, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            if ((long) (ordinal + 1) * codeSize > codes.length) {
+                long grown = Math.max((long) (ordinal + 1) * codeSize, (long) codes.length * 3 / 2 + codeSize);
+                codes = Arrays.copyOf(codes, (int) Math.min(grown, Integer.MAX_VALUE - 8));
+            }
+            quantizer.encode(vector, codes, ordinal * codeSize);
+            encoded.set(ordinal);
+            limit = Math.max(limit, ordinal + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop returning an ordinal, e.g. after its vector is tombstoned
+     */
+    public void remove(int ordinal) {
+        lock.writeLock().lock();
+        try {
+            encoded.clear(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of encoded vectors
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return encoded.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Heap bytes taken by the codes
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return codes.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ordinals with the highest approximate scores
+     * Partitions of ordinals are scored on the common fork-join pool while the caller holds the
+     * read lock, each into a bounded heap, and the heaps are merged at the end.
+     * @param normalizedQuery Unit-length query
+     * @param n Number of candidates
+     * @param accept Ordinals that may be returned, or null for all; called from the fork-join
+     *               pool, so it must be thread-safe
+     * @param partitionSize Ordinals per task; codes no more than this are scanned on the calling thread
+     * @return Up to n ordinals, best first
+     */
+    public int[] candidates(float[] normalizedQuery, int n, IntPredicate accept, int partitionSize) {
+        if (n <= 0) {
+            return new int[0];
+        }
+        VectorQuantizer.CodeScorer scorer = quantizer.scorer(normalizedQuery);
+        TopScores top;
+        lock.readLock().lock();
+        try {
+            int chunk = Math.max(1, partitionSize);
+            int partitions = (limit + chunk - 1) / chunk;
+            if (partitions <= 1) {
+                top = topOf(scorer, 0, limit, n, accept);
+            } else {
+                int end = limit;
+                top = IntStream.range(0, partitions).parallel()
+                        .mapToObj(p -> topOf(scorer, p * chunk, Math.min(end, (p + 1) * chunk), n, accept))
+                        .reduce(TopScores::merge)
+                        .orElseGet(() -> new TopScores(0));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        top.sort();
+        int[] result = new int[top.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = top.id(i);
+        }
+        return result;
+    }
+
+    // Score the encoded ordinals in [from, to)
+    private TopScores topOf(VectorQuantizer.CodeScorer scorer, int from, int to, int n, IntPredicate accept) {
+        TopScores top = new TopScores(n);
+        for (int ordinal = encoded.nextSetBit(from); ordinal >= 0 && ordinal < to;
+             ordinal = encoded.nextSetBit(ordinal + 1)) {
+            float score = scorer.score(codes, ordinal * codeSize);
+            if (score > top.threshold() && (accept == null || accept.test(ordinal))) {
+                top.offer(ordinal, score);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Open a reader scoring codes against a query, holding the read lock until it is closed
+     * Updates wait while it is open, so it is meant for one search.
+     */
+    public Reader reader(float[] normalizedQuery) {
+        VectorQuantizer.CodeScorer scorer = quantizer.scorer(normalizedQuery);
+        lock.readLock().lock();
+        return new Reader(scorer);
+    }
+
+    /**
+     * Scores codes of single ordinals for one query without further locking
+     */
+    public final class Reader implements AutoCloseable {
+
+        private final VectorQuantizer.CodeScorer scorer;
+
+        private Reader(VectorQuantizer.CodeScorer scorer) {
+            this.scorer = scorer;
+        }
+
+        /**
+         * Whether an ordinal has a code that was not removed
+         */
+        public boolean contains(int ordinal) {
+            return ordinal < limit && encoded.get(ordinal);
+        }
+
+        /**
+         * Approximate score of an ordinal; removed codes are still scored, so they can route a
+         * graph search, while ordinals never encoded score negative infinity
+         */
+        public float score(int ordinal) {
+            return (long) (ordinal + 1) * codeSize <= codes.length && ordinal < limit
+                    ? scorer.score(codes, ordinal * codeSize) : Float.NEGATIVE_INFINITY;
+        }
+
+        @Override
+        public void close() {
+            lock.readLock().unlock();
+        }
+    }
+}
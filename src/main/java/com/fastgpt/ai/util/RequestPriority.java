@@ -0,0 +1,56 @@
+package com.fastgpt.ai.util;
+
+/**
+ * Priority of provider calls made on the current thread.
+ * Interactive chat is served ahead of batch workflow work when provider capacity is short.
+ * Offline work may wait hours and goes through the provider batch API when it is enabled.
+ * Unbound threads count as interactive.
+ */
+public enum RequestPriority {
+
+    INTERACTIVE,
+    BATCH,
+    OFFLINE;
+
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Get the priority bound to the current thread
+     * @return The bound priority, or INTERACTIVE
+     */
+    public static RequestPriority current() {
+        RequestPriority priority = CURRENT.get();
+        return priority != null ? priority : INTERACTIVE;
+    }
+
+    /**
+     * Bind this priority to the current thread until the returned scope is closed
+     */
+    public Scope bind() {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Bind this priority unless the caller has already chosen one
+     */
+    public Scope bindIfAbsent() {
+        return CURRENT.get() == null ? bind() : () -> { };
+    }
+
+    /**
+     * Scope of a priority bound to a thread
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.fastgpt.ai.util;
+
+import java.util.Arrays;
+
+/**
+ * Int8 scalar quantization: each dimension is mapped linearly from its trained range onto
+ * 256 levels, so a vector takes one byte per dimension, a quarter of float32.
+ * A query is pre-scaled per dimension, which turns scoring into an integer dot product of the
+ * scaled query with the raw codes plus a constant.
+ */
+public final class ScalarQuantizer implements VectorQuantizer {
+
+    private static final int LEVELS = 255;
+    // Largest query weight; fewer for high dimensions, so that sums of weights times codes fit in an int
+    private static final int QUERY_LEVELS = 4096;
+
+    private final float[] min;
+    private final float[] step;
+
+    private ScalarQuantizer(float[] min, float[] step) {
+        this.min = min;
+        this.step = step;
+    }
+
+    /**
+     * Learn the range of each dimension from sample vectors
+     */
+    public static ScalarQuantizer train(float[][] sample) {
+        if (sample.length == 0) {
+            throw new IllegalArgumentException("Cannot train a quantizer without vectors");
+        }
+        int dimensions = sample[0].length;
+        float[] min = new float[dimensions];
+        float[] max = new float[dimensions];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (float[] vector : sample) {
+            for (int i = 0; i < dimensions; i++) {
+                min[i] = Math.min(min[i], vector[i]);
+                max[i] = Math.max(max[i], vector[i]);
+            }
+        }
+        float[] step = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            // A constant dimension still needs a non-zero step to encode
+            step[i] = max[i] > min[i] ? (max[i] - min[i]) / LEVELS : 1f;
+        }
+        return new ScalarQuantizer(min, step);
+    }
+
+    @Override
+    public int getDimensions() {
+        return min.length;
+    }
+
+    @Override
+    public int codeSize() {
+        return min.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int i = 0; i < min.length; i++) {
+            // Values outside the trained range are clamped
+            int level = Math.round((vector[i] - min[i]) / step[i]);
+            codes[offset + i] = (byte) Math.max(0, Math.min(LEVELS, level));
+        }
+    }
+
+    @Override
+    public CodeScorer scorer(float[] query) {
+        int dimensions = min.length;
+        float[] scaled = new float[dimensions];
+        float base = 0f;
+        float largest = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            scaled[i] = query[i] * step[i];
+            base += query[i] * min[i];
+            largest = Math.max(largest, Math.abs(scaled[i]));
+        }
+        // Integer sums vectorize where float sums cannot
+        int levels = (int) Math.min(QUERY_LEVELS, Integer.MAX_VALUE / ((long) LEVELS * Math.max(1, dimensions)));
+        float factor = largest > 0 ? levels / largest : 1f;
+        int[] weights = new int[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            weights[i] = Math.round(scaled[i] * factor);
+        }
+        float constant = base;
+        float unit = 1f / factor;
+        return (codes, offset) -> {
+            int sum = 0;
+            for (int i = 0; i < dimensions; i++) {
+                sum += weights[i] * (codes[offset + i] & 0xFF);
+            }
+            return constant + sum * unit;
+        };
+    }
+}
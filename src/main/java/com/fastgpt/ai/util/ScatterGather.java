@@ -0,0 +1,141 @@
+package com.fastgpt.ai.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Concurrent fan-out of ranked searches under one deadline, merged into a global top
+ * Tasks act for the caller: they run with its priority and a child token that is cancelled with
+ * the caller's token, when the deadline passes and when the scatter-gather is closed, so work
+ * that is no longer awaited aborts instead of running on unobserved. Tasks that fail or miss the
+ * deadline are reported and left out of the merge.
+ */
+public final class ScatterGather implements AutoCloseable {
+
+    private final String name;
+    private final long timeoutMs;
+    private final long deadline;
+    private final CancellationToken token;
+    private final RequestPriority priority;
+    private final Runnable unregister;
+
+    private ScatterGather(String name, long timeoutMs) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.priority = RequestPriority.current();
+        this.token = CancellationToken.create();
+        CancellationToken caller = CancellationToken.current();
+        this.unregister = caller.onCancel(() -> token.cancel(caller.getReason()));
+    }
+
+    /**
+     * Start a scatter-gather for the current caller
+     * @param name What is searched, for cancellation reasons
+     * @param timeoutMs Time allowed from now until the results are merged
+     */
+    public static ScatterGather start(String name, long timeoutMs) {
+        return new ScatterGather(name, timeoutMs);
+    }
+
+    /**
+     * Deadline as a {@link System#nanoTime()} value, for tasks that bound their own waits by it
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Run a task on an executor in the caller's scope
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> inScope(work), executor);
+    }
+
+    /**
+     * Run a task on an executor in the caller's scope once its input is available
+     */
+    public <A, T> CompletableFuture<T> then(CompletableFuture<A> input, Function<A, T> work, Executor executor) {
+        return input.thenApplyAsync(value -> inScope(() -> work.apply(value)), executor);
+    }
+
+    /**
+     * Wait for the tasks until the deadline and keep the best items of their results
+     * @param tasks Ranked results per key
+     * @param limit Number of items to keep
+     * @param score Score of an item; higher is better
+     * @param onMissing Called with the key of each task that failed, with its error, or missed the deadline, with null
+     * @return The best items, ordered by descending score
+     */
+    public <K, T> List<T> gather(Map<K, CompletableFuture<List<T>>> tasks, int limit, ToDoubleFunction<T> score,
+                                 BiConsumer<K, Throwable> onMissing) {
+        try {
+            CompletableFuture.allOf(tasks.values().toArray(CompletableFuture[]::new))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            token.cancel(name + " exceeded " + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.cancel(name + " interrupted");
+        } catch (ExecutionException e) {
+            // Failed tasks are reported one by one below
+        }
+
+        // Each task returns its own top items, so the best of their union is the global top
+        List<T> candidates = new ArrayList<>();
+        TopScores top = new TopScores(limit);
+        tasks.forEach((key, task) -> {
+            if (!task.isDone()) {
+                task.cancel(false);
+                onMissing.accept(key, null);
+                return;
+            }
+            try {
+                for (T item : task.join()) {
+                    candidates.add(item);
+                    top.offer(candidates.size() - 1, (float) score.applyAsDouble(item));
+                }
+            } catch (CompletionException | CancellationException e) {
+                onMissing.accept(key, e.getCause() != null ? e.getCause() : e);
+            }
+        });
+
+        top.sort();
+        List<T> results = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            results.add(candidates.get(top.id(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Abort the tasks still running and detach from the caller's token
+     */
+    @Override
+    public void close() {
+        unregister.run();
+        token.cancel(name + " finished");
+    }
+
+    // Runs work with the child token and the caller's priority bound to the worker thread
+    private <T> T inScope(Supplier<T> work) {
+        CancellationToken.Scope tokenScope = token.bind();
+        RequestPriority.Scope priorityScope = priority.bind();
+        try (tokenScope; priorityScope) {
+            token.throwIfCancelled();
+            return work.get();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.fastgpt.ai.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Vector API kernels behind {@link VectorMath}
+ * Only compiled in the vector-api build profile, and only loaded when the jdk.incubator.vector
+ * module is present.
+ */
+final class SimdVectorMath implements VectorMath.Kernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            sum = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public float dot(float[] a, ByteBuffer b, int byteOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            FloatVector stored = FloatVector.fromByteBuffer(SPECIES, b, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            sum = FloatVector.fromArray(SPECIES, a, i).fma(stored, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return result;
+    }
+}
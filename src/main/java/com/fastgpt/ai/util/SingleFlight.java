@@ -0,0 +1,105 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key into one in-flight call.
+ * The first caller runs the call on its own thread; callers arriving while it runs
+ * wait for and share its result or exception. Results are shared, so they must not be mutated.
+ * A call that fails after the first caller's own token was cancelled is shared as an
+ * {@link ExecutionCancelledException}, and waiting callers that are still live run it again.
+ *
+ * @param <K> Canonical request key
+ * @param <V> Result type
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Run the call, or join the identical call already in flight
+     * @param key Canonical request key
+     * @param call The upstream call
+     * @return The result of the shared call
+     */
+    public V execute(K key, Supplier<V> call) {
+        while (true) {
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+            if (existing == null) {
+                try {
+                    V result = call.get();
+                    future.complete(result);
+                    return result;
+                } catch (RuntimeException e) {
+                    RuntimeException failure = classify(e);
+                    future.completeExceptionally(failure);
+                    throw failure;
+                } catch (Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            }
+
+            try {
+                return await(existing);
+            } catch (ExecutionCancelledException e) {
+                // The leader was cancelled by its own caller; run the call again unless this caller is cancelled too
+                CancellationToken.current().throwIfCancelled();
+            }
+        }
+    }
+
+    /**
+     * Get the number of distinct calls in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * A call aborted through the leader's token (e.g. its connection was closed) is a cancellation,
+     * not an upstream failure the followers should share
+     */
+    private static RuntimeException classify(RuntimeException e) {
+        CancellationToken token = CancellationToken.current();
+        if (token.isCancelled() && !(e instanceof ExecutionCancelledException)) {
+            return new ExecutionCancelledException(token.getReason(), e);
+        }
+        return e;
+    }
+
+    /**
+     * Wait for the leader, giving up when this caller's own token is cancelled
+     */
+    private V await(CompletableFuture<V> leader) {
+        CancellationToken token = CancellationToken.current();
+        CompletableFuture<V> waiter = leader.thenApply(result -> result);
+        Runnable unregister = token.onCancel(() -> waiter.cancel(false));
+
+        try {
+            return waiter.join();
+        } catch (CancellationException e) {
+            throw new ExecutionCancelledException(token.getReason(), e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        } finally {
+            unregister.run();
+        }
+    }
+}
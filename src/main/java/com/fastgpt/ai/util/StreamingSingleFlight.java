@@ -0,0 +1,197 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent streaming calls with the same key into one upstream stream.
+ * The upstream call runs on the given executor and its chunks are fanned out to every
+ * caller; callers that join late first receive the chunks emitted so far. If the executor
+ * rejects the call, its callers fail with the {@link RejectedExecutionException}.
+ * Each caller consumes on its own thread, so a slow or disconnected client never stalls
+ * the others, and the upstream call is cancelled once the last caller has left.
+ *
+ * @param <K> Canonical request key
+ * @param <R> Result type returned when the stream ends
+ */
+@Slf4j
+public final class StreamingSingleFlight<K, R> {
+
+    private final ConcurrentHashMap<K, SharedStream> inFlight = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    public StreamingSingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the streaming call, or join the identical call already in flight
+     * @param key Canonical request key
+     * @param call The upstream call; receives the chunk sink and returns the final result
+     * @param chunkConsumer Receives the chunks on the calling thread
+     * @return The result of the shared call
+     */
+    public R execute(K key, Function<Consumer<String>, R> call, Consumer<String> chunkConsumer) {
+        Subscriber subscriber = new Subscriber();
+
+        SharedStream stream;
+        while (true) {
+            SharedStream created = new SharedStream(key);
+            stream = inFlight.computeIfAbsent(key, k -> created);
+            if (stream.join(subscriber)) {
+                if (stream == created) {
+                    start(created, call);
+                }
+                break;
+            }
+            // The stream finished between lookup and join; start over
+            inFlight.remove(key, stream);
+        }
+
+        return consume(stream, subscriber, chunkConsumer);
+    }
+
+    /**
+     * Get the number of distinct streams in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private void start(SharedStream stream, Function<Consumer<String>, R> call) {
+        try {
+            executor.execute(() -> {
+                CancellationToken.Scope scope = stream.token.bind();
+                try (scope) {
+                    stream.finish(call.apply(stream::publish), null);
+                } catch (RuntimeException | Error e) {
+                    stream.finish(null, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stream.finish(null, e);
+        }
+    }
+
+    /**
+     * Deliver the chunks of the shared stream to one caller until it ends
+     */
+    private R consume(SharedStream stream, Subscriber subscriber, Consumer<String> chunkConsumer) {
+        CancellationToken token = CancellationToken.current();
+        Runnable unregister = token.onCancel(() -> subscriber.queue.offer(Signal.CANCELLED));
+
+        try {
+            while (true) {
+                Object item = subscriber.queue.take();
+                if (item == Signal.CANCELLED) {
+                    throw new ExecutionCancelledException(token.getReason());
+                }
+                if (item == Signal.END) {
+                    if (stream.error instanceof RuntimeException e) {
+                        throw e;
+                    }
+                    if (stream.error instanceof Error e) {
+                        throw e;
+                    }
+                    return stream.result;
+                }
+                chunkConsumer.accept((String) item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionCancelledException("Interrupted while waiting for stream", e);
+        } finally {
+            unregister.run();
+            stream.leave(subscriber);
+        }
+    }
+
+    private enum Signal {
+        END,
+        CANCELLED
+    }
+
+    /**
+     * A caller attached to a shared stream
+     */
+    private static class Subscriber {
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * One upstream stream and its callers
+     */
+    private class SharedStream {
+        private final K key;
+        private final CancellationToken token = CancellationToken.create();
+        private final List<String> chunks = new ArrayList<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private boolean finished;
+        private boolean abandoned;
+        private volatile R result;
+        private volatile Throwable error;
+
+        SharedStream(K key) {
+            this.key = key;
+        }
+
+        /**
+         * Attach a caller, replaying the chunks emitted so far
+         * @return false if the stream has already finished
+         */
+        synchronized boolean join(Subscriber subscriber) {
+            if (finished || abandoned) {
+                return false;
+            }
+            subscriber.queue.addAll(chunks);
+            subscribers.add(subscriber);
+            return true;
+        }
+
+        synchronized void publish(String chunk) {
+            chunks.add(chunk);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.queue.offer(chunk);
+            }
+        }
+
+        synchronized void finish(R result, Throwable error) {
+            // Removed before the callers return, so a call made after one returns starts afresh
+            inFlight.remove(key, this);
+            this.result = result;
+            this.error = error;
+            this.finished = true;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.queue.offer(Signal.END);
+            }
+        }
+
+        /**
+         * Detach a caller; the upstream call is cancelled when nobody is left to read it
+         */
+        void leave(Subscriber subscriber) {
+            boolean cancel;
+            synchronized (this) {
+                subscribers.remove(subscriber);
+                // Closed to new callers under the lock, so nobody joins a stream about to be cancelled
+                abandoned = subscribers.isEmpty() && !finished;
+                cancel = abandoned;
+            }
+            if (cancel) {
+                inFlight.remove(key, this);
+                token.cancel("All stream subscribers left");
+                log.debug("Cancelled abandoned shared stream");
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.fastgpt.ai.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tokenizer for lexical search over mixed Chinese, Japanese, Korean and Latin text
+ * Text is NFKC-normalized and lower-cased. Runs of CJK characters become overlapping bigrams,
+ * so words match without a dictionary; other letters and digits form words. Words joined by
+ * '-', '_' or '.' also yield the joined form, so product codes and error IDs such as
+ * "err_conn_reset" or "v2.1.0" match as a whole as well as by their parts.
+ */
+public final class TextAnalyzer {
+
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private TextAnalyzer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        StringBuilder compound = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int joiners = 0;
+
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                joiners = flushWords(tokens, word, compound, joiners);
+                cjk.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(tokens, cjk);
+                word.appendCodePoint(codePoint);
+                compound.appendCodePoint(codePoint);
+            } else if (isJoiner(codePoint) && word.length() > 0 && next < normalized.length()
+                    && Character.isLetterOrDigit(normalized.codePointAt(next)) && !isCjk(normalized.codePointAt(next))) {
+                emit(tokens, word);
+                compound.appendCodePoint(codePoint);
+                joiners++;
+            } else {
+                joiners = flushWords(tokens, word, compound, joiners);
+                flushCjk(tokens, cjk);
+            }
+            i = next;
+        }
+        flushWords(tokens, word, compound, joiners);
+        flushCjk(tokens, cjk);
+        return tokens;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        // The katakana prolonged sound mark is shared by both kana scripts
+        if (codePoint == 0x30FC) {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static boolean isJoiner(int codePoint) {
+        return codePoint == '-' || codePoint == '_' || codePoint == '.';
+    }
+
+    // Emit the last word, and the compound when words were joined
+    private static int flushWords(List<String> tokens, StringBuilder word, StringBuilder compound, int joiners) {
+        emit(tokens, word);
+        if (joiners > 0) {
+            emit(tokens, compound);
+        }
+        compound.setLength(0);
+        return 0;
+    }
+
+    // Bigrams of a CJK run; a single character stands alone
+    private static void flushCjk(List<String> tokens, StringBuilder cjk) {
+        int[] codePoints = cjk.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(new String(codePoints, 0, 1));
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+        cjk.setLength(0);
+    }
+
+    private static void emit(List<String> tokens, StringBuilder builder) {
+        if (builder.length() > 0 && builder.length() <= MAX_TOKEN_LENGTH) {
+            tokens.add(builder.toString());
+        }
+        builder.setLength(0);
+    }
+}
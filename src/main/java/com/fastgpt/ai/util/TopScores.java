@@ -0,0 +1,123 @@
+package com.fastgpt.ai.util;
+
+/**
+ * Bounded selection of the highest-scoring items, kept as a min-heap over parallel primitive
+ * arrays so that offering a candidate allocates nothing.
+ * Items are identified by an int, e.g. a vector ordinal or a list index. Not thread-safe;
+ * parallel scans fill one instance per partition and merge them.
+ */
+public final class TopScores {
+
+    private final int capacity;
+    private final float[] scores;
+    private final int[] ids;
+    private int size;
+
+    public TopScores(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.scores = new float[this.capacity];
+        this.ids = new int[this.capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The score a candidate must beat to be kept
+     */
+    public float threshold() {
+        if (capacity == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return size < capacity ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Keep an item if it is among the best so far
+     * @return true if it was kept
+     */
+    public boolean offer(int id, float score) {
+        if (size < capacity) {
+            siftUp(size++, score, id);
+            return true;
+        }
+        if (capacity == 0 || score <= scores[0]) {
+            return false;
+        }
+        siftDown(size, score, id);
+        return true;
+    }
+
+    /**
+     * Offer every item of another selection
+     */
+    public TopScores merge(TopScores other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Order the items best first, in place
+     * Afterwards items are read with {@link #id(int)} and {@link #score(int)}; no more may be offered.
+     */
+    public TopScores sort() {
+        // Heap sort: moving the root, the worst item, behind the shrinking heap leaves them descending
+        for (int last = size - 1; last > 0; last--) {
+            float score = scores[last];
+            int id = ids[last];
+            scores[last] = scores[0];
+            ids[last] = ids[0];
+            siftDown(last, score, id);
+        }
+        return this;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public float score(int index) {
+        return scores[index];
+    }
+
+    private void siftUp(int index, float score, int id) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            scores[index] = scores[parent];
+            ids[index] = ids[parent];
+            index = parent;
+        }
+        scores[index] = score;
+        ids[index] = id;
+    }
+
+    // Replace the root of the first heapSize items and restore the heap order
+    private void siftDown(int heapSize, float score, int id) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            scores[index] = scores[child];
+            ids[index] = ids[child];
+            index = child;
+        }
+        if (heapSize > 0) {
+            scores[index] = score;
+            ids[index] = id;
+        }
+    }
+}
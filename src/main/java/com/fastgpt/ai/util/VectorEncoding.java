@@ -0,0 +1,65 @@
+package com.fastgpt.ai.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Packed binary form of embedding vectors
+ * A one-byte format tag is followed by the components as little-endian float32 or float16,
+ * so readers decode either precision regardless of the writer's setting.
+ */
+public final class VectorEncoding {
+
+    public static final byte FORMAT_FLOAT32 = 1;
+    public static final byte FORMAT_FLOAT16 = 2;
+
+    private VectorEncoding() {
+    }
+
+    /**
+     * Encode a vector
+     * @param half Whether to store float16 instead of float32
+     */
+    public static byte[] encode(List<Float> vector, boolean half) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(vector.size(), half)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(half ? FORMAT_FLOAT16 : FORMAT_FLOAT32);
+        for (Float value : vector) {
+            if (half) {
+                buffer.putShort(Float16.fromFloat(value));
+            } else {
+                buffer.putFloat(value);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode a vector written by {@link #encode}
+     * @throws IllegalArgumentException If the format tag is unknown
+     */
+    public static PackedVector decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        byte format = buffer.get();
+        float[] values;
+        if (format == FORMAT_FLOAT16) {
+            values = new float[buffer.remaining() / Short.BYTES];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Float16.toFloat(buffer.getShort());
+            }
+        } else if (format == FORMAT_FLOAT32) {
+            values = new float[buffer.remaining() / Float.BYTES];
+            buffer.asFloatBuffer().get(values);
+        } else {
+            throw new IllegalArgumentException("Unknown vector format " + format);
+        }
+        return new PackedVector(values);
+    }
+
+    /**
+     * Bytes taken by an encoded vector, including the format tag
+     */
+    public static int encodedSize(int dimensions, boolean half) {
+        return 1 + dimensions * (half ? Short.BYTES : Float.BYTES);
+    }
+}
@@ -0,0 +1,23 @@
+package com.fastgpt.ai.util;
+
+/**
+ * A vector search result: the data ID and its cosine similarity to the query
+ */
+public final class VectorMatch {
+
+    private final String id;
+    private final double score;
+
+    public VectorMatch(String id, double score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,206 @@
+package com.fastgpt.ai.util;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Dot products and normalization for embedding vectors.
+ * Vectors stored L2-normalized make cosine similarity a single dot product. The kernels run
+ * on an unrolled scalar loop by default. When the Vector API kernel was built (mvn -Pvector-api)
+ * and the JVM is started with --add-modules jdk.incubator.vector, they run on the JDK Vector API
+ * instead; -Dvector.math.scalar=true forces the scalar path.
+ * Off-heap vectors are read as little-endian float32.
+ */
+public final class VectorMath {
+
+    // Null when the scalar loops are used
+    private static final Kernel SIMD = loadSimdKernel();
+
+    private VectorMath() {
+    }
+
+    /**
+     * Whether the Vector API kernels are in use
+     */
+    public static boolean isSimd() {
+        return SIMD != null;
+    }
+
+    /**
+     * Dot product of two vectors of equal length
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+        return SIMD != null ? SIMD.dot(a, b, a.length) : scalarDot(a, b, a.length);
+    }
+
+    /**
+     * Dot product of a vector and a float32 vector stored in a little-endian buffer
+     * @param byteOffset Offset of the stored vector in the buffer
+     */
+    public static float dot(float[] a, ByteBuffer b, int byteOffset) {
+        return SIMD != null ? SIMD.dot(a, b, byteOffset, a.length) : scalarDot(a, b, byteOffset, a.length);
+    }
+
+    /**
+     * Score one query against consecutive stored vectors
+     * @param byteOffset Offset of the first stored vector
+     * @param count Number of vectors
+     * @param scores Receives the dot products, from index 0
+     */
+    public static void dotAll(float[] query, ByteBuffer vectors, int byteOffset, int count, float[] scores) {
+        int stride = query.length * Float.BYTES;
+        for (int i = 0; i < count; i++) {
+            scores[i] = dot(query, vectors, byteOffset + i * stride);
+        }
+    }
+
+    /**
+     * Score one query against many vectors
+     * @param scores Receives the dot products, from index 0
+     */
+    public static void dotAll(float[] query, float[][] vectors, float[] scores) {
+        for (int i = 0; i < vectors.length; i++) {
+            scores[i] = dot(query, vectors[i]);
+        }
+    }
+
+    /**
+     * Cosine similarity of vectors that may not be normalized
+     * @return The similarity, or 0 if either vector is zero
+     */
+    public static float cosine(float[] a, float[] b) {
+        float norms = dot(a, a) * dot(b, b);
+        return norms > 0 ? (float) (dot(a, b) / Math.sqrt(norms)) : 0f;
+    }
+
+    /**
+     * Cosine similarity of a unit-length query with a boxed vector, without copying it
+     * @return The similarity, or 0 if the vector is zero or of another length
+     */
+    public static float cosine(float[] normalizedQuery, List<Float> vector) {
+        if (vector == null || vector.size() != normalizedQuery.length) {
+            return 0f;
+        }
+        if (vector instanceof PackedVector packed) {
+            float[] values = packed.values();
+            float norm = dot(values, values);
+            return norm > 0 ? (float) (dot(normalizedQuery, values) / Math.sqrt(norm)) : 0f;
+        }
+        float dot = 0f;
+        float norm = 0f;
+        for (int i = 0; i < normalizedQuery.length; i++) {
+            float value = vector.get(i);
+            dot += normalizedQuery[i] * value;
+            norm += value * value;
+        }
+        return norm > 0 ? (float) (dot / Math.sqrt(norm)) : 0f;
+    }
+
+    /**
+     * Scale a vector to unit length in place; zero vectors are left as they are
+     * @return The original length
+     */
+    public static float normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        if (norm > 0) {
+            float scale = 1f / norm;
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return norm;
+    }
+
+    /**
+     * Copy a vector into a new unit-length array
+     */
+    public static float[] normalized(float[] vector) {
+        float[] copy = vector.clone();
+        normalize(copy);
+        return copy;
+    }
+
+    /**
+     * Unbox a vector into a new array
+     * Decoded vectors are copied without unboxing.
+     */
+    public static float[] toArray(List<Float> vector) {
+        if (vector instanceof PackedVector packed) {
+            return packed.toFloatArray();
+        }
+        float[] array = new float[vector.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = vector.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Load the Vector API kernel, which is only compiled in the vector-api build profile and
+     * only links when the incubator module is present
+     */
+    private static Kernel loadSimdKernel() {
+        if (Boolean.getBoolean("vector.math.scalar")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName(VectorMath.class.getPackageName() + ".SimdVectorMath")
+                    .asSubclass(Kernel.class)
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Dot product kernels that replace the scalar loops
+     */
+    interface Kernel {
+        float dot(float[] a, float[] b, int length);
+
+        float dot(float[] a, ByteBuffer b, int byteOffset, int length);
+    }
+
+    // Four independent sums let the CPU overlap the multiply-adds
+    static float scalarDot(float[] a, float[] b, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int upper = length & ~3; i < upper; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float scalarDot(float[] a, ByteBuffer b, int byteOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        int offset = byteOffset;
+        for (int upper = length & ~3; i < upper; i += 4, offset += 16) {
+            s0 += a[i] * b.getFloat(offset);
+            s1 += a[i + 1] * b.getFloat(offset + 4);
+            s2 += a[i + 2] * b.getFloat(offset + 8);
+            s3 += a[i + 3] * b.getFloat(offset + 12);
+        }
+        for (; i < length; i++, offset += 4) {
+            s0 += a[i] * b.getFloat(offset);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
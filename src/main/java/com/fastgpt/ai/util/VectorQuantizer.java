@@ -0,0 +1,36 @@
+package com.fastgpt.ai.util;
+
+/**
+ * Lossy compression of unit-length vectors into fixed-size byte codes.
+ * Codes are scored against a float query without decoding them, so a scan only touches the
+ * compressed bytes; exact scores come from re-ranking the best candidates against the
+ * full-precision vectors.
+ */
+public interface VectorQuantizer {
+
+    int getDimensions();
+
+    /**
+     * Bytes per encoded vector
+     */
+    int codeSize();
+
+    /**
+     * Encode a vector into codes[offset, offset + codeSize())
+     */
+    void encode(float[] vector, byte[] codes, int offset);
+
+    /**
+     * Prepare a unit-length query for scoring codes
+     * @return A scorer approximating the dot product of the query with an encoded vector
+     */
+    CodeScorer scorer(float[] query);
+
+    /**
+     * Approximate scorer of encoded vectors for one query
+     */
+    @FunctionalInterface
+    interface CodeScorer {
+        float score(byte[] codes, int offset);
+    }
+}
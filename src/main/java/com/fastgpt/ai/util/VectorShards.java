@@ -0,0 +1,63 @@
+package com.fastgpt.ai.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Placement of knowledge base vectors on shards and of shards on instances
+ * Each data ID hashes to one of {@link #BUCKETS} buckets, stored with the data, and a bucket
+ * belongs to shard bucket % shards, so any shard count up to the bucket count can be loaded
+ * with a single indexed query. Shards are placed on instances by rendezvous hashing: every
+ * coordinator computes the same owners from the same live instances, and an instance joining
+ * or leaving moves only the shards it wins or held.
+ */
+public final class VectorShards {
+
+    public static final int BUCKETS = 1024;
+
+    private VectorShards() {
+    }
+
+    public static int bucket(String dataId) {
+        return (int) (mix(dataId.hashCode()) & (BUCKETS - 1));
+    }
+
+    public static int shardOf(int bucket, int shards) {
+        return bucket % shards;
+    }
+
+    public static int shardOf(String dataId, int shards) {
+        return shardOf(bucket(dataId), shards);
+    }
+
+    /**
+     * Choose the owners of every shard of a knowledge base
+     * @param instances Live instance IDs
+     * @param replicas Owners per shard, at most the number of instances
+     * @return Owners per shard, preferred first
+     */
+    public static Map<Integer, List<String>> assign(String kbId, int shards, List<String> instances, int replicas) {
+        Map<Integer, List<String>> assignment = new LinkedHashMap<>();
+        int owners = Math.min(Math.max(1, replicas), instances.size());
+        for (int shard = 0; shard < shards; shard++) {
+            long shardHash = mix((kbId + "/" + shard).hashCode());
+            List<String> ranked = new ArrayList<>(instances);
+            ranked.sort(Comparator.comparingLong((String instance) -> mix(shardHash ^ instance.hashCode()))
+                    .reversed()
+                    .thenComparing(Comparator.naturalOrder()));
+            assignment.put(shard, new ArrayList<>(ranked.subList(0, owners)));
+        }
+        return assignment;
+    }
+
+    // SplitMix64 finalizer, spreading the bits of String.hashCode, which is the same on every JVM
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,135 @@
+package com.fastgpt.ai.benchmark;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fastgpt.ai.util.ChatCompletionRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat request serialization benchmark.
+ * Compares building an ObjectNode tree and converting it to a string against streaming the request directly, with about 32k tokens of history.
+ * Run: mvn test-compile, then run the main method; add -prof gc to see allocation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatRequestSerializationBenchmark {
+
+    // Roughly 4 English characters or 1 Chinese character per token
+    @Param({"32000"})
+    private int historyTokens;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String systemPrompt;
+    private SerializedString encodedSystemMessage;
+    private List<Map<String, String>> messages;
+
+    @Setup
+    public void setUp() {
+        systemPrompt = "You are a helpful assistant. Answer with the knowledge base content. ".repeat(20);
+        ObjectNode systemNode = objectMapper.createObjectNode();
+        systemNode.put("role", "system");
+        systemNode.put("content", systemPrompt);
+        encodedSystemMessage = new SerializedString(systemNode.toString());
+
+        String english = "The quick brown fox jumps over the lazy dog while the \"cache\" warms up.\n";
+        String chinese = "知识库检索增强生成需要准确地统计上下文长度。";
+        messages = new ArrayList<>();
+        int tokens = 0;
+        for (int i = 0; tokens < historyTokens; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                content.append(english).append(chinese);
+            }
+            tokens += 20 * (english.length() / 4 + chinese.length());
+
+            Map<String, String> message = new HashMap<>();
+            message.put("role", i % 2 == 0 ? "user" : "assistant");
+            message.put("content", content.toString());
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Previous approach: build the tree, convert it to a string, then encode to bytes
+     */
+    @Benchmark
+    public void objectTree(Blackhole blackhole) {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("model", "gpt-4o");
+        requestBody.put("temperature", 0.7);
+        ArrayNode messagesNode = requestBody.putArray("messages");
+        ObjectNode systemMessage = messagesNode.addObject();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", systemPrompt);
+        for (Map<String, String> message : messages) {
+            ObjectNode messageNode = messagesNode.addObject();
+            messageNode.put("role", message.get("role"));
+            messageNode.put("content", message.get("content"));
+        }
+        blackhole.consume(requestBody.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Current approach: write straight to the output stream
+     */
+    @Benchmark
+    public void streamingWriter(Blackhole blackhole) throws IOException {
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o", 0.7, null, false,
+                systemPrompt, encodedSystemMessage, messages);
+        CountingOutputStream out = new CountingOutputStream();
+        request.writeTo(out, objectMapper.getFactory());
+        blackhole.consume(out.count);
+    }
+
+    /**
+     * Output stream that only counts bytes, standing in for the network connection
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChatRequestSerializationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.fastgpt.ai.benchmark;
+
+import com.fastgpt.ai.util.VectorMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cosine similarity benchmark.
+ * Scores one query against ten thousand 1536-dimension vectors, comparing the previous boxed List + Math.pow version,
+ * a scalar dot product on pre-normalized vectors, a Vector API dot product, and a batch dot product over contiguous off-heap storage.
+ * Run: mvn test-compile, then run the main method; add -Dvector.math.scalar=true to force the scalar path
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class CosineSimilarityBenchmark {
+
+    @Param({"1536"})
+    private int dimensions;
+
+    @Param({"10000"})
+    private int count;
+
+    private List<Float> boxedQuery;
+    private List<List<Float>> boxedVectors;
+    private float[] query;
+    private float[][] vectors;
+    // Same contiguous little-endian float32 layout as MappedVectorStore
+    private ByteBuffer offHeap;
+    private float[] scores;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        query = VectorMath.normalized(randomVector(random));
+        boxedQuery = box(query);
+        vectors = new float[count][];
+        boxedVectors = new ArrayList<>(count);
+        offHeap = ByteBuffer.allocateDirect(count * dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            float[] vector = randomVector(random);
+            boxedVectors.add(box(vector));
+            vectors[i] = VectorMath.normalized(vector);
+            for (float value : vectors[i]) {
+                offHeap.putFloat(value);
+            }
+        }
+        scores = new float[count];
+    }
+
+    @Benchmark
+    public void boxedCosine(Blackhole blackhole) {
+        for (List<Float> vector : boxedVectors) {
+            blackhole.consume(boxedCosine(boxedQuery, vector));
+        }
+    }
+
+    @Benchmark
+    public void scalarDot(Blackhole blackhole) {
+        for (float[] vector : vectors) {
+            float dot = 0f;
+            for (int i = 0; i < dimensions; i++) {
+                dot += query[i] * vector[i];
+            }
+            blackhole.consume(dot);
+        }
+    }
+
+    @Benchmark
+    public void vectorDot(Blackhole blackhole) {
+        VectorMath.dotAll(query, vectors, scores);
+        blackhole.consume(scores);
+    }
+
+    @Benchmark
+    public void offHeapDot(Blackhole blackhole) {
+        VectorMath.dotAll(query, offHeap, 0, count, scores);
+        blackhole.consume(scores);
+    }
+
+    // How VectorServiceImpl.calculateSimilarity was written before the optimization
+    private static double boxedCosine(List<Float> vector1, List<Float> vector2) {
+        double dotProduct = 0.0;
+        double norm1 = 0.0;
+        double norm2 = 0.0;
+        for (int i = 0; i < vector1.size(); i++) {
+            dotProduct += vector1.get(i) * vector2.get(i);
+            norm1 += Math.pow(vector1.get(i), 2);
+            norm2 += Math.pow(vector2.get(i), 2);
+        }
+        double magnitude = Math.sqrt(norm1) * Math.sqrt(norm2);
+        return magnitude == 0 ? 0.0 : dotProduct / magnitude;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static List<Float> box(float[] vector) {
+        List<Float> boxed = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            boxed.add(value);
+        }
+        return boxed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CosineSimilarityBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,178 @@
+package com.fastgpt.ai.benchmark;
+
+import com.fastgpt.ai.util.MappedVectorStore;
+import com.fastgpt.ai.util.ProductQuantizer;
+import com.fastgpt.ai.util.QuantizedVectors;
+import com.fastgpt.ai.util.ScalarQuantizer;
+import com.fastgpt.ai.util.VectorMath;
+import com.fastgpt.ai.util.VectorQuantizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vector quantization benchmark.
+ * On twenty thousand clustered 1536-dimension vectors, compares a float32 full scan with int8 scalar quantization and 16x and 64x product quantization:
+ * each takes limit*rerankFactor candidates on the codes, then reranks them exactly with raw vectors from the mapped file.
+ * Setup prints recall@10 and resident memory for each mode to weigh recall against memory.
+ * Run: mvn test-compile, then run the main method
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class VectorQuantizationBenchmark {
+
+    private static final int LIMIT = 10;
+    private static final int QUERIES = 50;
+    private static final int CLUSTERS = 200;
+
+    @Param({"float32", "int8", "pq16", "pq64"})
+    private String mode;
+
+    @Param({"1536"})
+    private int dimensions;
+
+    @Param({"20000"})
+    private int count;
+
+    @Param({"10"})
+    private int rerankFactor;
+
+    private Path dir;
+    private MappedVectorStore store;
+    private QuantizedVectors quantized;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Text embeddings cluster by topic; pure Gaussian noise would understate product quantization recall
+        Random random = new Random(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, null, 1f);
+        }
+        dir = Files.createTempDirectory("vector-quantization");
+        store = MappedVectorStore.open(dir, dimensions);
+        for (int i = 0; i < count; i++) {
+            store.add("id" + i, gaussian(random, centers[random.nextInt(CLUSTERS)], 0.8f));
+        }
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = VectorMath.normalized(gaussian(random, centers[random.nextInt(CLUSTERS)], 0.8f));
+        }
+
+        VectorQuantizer quantizer = switch (mode) {
+            case "int8" -> ScalarQuantizer.train(QuantizedVectors.sample(store, 4096));
+            case "pq16" -> ProductQuantizer.train(QuantizedVectors.sample(store, 4096), dimensions / 4, 8, 42L);
+            case "pq64" -> ProductQuantizer.train(QuantizedVectors.sample(store, 4096), dimensions / 16, 8, 42L);
+            default -> null;
+        };
+        quantized = quantizer != null ? QuantizedVectors.encode(store, quantizer) : null;
+
+        double recall = 0;
+        for (float[] query : queries) {
+            Set<Integer> truth = new HashSet<>();
+            for (int ordinal : exact(query)) {
+                truth.add(ordinal);
+            }
+            for (int ordinal : search(query)) {
+                recall += truth.contains(ordinal) ? 1 : 0;
+            }
+        }
+        long floatBytes = 4L * dimensions * count;
+        long residentBytes = quantized != null ? (long) quantizer.codeSize() * count : floatBytes;
+        System.out.printf("%n%s: recall@%d %.3f, resident %d bytes (%.1fx smaller than float32)%n",
+                mode, LIMIT, recall / (QUERIES * LIMIT), residentBytes, (double) floatBytes / residentBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        blackhole.consume(search(queries[next++ % QUERIES]));
+    }
+
+    private int[] search(float[] query) {
+        if (quantized == null) {
+            return exact(query);
+        }
+        // Same as VectorStoreServiceImpl: candidates from the codes, reranked on raw vectors
+        int[] candidates = quantized.candidates(query, LIMIT * rerankFactor, null, 8192);
+        float[] scores = new float[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            scores[i] = store.score(query, candidates[i]);
+        }
+        Integer[] order = new Integer[candidates.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+        int[] top = new int[Math.min(LIMIT, order.length)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = candidates[order[i]];
+        }
+        return top;
+    }
+
+    private int[] exact(float[] query) {
+        PriorityQueue<float[]> top = new PriorityQueue<>(LIMIT + 1, (a, b) -> Float.compare(a[0], b[0]));
+        store.scan(query, null, (ordinal, score) -> {
+            top.add(new float[] {score, ordinal});
+            if (top.size() > LIMIT) {
+                top.poll();
+            }
+        });
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) top.poll()[1];
+        }
+        return result;
+    }
+
+    private float[] gaussian(Random random, float[] center, float scale) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (center != null ? center[i] : 0f) + scale * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorQuantizationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.service.impl.EmbeddingCacheServiceImpl;
+import com.fastgpt.ai.util.VectorEncoding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmbeddingCacheServiceTest {
+
+    private EmbeddingCacheServiceImpl cache;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private TokenizerService tokenizerService;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private StringRedisConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        cache = new EmbeddingCacheServiceImpl(stringRedisTemplate, tokenizerService);
+        ReflectionTestUtils.setField(cache, "cacheEnabled", true);
+        ReflectionTestUtils.setField(cache, "precision", "float32");
+        ReflectionTestUtils.setField(cache, "localMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "redisEnabled", true);
+        ReflectionTestUtils.setField(cache, "redisTtlSeconds", 60L);
+    }
+
+    @Test
+    void testGetAll_LocalHitsThenOneMget() {
+        cache.putAll("m", 0, List.of("local"), List.of(List.of(1f, 0f)));
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        String remote = Base64.getEncoder().encodeToString(VectorEncoding.encode(List.of(0f, 1f), false));
+        when(valueOperations.multiGet(anyList())).thenReturn(Arrays.asList(remote, null));
+
+        List<List<Float>> embeddings = cache.getAll("m", 0, List.of("local", "remote", "missing"));
+
+        assertEquals(List.of(1f, 0f), embeddings.get(0));
+        assertEquals(List.of(0f, 1f), embeddings.get(1));
+        assertNull(embeddings.get(2));
+
+        // Texts found locally skip Redis; the rest go in a single MGET
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(valueOperations).multiGet(keys.capture());
+        assertEquals(2, keys.getValue().size());
+        assertTrue(keys.getValue().stream().allMatch(key -> key.startsWith("embedding:cache:m:0:")));
+        verify(valueOperations, never()).get(anyString());
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("localHits"));
+        assertEquals(1L, stats.get("redisHits"));
+        assertEquals(1L, stats.get("misses"));
+
+        // Redis hits are written to the local tier, so a repeat lookup skips Redis
+        assertEquals(List.of(0f, 1f), cache.getAll("m", 0, List.of("remote")).get(0));
+        verify(valueOperations, times(1)).multiGet(anyList());
+    }
+
+    @Test
+    void testPutAll_PipelinesSetsWithTtl() {
+        List<List<Float>> stored = cache.putAll("m", 0, List.of("a", "b"),
+                List.of(List.of(1f, 2f), List.of(3f, 4f)));
+
+        assertEquals(List.of(List.of(1f, 2f), List.of(3f, 4f)), stored);
+
+        // Both writes go through one pipeline, each with a TTL
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<RedisCallback<Object>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplate).executePipelined(callback.capture());
+        callback.getValue().doInRedis(connection);
+
+        ArgumentCaptor<Expiration> ttl = ArgumentCaptor.forClass(Expiration.class);
+        verify(connection, times(2)).set(startsWith("embedding:cache:m:0:"), anyString(), ttl.capture(),
+                eq(SetOption.upsert()));
+        assertEquals(60L, ttl.getValue().getExpirationTimeInSeconds());
+    }
+
+    @Test
+    void testPut_MissReturnsCachedPrecision() {
+        ReflectionTestUtils.setField(cache, "precision", "float16");
+        ReflectionTestUtils.setField(cache, "redisEnabled", false);
+        List<Float> computed = List.of(0.1f, -0.3f, 0.7f);
+
+        List<Float> stored = cache.getOrCompute("m", 0, "text", () -> computed);
+
+        // With float16, the vector returned on a miss matches later hits instead of the raw float32 values
+        assertNotEquals(computed, stored);
+        assertEquals(stored, cache.get("m", 0, "text"));
+        assertEquals(computed.get(0), stored.get(0), 1e-3f);
+    }
+
+    @Test
+    void testGetAll_RedisFailureCountsAsMiss() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.multiGet(anyList())).thenThrow(new IllegalStateException("connection refused"));
+
+        List<List<Float>> embeddings = cache.getAll("m", 0, List.of("a", "b"));
+
+        assertEquals(Arrays.asList(null, null), embeddings);
+        assertEquals(2L, cache.getStats().get("misses"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.dto.LlmEndpoint;
+import com.fastgpt.ai.service.impl.LlmRouterServiceImpl;
+import com.fastgpt.ai.stub.LlmStubServer;
+import com.fastgpt.ai.stub.StubProfile;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmRouterServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final List<LlmStubServer> stubs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(LlmStubServer::stop);
+    }
+
+    @Test
+    void testExecute_PrefersFasterStub() throws Exception {
+        LlmStubServer fast = startStub(StubProfile.builder().latencyMs(5).jitterMs(0).build());
+        LlmStubServer slow = startStub(StubProfile.builder().latencyMs(150).jitterMs(0).build());
+        LlmRouterServiceImpl router = router(false, slow.getBaseUrl() + "," + fast.getBaseUrl());
+
+        for (int i = 0; i < 12; i++) {
+            JsonNode response = router.execute(LlmRouterService.OPERATION_EMBEDDING, false, this::embed);
+            assertFalse(response.path("data").isEmpty());
+        }
+
+        // After one probe of each endpoint, every call goes to the faster one
+        assertEquals(1L, slow.getStats().get("requests"));
+        assertEquals(11L, fast.getStats().get("requests"));
+    }
+
+    @Test
+    void testExecute_FailsOverFromErroringStub() throws Exception {
+        LlmStubServer failing = startStub(StubProfile.builder().latencyMs(0).jitterMs(0).errorRate(1).build());
+        LlmStubServer healthy = startStub(StubProfile.builder().latencyMs(0).jitterMs(0).build());
+        LlmRouterServiceImpl router = router(false, failing.getBaseUrl() + "," + healthy.getBaseUrl());
+
+        JsonNode response = router.execute(LlmRouterService.OPERATION_EMBEDDING, false, this::embed);
+        assertFalse(response.path("data").isEmpty());
+
+        Map<String, Object> failingStats = router.getEndpointStats().get(0);
+        assertEquals(1L, failingStats.get("failures"));
+        assertEquals(true, failingStats.get("coolingDown"));
+
+        // An endpoint cooling down ranks last, so the next call goes straight to the healthy one
+        router.execute(LlmRouterService.OPERATION_EMBEDDING, false, this::embed);
+        assertEquals(1L, failing.getStats().get("requests"));
+        assertEquals(2L, healthy.getStats().get("requests"));
+    }
+
+    @Test
+    void testExecute_ClientErrorIsNotFailedOver() {
+        LlmRouterServiceImpl router = router(false, "http://a.invalid,http://b.invalid");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(HttpClientErrorException.class, () -> router.execute(LlmRouterService.OPERATION_CHAT, false,
+                endpoint -> {
+                    attempts.incrementAndGet();
+                    throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "bad", HttpHeaders.EMPTY, null, null);
+                }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testExecute_RanksEndpointsPerOperation() {
+        LlmRouterServiceImpl router = router(false, "http://a.invalid,http://b.invalid");
+        // endpoint-0 is slow for chat and fast for embeddings, endpoint-1 the opposite; each operation ranks on its own
+        Map<String, Map<String, Long>> delays = Map.of(
+                LlmRouterService.OPERATION_CHAT, Map.of("endpoint-0", 150L, "endpoint-1", 40L),
+                LlmRouterService.OPERATION_EMBEDDING, Map.of("endpoint-0", 5L, "endpoint-1", 30L));
+
+        for (int i = 0; i < 3; i++) {
+            for (String operation : delays.keySet()) {
+                router.execute(operation, false, endpoint -> sleep(delays.get(operation).get(endpoint.getName())));
+            }
+        }
+
+        assertEquals("endpoint-1", router.execute(LlmRouterService.OPERATION_CHAT, false, LlmEndpoint::getName));
+        assertEquals("endpoint-0", router.execute(LlmRouterService.OPERATION_EMBEDDING, false, LlmEndpoint::getName));
+    }
+
+    @Test
+    void testExecute_HedgesSlowPrimary() {
+        LlmRouterServiceImpl router = router(true, "http://a.invalid,http://b.invalid");
+        // The second endpoint is slower, so the first one collects the samples needed to hedge and stays primary
+        for (int i = 0; i < 40; i++) {
+            router.execute(LlmRouterService.OPERATION_CHAT, true,
+                    endpoint -> sleep("endpoint-0".equals(endpoint.getName()) ? 2 : 50));
+        }
+
+        // Once the primary is slower than its p95 the call is hedged to the backup and the primary is cancelled
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger cancelledPrimaries = new AtomicInteger();
+        AtomicReference<String> primaryName = new AtomicReference<>();
+        long start = System.currentTimeMillis();
+        String winner = router.execute(LlmRouterService.OPERATION_CHAT, true, endpoint -> {
+            if (attempts.incrementAndGet() == 1) {
+                primaryName.set(endpoint.getName());
+                long deadline = System.currentTimeMillis() + 5000;
+                while (System.currentTimeMillis() < deadline) {
+                    if (CancellationToken.current().isCancelled()) {
+                        cancelledPrimaries.incrementAndGet();
+                        // Cancelling aborts the HTTP request, which surfaces as an I/O error
+                        throw new ResourceAccessException("Request aborted");
+                    }
+                    sleep(5);
+                }
+                return "primary";
+            }
+            return "backup";
+        });
+
+        assertEquals("backup", winner);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        long hedged = router.getEndpointStats().stream()
+                .mapToLong(stats -> (Long) stats.get("hedged"))
+                .sum();
+        assertEquals(1, hedged);
+        sleep(100);
+        assertEquals(1, cancelledPrimaries.get());
+
+        // The cancelled loser is not held against its endpoint
+        Map<String, Object> primaryStats = router.getEndpointStats().stream()
+                .filter(stats -> primaryName.get().equals(stats.get("name")))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(0L, primaryStats.get("failures"));
+        assertEquals(false, primaryStats.get("coolingDown"));
+        router.shutdown();
+    }
+
+    private JsonNode embed(LlmEndpoint endpoint) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(endpoint.getApiKey());
+        return restTemplate.postForObject(endpoint.getBaseUrl() + "/v1/embeddings",
+                new HttpEntity<>(Map.of("model", "text-embedding-ada-002", "input", "hello"), headers),
+                JsonNode.class);
+    }
+
+    private LlmStubServer startStub(StubProfile profile) throws Exception {
+        LlmStubServer stub = new LlmStubServer(profile, objectMapper);
+        stub.start(0);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private static LlmRouterServiceImpl router(boolean hedge, String urls) {
+        LlmRouterServiceImpl router = new LlmRouterServiceImpl();
+        ReflectionTestUtils.setField(router, "defaultApiKey", "test-key");
+        ReflectionTestUtils.setField(router, "defaultBaseUrl", "http://default.invalid");
+        ReflectionTestUtils.setField(router, "endpointUrls", urls);
+        ReflectionTestUtils.setField(router, "endpointApiKeys", "");
+        ReflectionTestUtils.setField(router, "hedgeEnabled", hedge);
+        ReflectionTestUtils.setField(router, "hedgeMinDelayMs", 50L);
+        ReflectionTestUtils.setField(router, "hedgeMaxThreads", 4);
+        ReflectionTestUtils.setField(router, "cooldownMs", 5000L);
+        router.init();
+        return router;
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
@@ -0,0 +1,231 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import com.fastgpt.ai.exception.RateLimitExceededException;
+import com.fastgpt.ai.service.impl.ProviderRateLimiterImpl;
+import com.fastgpt.ai.util.CancellationToken;
+import com.fastgpt.ai.util.RequestPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderRateLimiterTest {
+
+    private ProviderRateLimiterImpl rateLimiter;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new ProviderRateLimiterImpl();
+        ReflectionTestUtils.setField(rateLimiter, "limiterEnabled", true);
+        ReflectionTestUtils.setField(rateLimiter, "initialConcurrency", 1);
+        ReflectionTestUtils.setField(rateLimiter, "minConcurrency", 1);
+        ReflectionTestUtils.setField(rateLimiter, "maxConcurrency", 8);
+        ReflectionTestUtils.setField(rateLimiter, "requestsPerMinute", 3000);
+        ReflectionTestUtils.setField(rateLimiter, "tokensPerMinute", 250000);
+        ReflectionTestUtils.setField(rateLimiter, "queueTimeoutMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testExecute_InteractiveServedBeforeBatch() throws Exception {
+        // Pin the limit to 1; otherwise it grows on release and both requests run at once
+        ReflectionTestUtils.setField(rateLimiter, "maxConcurrency", 1);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<RequestPriority> order = new CopyOnWriteArrayList<>();
+
+        Future<?> holder = executor.submit(() -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.BATCH, () -> {
+            holding.countDown();
+            await(release);
+            return null;
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        // The batch request queues first, but the later interactive request runs first once a permit frees up
+        Future<?> batch = executor.submit(() -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.BATCH,
+                () -> order.add(RequestPriority.BATCH)));
+        awaitQueued(1);
+        Future<?> interactive = executor.submit(() -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.INTERACTIVE,
+                () -> order.add(RequestPriority.INTERACTIVE)));
+        awaitQueued(2);
+        release.countDown();
+
+        holder.get(5, TimeUnit.SECONDS);
+        batch.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(RequestPriority.INTERACTIVE, RequestPriority.BATCH), order);
+    }
+
+    @Test
+    void testExecute_OverloadHalvesLimit() {
+        ReflectionTestUtils.setField(rateLimiter, "initialConcurrency", 8);
+
+        assertThrows(HttpClientErrorException.class, () -> rateLimiter.execute("sk-test", "gpt", 10,
+                RequestPriority.INTERACTIVE, () -> {
+                    throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "slow down",
+                            HttpHeaders.EMPTY, null, null);
+                }));
+
+        Map<String, Object> stats = rateLimiter.getStats().get(0);
+        assertEquals(4, stats.get("limit"));
+        assertEquals(1L, stats.get("overloads"));
+        assertEquals(0, stats.get("inFlight"));
+        assertEquals("****test:gpt", stats.get("key"));
+    }
+
+    @Test
+    void testExecute_TimeoutLowersLimit() {
+        ReflectionTestUtils.setField(rateLimiter, "initialConcurrency", 8);
+
+        assertThrows(ResourceAccessException.class, () -> rateLimiter.execute("sk-test", "gpt", 10,
+                RequestPriority.INTERACTIVE, () -> {
+                    throw new ResourceAccessException("I/O error", new SocketTimeoutException("Read timed out"));
+                }));
+
+        assertEquals(4, rateLimiter.getStats().get(0).get("limit"));
+    }
+
+    @Test
+    void testExecute_CancelledCallDoesNotLowerLimit() {
+        ReflectionTestUtils.setField(rateLimiter, "initialConcurrency", 8);
+        CancellationToken token = CancellationToken.create();
+
+        // Cancelling aborts the HTTP request, which surfaces as an I/O error
+        try (CancellationToken.Scope scope = token.bind()) {
+            assertThrows(ResourceAccessException.class, () -> rateLimiter.execute("sk-test", "gpt", 10,
+                    RequestPriority.INTERACTIVE, () -> {
+                        token.cancel("client left");
+                        throw new ResourceAccessException("I/O error", new InterruptedIOException("Request aborted"));
+                    }));
+        }
+        assertThrows(ExecutionCancelledException.class, () -> rateLimiter.execute("sk-test", "gpt", 10,
+                RequestPriority.INTERACTIVE, () -> {
+                    throw new ExecutionCancelledException("hedge settled");
+                }));
+
+        Map<String, Object> stats = rateLimiter.getStats().get(0);
+        assertEquals(8, stats.get("limit"));
+        assertEquals(0L, stats.get("overloads"));
+        assertEquals(0, stats.get("inFlight"));
+    }
+
+    @Test
+    void testExecute_ClientErrorDoesNotLowerLimit() {
+        ReflectionTestUtils.setField(rateLimiter, "initialConcurrency", 8);
+
+        assertThrows(HttpClientErrorException.class, () -> rateLimiter.execute("sk-test", "gpt", 10,
+                RequestPriority.INTERACTIVE, () -> {
+                    throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "bad", HttpHeaders.EMPTY, null, null);
+                }));
+
+        Map<String, Object> stats = rateLimiter.getStats().get(0);
+        assertEquals(8, stats.get("limit"));
+        assertEquals(0L, stats.get("overloads"));
+    }
+
+    @Test
+    void testExecute_QueueTimeout() throws Exception {
+        ReflectionTestUtils.setField(rateLimiter, "queueTimeoutMs", 100L);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> holder = executor.submit(() -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.INTERACTIVE, () -> {
+            holding.countDown();
+            await(release);
+            return null;
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        assertThrows(RateLimitExceededException.class,
+                () -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.INTERACTIVE, () -> "unused"));
+        assertEquals(0, rateLimiter.getStats().get(0).get("queued"));
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testExecute_CancelledWhileQueued() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CancellationToken token = CancellationToken.create();
+        AtomicInteger calls = new AtomicInteger();
+
+        Future<?> holder = executor.submit(() -> rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.INTERACTIVE, () -> {
+            holding.countDown();
+            await(release);
+            return null;
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        Future<?> waiting = executor.submit(() -> {
+            try (CancellationToken.Scope scope = token.bind()) {
+                return rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.INTERACTIVE, calls::incrementAndGet);
+            }
+        });
+        awaitQueued(1);
+
+        // A queued request returns as soon as it is cancelled and leaves the queue
+        token.cancel("client left");
+
+        assertInstanceOf(ExecutionCancelledException.class,
+                assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(0, calls.get());
+        assertEquals(0, rateLimiter.getStats().get(0).get("queued"));
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testExecute_DisabledPassesThrough() {
+        ReflectionTestUtils.setField(rateLimiter, "limiterEnabled", false);
+
+        assertEquals("ok", rateLimiter.execute("sk-test", "gpt", 10, RequestPriority.BATCH, () -> "ok"));
+        assertTrue(rateLimiter.getStats().isEmpty());
+    }
+
+    private void awaitQueued(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (rateLimiter.getStats().get(0).get("queued").equals(expected)) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("Expected " + expected + " queued calls");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.service.impl.StreamRelayServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.connection.stream.StringRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamRelayServiceTest {
+
+    private StreamRelayServiceImpl relayService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private StreamOperations<String, Object, Object> streamOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private StringRedisConnection connection;
+
+    @Mock
+    private SseEmitter emitter;
+
+    @BeforeEach
+    void setUp() {
+        relayService = new StreamRelayServiceImpl(stringRedisTemplate, new ObjectMapper());
+        ReflectionTestUtils.setField(relayService, "relayEnabled", true);
+    }
+
+    @Test
+    void testPublish_PipelinesTrimmedAddAndExpire() {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(RecordId.of("5-1"), true));
+
+        String eventId = relayService.publish("s1", "chunk", Map.of("text", "hi"));
+
+        assertEquals("5-1", eventId);
+
+        // Run the pipelined callback: XADD trims with MAXLEN ~ itself, without a separate XTRIM
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<RedisCallback<Object>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplate).executePipelined(callback.capture());
+        callback.getValue().doInRedis(connection);
+
+        ArgumentCaptor<StringRecord> record = ArgumentCaptor.forClass(StringRecord.class);
+        ArgumentCaptor<XAddOptions> options = ArgumentCaptor.forClass(XAddOptions.class);
+        verify(connection).xAdd(record.capture(), options.capture());
+        assertEquals("stream:session:s1", record.getValue().getStream());
+        assertEquals("chunk", record.getValue().getValue().get("event"));
+        assertEquals("{\"text\":\"hi\"}", record.getValue().getValue().get("data"));
+        assertTrue(options.getValue().hasMaxlen());
+        assertTrue(options.getValue().isApproximateTrimming());
+        verify(connection).expire("stream:session:s1", Duration.ofHours(1).getSeconds());
+        verify(stringRedisTemplate, never()).opsForStream();
+    }
+
+    @Test
+    void testAttach_BacklogEndCompletesEmitter() throws Exception {
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        when(streamOperations.reverseRange(eq("stream:session:s1"), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record("2-0", "__end", "")));
+        when(streamOperations.range(eq("stream:session:s1"), any(Range.class)))
+                .thenReturn(List.of(record("1-0", "chunk", "a"), record("2-0", "__end", "")));
+
+        // The session has ended, so the watcher completes after the remaining events instead of receiving __end
+        relayService.attach("s1", emitter, "0");
+
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter).complete();
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(relayService, "sessionRelays")).isEmpty());
+    }
+
+    @Test
+    void testAttach_FinishedSessionWithoutLastEventIdCompletes() throws Exception {
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        when(streamOperations.reverseRange(eq("stream:session:s1"), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record("2-0", "__end", ""), record("1-0", "chunk", "a")));
+        when(streamOperations.range(eq("stream:session:s1"), any(Range.class)))
+                .thenReturn(List.of(record("1-0", "chunk", "a"), record("2-0", "__end", "")));
+
+        // Only new events were asked for and none will come, so the emitter completes instead of hanging
+        relayService.attach("s1", emitter, null);
+
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter).complete();
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(relayService, "sessionRelays")).isEmpty());
+    }
+
+    @Test
+    void testAttach_BacklogWithoutEndKeepsEmitterOpen() throws Exception {
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        when(streamOperations.reverseRange(eq("stream:session:s1"), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record("2-0", "chunk", "b")));
+        when(streamOperations.range(eq("stream:session:s1"), any(Range.class)))
+                .thenReturn(List.of(record("1-0", "chunk", "a"), record("2-0", "chunk", "b")));
+
+        Runnable detach = relayService.attach("s1", emitter, "0");
+
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter, never()).complete();
+
+        // Detaching twice counts the watcher out only once
+        detach.run();
+        detach.run();
+        verify(stringRedisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(relayService, "sessionRelays")).isEmpty());
+    }
+
+    @Test
+    void testGetOwner() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("stream:session:owner:s1")).thenReturn("user-1");
+
+        relayService.open("s1", "user-1");
+
+        verify(valueOperations).set("stream:session:owner:s1", "user-1", Duration.ofHours(1));
+        assertEquals("user-1", relayService.getOwner("s1"));
+        assertNull(relayService.getOwner("unknown"));
+    }
+
+    @Test
+    void testRequestCancel_RunsHandlerOfOwningInstance() {
+        AtomicInteger cancels = new AtomicInteger();
+        Runnable unregister = relayService.onCancelRequested("s1", cancels::incrementAndGet);
+
+        relayService.requestCancel("s1");
+        verify(stringRedisTemplate).convertAndSend("stream:session:cancel", "s1");
+
+        // Every instance receives the request; only the one running the session has a handler
+        ReflectionTestUtils.invokeMethod(relayService, "handleCancelRequest", "s1");
+        ReflectionTestUtils.invokeMethod(relayService, "handleCancelRequest", "s2");
+        assertEquals(1, cancels.get());
+
+        unregister.run();
+        ReflectionTestUtils.invokeMethod(relayService, "handleCancelRequest", "s1");
+        assertEquals(1, cancels.get());
+    }
+
+    @Test
+    void testRelayDisabled_DeliversLocally() throws Exception {
+        ReflectionTestUtils.setField(relayService, "relayEnabled", false);
+
+        relayService.open("s1", "user-1");
+        relayService.attach("s1", emitter, null);
+        assertEquals(1, relayService.getWatcherCount("s1"));
+        relayService.publish("s1", "chunk", "a");
+        relayService.complete("s1");
+        assertEquals(0, relayService.getWatcherCount("s1"));
+
+        verify(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter).complete();
+        assertNull(relayService.getOwner("s1"));
+
+        AtomicInteger cancels = new AtomicInteger();
+        relayService.onCancelRequested("s2", cancels::incrementAndGet);
+        relayService.requestCancel("s2");
+        assertEquals(1, cancels.get());
+        verifyNoInteractions(stringRedisTemplate);
+    }
+
+    private static MapRecord<String, Object, Object> record(String id, String event, String data) {
+        return StreamRecords.newRecord()
+                .in("stream:session:s1")
+                .withId(RecordId.of(id))
+                .ofMap(Map.<Object, Object>of("event", event, "data", data));
+    }
+}
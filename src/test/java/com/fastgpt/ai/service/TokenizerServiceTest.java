@@ -0,0 +1,60 @@
+package com.fastgpt.ai.service;
+
+import com.fastgpt.ai.service.impl.TokenizerServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TokenizerServiceTest {
+
+    private static final String VOCABULARY = "tokenizer/cl100k_base.tiktoken";
+
+    private TokenizerServiceImpl tokenizerService;
+
+    @BeforeEach
+    void setUp() {
+        tokenizerService = new TokenizerServiceImpl(new DefaultResourceLoader());
+        ReflectionTestUtils.setField(tokenizerService, "encodingName", "cl100k_base");
+        ReflectionTestUtils.setField(tokenizerService, "vocabLocation", "classpath:" + VOCABULARY);
+        ReflectionTestUtils.setField(tokenizerService, "allowEstimate", true);
+        ReflectionTestUtils.setField(tokenizerService, "cacheSize", 100);
+    }
+
+    @Test
+    void testInit_LoadsBundledVocabulary() {
+        assumeTrue(new ClassPathResource(VOCABULARY).exists(), "cl100k_base rank file is not bundled");
+        ReflectionTestUtils.setField(tokenizerService, "allowEstimate", false);
+
+        tokenizerService.init();
+
+        // Token IDs published for cl100k_base
+        assertTrue(tokenizerService.isExact());
+        assertArrayEquals(new int[]{15339, 1917}, tokenizerService.encode("hello world"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0}, tokenizerService.encode("tiktoken is great!"));
+        assertEquals("tiktoken is great!", tokenizerService.decode(tokenizerService.encode("tiktoken is great!")));
+    }
+
+    @Test
+    void testInit_EstimatesWithoutVocabularyByDefault() {
+        ReflectionTestUtils.setField(tokenizerService, "vocabLocation", "classpath:tokenizer/missing.tiktoken");
+
+        tokenizerService.init();
+
+        assertFalse(tokenizerService.isExact());
+        assertTrue(tokenizerService.countTokens("hello world") > 0);
+        assertThrows(IllegalStateException.class, () -> tokenizerService.encode("hello world"));
+    }
+
+    @Test
+    void testInit_FailsWithoutVocabularyWhenEstimateDisallowed() {
+        ReflectionTestUtils.setField(tokenizerService, "vocabLocation", "classpath:tokenizer/missing.tiktoken");
+        ReflectionTestUtils.setField(tokenizerService, "allowEstimate", false);
+
+        assertThrows(IllegalStateException.class, tokenizerService::init);
+    }
+}
@@ -0,0 +1,153 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testSearch_RanksRareAndRepeatedTermsHigher() {
+        Bm25Index index = new Bm25Index();
+        index.add("d1", TextAnalyzer.tokenize("the connection was reset"), null);
+        index.add("d2", TextAnalyzer.tokenize("the cache was cleared"), null);
+        index.add("d3", TextAnalyzer.tokenize("connection reset reset by peer"), null);
+        index.add("d4", TextAnalyzer.tokenize("the the the"), null);
+
+        List<VectorMatch> matches = index.search(TextAnalyzer.tokenize("connection reset"), 10, null, null);
+
+        // The document with the rare term "reset" twice ranks first
+        assertEquals(List.of("d3", "d1"), ids(matches));
+        assertTrue(matches.get(0).getScore() > matches.get(1).getScore());
+
+        // A document with only the common term "the" ranks after those with rare terms
+        List<String> ranked = ids(index.search(TextAnalyzer.tokenize("reset the"), 10, null, null));
+        assertEquals(4, ranked.size());
+        assertTrue(List.of("d1", "d3").containsAll(ranked.subList(0, 2)));
+        assertEquals(2, index.search(TextAnalyzer.tokenize("reset"), 2, null, null).size());
+        assertTrue(index.search(TextAnalyzer.tokenize("missing"), 10, null, null).isEmpty());
+    }
+
+    @Test
+    void testSearch_SkipsRemovedReplacedAndFiltered() {
+        Bm25Index index = new Bm25Index();
+        index.add("d1", TextAnalyzer.tokenize("alpha beta"), null);
+        index.add("d2", TextAnalyzer.tokenize("alpha gamma"), null);
+        index.add("d3", TextAnalyzer.tokenize("alpha delta"), null);
+
+        assertTrue(index.remove("d1"));
+        assertFalse(index.remove("d1"));
+        index.add("d2", TextAnalyzer.tokenize("omega"), null);
+
+        // Deleted and replaced versions no longer match, and filters apply by ID
+        assertEquals(List.of("d3"), ids(index.search(TextAnalyzer.tokenize("alpha"), 10, null, null)));
+        assertEquals(List.of("d2"), ids(index.search(TextAnalyzer.tokenize("omega"), 10, null, null)));
+        assertTrue(index.search(TextAnalyzer.tokenize("alpha"), 10, id -> !id.equals("d3"), null).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testSearch_MetadataFilters() {
+        Bm25Index index = new Bm25Index();
+        index.add("d1", TextAnalyzer.tokenize("error code"), Map.of("lang", "en", "source", "faq"));
+        index.add("d2", TextAnalyzer.tokenize("error log"), Map.of("lang", "zh", "source", "faq"));
+        index.add("d3", TextAnalyzer.tokenize("error page"), Map.of("lang", "en", "source", "docs"));
+        index.add("d4", TextAnalyzer.tokenize("error"), null);
+
+        List<String> tokens = TextAnalyzer.tokenize("error");
+        // Values of one key are ORed; different keys are ANDed
+        assertEquals(List.of("d1", "d3"), sorted(index.search(tokens, 10, null, Map.of("lang", List.of("en")))));
+        assertEquals(List.of("d1"), sorted(index.search(tokens, 10, null,
+                Map.of("lang", List.of("en"), "source", List.of("faq")))));
+        assertEquals(List.of("d1", "d2", "d3"), sorted(index.search(tokens, 10, null,
+                Map.of("lang", List.of("en", "zh")))));
+        assertTrue(index.search(tokens, 10, null, Map.of("lang", List.of("fr"))).isEmpty());
+    }
+
+    @Test
+    void testCompaction_KeepsResultsAndMetadata() {
+        Bm25Index index = new Bm25Index();
+        for (int i = 0; i < 3000; i++) {
+            index.add("d" + i, TextAnalyzer.tokenize("common term" + (i % 10)), Map.of("group", String.valueOf(i % 3)));
+        }
+        // Deleting over half the documents triggers compaction; bitmaps still point at the right documents after renumbering
+        for (int i = 0; i < 2000; i++) {
+            index.remove("d" + i);
+        }
+        index.add("d3000", TextAnalyzer.tokenize("common term7"), Map.of("group", "1"));
+
+        assertEquals(1001, index.size());
+        List<VectorMatch> matches = index.search(TextAnalyzer.tokenize("term7"), 1000, null,
+                Map.of("group", List.of("1")));
+        assertFalse(matches.isEmpty());
+        for (VectorMatch match : matches) {
+            if (match.getId().equals("d3000")) {
+                continue;
+            }
+            int number = Integer.parseInt(match.getId().substring(1));
+            assertTrue(number >= 2000);
+            assertEquals(7, number % 10);
+            assertEquals(1, number % 3);
+        }
+        assertTrue(ids(matches).contains("d3000"));
+    }
+
+    @Test
+    void testSaveLoad_RoundTripWithoutTombstones() throws IOException {
+        Bm25Index index = new Bm25Index();
+        index.add("d1", TextAnalyzer.tokenize("产品编号 ERR-1042 无法连接"), Map.of("lang", "zh"));
+        index.add("d2", TextAnalyzer.tokenize("cannot connect to the server"), Map.of("lang", "en"));
+        index.add("d3", TextAnalyzer.tokenize("连接超时"), Map.of("lang", "zh"));
+        index.remove("d2");
+        Path snapshot = dir.resolve("kb.bm25");
+
+        long before = System.currentTimeMillis();
+        index.save(snapshot);
+        Bm25Index loaded = Bm25Index.load(snapshot);
+
+        assertEquals(0, index.getSavedAt());
+        assertTrue(loaded.getSavedAt() >= before);
+        assertEquals(2, loaded.size());
+        // Terms found only in deleted documents are left out of the snapshot
+        assertTrue(loaded.termCount() < index.termCount());
+        assertFalse(loaded.contains("d2"));
+        for (String query : List.of("err-1042", "连接", "server")) {
+            List<String> tokens = TextAnalyzer.tokenize(query);
+            assertEquals(ids(index.search(tokens, 10, null, null)), ids(loaded.search(tokens, 10, null, null)));
+        }
+        assertEquals(List.of("d3", "d1"), ids(loaded.search(TextAnalyzer.tokenize("连接超时"), 10, null,
+                Map.of("lang", List.of("zh")))));
+        assertEquals(List.of("d3"), ids(loaded.search(TextAnalyzer.tokenize("超时"), 10, null, null)));
+
+        // The loaded index still accepts writes
+        loaded.add("d4", TextAnalyzer.tokenize("连接成功"), Map.of("lang", "zh"));
+        assertEquals(3, loaded.search(TextAnalyzer.tokenize("连接"), 10, null, Map.of("lang", List.of("zh"))).size());
+    }
+
+    @Test
+    void testLoad_RejectsOtherFiles() throws IOException {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> Bm25Index.load(file));
+    }
+
+    private static List<String> ids(List<VectorMatch> matches) {
+        return matches.stream().map(VectorMatch::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<VectorMatch> matches) {
+        return matches.stream().map(VectorMatch::getId).sorted().collect(Collectors.toList());
+    }
+}
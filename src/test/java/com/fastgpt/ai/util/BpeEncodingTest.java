@@ -0,0 +1,110 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BpeEncodingTest {
+
+    // Single bytes take ranks 0-255, followed by merges in priority order
+    private static final String[] MERGES = {"he", "ll", "hell", "hello", " w", "or", " wor", " world"};
+
+    private BpeEncoding encoding;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        encoding = BpeEncoding.load(BpeEncoding.CL100K_BASE, rankFile(MERGES), 100);
+    }
+
+    @Test
+    void testEncode_MergesByRank() {
+        assertArrayEquals(new int[]{256 + 3}, encoding.encode("hello"));
+        assertArrayEquals(new int[]{256 + 3, 256 + 7}, encoding.encode("hello world"));
+        // "help" only merges into "he"; the rest stay single bytes
+        assertArrayEquals(new int[]{256, 'l', 'p'}, encoding.encode("help"));
+    }
+
+    @Test
+    void testEncode_LowerRankMergesFirst() throws IOException {
+        // "ab" outranks "bc", so "abc" becomes "ab"+"c" rather than "a"+"bc"
+        BpeEncoding ordered = BpeEncoding.load(BpeEncoding.CL100K_BASE, rankFile("ab", "bc"), 100);
+        assertArrayEquals(new int[]{256, 'c'}, ordered.encode("abc"));
+
+        BpeEncoding reversed = BpeEncoding.load(BpeEncoding.CL100K_BASE, rankFile("bc", "ab"), 100);
+        assertArrayEquals(new int[]{'a', 256}, reversed.encode("abc"));
+    }
+
+    @Test
+    void testEncodeDecode_RoundTrip() {
+        String[] texts = {"hello world", "héllo wörld\n\n", "你好，世界", "emoji 😀 done", "  spaced   out  ", ""};
+        for (String text : texts) {
+            int[] tokens = encoding.encode(text);
+            assertEquals(text, encoding.decode(tokens));
+            assertEquals(tokens.length, encoding.count(text));
+            // The second encode hits the cache and returns the same tokens
+            assertArrayEquals(tokens, encoding.encode(text));
+        }
+    }
+
+    @Test
+    void testEncode_CharEndsMarkMultiByteCharacters() {
+        BpeEncoding.IntBuffer charEnds = new BpeEncoding.IntBuffer(8);
+
+        int[] tokens = encoding.encode("hé", charEnds);
+
+        // "é" is two UTF-8 bytes, so the first byte's token ends inside the character
+        assertArrayEquals(new int[]{'h', 0xC3, 0xA9}, tokens);
+        assertEquals(3, charEnds.size());
+        assertEquals(1, charEnds.get(0));
+        assertEquals(-1, charEnds.get(1));
+        assertEquals(2, charEnds.get(2));
+    }
+
+    @Test
+    void testEncode_CharEndsMatchPlainEncoding() {
+        String text = "hello world, 你好 😀";
+        BpeEncoding.IntBuffer charEnds = new BpeEncoding.IntBuffer(8);
+
+        assertArrayEquals(encoding.encode(text), encoding.encode(text, charEnds));
+        assertEquals(text.length(), charEnds.get(charEnds.size() - 1));
+    }
+
+    @Test
+    void testDecode_UnknownToken() {
+        assertThrows(IllegalArgumentException.class, () -> encoding.decode(new int[]{100000}));
+        assertThrows(IllegalArgumentException.class, () -> encoding.decode(new int[]{-1}));
+    }
+
+    @Test
+    void testLoad_InvalidInput() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BpeEncoding.load("p50k_base", rankFile(MERGES), 100));
+        assertThrows(IOException.class, () -> BpeEncoding.load(BpeEncoding.CL100K_BASE,
+                new ByteArrayInputStream(new byte[0]), 100));
+        assertEquals(256 + MERGES.length, encoding.getVocabularySize());
+        assertEquals(BpeEncoding.CL100K_BASE, encoding.getName());
+    }
+
+    /**
+     * Build a tiktoken rank file with every single byte followed by the given merges
+     */
+    private static InputStream rankFile(String... merges) {
+        StringBuilder file = new StringBuilder();
+        Base64.Encoder base64 = Base64.getEncoder();
+        for (int b = 0; b < 256; b++) {
+            file.append(base64.encodeToString(new byte[]{(byte) b})).append(' ').append(b).append('\n');
+        }
+        for (int i = 0; i < merges.length; i++) {
+            file.append(base64.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(256 + i).append('\n');
+        }
+        return new ByteArrayInputStream(file.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+}
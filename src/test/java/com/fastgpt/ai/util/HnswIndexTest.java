@@ -0,0 +1,185 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @TempDir
+    Path dir;
+
+    private MappedVectorStore store;
+    private final Random random = new Random(7);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = MappedVectorStore.open(dir.resolve("store"), DIMENSIONS);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void testSearch_RecallAgainstExactScan() throws IOException {
+        addRandom(0, 2000);
+        HnswIndex index = new HnswIndex(store, 16, 100);
+        assertEquals(2000, index.catchUp());
+
+        // Compared with an exact full scan, approximate search should have high recall
+        int hits = 0;
+        int queries = 20;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector();
+            Set<String> expected = exactTop(query, 10);
+            hits += (int) index.search(query, 10, 100, null).stream()
+                    .filter(match -> expected.contains(match.getId()))
+                    .count();
+        }
+        assertTrue(hits >= queries * 10 * 0.9, "recall too low: " + hits);
+    }
+
+    @Test
+    void testSearch_SkipsTombstonedAndReplacedVectors() throws IOException {
+        addRandom(0, 300);
+        HnswIndex index = new HnswIndex(store, 8, 50);
+        index.catchUp();
+
+        float[] target = randomVector();
+        store.add("target", target);
+        index.catchUp();
+        assertEquals("target", index.search(target, 1, 50, null).get(0).getId());
+
+        // Deleted vectors are no longer returned; rewriting an ID returns only its new position
+        store.remove("target");
+        assertTrue(index.search(target, 5, 50, null).stream().noneMatch(match -> match.getId().equals("target")));
+
+        float[] replacement = randomVector();
+        store.add("target", replacement);
+        index.catchUp();
+        List<VectorMatch> matches = index.search(replacement, 5, 50, null);
+        assertEquals("target", matches.get(0).getId());
+        assertEquals(1, matches.stream().filter(match -> match.getId().equals("target")).count());
+        assertTrue(index.search(target, 5, 50, null).stream()
+                .noneMatch(match -> match.getId().equals("target") && match.getScore() > 0.99));
+    }
+
+    @Test
+    void testSearch_Filter() throws IOException {
+        addRandom(0, 500);
+        HnswIndex index = new HnswIndex(store, 16, 100);
+        index.catchUp();
+
+        List<VectorMatch> matches = index.search(randomVector(), 10, 100, id -> id.endsWith("0"));
+
+        assertEquals(10, matches.size());
+        assertTrue(matches.stream().allMatch(match -> match.getId().endsWith("0")));
+    }
+
+    @Test
+    void testSearch_WalksQuantizedCodes() throws IOException {
+        addRandom(0, 2000);
+        HnswIndex index = new HnswIndex(store, 16, 100);
+        index.catchUp();
+        QuantizedVectors codes = QuantizedVectors.encode(store, ScalarQuantizer.train(QuantizedVectors.sample(store, 2000)));
+        store.remove("v3");
+        codes.remove(store.ordinalLimit() - 1);
+
+        // Walking the graph on quantized codes and reranking on raw vectors keeps recall close to full precision
+        int hits = 0;
+        int queries = 20;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector();
+            Set<String> expected = exactTop(query, 10);
+            List<VectorMatch> matches = index.search(query, 10, 100, null, codes, 100);
+            assertEquals(10, matches.size());
+            hits += (int) matches.stream().filter(match -> expected.contains(match.getId())).count();
+        }
+        assertTrue(hits >= queries * 10 * 0.9, "recall too low: " + hits);
+
+        // A sparse filter widens the candidate set; results hold only live vectors that match it
+        List<VectorMatch> filtered = index.search(randomVector(), 10, 100, id -> id.endsWith("3"), codes, 20);
+        assertEquals(10, filtered.size());
+        assertTrue(filtered.stream().allMatch(match -> match.getId().endsWith("3") && !match.getId().equals("v3")));
+    }
+
+    @Test
+    void testSaveLoad_RoundTripAndCatchUp() throws IOException {
+        addRandom(0, 500);
+        HnswIndex index = new HnswIndex(store, 16, 100);
+        index.catchUp();
+        Path snapshot = dir.resolve("kb.hnsw");
+        index.save(snapshot);
+
+        HnswIndex loaded = HnswIndex.load(snapshot, store);
+        assertEquals(500, loaded.watermark());
+        assertEquals(500, loaded.size());
+        float[] query = randomVector();
+        assertEquals(ids(index.search(query, 10, 100, null)), ids(loaded.search(query, 10, 100, null)));
+
+        // Vectors appended after the snapshot are added by catchUp without a rebuild
+        addRandom(500, 50);
+        assertEquals(50, loaded.catchUp());
+        assertEquals(550, loaded.watermark());
+        float[] appended = new float[DIMENSIONS];
+        store.read(store.ordinalOf("v520"), appended);
+        assertEquals("v520", loaded.search(appended, 1, 100, null).get(0).getId());
+    }
+
+    @Test
+    void testLoad_RejectsSnapshotOfAnotherStore() throws IOException {
+        addRandom(0, 50);
+        HnswIndex index = new HnswIndex(store, 8, 50);
+        index.catchUp();
+        Path snapshot = dir.resolve("kb.hnsw");
+        index.save(snapshot);
+
+        // A compacted store has different ordinals, so the old snapshot cannot be reused
+        try (MappedVectorStore compacted = store.compactTo(dir.resolve("compacted"))) {
+            assertNotEquals(store.getStoreId(), compacted.getStoreId());
+            assertThrows(IOException.class, () -> HnswIndex.load(snapshot, compacted));
+        }
+    }
+
+    private void addRandom(int first, int count) throws IOException {
+        for (int i = first; i < first + count; i++) {
+            store.add("v" + i, randomVector());
+        }
+    }
+
+    private Set<String> exactTop(float[] query, int k) {
+        TopScores top = store.top(query, k, -1f, null, 1 << 20);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < top.size(); i++) {
+            ids.add(store.idOf(top.id(i)));
+        }
+        return ids;
+    }
+
+    private static List<String> ids(List<VectorMatch> matches) {
+        return matches.stream().map(VectorMatch::getId).collect(Collectors.toList());
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,148 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedVectorStoreTest {
+
+    private static final int DIMENSIONS = 8;
+
+    @TempDir
+    Path dir;
+
+    private final Random random = new Random(11);
+
+    @Test
+    void testOpen_ReplaysJournal() throws IOException {
+        Path storeDir = dir.resolve("store");
+        float[] kept = randomVector();
+        try (MappedVectorStore store = MappedVectorStore.open(storeDir, DIMENSIONS)) {
+            store.add("a", randomVector());
+            store.add("b", kept);
+            store.add("a", randomVector());
+            store.remove("c");
+            store.remove("a");
+        }
+
+        try (MappedVectorStore reopened = MappedVectorStore.open(storeDir, DIMENSIONS)) {
+            assertEquals(1, reopened.size());
+            assertEquals(2, reopened.deletedCount());
+            assertEquals(-1, reopened.ordinalOf("a"));
+            assertArrayEquals(VectorMath.normalized(kept), read(reopened, reopened.ordinalOf("b")), 1e-6f);
+            assertEquals(DIMENSIONS, MappedVectorStore.readDimensions(storeDir));
+        }
+    }
+
+    @Test
+    void testOpen_DropsTornRecordAndKeepsAppending() throws IOException {
+        Path storeDir = dir.resolve("store");
+        long storeId;
+        try (MappedVectorStore store = MappedVectorStore.open(storeDir, DIMENSIONS)) {
+            for (int i = 0; i < 3; i++) {
+                store.add("v" + i, randomVector());
+            }
+            storeId = store.getStoreId();
+        }
+        // Simulate a crash: only part of an add record's type, ordinal and ID length was written
+        Path journal = storeDir.resolve("vectors.journal");
+        long intact = Files.size(journal);
+        Files.write(journal, new byte[]{1, 0, 0, 0, 3, 0}, StandardOpenOption.APPEND);
+
+        float[] appended = randomVector();
+        try (MappedVectorStore reopened = MappedVectorStore.open(storeDir, DIMENSIONS)) {
+            assertEquals(3, reopened.size());
+            assertEquals(storeId, reopened.getStoreId());
+            // The torn record is truncated, so later appends do not follow garbage
+            assertEquals(intact, Files.size(journal));
+            assertEquals(3, reopened.add("v3", appended));
+        }
+
+        try (MappedVectorStore reopened = MappedVectorStore.open(storeDir, DIMENSIONS)) {
+            assertEquals(4, reopened.size());
+            assertEquals("v3", reopened.idOf(3));
+            assertArrayEquals(VectorMath.normalized(appended), read(reopened, 3), 1e-6f);
+        }
+    }
+
+    @Test
+    void testCompactTo_RemovesTombstonesAndRenumbers() throws IOException {
+        try (MappedVectorStore store = MappedVectorStore.open(dir.resolve("store"), DIMENSIONS)) {
+            float[][] vectors = new float[10][];
+            for (int i = 0; i < 10; i++) {
+                vectors[i] = randomVector();
+                store.add("v" + i, vectors[i]);
+            }
+            store.remove("v1");
+            store.remove("v4");
+            store.remove("v7");
+
+            try (MappedVectorStore compacted = store.compactTo(dir.resolve("compacted"))) {
+                assertNotEquals(store.getStoreId(), compacted.getStoreId());
+                assertEquals(7, compacted.size());
+                assertEquals(0, compacted.deletedCount());
+                assertEquals(7, compacted.ordinalLimit());
+                assertEquals(-1, compacted.ordinalOf("v1"));
+                // Live vectors are renumbered in their original order
+                assertEquals(1, compacted.ordinalOf("v2"));
+                assertArrayEquals(VectorMath.normalized(vectors[9]), read(compacted, compacted.ordinalOf("v9")), 1e-6f);
+            }
+
+            // The compacted store is on disk and reopens with the same contents
+            try (MappedVectorStore reopened = MappedVectorStore.open(dir.resolve("compacted"), DIMENSIONS)) {
+                assertEquals(7, reopened.size());
+                assertEquals("v9", reopened.idOf(6));
+            }
+        }
+    }
+
+    @Test
+    void testRetire_CleansUpAfterLastReader() throws IOException {
+        try (MappedVectorStore store = MappedVectorStore.open(dir.resolve("store"), DIMENSIONS)) {
+            AtomicInteger cleanups = new AtomicInteger();
+            assertTrue(store.acquire());
+            assertTrue(store.acquire());
+
+            store.retire(cleanups::incrementAndGet);
+            assertEquals(0, cleanups.get());
+            store.release();
+            assertEquals(0, cleanups.get());
+            store.release();
+
+            // Cleanup waits for the last reader to release; after that the store cannot be acquired
+            assertEquals(1, cleanups.get());
+            assertFalse(store.acquire());
+            assertThrows(IllegalStateException.class, () -> store.retire(cleanups::incrementAndGet));
+        }
+    }
+
+    @Test
+    void testAdd_RejectsWrongDimensions() throws IOException {
+        try (MappedVectorStore store = MappedVectorStore.open(dir.resolve("store"), DIMENSIONS)) {
+            assertThrows(IllegalArgumentException.class, () -> store.add("a", new float[DIMENSIONS + 1]));
+        }
+        assertThrows(IOException.class, () -> MappedVectorStore.open(dir.resolve("store"), DIMENSIONS * 2));
+    }
+
+    private static float[] read(MappedVectorStore store, int ordinal) {
+        float[] vector = new float[DIMENSIONS];
+        store.read(ordinal, vector);
+        return vector;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,102 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataBitmapsTest {
+
+    @Test
+    void testMatch_UnionWithinKeyIntersectionAcrossKeys() {
+        MetadataBitmaps bitmaps = sample();
+
+        assertEquals(RoaringBitmap.bitmapOf(0, 2), bitmaps.match(Map.of("lang", List.of("en"))));
+        assertEquals(RoaringBitmap.bitmapOf(0, 1, 2), bitmaps.match(Map.of("lang", List.of("en", "zh"))));
+        assertEquals(RoaringBitmap.bitmapOf(0), bitmaps.match(Map.of("lang", List.of("en"), "source", List.of("faq"))));
+        // Unknown keys or values and empty value lists match no ordinals
+        assertTrue(bitmaps.match(Map.of("lang", List.of("fr"))).isEmpty());
+        assertTrue(bitmaps.match(Map.of("owner", List.of("x"))).isEmpty());
+        assertTrue(bitmaps.match(Map.of("lang", List.of())).isEmpty());
+        assertEquals(5, bitmaps.valueCount());
+    }
+
+    @Test
+    void testMatch_ReturnsCopyOwnedByCaller() {
+        MetadataBitmaps bitmaps = sample();
+        RoaringBitmap matched = bitmaps.match(Map.of("lang", List.of("en")));
+        matched.add(99);
+        matched.remove(0);
+
+        // Changing a returned bitmap does not affect the index
+        assertEquals(RoaringBitmap.bitmapOf(0, 2), bitmaps.match(Map.of("lang", List.of("en"))));
+    }
+
+    @Test
+    void testAdd_IgnoresNullKeysAndValues() {
+        MetadataBitmaps bitmaps = new MetadataBitmaps();
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("lang", null);
+        metadata.put(null, "en");
+        metadata.put("source", "faq");
+        bitmaps.add(4, metadata);
+        bitmaps.add(5, null);
+
+        assertEquals(1, bitmaps.valueCount());
+        assertEquals(RoaringBitmap.bitmapOf(4), bitmaps.match(Map.of("source", List.of("faq"))));
+    }
+
+    @Test
+    void testRenumber_DropsAndShiftsOrdinals() {
+        MetadataBitmaps bitmaps = sample();
+
+        // Ordinal 1 is removed and the later ordinals shift down
+        MetadataBitmaps renumbered = bitmaps.renumber(new int[]{0, -1, 1, 2});
+
+        assertEquals(RoaringBitmap.bitmapOf(0, 1), renumbered.match(Map.of("lang", List.of("en"))));
+        assertTrue(renumbered.match(Map.of("lang", List.of("zh"))).isEmpty());
+        assertEquals(RoaringBitmap.bitmapOf(2), renumbered.match(Map.of("source", List.of("web"))));
+        // The original index is unchanged
+        assertEquals(RoaringBitmap.bitmapOf(1), bitmaps.match(Map.of("lang", List.of("zh"))));
+    }
+
+    @Test
+    void testWriteRead_RoundTrip() throws IOException {
+        MetadataBitmaps bitmaps = sample();
+        for (int ordinal = 100; ordinal < 5000; ordinal++) {
+            bitmaps.add(ordinal, Map.of("lang", "en"));
+        }
+        bitmaps.optimize();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmaps.write(out);
+        }
+        MetadataBitmaps read = MetadataBitmaps.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(bitmaps.valueCount(), read.valueCount());
+        for (Map<String, List<String>> filter : List.of(Map.of("lang", List.of("en")),
+                Map.of("source", List.of("faq", "web")), Map.of("lang", List.of("zh"), "source", List.of("faq")))) {
+            assertEquals(bitmaps.match(filter), read.match(filter));
+        }
+    }
+
+    // 0: en/faq, 1: zh/faq, 2: en/docs, 3: web
+    private static MetadataBitmaps sample() {
+        MetadataBitmaps bitmaps = new MetadataBitmaps();
+        bitmaps.add(0, Map.of("lang", "en", "source", "faq"));
+        bitmaps.add(1, Map.of("lang", "zh", "source", "faq"));
+        bitmaps.add(2, Map.of("lang", "en", "source", "docs"));
+        bitmaps.add(3, Map.of("source", "web"));
+        return bitmaps;
+    }
+}
@@ -0,0 +1,157 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedVectorsTest {
+
+    private static final int DIMENSIONS = 32;
+
+    private final Random random = new Random(5);
+
+    @Test
+    void testScalarQuantizer_ScoresCloseToDotProduct() {
+        float[][] vectors = randomUnitVectors(500);
+        ScalarQuantizer quantizer = ScalarQuantizer.train(vectors);
+        assertEquals(DIMENSIONS, quantizer.codeSize());
+
+        // int8 has 256 levels per dimension, so approximate scores stay close to the exact dot product
+        assertMaxError(quantizer, vectors, 0.02f);
+    }
+
+    @Test
+    void testProductQuantizer_ScoresCloseToDotProduct() {
+        float[][] vectors = randomUnitVectors(1000);
+        ProductQuantizer quantizer = ProductQuantizer.train(vectors, 8, 8, 42L);
+        assertEquals(8, quantizer.codeSize());
+        assertEquals(DIMENSIONS, quantizer.getDimensions());
+
+        // Product quantization compresses more; the error is larger but still fine for picking candidates
+        assertMaxError(quantizer, vectors, 0.35f);
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizer.train(vectors, DIMENSIONS + 1, 8, 42L));
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizer.train(new float[0][], 8, 8, 42L));
+    }
+
+    @Test
+    void testCandidates_ParallelMatchesSequential() {
+        float[][] vectors = randomUnitVectors(3000);
+        QuantizedVectors quantized = encode(ScalarQuantizer.train(vectors), vectors);
+        float[] query = randomUnitVectors(1)[0];
+
+        // A partitioned parallel scan matches a single-threaded one; tied ordinals may swap, so compare scores
+        int[] sequential = quantized.candidates(query, 50, null, Integer.MAX_VALUE);
+        int[] parallel = quantized.candidates(query, 50, null, 256);
+        assertEquals(50, parallel.length);
+        try (QuantizedVectors.Reader reader = quantized.reader(query)) {
+            for (int i = 0; i < parallel.length; i++) {
+                assertEquals(reader.score(sequential[i]), reader.score(parallel[i]));
+            }
+        }
+    }
+
+    @Test
+    void testCandidates_RecallOfExactTop() {
+        float[][] vectors = randomUnitVectors(2000);
+        QuantizedVectors quantized = encode(ScalarQuantizer.train(vectors), vectors);
+        float[] query = randomUnitVectors(1)[0];
+
+        Set<Integer> exact = exactTop(vectors, query, 10);
+        Set<Integer> found = new HashSet<>();
+        for (int ordinal : quantized.candidates(query, 100, null, 512)) {
+            found.add(ordinal);
+        }
+        // With 10x candidates, the exact top 10 should all be included
+        assertTrue(found.containsAll(exact));
+    }
+
+    @Test
+    void testCandidates_SkipsRemovedAndRejected() {
+        float[][] vectors = randomUnitVectors(400);
+        QuantizedVectors quantized = encode(ScalarQuantizer.train(vectors), vectors);
+        float[] query = vectors[7];
+        assertEquals(7, quantized.candidates(query, 1, null, 100)[0]);
+
+        quantized.remove(7);
+        int[] candidates = quantized.candidates(query, 400, ordinal -> ordinal % 2 == 1, 100);
+
+        assertEquals(399, quantized.size());
+        assertEquals(199, candidates.length);
+        assertTrue(Arrays.stream(candidates).allMatch(ordinal -> ordinal % 2 == 1 && ordinal != 7));
+    }
+
+    @Test
+    void testReader_ScoresWithoutCodesOutOfRange() {
+        float[][] vectors = randomUnitVectors(100);
+        QuantizedVectors quantized = encode(ScalarQuantizer.train(vectors), vectors);
+        quantized.remove(3);
+
+        try (QuantizedVectors.Reader reader = quantized.reader(vectors[5])) {
+            assertTrue(reader.contains(5));
+            assertEquals(1f, reader.score(5), 0.02f);
+            // Deleted codes still score for graph routing but are no longer candidates
+            assertFalse(reader.contains(3));
+            assertTrue(reader.score(3) > Float.NEGATIVE_INFINITY);
+            assertFalse(reader.contains(1000));
+            assertEquals(Float.NEGATIVE_INFINITY, reader.score(1000));
+        }
+        // Writes are not blocked once the reader is closed
+        quantized.set(100, vectors[0]);
+        assertEquals(100, quantized.size());
+    }
+
+    private static void assertMaxError(VectorQuantizer quantizer, float[][] vectors, float maxError) {
+        byte[] codes = new byte[quantizer.codeSize() * vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            quantizer.encode(vectors[i], codes, i * quantizer.codeSize());
+        }
+        float worst = 0f;
+        for (int q = 0; q < 10; q++) {
+            VectorQuantizer.CodeScorer scorer = quantizer.scorer(vectors[q]);
+            for (int i = 0; i < vectors.length; i++) {
+                float error = Math.abs(scorer.score(codes, i * quantizer.codeSize()) - VectorMath.dot(vectors[q], vectors[i]));
+                worst = Math.max(worst, error);
+            }
+        }
+        assertTrue(worst < maxError, "max error " + worst);
+    }
+
+    private static QuantizedVectors encode(VectorQuantizer quantizer, float[][] vectors) {
+        QuantizedVectors quantized = new QuantizedVectors(quantizer);
+        for (int i = 0; i < vectors.length; i++) {
+            quantized.set(i, vectors[i]);
+        }
+        return quantized;
+    }
+
+    private static Set<Integer> exactTop(float[][] vectors, float[] query, int k) {
+        TopScores top = new TopScores(k);
+        for (int i = 0; i < vectors.length; i++) {
+            float score = VectorMath.dot(query, vectors[i]);
+            if (score > top.threshold()) {
+                top.offer(i, score);
+            }
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < top.size(); i++) {
+            ids.add(top.id(i));
+        }
+        return ids;
+    }
+
+    private float[][] randomUnitVectors(int count) {
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            VectorMath.normalize(vector);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,110 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScatterGatherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testGather_MergesGlobalTopAndReportsFailures() {
+        Map<String, Throwable> missing = new HashMap<>();
+        List<Double> top;
+        try (ScatterGather scatter = ScatterGather.start("test", 5000)) {
+            Map<String, CompletableFuture<List<Double>>> tasks = new LinkedHashMap<>();
+            tasks.put("a", scatter.submit(() -> List.of(0.9, 0.5, 0.1), executor));
+            tasks.put("b", scatter.submit(() -> List.of(0.8, 0.7), executor));
+            tasks.put("c", scatter.submit(() -> {
+                throw new IllegalStateException("boom");
+            }, executor));
+            top = scatter.gather(tasks, 3, Double::doubleValue, missing::put);
+        }
+
+        // The failed task is reported and excluded; the rest merge into a global top 3
+        assertEquals(List.of(0.9, 0.8, 0.7), top);
+        assertEquals(1, missing.size());
+        assertEquals("boom", missing.get("c").getMessage());
+    }
+
+    @Test
+    void testGather_DeadlineCancelsRunningTasks() throws InterruptedException {
+        CountDownLatch aborted = new CountDownLatch(1);
+        Map<String, Throwable> missing = new HashMap<>();
+        List<Integer> top;
+        long start = System.nanoTime();
+        try (ScatterGather scatter = ScatterGather.start("test", 100)) {
+            Map<String, CompletableFuture<List<Integer>>> tasks = new LinkedHashMap<>();
+            tasks.put("fast", scatter.submit(() -> List.of(1), executor));
+            tasks.put("slow", scatter.submit(() -> {
+                // A long scan checks its token periodically and stops once the deadline passes
+                CancellationToken token = CancellationToken.current();
+                while (!token.isCancelled()) {
+                    Thread.onSpinWait();
+                }
+                aborted.countDown();
+                return List.of(2);
+            }, executor));
+            top = scatter.gather(tasks, 10, Integer::doubleValue, missing::put);
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(List.of(1), top);
+        // A timed-out task is reported with a null error
+        assertTrue(missing.containsKey("slow"));
+        assertNull(missing.get("slow"));
+        assertTrue(aborted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmit_BindsChildTokenAndPriority() throws Exception {
+        CancellationToken caller = CancellationToken.create();
+        try (CancellationToken.Scope tokenScope = caller.bind();
+             RequestPriority.Scope priorityScope = RequestPriority.BATCH.bind();
+             ScatterGather scatter = ScatterGather.start("test", 5000)) {
+            CompletableFuture<CancellationToken> token = scatter.submit(CancellationToken::current, executor);
+            CompletableFuture<RequestPriority> priority = scatter.then(token, t -> RequestPriority.current(), executor);
+
+            assertNotSame(caller, token.get());
+            assertEquals(RequestPriority.BATCH, priority.get());
+
+            // Cancelling the caller cancels the child token, but not the other way round
+            caller.cancel("client left");
+            assertTrue(token.get().isCancelled());
+            assertEquals("client left", token.get().getReason());
+        }
+    }
+
+    @Test
+    void testClose_CancelsChildOnlyAndDetachesFromCaller() throws Exception {
+        CancellationToken caller = CancellationToken.create();
+        CancellationToken child;
+        try (CancellationToken.Scope tokenScope = caller.bind()) {
+            try (ScatterGather scatter = ScatterGather.start("test", 5000)) {
+                child = scatter.submit(CancellationToken::current, executor).get();
+            }
+        }
+
+        assertTrue(child.isCancelled());
+        assertFalse(caller.isCancelled());
+        assertThrows(ExecutionCancelledException.class, child::throwIfCancelled);
+    }
+}
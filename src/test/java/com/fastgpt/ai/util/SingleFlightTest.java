@@ -0,0 +1,206 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testExecute_ConcurrentCallersShareOneCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> flight.execute("k", () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "answer";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            followers.add(executor.submit(() -> flight.execute("k", () -> {
+                calls.incrementAndGet();
+                return "other";
+            })));
+        }
+        // Let the followers join the call in flight
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+        for (Future<String> follower : followers) {
+            assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_ExceptionIsShared() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> flight.execute("k", () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("upstream failed");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> flight.execute("k", () -> "unused"));
+        Thread.sleep(100);
+        release.countDown();
+
+        Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_FollowerRetriesWhenLeaderIsCancelled() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CancellationToken leaderToken = CancellationToken.create();
+
+        Future<String> leader = executor.submit(() -> {
+            try (CancellationToken.Scope scope = leaderToken.bind()) {
+                return flight.execute("k", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    while (true) {
+                        CancellationToken.current().throwIfCancelled();
+                        sleep(5);
+                    }
+                });
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> flight.execute("k", () -> {
+            calls.incrementAndGet();
+            return "retried";
+        }));
+        Thread.sleep(100);
+
+        // The leader is cancelled by its own caller; the follower runs the call again instead of failing
+        leaderToken.cancel("client left");
+
+        assertInstanceOf(ExecutionCancelledException.class,
+                assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals("retried", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testExecute_AbortedLeaderIsRetriedByLiveFollower() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+        CancellationToken leaderToken = CancellationToken.create();
+        leaderToken.onCancel(aborted::countDown);
+
+        Future<String> leader = executor.submit(() -> {
+            try (CancellationToken.Scope scope = leaderToken.bind()) {
+                return flight.execute("k", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    await(aborted);
+                    // Cancelling closes the connection, which surfaces as an I/O error
+                    throw new IllegalStateException("connection aborted");
+                });
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> flight.execute("k", () -> {
+            calls.incrementAndGet();
+            return "retried";
+        }));
+        Thread.sleep(100);
+        leaderToken.cancel("client left");
+
+        Throwable leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause();
+        assertInstanceOf(ExecutionCancelledException.class, leaderError);
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertEquals("retried", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_CancelledFollowerStopsWaiting() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CancellationToken followerToken = CancellationToken.create();
+
+        Future<String> leader = executor.submit(() -> flight.execute("k", () -> {
+            started.countDown();
+            await(release);
+            return "answer";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> {
+            try (CancellationToken.Scope scope = followerToken.bind()) {
+                return flight.execute("k", () -> "unused");
+            }
+        });
+        Thread.sleep(100);
+        followerToken.cancel("client left");
+
+        assertInstanceOf(ExecutionCancelledException.class,
+                assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        release.countDown();
+        assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExecute_DistinctKeysRunSeparately() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+
+        assertEquals("a", flight.execute("a", () -> "a"));
+        assertEquals("b", flight.execute("b", () -> "b"));
+        assertEquals(0, flight.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fastgpt.ai.util;
+
+import com.fastgpt.ai.exception.ExecutionCancelledException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingSingleFlightTest {
+
+    private final ExecutorService upstream = Executors.newCachedThreadPool();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        upstream.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void testExecute_LateCallerReceivesReplayedChunks() throws Exception {
+        StreamingSingleFlight<String, Integer> flight = new StreamingSingleFlight<>(upstream);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        CountDownLatch secondCaller = new CountDownLatch(1);
+
+        List<String> first = new CopyOnWriteArrayList<>();
+        List<String> second = new CopyOnWriteArrayList<>();
+
+        Future<Integer> leader = callers.submit(() -> flight.execute("k", sink -> {
+            calls.incrementAndGet();
+            sink.accept("a");
+            firstChunk.countDown();
+            await(secondCaller);
+            sink.accept("b");
+            return 2;
+        }, first::add));
+        assertTrue(firstChunk.await(5, TimeUnit.SECONDS));
+
+        // A late joiner first receives the chunks already emitted, then the rest
+        Future<Integer> late = callers.submit(() -> flight.execute("k", sink -> {
+            calls.incrementAndGet();
+            return -1;
+        }, second::add));
+        Thread.sleep(100);
+        secondCaller.countDown();
+
+        assertEquals(2, leader.get(5, TimeUnit.SECONDS));
+        assertEquals(2, late.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b"), first);
+        assertEquals(List.of("a", "b"), second);
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_UpstreamErrorReachesCaller() {
+        StreamingSingleFlight<String, Integer> flight = new StreamingSingleFlight<>(upstream);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> flight.execute("k", sink -> {
+            sink.accept("a");
+            throw new IllegalStateException("upstream failed");
+        }, chunk -> { }));
+
+        assertEquals("upstream failed", error.getMessage());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_UpstreamCancelledWhenLastCallerLeaves() throws Exception {
+        StreamingSingleFlight<String, Integer> flight = new StreamingSingleFlight<>(upstream);
+        CountDownLatch streaming = new CountDownLatch(1);
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        CountDownLatch upstreamDone = new CountDownLatch(1);
+        CancellationToken callerToken = CancellationToken.create();
+
+        Future<Integer> caller = callers.submit(() -> {
+            try (CancellationToken.Scope scope = callerToken.bind()) {
+                return flight.execute("k", sink -> {
+                    try {
+                        sink.accept("a");
+                        streaming.countDown();
+                        while (!CancellationToken.current().isCancelled()) {
+                            sleep(5);
+                        }
+                        upstreamCancelled.set(true);
+                        return 0;
+                    } finally {
+                        upstreamDone.countDown();
+                    }
+                }, chunk -> { });
+            }
+        });
+        assertTrue(streaming.await(5, TimeUnit.SECONDS));
+
+        callerToken.cancel("client left");
+
+        assertInstanceOf(ExecutionCancelledException.class,
+                assertThrows(Exception.class, () -> caller.get(5, TimeUnit.SECONDS)).getCause());
+        assertTrue(upstreamDone.await(5, TimeUnit.SECONDS));
+        assertTrue(upstreamCancelled.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void testExecute_RejectedUpstreamFailsCaller() {
+        StreamingSingleFlight<String, Integer> flight = new StreamingSingleFlight<>(command -> {
+            throw new RejectedExecutionException("pool exhausted");
+        });
+
+        assertThrows(RejectedExecutionException.class, () -> flight.execute("k", sink -> 1, chunk -> { }));
+        assertEquals(0, flight.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
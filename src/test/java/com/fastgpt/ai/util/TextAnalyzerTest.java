@@ -0,0 +1,43 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextAnalyzerTest {
+
+    @Test
+    void testTokenize_LatinWordsAreNormalized() {
+        // Full-width characters are NFKC-normalized and everything is lowercased
+        assertEquals(List.of("hello", "world", "42"), TextAnalyzer.tokenize("Hello, ＷＯＲＬＤ! ４２"));
+    }
+
+    @Test
+    void testTokenize_CjkBigrams() {
+        assertEquals(List.of("向量", "量检", "检索"), TextAnalyzer.tokenize("向量检索"));
+        // A lone CJK character is its own token; mixed CJK and Latin text splits at the boundary
+        assertEquals(List.of("字"), TextAnalyzer.tokenize("字"));
+        assertEquals(List.of("使用", "redis", "缓存"), TextAnalyzer.tokenize("使用Redis缓存"));
+        assertEquals(List.of("カタ", "タカ", "カナ", "ナー"), TextAnalyzer.tokenize("カタカナー"));
+    }
+
+    @Test
+    void testTokenize_JoinedCodesKeepWholeForm() {
+        assertEquals(List.of("err", "conn", "reset", "err_conn_reset"), TextAnalyzer.tokenize("ERR_CONN_RESET"));
+        assertEquals(List.of("v2", "1", "0", "v2.1.0"), TextAnalyzer.tokenize("v2.1.0."));
+        // A joiner not followed by a letter or digit does not join
+        assertEquals(List.of("end"), TextAnalyzer.tokenize("end-"));
+        assertEquals(List.of("a", "b"), TextAnalyzer.tokenize("a - b"));
+    }
+
+    @Test
+    void testTokenize_EmptyAndOverlongInput() {
+        assertTrue(TextAnalyzer.tokenize(null).isEmpty());
+        assertTrue(TextAnalyzer.tokenize("  ,;! ").isEmpty());
+        // Tokens longer than 64 characters are dropped
+        assertTrue(TextAnalyzer.tokenize("x".repeat(65)).isEmpty());
+        assertEquals(List.of("x".repeat(64)), TextAnalyzer.tokenize("x".repeat(64)));
+    }
+}
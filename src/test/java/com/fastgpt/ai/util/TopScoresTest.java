@@ -0,0 +1,80 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopScoresTest {
+
+    @Test
+    void testOffer_KeepsBestSortedDescending() {
+        Random random = new Random(3);
+        float[] scores = new float[1000];
+        TopScores top = new TopScores(20);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+            top.offer(i, scores[i]);
+        }
+        top.sort();
+
+        // Matches the top 20 of a full sort, highest first
+        Integer[] expected = IntStream.range(0, scores.length).boxed()
+                .sorted(Comparator.comparingDouble(i -> -scores[i]))
+                .limit(20)
+                .toArray(Integer[]::new);
+        assertEquals(20, top.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected[i], top.id(i));
+            assertEquals(scores[expected[i]], top.score(i));
+        }
+    }
+
+    @Test
+    void testThreshold_OnlyOnceFull() {
+        TopScores top = new TopScores(2);
+        assertEquals(Float.NEGATIVE_INFINITY, top.threshold());
+        assertTrue(top.offer(1, 0.5f));
+        assertEquals(Float.NEGATIVE_INFINITY, top.threshold());
+        assertTrue(top.offer(2, 0.9f));
+        assertEquals(0.5f, top.threshold());
+
+        // Scores not above the threshold are rejected; a higher score replaces the current lowest
+        assertFalse(top.offer(3, 0.5f));
+        assertTrue(top.offer(4, 0.7f));
+        assertEquals(0.7f, top.threshold());
+    }
+
+    @Test
+    void testMerge_EqualsSingleSelection() {
+        Random random = new Random(9);
+        TopScores whole = new TopScores(10);
+        TopScores[] parts = {new TopScores(10), new TopScores(10), new TopScores(10)};
+        for (int i = 0; i < 300; i++) {
+            float score = random.nextFloat();
+            whole.offer(i, score);
+            parts[i % parts.length].offer(i, score);
+        }
+
+        // Selecting per partition and merging matches a single selection
+        TopScores merged = Arrays.stream(parts).reduce(new TopScores(10), TopScores::merge).sort();
+        whole.sort();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(whole.id(i), merged.id(i));
+        }
+    }
+
+    @Test
+    void testZeroCapacity_KeepsNothing() {
+        TopScores top = new TopScores(0);
+        assertFalse(top.offer(1, 1f));
+        assertEquals(Float.POSITIVE_INFINITY, top.threshold());
+        assertEquals(0, top.size());
+        assertEquals(0, top.sort().size());
+        assertEquals(0, new TopScores(-5).size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorEncodingTest {
+
+    private static final List<Float> VECTOR = List.of(0.125f, -0.3f, 1.5f, 0f, -65504f, 1e-3f);
+
+    @Test
+    void testFloat32_RoundTripsExactly() {
+        byte[] encoded = VectorEncoding.encode(VECTOR, false);
+
+        assertEquals(VectorEncoding.encodedSize(VECTOR.size(), false), encoded.length);
+        assertEquals(VectorEncoding.FORMAT_FLOAT32, encoded[0]);
+        assertEquals(VECTOR, VectorEncoding.decode(encoded));
+    }
+
+    @Test
+    void testFloat16_RoundTripsWithinHalfPrecision() {
+        byte[] encoded = VectorEncoding.encode(VECTOR, true);
+
+        // 2 bytes per dimension, about half of float32
+        assertEquals(1 + VECTOR.size() * 2, encoded.length);
+        assertEquals(VectorEncoding.FORMAT_FLOAT16, encoded[0]);
+        PackedVector decoded = VectorEncoding.decode(encoded);
+        assertEquals(VECTOR.size(), decoded.size());
+        for (int i = 0; i < VECTOR.size(); i++) {
+            float expected = VECTOR.get(i);
+            assertEquals(expected, decoded.get(i), Math.max(Math.abs(expected) * 1e-3f, 1e-6f));
+        }
+        // Exactly representable values are unchanged
+        assertEquals(0.125f, decoded.get(0));
+        assertEquals(-65504f, decoded.get(4));
+    }
+
+    @Test
+    void testFloat16_ConversionEdgeCases() {
+        assertEquals(Float.POSITIVE_INFINITY, Float16.toFloat(Float16.fromFloat(1e6f)));
+        assertEquals(Float.NEGATIVE_INFINITY, Float16.toFloat(Float16.fromFloat(Float.NEGATIVE_INFINITY)));
+        assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(Float.NaN))));
+        // Subnormals keep an approximate value instead of flushing to 0
+        float subnormal = 3e-6f;
+        assertEquals(subnormal, Float16.toFloat(Float16.fromFloat(subnormal)), 6e-8f);
+    }
+
+    @Test
+    void testDecode_RejectsUnknownFormat() {
+        byte[] encoded = VectorEncoding.encode(VECTOR, false);
+        encoded[0] = 9;
+
+        assertThrows(IllegalArgumentException.class, () -> VectorEncoding.decode(encoded));
+    }
+}
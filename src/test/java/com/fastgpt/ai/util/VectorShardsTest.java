@@ -0,0 +1,81 @@
+package com.fastgpt.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorShardsTest {
+
+    @Test
+    void testBucket_StableAndSpreadOverShards() {
+        int shards = 8;
+        int[] counts = new int[shards];
+        for (int i = 0; i < 8000; i++) {
+            String dataId = UUID.randomUUID().toString();
+            int bucket = VectorShards.bucket(dataId);
+            assertTrue(bucket >= 0 && bucket < VectorShards.BUCKETS);
+            assertEquals(bucket, VectorShards.bucket(dataId));
+            // The shard follows from the stored bucket, so no shard count needs rehashing
+            assertEquals(bucket % shards, VectorShards.shardOf(dataId, shards));
+            counts[VectorShards.shardOf(bucket, shards)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 800 && count < 1200, "uneven shard size " + count);
+        }
+    }
+
+    @Test
+    void testAssign_DistinctOwnersIndependentOfInstanceOrder() {
+        List<String> instances = List.of("a:8080", "b:8080", "c:8080", "d:8080");
+        Map<Integer, List<String>> owners = VectorShards.assign("kb1", 16, instances, 2);
+
+        assertEquals(16, owners.size());
+        for (List<String> shardOwners : owners.values()) {
+            assertEquals(2, shardOwners.size());
+            assertEquals(2, new HashSet<>(shardOwners).size());
+            assertTrue(instances.containsAll(shardOwners));
+        }
+
+        // Coordinators see instances in different orders and must agree on the assignment
+        List<String> shuffled = new ArrayList<>(instances);
+        Collections.shuffle(shuffled);
+        assertEquals(owners, VectorShards.assign("kb1", 16, shuffled, 2));
+    }
+
+    @Test
+    void testAssign_ReplicasCappedByInstances() {
+        Map<Integer, List<String>> owners = VectorShards.assign("kb1", 4, List.of("a:8080"), 3);
+
+        assertEquals(4, owners.size());
+        owners.values().forEach(shardOwners -> assertEquals(List.of("a:8080"), shardOwners));
+        // A replica count below 1 still keeps one owner
+        assertEquals(1, VectorShards.assign("kb1", 1, List.of("a:8080", "b:8080"), 0).get(0).size());
+    }
+
+    @Test
+    void testAssign_LeavingInstanceMovesOnlyItsShards() {
+        List<String> instances = List.of("a:8080", "b:8080", "c:8080", "d:8080", "e:8080");
+        Map<Integer, List<String>> before = VectorShards.assign("kb1", 64, instances, 1);
+        Map<Integer, List<String>> after = VectorShards.assign("kb1", 64,
+                instances.stream().filter(id -> !id.equals("c:8080")).toList(), 1);
+
+        int moved = 0;
+        for (int shard = 0; shard < 64; shard++) {
+            if (before.get(shard).equals(List.of("c:8080"))) {
+                moved++;
+                assertNotEquals(List.of("c:8080"), after.get(shard));
+            } else {
+                // Shards held by other instances stay where they are
+                assertEquals(before.get(shard), after.get(shard));
+            }
+        }
+        assertTrue(moved > 0);
+    }
+}